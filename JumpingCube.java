@@ -5,8 +5,11 @@
  */
 
 import javax.swing.*;
+import javax.swing.event.ChangeEvent;
+import javax.swing.event.ChangeListener;
 import java.awt.event.*;
 import java.awt.*;
+import java.io.IOException;
 
 /**
  * The JumpingCube class is the top-level container for the game.
@@ -16,14 +19,32 @@ public class JumpingCube extends JFrame
 {
 	private UIManager.LookAndFeelInfo looks[];
 	private JLabel gameStatus;
+	private String statusText;
+	private javax.swing.Timer clockTimer;
+	private int timeControl;
+	private JLabel metricsOverlay;
+	private JSlider scrubBar;
+	private JCheckBoxMenuItem replayItem;
+	private JumpingCubeReplay lastGame;
+	private javax.swing.Timer metricsTimer;
+	private long lastMoves;
+	private long lastNodes;
+	private long lastSearchNanos;
+	private long lastMetricsTime;
 
 	private ButtonGroup playfieldGroup;
 	private JRadioButtonMenuItem playfieldItems[];
+	private JMenuItem playerItems[];
 
 	private JumpingCubeBoard board;
+	private JumpingCubeNetworkClient netClient;
+	private JumpingCubeAnalyzer analyzer;
+	private boolean analyzing;
+	private boolean againstComputer;
 
-	private JumpingCubePlayer player1;
-	private JumpingCubePlayer player2;
+	private JumpingCubePlayer players[];
+	private int numPlayers;
+	private int topologyKind;
 
 	private int rows;
 	private int cols;
@@ -40,8 +61,10 @@ public class JumpingCube extends JFrame
 	 * The default constructor. 
 	 * Creates a new game window with the defaults:
 	 * 7x7 JumpingCubeBoard
-	 * JumpingCubePlayer player1 with name "Player 1", and color Color.red
-	 * JumpingCubePlayer player2 with name "Player 2", and color Color.blue
+	 * JumpingCubePlayer "Player 1" in Color.red
+	 * JumpingCubePlayer "Player 2" in Color.blue
+	 * Players 3 to 8 are set up too, in the rest of
+	 * JumpingCubePlayer.DEFAULT_COLORS, for games with more players.
 	 */
 	public JumpingCube()
 	{
@@ -61,18 +84,63 @@ public class JumpingCube extends JFrame
 				);
 
 		
+		players = new JumpingCubePlayer[JumpingCubeEngine.MAX_PLAYERS];
+		for(int i = 0; i < players.length; i++)
+		{
+			players[i] = new JumpingCubePlayer("Player " + (i + 1), JumpingCubePlayer.DEFAULT_COLORS[i]);
+		}
+		numPlayers = JumpingCubeEngine.NUM_PLAYERS;
+
 		setUpMenu();
-		
-		player1 = new JumpingCubePlayer("Player 1", Color.red);
-		player2 = new JumpingCubePlayer("Player 2", Color.blue);
 
 		board = new JumpingCubeBoard(this, rows, cols);
-		board.setPlayers(player1, player2);
+		board.setPlayers(playersInGame(numPlayers));
 		
-		gameStatus = new JLabel("On Turn: " + player1.getName());
+		statusText = "On Turn: " + players[0].getName();
+		gameStatus = new JLabel(statusText);
+		clockTimer = new javax.swing.Timer(100,
+				new ActionListener()
+				{
+					public void actionPerformed(ActionEvent e)
+					{
+						tickClock();
+					}
+				}
+				);
+		metricsOverlay = new JLabel();
+		metricsOverlay.setVisible(false);
+		metricsTimer = new javax.swing.Timer(1000,
+				new ActionListener()
+				{
+					public void actionPerformed(ActionEvent e)
+					{
+						updateMetrics();
+					}
+				}
+				);
+
+		scrubBar = new JSlider(0, 0, 0);
+		scrubBar.setVisible(false);
+		scrubBar.addChangeListener(
+				new ChangeListener()
+				{
+					public void stateChanged(ChangeEvent e)
+					{
+						if(board.isReplaying())
+						{
+							board.showMove(scrubBar.getValue());
+						}
+					}
+				}
+				);
+
+		JPanel statusBar = new JPanel(new BorderLayout());
+		statusBar.add(scrubBar, BorderLayout.NORTH);
+		statusBar.add(gameStatus, BorderLayout.CENTER);
+		statusBar.add(metricsOverlay, BorderLayout.EAST);
 
 		getContentPane().add(board, BorderLayout.CENTER);
-		getContentPane().add(gameStatus, BorderLayout.SOUTH);
+		getContentPane().add(statusBar, BorderLayout.SOUTH);
 
 		myWidth = START_WIDTH;
 		myHeight = START_HEIGHT;
@@ -106,6 +174,7 @@ public class JumpingCube extends JFrame
 				"!", 
 				"Winner", 
 				JOptionPane.PLAIN_MESSAGE);
+		lastGame = board.getRecord();
 		clearBoard();
 	}
 
@@ -115,23 +184,95 @@ public class JumpingCube extends JFrame
 	 */
 	public void clearBoard()
 	{
+		clearBoard(JumpingCubeTopology.forKind(topologyKind, rows, cols));
+	}
+
+	private void clearBoard(JumpingCubeTopology topology)
+	{
+		if(netClient != null)
+		{
+			netClient.close();
+			netClient = null;
+		}
+		endReplay();
 		getContentPane().remove(board);
+		board.setAnalyzer(null);
+		board.setComputer(null);
 
-		board = new JumpingCubeBoard(this, rows, cols);
-		board.setPlayers(player1, player2);
+		board = new JumpingCubeBoard(this, topology);
+		board.setPlayers(playersInGame(numPlayers));
+		if(timeControl > 0)
+		{
+			board.setClock(new JumpingCubeClock(numPlayers, JumpingCubeClock.CONTROL_BASES[timeControl],
+					JumpingCubeClock.CONTROL_INCREMENTS[timeControl]));
+			clockTimer.start();
+		}
+		else
+		{
+			clockTimer.stop();
+		}
+		if(analyzing)
+		{
+			board.setAnalyzer(analyzer);
+		}
+		if(againstComputer)
+		{
+			board.setComputer(newComputer());
+		}
 		getContentPane().add(board, BorderLayout.CENTER);
-		updateStatus("On Turn: " + player1.getName());
+		updateStatus("On Turn: " + players[0].getName());
 		setSize(myWidth, myHeight);
 		repaint();
 		show();
 	}
 
+	/**
+	 * Shows the metrics in the overlay.  Rates are worked out from the
+	 * counters' change since the last update, and the cascade and move
+	 * times from everything counted since the game started.
+	 */
+	private void updateMetrics()
+	{
+		long now = System.nanoTime();
+		long moves = JumpingCubeMetrics.MOVES.get();
+		long nodes = JumpingCubeMetrics.AI_NODES.get();
+		long searchNanos = JumpingCubeMetrics.AI_NANOS.get();
+		String movesPerSecond = "-";
+		String nodesPerSecond = "-";
+		if(lastMetricsTime != 0)
+		{
+			movesPerSecond = String.valueOf((moves - lastMoves) * 1000000000L / Math.max(1, now - lastMetricsTime));
+		}
+		if(searchNanos > lastSearchNanos)
+		{
+			nodesPerSecond = String.valueOf((nodes - lastNodes) * 1000000000L / (searchNanos - lastSearchNanos));
+		}
+		else if(lastMetricsTime != 0)
+		{
+			nodesPerSecond = "0";
+		}
+		lastMoves = moves;
+		lastNodes = nodes;
+		lastSearchNanos = searchNanos;
+		lastMetricsTime = now;
+
+		long[] cascade = JumpingCubeMetrics.CASCADE.getBuckets();
+		long[] moveNanos = JumpingCubeMetrics.MOVE_NANOS.getBuckets();
+		metricsOverlay.setText("Moves/s: " + movesPerSecond
+				+ "   Cascade p50/p99: " + JumpingCubeMetrics.Histogram.percentile(cascade, 50)
+				+ "/" + JumpingCubeMetrics.Histogram.percentile(cascade, 99)
+				+ "   Move p99: " + (JumpingCubeMetrics.Histogram.percentile(moveNanos, 99) / 1000) + " us"
+				+ "   AI nodes/s: " + nodesPerSecond
+				+ "   Repaints: " + JumpingCubeMetrics.REPAINTS.get() + " ");
+	}
+
 	/**
 	 * Instantiates and initializes a new JumpingCube game,
 	 * ready for play.
 	 */
 	public static void main(String args[])
 	{
+		JumpingCubeMetrics.serveIfRequested();
 		JumpingCube app = new JumpingCube();
 
 		app.addWindowListener(
@@ -165,6 +306,62 @@ public class JumpingCube extends JFrame
 				}
 				);
 
+		replayItem = new JCheckBoxMenuItem("Replay");
+		replayItem.setMnemonic('R');
+		replayItem.addActionListener(
+				new ActionListener()
+				{
+					public void actionPerformed(ActionEvent e)
+					{
+						setReplaying(replayItem.isSelected());
+					}
+				}
+				);
+
+		final JCheckBoxMenuItem computerItem = new JCheckBoxMenuItem("Play Against Computer");
+		computerItem.setMnemonic('C');
+		computerItem.addActionListener(
+				new ActionListener()
+				{
+					public void actionPerformed(ActionEvent e)
+					{
+						setAgainstComputer(computerItem.isSelected());
+					}
+				}
+				);
+
+		JMenuItem onlineItem = new JMenuItem("Play Online...");
+		onlineItem.setMnemonic('O');
+		onlineItem.addActionListener(
+				new ActionListener()
+				{
+					public void actionPerformed(ActionEvent e)
+					{
+						playOnline(JOptionPane.showInputDialog(JumpingCube.this,
+								"Server (host:port):",
+								"localhost:" + JumpingCubeServer.DEFAULT_PORT));
+					}
+				}
+				);
+
+		JMenuItem watchItem = new JMenuItem("Watch Online...");
+		watchItem.setMnemonic('W');
+		watchItem.addActionListener(
+				new ActionListener()
+				{
+					public void actionPerformed(ActionEvent e)
+					{
+						String address = JOptionPane.showInputDialog(JumpingCube.this,
+								"Server (host:port):",
+								"localhost:" + JumpingCubeServer.DEFAULT_PORT);
+						if(address != null)
+						{
+							watchOnline(address, JOptionPane.showInputDialog(JumpingCube.this, "Game number:"));
+						}
+					}
+				}
+				);
+
 		JMenuItem quitItem = new JMenuItem("Quit");
 		quitItem.setMnemonic('Q');
 		quitItem.addActionListener(
@@ -178,6 +375,10 @@ public class JumpingCube extends JFrame
 				);
 		
 		gameMenu.add(newItem);
+		gameMenu.add(computerItem);
+		gameMenu.add(replayItem);
+		gameMenu.add(onlineItem);
+		gameMenu.add(watchItem);
 		gameMenu.addSeparator();
 		gameMenu.add(quitItem);
 		
@@ -200,36 +401,131 @@ public class JumpingCube extends JFrame
 		
 		playfieldItems[2].setSelected(true);
 		
-		JMenuItem player1MenuItem = new JMenuItem("Player 1");
-		player1MenuItem.setMnemonic('1');
-		player1MenuItem.addActionListener(
+		String topologies[] = {"Grid", "Torus", "Hex"};
+
+		JMenu topologyMenu = new JMenu("Topology");
+		topologyMenu.setMnemonic('T');
+		ButtonGroup topologyGroup = new ButtonGroup();
+		for(int i = 0; i < topologies.length; i++)
+		{
+			final int kind = i;
+			JRadioButtonMenuItem item = new JRadioButtonMenuItem(topologies[i]);
+			item.setMnemonic(topologies[i].charAt(0));
+			item.setSelected(i == JumpingCubeTopology.GRID);
+			item.addActionListener(
+					new ActionListener()
+					{
+						public void actionPerformed(ActionEvent e)
+						{
+							setTopology(kind);
+						}
+					}
+					);
+			topologyGroup.add(item);
+			topologyMenu.add(item);
+		}
+
+		JMenu numPlayersMenu = new JMenu("Number of Players");
+		numPlayersMenu.setMnemonic('N');
+		ButtonGroup numPlayersGroup = new ButtonGroup();
+		for(int n = JumpingCubeEngine.MIN_PLAYERS; n <= JumpingCubeEngine.MAX_PLAYERS; n++)
+		{
+			final int count = n;
+			JRadioButtonMenuItem item = new JRadioButtonMenuItem(n + " Players");
+			item.setMnemonic('0' + n);
+			item.setSelected(n == numPlayers);
+			item.addActionListener(
+					new ActionListener()
+					{
+						public void actionPerformed(ActionEvent e)
+						{
+							setNumPlayers(count);
+						}
+					}
+					);
+			numPlayersGroup.add(item);
+			numPlayersMenu.add(item);
+		}
+
+		JMenu timeControlMenu = new JMenu("Time Control");
+		timeControlMenu.setMnemonic('C');
+		ButtonGroup timeControlGroup = new ButtonGroup();
+		for(int i = 0; i < JumpingCubeClock.CONTROL_NAMES.length; i++)
+		{
+			final int control = i;
+			JRadioButtonMenuItem item = new JRadioButtonMenuItem(JumpingCubeClock.CONTROL_NAMES[i]);
+			item.setSelected(i == timeControl);
+			item.addActionListener(
+					new ActionListener()
+					{
+						public void actionPerformed(ActionEvent e)
+						{
+							setTimeControl(control);
+						}
+					}
+					);
+			timeControlGroup.add(item);
+			timeControlMenu.add(item);
+		}
+
+		playerItems = new JMenuItem[players.length];
+		for(int i = 0; i < players.length; i++)
+		{
+			final int index = i;
+			playerItems[i] = new JMenuItem("Player " + (i + 1));
+			playerItems[i].setMnemonic('1' + i);
+			playerItems[i].setVisible(i < numPlayers);
+			playerItems[i].addActionListener(
+					new ActionListener()
+					{
+						public void actionPerformed(ActionEvent e)
+						{
+							new JumpingCubePlayerDialog(players[index], JumpingCube.this, index + 1);
+							if(index < board.getNumPlayers())
+							{
+								board.updatePlayer(index, players[index]);
+							}
+						}
+					}
+					);
+		}
+
+		final JCheckBoxMenuItem metricsItem = new JCheckBoxMenuItem("Show Metrics");
+		metricsItem.setMnemonic('M');
+		metricsItem.addActionListener(
 				new ActionListener()
 				{
 					public void actionPerformed(ActionEvent e)
 					{
-						new JumpingCubePlayerDialog(player1, JumpingCube.this, 1);
-						board.updatePlayer1(player1);
+						showMetrics(metricsItem.isSelected());
 					}
 				}
 				);
 
-		JMenuItem player2MenuItem = new JMenuItem("Player 2");
-		player2MenuItem.setMnemonic('2');
-		player2MenuItem.addActionListener(
+		settingsMenu.add(playfieldMenu);
+		settingsMenu.add(topologyMenu);
+		settingsMenu.add(numPlayersMenu);
+		settingsMenu.add(timeControlMenu);
+		settingsMenu.addSeparator();
+		for(int i = 0; i < playerItems.length; i++)
+		{
+			settingsMenu.add(playerItems[i]);
+		}
+		final JCheckBoxMenuItem analyzeItem = new JCheckBoxMenuItem("Analyze");
+		analyzeItem.setMnemonic('A');
+		analyzeItem.addActionListener(
 				new ActionListener()
 				{
 					public void actionPerformed(ActionEvent e)
 					{
-						new JumpingCubePlayerDialog(player2, JumpingCube.this, 2);
-						board.updatePlayer2(player2);
+						setAnalyzing(analyzeItem.isSelected());
 					}
 				}
 				);
 
-		settingsMenu.add(playfieldMenu);
 		settingsMenu.addSeparator();
-		settingsMenu.add(player1MenuItem);
-		settingsMenu.add(player2MenuItem);
+		settingsMenu.add(analyzeItem);
+		settingsMenu.add(metricsItem);
 		
 		JMenu helpMenu = new JMenu("Help");
 		helpMenu.setMnemonic('H');
@@ -241,7 +537,7 @@ public class JumpingCube extends JFrame
 				{
 					public void actionPerformed(ActionEvent e)
 					{
-						JOptionPane.showMessageDialog(JumpingCube.this, "JumpingCube, a two-player strategy game\nwritten in Java by Daniel Miladinov", "About JumpingCube", JOptionPane.INFORMATION_MESSAGE);
+						JOptionPane.showMessageDialog(JumpingCube.this, "JumpingCube, a strategy game for two to eight players\nwritten in Java by Daniel Miladinov", "About JumpingCube", JOptionPane.INFORMATION_MESSAGE);
 					}
 				}
 				);
@@ -255,12 +551,433 @@ public class JumpingCube extends JFrame
 	}
 
 	/**
-	 * Sends messages to the game window's status bar.
+	 * Sets how many players take part in the games played in this window,
+	 * and starts a new game.  Games played online always have two players.
+	 * @param n The number of players, from 2 to 8.
+	 */
+	public void setNumPlayers(int n)
+	{
+		numPlayers = Math.max(JumpingCubeEngine.MIN_PLAYERS, Math.min(JumpingCubeEngine.MAX_PLAYERS, n));
+		for(int i = 0; i < playerItems.length; i++)
+		{
+			playerItems[i].setVisible(i < numPlayers);
+		}
+		clearBoard();
+	}
+
+	/**
+	 * Sets the shape of the board for the games played in this window, and
+	 * starts a new game.  Games played online are always on a grid.
+	 * @param kind JumpingCubeTopology.GRID, TORUS or HEX.
+	 */
+	public void setTopology(int kind)
+	{
+		topologyKind = kind;
+		clearBoard();
+	}
+
+	/**
+	 * Sends messages to the game window's status bar.  When the game is
+	 * timed, every player's clock is shown after the message.
 	 * @param status The new String object containing the status update.
 	 */
 	public void updateStatus(String status)
 	{
-		gameStatus.setText(status);
+		statusText = status;
+		showStatus();
+	}
+
+	/**
+	 * Sets the time control of the games played in this window, and starts
+	 * a new game.  Games played online are not timed.
+	 * @param control The index of one of JumpingCubeClock.CONTROL_NAMES, 0 for untimed games.
+	 */
+	public void setTimeControl(int control)
+	{
+		timeControl = Math.max(0, Math.min(JumpingCubeClock.CONTROL_NAMES.length - 1, control));
+		clearBoard();
+	}
+
+	private void showStatus()
+	{
+		JumpingCubeClock clock = board.getClock();
+		if(clock == null)
+		{
+			gameStatus.setText(statusText);
+			return;
+		}
+		StringBuffer text = new StringBuffer(statusText);
+		text.append("   ");
+		int running = clock.getRunning();
+		for(int p = 0; p < clock.getNumPlayers(); p++)
+		{
+			text.append((p == running) ? "  [" : "  ").append(players[p].getName()).append(' ')
+				.append(JumpingCubeClock.format(clock.getRemaining(p))).append((p == running) ? "]" : "");
+		}
+		gameStatus.setText(text.toString());
+	}
+
+	/**
+	 * Brings the clocks in the status bar up to date, and ends the game if
+	 * the player on turn has run out of time.
+	 */
+	private void tickClock()
+	{
+		JumpingCubeClock clock = board.getClock();
+		if(clock == null)
+		{
+			clockTimer.stop();
+			return;
+		}
+		showStatus();
+		int running = clock.getRunning();
+		if(running >= 0 && clock.isFlagged(running))
+		{
+			clockTimer.stop();
+			board.timeOut(running);
+		}
+	}
+
+	/**
+	 * Shows or hides the metrics overlay next to the status bar.  While it
+	 * is shown, it is brought up to date once a second.
+	 * @param show True to show the overlay, false to hide it.
+	 */
+	public void showMetrics(boolean show)
+	{
+		metricsOverlay.setVisible(show);
+		if(show)
+		{
+			lastMetricsTime = 0;
+			updateMetrics();
+			metricsTimer.start();
+		}
+		else
+		{
+			metricsTimer.stop();
+		}
+	}
+
+	/**
+	 * Sets whether the computer plays every player but Player 1.  The
+	 * computer joins or leaves the game under way, taking its turn at once
+	 * if it is on turn, and thinks on Player 1's time.
+	 * @param on True to play against the computer, false for people only.
+	 */
+	public void setAgainstComputer(boolean on)
+	{
+		againstComputer = on;
+		if(netClient == null && !board.isReplaying())
+		{
+			board.setComputer(on ? newComputer() : null);
+		}
+	}
+
+	/**
+	 * Turns replay on or off.  While it is on, a scrub bar under the board
+	 * goes to any move of the game under way, or of the last game won if
+	 * none has been played yet, and the computer waits.  Turning it off
+	 * brings back the game under way.  Games played online are not replayed.
+	 * @param on True to replay, false to go back to the game.
+	 */
+	public void setReplaying(boolean on)
+	{
+		if(!on)
+		{
+			endReplay();
+			if(againstComputer && netClient == null)
+			{
+				board.setComputer(newComputer());
+			}
+			return;
+		}
+		JumpingCubeReplay r = board.getRecord();
+		if(r.getNumMoves() == 0 && lastGame != null && lastGame.getTopology() == r.getTopology()
+			&& lastGame.getNumPlayers() == board.getNumPlayers())
+		{
+			r = lastGame;
+		}
+		if(netClient != null || r.getNumMoves() == 0 || board.isReplaying())
+		{
+			replayItem.setSelected(board.isReplaying());
+			return;
+		}
+		board.setComputer(null);
+		// The bar is set before the board replays, so it does not seek.
+		scrubBar.setMaximum(r.getNumMoves());
+		scrubBar.setValue(r.getNumMoves());
+		board.startReplay(r);
+		scrubBar.setVisible(true);
+		replayItem.setSelected(true);
+		validate();
+	}
+
+	/**
+	 * Leaves replay without bringing the computer back, such as when the
+	 * board is about to be replaced.
+	 */
+	private void endReplay()
+	{
+		board.stopReplay();
+		replayItem.setSelected(false);
+		if(scrubBar.isVisible())
+		{
+			scrubBar.setVisible(false);
+			validate();
+		}
+	}
+
+	private JumpingCubeComputer newComputer()
+	{
+		return new JumpingCubeComputer(new JumpingCubeAI(JumpingCubeComputer.DEFAULT_DEPTH, JumpingCubeComputer.DEFAULT_TIME_BUDGET), true);
+	}
+
+	/**
+	 * Turns analysis on or off.  While it is on, spare cores score every
+	 * move of the position on the board, and the board shows the scores as
+	 * a heatmap that follows each move played.
+	 * @param on True to analyse, false to stop.
+	 */
+	public void setAnalyzing(boolean on)
+	{
+		analyzing = on;
+		if(on && analyzer == null)
+		{
+			analyzer = new JumpingCubeAnalyzer(JumpingCubeAnalyzer.spareCores(), JumpingCubeAnalyzer.DEFAULT_DEPTH,
+					new JumpingCubeAnalyzer.Listener()
+					{
+						public void analysisChanged(int[] scores, int[] depths)
+						{
+							if(analyzing)
+							{
+								board.showHeatmap(scores, depths);
+							}
+						}
+					}
+					);
+		}
+		board.setAnalyzer(on ? analyzer : null);
+	}
+
+	/**
+	 * Connects to a JumpingCubeServer and asks it for a game the size of
+	 * the current playfield.  This window then plays whichever player the
+	 * server seats it as, until the game ends or the connection is lost.
+	 * @param address The server's address as host:port, or null to do nothing.
+	 */
+	public void playOnline(String address)
+	{
+		if(address == null || !connect(address))
+		{
+			return;
+		}
+		try
+		{
+			netClient.join(rows, cols);
+			updateStatus("Waiting for an opponent. . .");
+		}
+		catch(IOException e)
+		{
+			clearBoard();
+		}
+	}
+
+	/**
+	 * Connects to a JumpingCubeServer and follows a game being played there,
+	 * without taking part in it.
+	 * @param address The server's address as host:port.
+	 * @param game The number of the game, as shown to its players, or null to do nothing.
+	 */
+	public void watchOnline(String address, String game)
+	{
+		if(game == null)
+		{
+			return;
+		}
+		int matchId;
+		try
+		{
+			matchId = Integer.parseInt(game.trim());
+		}
+		catch(NumberFormatException e)
+		{
+			JOptionPane.showMessageDialog(this, "Not a game number: " + game, "Watch Online", JOptionPane.ERROR_MESSAGE);
+			return;
+		}
+		if(!connect(address))
+		{
+			return;
+		}
+		try
+		{
+			netClient.watch(matchId);
+			updateStatus("Looking for game " + matchId + ". . .");
+		}
+		catch(IOException e)
+		{
+			clearBoard();
+		}
+	}
+
+	private boolean connect(String address)
+	{
+		String host = address.trim();
+		int port = JumpingCubeServer.DEFAULT_PORT;
+		int colon = host.lastIndexOf(':');
+		try
+		{
+			if(colon >= 0)
+			{
+				port = Integer.parseInt(host.substring(colon + 1));
+				host = host.substring(0, colon);
+			}
+			clearBoard(JumpingCubeTopology.grid(rows, cols));
+			board.setComputer(null);
+			board.setClock(null);
+			board.setPlayers(playersInGame(JumpingCubeEngine.NUM_PLAYERS));
+			NetworkHandler handler = new NetworkHandler();
+			netClient = new JumpingCubeNetworkClient(host, port, handler);
+			handler.client = netClient;
+			return true;
+		}
+		catch(NumberFormatException e)
+		{
+			JOptionPane.showMessageDialog(this, "Not a port number: " + address.substring(colon + 1), "Online", JOptionPane.ERROR_MESSAGE);
+		}
+		catch(IOException e)
+		{
+			netClient = null;
+			JOptionPane.showMessageDialog(this, "Could not reach " + address + ":\n" + e.getMessage(), "Online", JOptionPane.ERROR_MESSAGE);
+		}
+		return false;
+	}
+
+	private JumpingCubePlayer playerFor(int index)
+	{
+		return players[index];
+	}
+
+	private JumpingCubePlayer[] playersInGame(int n)
+	{
+		JumpingCubePlayer[] inGame = new JumpingCubePlayer[n];
+		System.arraycopy(players, 0, inGame, 0, n);
+		return inGame;
+	}
+
+	/**
+	 * A helping inner class that passes what a JumpingCubeServer sends
+	 * on to the Swing event thread.  Messages from a connection that is
+	 * no longer the current one are ignored.
+	 */
+	class NetworkHandler implements JumpingCubeNetworkClient.Listener
+	{
+		JumpingCubeNetworkClient client;
+
+		public void matched(final int matchId, final int seat)
+		{
+			SwingUtilities.invokeLater(
+					new Runnable()
+					{
+						public void run()
+						{
+							if(client == netClient)
+							{
+								board.setNetworkClient(client, seat);
+								if(seat == JumpingCubeProtocol.SPECTATOR)
+								{
+									updateStatus("Watching game " + matchId);
+								}
+								else
+								{
+									updateStatus("Playing game " + matchId + " online as " + playerFor(seat).getName());
+								}
+							}
+						}
+					}
+					);
+		}
+
+		public void positionChanged(final JumpingCubeEngine game)
+		{
+			SwingUtilities.invokeLater(
+					new Runnable()
+					{
+						public void run()
+						{
+							if(client == netClient)
+							{
+								board.showPosition(game);
+								if(game.getWinner() != JumpingCubeEngine.NO_WINNER)
+								{
+									setWinner(playerFor(game.getWinner()));
+								}
+								else
+								{
+									updateStatus("On Turn: " + playerFor(game.getActivePlayer()).getName());
+								}
+							}
+						}
+					}
+					);
+		}
+
+		public void rejected(final int reason)
+		{
+			SwingUtilities.invokeLater(
+					new Runnable()
+					{
+						public void run()
+						{
+							if(client == netClient)
+							{
+								if(reason == JumpingCubeProtocol.NO_SUCH_MATCH)
+								{
+									JOptionPane.showMessageDialog(JumpingCube.this, "There is no such game being played.", "Watch Online", JOptionPane.ERROR_MESSAGE);
+									clearBoard();
+								}
+								else
+								{
+									updateStatus("The server refused that move");
+								}
+							}
+						}
+					}
+					);
+		}
+
+		public void opponentLeft()
+		{
+			SwingUtilities.invokeLater(
+					new Runnable()
+					{
+						public void run()
+						{
+							if(client == netClient)
+							{
+								JOptionPane.showMessageDialog(JumpingCube.this, "A player has left the game.", "Play Online", JOptionPane.PLAIN_MESSAGE);
+								clearBoard();
+							}
+						}
+					}
+					);
+		}
+
+		public void disconnected()
+		{
+			SwingUtilities.invokeLater(
+					new Runnable()
+					{
+						public void run()
+						{
+							if(client == netClient)
+							{
+								JOptionPane.showMessageDialog(JumpingCube.this, "Lost the connection to the server.", "Play Online", JOptionPane.ERROR_MESSAGE);
+								clearBoard();
+							}
+						}
+					}
+					);
+		}
 	}
 
 	/**
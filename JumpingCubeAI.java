@@ -0,0 +1,798 @@
+/**
+ * JumpingCubeAI.java
+ * @author Daniel Miladinov
+ * @version 1-beta
+ */
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+
+/**
+ * The JumpingCubeAI class is a computer player.  It searches the moves of
+ * a JumpingCubeEngine with iterative deepening alpha-beta, remembering
+ * what it learns about each position in a transposition table keyed by
+ * the engine's hash, until it reaches its maximum depth or its time
+ * budget runs out.  Positions at the end of the search are scored by a
+ * weighted sum of simple features of the board, always from the point of
+ * view of the player on turn.
+ * <p>
+ * In games of more than two players the search is paranoid: the player
+ * it chooses a move for assumes every other player is out to beat them,
+ * as if they were one opponent taking several turns in a row.
+ * <p>
+ * Every JumpingCubeAI starts with the weights in the file named by the
+ * jumpingcube.weights system property, or in jumpingcube.weights in the
+ * working directory, if there is one, such as JumpingCubeTuner writes.
+ * Otherwise it starts with DEFAULT_WEIGHTS.
+ */
+public class JumpingCubeAI
+{
+	/** Evaluation feature: boxes owned.*/
+	public static final int BOXES = 0;
+	/** Evaluation feature: points held in owned boxes.*/
+	public static final int POINTS = 1;
+	/** Evaluation feature: owned boxes one point away from overflowing.*/
+	public static final int CRITICAL = 2;
+	/** Evaluation feature: owned corner boxes.*/
+	public static final int CORNERS = 3;
+	/** Evaluation feature: owned edge boxes that are not corners.*/
+	public static final int EDGES = 4;
+	/** The number of evaluation features.*/
+	public static final int NUM_FEATURES = 5;
+
+	/** The names of the evaluation features, as written in a weights file.*/
+	public static final String[] FEATURE_NAMES = {"boxes", "points", "critical", "corners", "edges"};
+
+	/** The evaluation weights used when there is no weights file.*/
+	public static final int[] DEFAULT_WEIGHTS = {16, 4, 6, 3, 1};
+
+	/** The system property naming the weights file to load at startup.*/
+	public static final String WEIGHTS_PROPERTY = "jumpingcube.weights";
+	/** The weights file loaded at startup when the property is not set.*/
+	public static final String WEIGHTS_FILE = "jumpingcube.weights";
+
+	/** The score of a won position; quicker wins score higher.*/
+	public static final int WIN = 1000000;
+
+	/** The time kept back on a game clock for playing a move once it is chosen, in milliseconds.*/
+	public static final long MOVE_OVERHEAD_MILLIS = 30;
+
+	private static final int INFINITY = WIN + 1000;
+	private static final int MIN_MOVES_TO_GO = 12;
+	// The share of the soft limit after which no deeper search is started,
+	// in percent, by how many depths in a row the best move has stayed the same.
+	private static final int[] STOP_PERCENT = {70, 50, 40, 30};
+	private static final int MAX_PLY = 64;
+	private static final int TT_BITS = 18;
+
+	private static final int EXACT = 0;
+	private static final int LOWER = 1;
+	private static final int UPPER = 2;
+
+	private static int[] startupWeights;
+
+	private int maxDepth;
+	private long timeBudgetMillis;
+	private int[] weights;
+	private int[] features;
+
+	private long[] ttKeys;
+	private long[] ttData;
+
+	private JumpingCubeEngine[] stack;
+	private int[][] moveLists;
+	private volatile long deadline;
+	private boolean aborted;
+	private volatile boolean cancelled;
+	private int root;
+	private long rootKey;
+
+	private long nodes;
+	private long ttHits;
+	private int lastDepth;
+	private int lastScore;
+
+	/**
+	 * The JumpingCubeAI constructor.
+	 * @param maxDepth The deepest the search may go, in moves.
+	 * @param timeBudgetMillis The longest a search may take, or 0 for no limit.
+	 */
+	public JumpingCubeAI(int maxDepth, long timeBudgetMillis)
+	{
+		this.maxDepth = Math.max(1, Math.min(MAX_PLY - 1, maxDepth));
+		this.timeBudgetMillis = timeBudgetMillis;
+		weights = getStartupWeights();
+		features = new int[NUM_FEATURES];
+		ttKeys = new long[1 << TT_BITS];
+		ttData = new long[1 << TT_BITS];
+		moveLists = new int[MAX_PLY][];
+	}
+
+	/**
+	 * Sets the evaluation weights.
+	 * @param newWeights One weight per evaluation feature.
+	 */
+	public void setWeights(int[] newWeights)
+	{
+		weights = newWeights.clone();
+	}
+
+	/**
+	 * Gets the evaluation weights.
+	 * @return A copy of the weights, one per evaluation feature.
+	 */
+	public int[] getWeights()
+	{
+		return weights.clone();
+	}
+
+	/**
+	 * Gets the deepest the search may go.
+	 * @return The maximum depth, in moves.
+	 */
+	public int getMaxDepth()
+	{
+		return maxDepth;
+	}
+
+	/**
+	 * Gets the longest a search may take.
+	 * @return The time budget in milliseconds, or 0 for no limit.
+	 */
+	public long getTimeBudget()
+	{
+		return timeBudgetMillis;
+	}
+
+	/**
+	 * Forgets everything the transposition table has learned.
+	 */
+	public void clear()
+	{
+		for(int i = 0; i < ttKeys.length; i++)
+		{
+			ttKeys[i] = 0;
+			ttData[i] = 0;
+		}
+	}
+
+	/**
+	 * Gets the deepest search completed by the last chooseMove().
+	 * @return The depth of the last completed iteration.
+	 */
+	public int getLastDepth()
+	{
+		return lastDepth;
+	}
+
+	/**
+	 * Gets the score of the move chosen by the last chooseMove().
+	 * @return The score, from the point of view of the player who was on turn.
+	 */
+	public int getLastScore()
+	{
+		return lastScore;
+	}
+
+	/**
+	 * Gets the weights every JumpingCubeAI starts with: those in the
+	 * weights file, loaded the first time they are asked for, or
+	 * DEFAULT_WEIGHTS.  A weights file that cannot be read is reported and
+	 * otherwise ignored.
+	 * @return A copy of the startup weights.
+	 */
+	public static synchronized int[] getStartupWeights()
+	{
+		if(startupWeights == null)
+		{
+			startupWeights = DEFAULT_WEIGHTS;
+			String name = System.getProperty(WEIGHTS_PROPERTY);
+			File file = new File((name == null) ? WEIGHTS_FILE : name);
+			if(name != null || file.exists())
+			{
+				try
+				{
+					startupWeights = readWeights(file);
+				}
+				catch(Exception e)
+				{
+					System.err.println("Cannot load weights from " + file + ": " + e);
+				}
+			}
+		}
+		return startupWeights.clone();
+	}
+
+	/**
+	 * Reads a weights file: one line per feature, its name from
+	 * FEATURE_NAMES and then its weight.  Blank lines and lines starting
+	 * with # are skipped, and features left out keep their default weight.
+	 * @param file The file to read.
+	 * @return The weights, indexed by BOXES, POINTS and so on.
+	 * @throws IOException If the file cannot be read or a line is not understood.
+	 */
+	public static int[] readWeights(File file) throws IOException
+	{
+		int[] w = DEFAULT_WEIGHTS.clone();
+		BufferedReader in = new BufferedReader(new FileReader(file));
+		try
+		{
+			String line;
+			while((line = in.readLine()) != null)
+			{
+				line = line.trim();
+				if(line.length() == 0 || line.startsWith("#"))
+				{
+					continue;
+				}
+				String[] fields = line.split("\\s+");
+				int feature = -1;
+				for(int i = 0; i < NUM_FEATURES; i++)
+				{
+					if(FEATURE_NAMES[i].equals(fields[0]))
+					{
+						feature = i;
+					}
+				}
+				if(feature < 0 || fields.length != 2)
+				{
+					throw new IOException("Not a feature and weight: " + line);
+				}
+				w[feature] = Integer.parseInt(fields[1]);
+			}
+		}
+		catch(NumberFormatException e)
+		{
+			throw new IOException("Not a weight: " + e.getMessage());
+		}
+		finally
+		{
+			in.close();
+		}
+		return w;
+	}
+
+	/**
+	 * Writes a weights file that readWeights() can read.
+	 * @param file The file to write.
+	 * @param w The weights, indexed by BOXES, POINTS and so on.
+	 * @param comment A line to write at the top, or null for none.
+	 * @throws IOException If the file cannot be written.
+	 */
+	public static void writeWeights(File file, int[] w, String comment) throws IOException
+	{
+		PrintWriter out = new PrintWriter(new FileWriter(file));
+		if(comment != null)
+		{
+			out.println("# " + comment);
+		}
+		for(int i = 0; i < NUM_FEATURES; i++)
+		{
+			out.println(FEATURE_NAMES[i] + " " + w[i]);
+		}
+		out.close();
+		if(out.checkError())
+		{
+			throw new IOException("Cannot write " + file);
+		}
+	}
+
+	/**
+	 * Gets the number of positions the last chooseMove() searched.
+	 * @return The number of nodes searched.
+	 */
+	public long getLastNodes()
+	{
+		return nodes;
+	}
+
+	/**
+	 * Gets the number of times the last chooseMove() found a position in
+	 * the transposition table.
+	 * @return The number of transposition table hits.
+	 */
+	public long getLastTTHits()
+	{
+		return ttHits;
+	}
+
+	/**
+	 * Cancels searches from another thread.  While cancelled, any search
+	 * on this JumpingCubeAI stops within about a thousand positions, as it
+	 * does when its time budget runs out.
+	 * @param c True to cancel, false to let searches run again.
+	 */
+	public void setCancelled(boolean c)
+	{
+		cancelled = c;
+	}
+
+	/**
+	 * Moves the deadline of a search running on another thread.  A
+	 * deadline already passed stops the search at its next check, and it
+	 * returns the best move of the last depth it finished.
+	 * @param until The System.nanoTime() to stop searching at, or Long.MAX_VALUE for none.
+	 */
+	public void setDeadline(long until)
+	{
+		deadline = until;
+	}
+
+	/**
+	 * Gets the best move the transposition table remembers for a position,
+	 * such as the reply the last search expected to the move it chose.
+	 * @param game The position.
+	 * @return The cell index of a legal move, or -1 if the table has none.
+	 */
+	public int getHashMove(JumpingCubeEngine game)
+	{
+		int move = ttMove(game.getHash() ^ rootKey);
+		return game.isLegal(move) ? move : -1;
+	}
+
+	/**
+	 * Returns whether the last search stopped before it finished, because
+	 * its time budget ran out or it was cancelled.
+	 * @return True if the last search was cut short.
+	 */
+	public boolean wasAborted()
+	{
+		return aborted;
+	}
+
+	/**
+	 * Scores one move for the player on turn, by searching the position
+	 * it leads to to the given depth.  The game itself is not changed.
+	 * @param game The position to play the move in.
+	 * @param cell The cell index of a legal move.
+	 * @param depth The depth to search, counting the move itself.
+	 * @return The score of the move from the point of view of the player on
+	 * turn, or 0 if the search was cut short.
+	 */
+	public int scoreMove(JumpingCubeEngine game, int cell, int depth)
+	{
+		prepare(game);
+		root = game.getActivePlayer();
+		rootKey = (game.getNumPlayers() > 2) ? (root + 1) * 0x9E3779B97F4A7C15L : 0;
+		nodes = 0;
+		ttHits = 0;
+		aborted = false;
+		deadline = (timeBudgetMillis > 0) ? System.nanoTime() + timeBudgetMillis * 1000000L : Long.MAX_VALUE;
+
+		long started = System.nanoTime();
+		JumpingCubeEngine child = stack[0];
+		child.applyMove(cell);
+		int score;
+		if(child.getWinner() != JumpingCubeEngine.NO_WINNER)
+		{
+			score = WIN;
+		}
+		else
+		{
+			score = search(0, Math.max(0, Math.min(MAX_PLY - 2, depth - 1)), -INFINITY, INFINITY);
+			if(child.getActivePlayer() != root)
+			{
+				score = -score;
+			}
+		}
+		JumpingCubeMetrics.AI_NODES.add(nodes);
+		JumpingCubeMetrics.AI_NANOS.add(System.nanoTime() - started);
+		return aborted ? 0 : score;
+	}
+
+	/**
+	 * Chooses a move for the player on turn.  The game itself is not changed.
+	 * @param game The position to search.
+	 * @return The cell index of the chosen move, or -1 if the game is over.
+	 */
+	public int chooseMove(JumpingCubeEngine game)
+	{
+		return chooseMove(game, (timeBudgetMillis > 0) ? System.nanoTime() + timeBudgetMillis * 1000000L : Long.MAX_VALUE);
+	}
+
+	/**
+	 * Chooses a move for the player on turn, searching until a deadline
+	 * rather than for the time budget.  The game itself is not changed.
+	 * @param game The position to search.
+	 * @param until The System.nanoTime() to stop searching at, or Long.MAX_VALUE to search to the maximum depth.
+	 * @return The cell index of the chosen move, or -1 if the game is over.
+	 */
+	public int chooseMove(JumpingCubeEngine game, long until)
+	{
+		return chooseMove(game, until, Long.MAX_VALUE);
+	}
+
+	/**
+	 * Chooses a move for the player on turn, searching until the deadline
+	 * last given to setDeadline().  Unlike chooseMove(), the search does not
+	 * set a deadline of its own when it starts, so a thread that starts it
+	 * and then moves the deadline cannot have the move undone, however
+	 * late the search thread gets to run.  The game itself is not changed.
+	 * @param game The position to search.
+	 * @return The cell index of the chosen move, or -1 if the game is over.
+	 */
+	public int chooseMoveByDeadline(JumpingCubeEngine game)
+	{
+		return choose(game, Long.MAX_VALUE);
+	}
+
+	/**
+	 * Chooses a move for the player on turn with a game clock running,
+	 * rather than for the time budget.  The time for the move is taken
+	 * from what is left on the clock, by getSoftLimit() and getHardLimit():
+	 * no deeper search is started once the soft limit is near, sooner the
+	 * longer the best move has stayed the same, and the search is cut off
+	 * at the hard limit wherever it is.  A position with one legal move
+	 * takes no time at all.  The game itself is not changed.
+	 * @param game The position to search.
+	 * @param remainingMillis The time left on the player's clock.
+	 * @param incrementMillis The time the clock adds for every move.
+	 * @return The cell index of the chosen move, or -1 if the game is over.
+	 */
+	public int chooseMoveOnClock(JumpingCubeEngine game, long remainingMillis, long incrementMillis)
+	{
+		long now = System.nanoTime();
+		int legal = 0;
+		for(int cell = 0; cell < game.getNumBoxes() && legal < 2; cell++)
+		{
+			if(game.isLegal(cell))
+			{
+				legal++;
+			}
+		}
+		if(legal == 1 && game.getWinner() == JumpingCubeEngine.NO_WINNER)
+		{
+			lastDepth = 0;
+			lastScore = 0;
+			aborted = false;
+			return firstLegal(game);
+		}
+		return chooseMove(game, now + getHardLimit(game, remainingMillis, incrementMillis) * 1000000L,
+				now + getSoftLimit(game, remainingMillis, incrementMillis) * 1000000L);
+	}
+
+	/**
+	 * Works out how long a move should take with a game clock running: the
+	 * time left shared over the moves the game is likely still to last,
+	 * which is about one for every two boxes nobody owns but never fewer
+	 * than MIN_MOVES_TO_GO, plus most of the increment.  That is stretched
+	 * by up to half again in positions with many boxes about to overflow,
+	 * where a move's chain reactions are hardest to see, and cut by a
+	 * quarter in quiet ones.  It is never more than the hard limit.
+	 * @param game The position to move in.
+	 * @param remainingMillis The time left on the player's clock.
+	 * @param incrementMillis The time the clock adds for every move.
+	 * @return The time to aim for, in milliseconds.
+	 */
+	public static long getSoftLimit(JumpingCubeEngine game, long remainingMillis, long incrementMillis)
+	{
+		int critical = 0;
+		for(int p = 0; p < game.getNumPlayers(); p++)
+		{
+			critical += game.getNumCritical(p);
+		}
+		long percent = 75 + Math.min(75, 150 * critical / game.getNumBoxes());
+		long soft = getShare(game, remainingMillis, incrementMillis) * percent / 100;
+		return Math.min(soft, getHardLimit(game, remainingMillis, incrementMillis));
+	}
+
+	/**
+	 * Works out the longest a move may take with a game clock running:
+	 * four times its share of the time left, but never more than a third
+	 * of what is left once MOVE_OVERHEAD_MILLIS is kept back for playing
+	 * the move, so the clock cannot run out however often it is reached.
+	 * @param game The position to move in.
+	 * @param remainingMillis The time left on the player's clock.
+	 * @param incrementMillis The time the clock adds for every move.
+	 * @return The time at which to cut the search off, in milliseconds.
+	 */
+	public static long getHardLimit(JumpingCubeEngine game, long remainingMillis, long incrementMillis)
+	{
+		long usable = Math.max(0, remainingMillis - MOVE_OVERHEAD_MILLIS);
+		return Math.min(getShare(game, remainingMillis, incrementMillis) * 4, usable / 3);
+	}
+
+	private static long getShare(JumpingCubeEngine game, long remainingMillis, long incrementMillis)
+	{
+		int unowned = game.getNumBoxes();
+		for(int p = 0; p < game.getNumPlayers(); p++)
+		{
+			unowned -= game.getNumBoxesOwned(p);
+		}
+		long usable = Math.max(0, remainingMillis - MOVE_OVERHEAD_MILLIS);
+		return usable / Math.max(MIN_MOVES_TO_GO, unowned / 2) + incrementMillis * 3 / 4;
+	}
+
+	/**
+	 * Chooses a move, stopping the search at a deadline wherever it is,
+	 * and starting no deeper search once the time used nears a soft limit.
+	 */
+	private int chooseMove(JumpingCubeEngine game, long until, long soft)
+	{
+		deadline = until;
+		return choose(game, soft);
+	}
+
+	/**
+	 * Chooses a move, stopping the search at the deadline as it stands.
+	 */
+	private int choose(JumpingCubeEngine game, long soft)
+	{
+		if(game.getWinner() != JumpingCubeEngine.NO_WINNER)
+		{
+			return -1;
+		}
+		prepare(game);
+		root = game.getActivePlayer();
+		// A paranoid score depends on whose search it is, so with more than
+		// two players the table keeps each player's scores apart.
+		rootKey = (game.getNumPlayers() > 2) ? (root + 1) * 0x9E3779B97F4A7C15L : 0;
+		nodes = 0;
+		ttHits = 0;
+		aborted = false;
+
+		long started = System.nanoTime();
+		int best = firstLegal(game);
+		int stable = 0;
+		lastDepth = 0;
+		lastScore = 0;
+		for(int depth = 1; depth <= maxDepth; depth++)
+		{
+			JumpingCubeFlightRecorder.SearchEvent event = new JumpingCubeFlightRecorder.SearchEvent();
+			event.begin();
+			long nodesBefore = nodes;
+			long hitsBefore = ttHits;
+			int score = search(0, depth, -INFINITY, INFINITY);
+			int move = aborted ? -1 : ttMove(game.getHash() ^ rootKey);
+			event.end();
+			if(event.shouldCommit())
+			{
+				event.depth = depth;
+				event.nodes = nodes - nodesBefore;
+				event.ttHits = ttHits - hitsBefore;
+				event.score = score;
+				event.bestMove = move;
+				event.aborted = aborted;
+				event.commit();
+			}
+			if(aborted)
+			{
+				break;
+			}
+			if(move >= 0)
+			{
+				stable = (move == best && depth > 1) ? stable + 1 : 0;
+				best = move;
+			}
+			lastDepth = depth;
+			lastScore = score;
+			if(score >= WIN - MAX_PLY || score <= -WIN + MAX_PLY)
+			{
+				break;
+			}
+			// The next depth takes several times as long as this one, so it
+			// is only started while well short of the soft limit.
+			if(soft != Long.MAX_VALUE)
+			{
+				long now = System.nanoTime();
+				if(now - started > (soft - started) / 100 * STOP_PERCENT[Math.min(stable, STOP_PERCENT.length - 1)])
+				{
+					break;
+				}
+			}
+		}
+		JumpingCubeMetrics.AI_NODES.add(nodes);
+		JumpingCubeMetrics.AI_NANOS.add(System.nanoTime() - started);
+		return best;
+	}
+
+	/**
+	 * Scores a position with the evaluation weights.
+	 * @param game The position to score.
+	 * @return The score from the point of view of the player on turn.
+	 */
+	public int evaluate(JumpingCubeEngine game)
+	{
+		return evaluate(game, game.getActivePlayer());
+	}
+
+	private int evaluate(JumpingCubeEngine game, int me)
+	{
+		getFeatures(game, me, features);
+		int score = 0;
+		for(int i = 0; i < NUM_FEATURES; i++)
+		{
+			score += weights[i] * features[i];
+		}
+		return score;
+	}
+
+	/**
+	 * Counts the evaluation features of a position for one player: each is
+	 * what the player owns of it less what everyone else owns.  The score
+	 * evaluate() gives is the sum of these counts times the weights.
+	 * @param game The position.
+	 * @param player The index of the player to count for.
+	 * @param counts Filled with the NUM_FEATURES counts, indexed by BOXES, POINTS and so on.
+	 */
+	public static void getFeatures(JumpingCubeEngine game, int player, int[] counts)
+	{
+		for(int i = 0; i < NUM_FEATURES; i++)
+		{
+			counts[i] = 0;
+		}
+		// The engine keeps every count up to date as boxes change, so the
+		// cost is one look per player rather than one per box.
+		for(int p = 0; p < game.getNumPlayers(); p++)
+		{
+			int sign = (p == player) ? 1 : -1;
+			counts[BOXES] += sign * game.getNumBoxesOwned(p);
+			counts[POINTS] += sign * game.getPointsOwned(p);
+			counts[CRITICAL] += sign * game.getNumCritical(p);
+			counts[CORNERS] += sign * game.getNumBoxesOwned(p, 2);
+			counts[EDGES] += sign * game.getNumBoxesOwned(p, 3);
+		}
+	}
+
+	private int search(int ply, int depth, int alpha, int beta)
+	{
+		JumpingCubeEngine game = stack[ply];
+		nodes++;
+		if((nodes & 1023) == 0 && (cancelled || System.nanoTime() > deadline))
+		{
+			aborted = true;
+		}
+		if(aborted)
+		{
+			return 0;
+		}
+		boolean rootToMove = (game.getActivePlayer() == root);
+		if(game.getWinner() != JumpingCubeEngine.NO_WINNER)
+		{
+			return ((game.getWinner() == root) == rootToMove) ? WIN - ply : -(WIN - ply);
+		}
+		if(depth == 0 || ply == MAX_PLY - 1)
+		{
+			int score = evaluate(game, root);
+			return rootToMove ? score : -score;
+		}
+
+		long hash = game.getHash() ^ rootKey;
+		int slot = (int)hash & (ttKeys.length - 1);
+		int ttMove = -1;
+		if(ttKeys[slot] == hash)
+		{
+			ttHits++;
+			long data = ttData[slot];
+			ttMove = (int)((data >> 8) & 0xFF) - 1;
+			if(ply > 0 && (int)(data & 0xFF) >= depth)
+			{
+				int score = (int)(data >> 32);
+				int flag = (int)((data >> 16) & 0xFF);
+				if(flag == EXACT
+					|| (flag == LOWER && score >= beta)
+					|| (flag == UPPER && score <= alpha))
+				{
+					return score;
+				}
+			}
+		}
+
+		int[] moves = moveLists[ply];
+		int numMoves = generateMoves(game, moves, ttMove);
+		int originalAlpha = alpha;
+		int best = -INFINITY;
+		int bestMove = -1;
+		JumpingCubeEngine child = stack[ply + 1];
+		for(int i = 0; i < numMoves; i++)
+		{
+			child.copyFrom(game);
+			child.applyMove(moves[i]);
+			int score;
+			if((child.getActivePlayer() == root) == rootToMove)
+			{
+				score = search(ply + 1, depth - 1, alpha, beta);
+			}
+			else
+			{
+				score = -search(ply + 1, depth - 1, -beta, -alpha);
+			}
+			if(aborted)
+			{
+				return 0;
+			}
+			if(score > best)
+			{
+				best = score;
+				bestMove = moves[i];
+			}
+			if(score > alpha)
+			{
+				alpha = score;
+			}
+			if(alpha >= beta)
+			{
+				break;
+			}
+		}
+
+		int flag = (best <= originalAlpha) ? UPPER : ((best >= beta) ? LOWER : EXACT);
+		ttKeys[slot] = hash;
+		ttData[slot] = ((long)best << 32) | ((long)flag << 16) | ((long)(bestMove + 1) << 8) | depth;
+		return best;
+	}
+
+	/**
+	 * Lists the legal moves of a position, best guesses first: the move the
+	 * transposition table remembers, then boxes about to overflow, then the rest.
+	 */
+	private int generateMoves(JumpingCubeEngine game, int[] moves, int ttMove)
+	{
+		int n = 0;
+		if(ttMove >= 0 && game.isLegal(ttMove))
+		{
+			moves[n++] = ttMove;
+		}
+		int me = game.getActivePlayer();
+		int firstQuiet = n;
+		for(int cell = 0; cell < game.getNumBoxes(); cell++)
+		{
+			int owner = game.getOwner(cell);
+			if(cell == ttMove || (owner != me && owner != JumpingCubeEngine.NO_OWNER))
+			{
+				continue;
+			}
+			moves[n++] = cell;
+			if(game.isCritical(cell))
+			{
+				int t = moves[firstQuiet];
+				moves[firstQuiet] = cell;
+				moves[n - 1] = t;
+				firstQuiet++;
+			}
+		}
+		return n;
+	}
+
+	private int ttMove(long hash)
+	{
+		int slot = (int)hash & (ttKeys.length - 1);
+		if(ttKeys[slot] != hash)
+		{
+			return -1;
+		}
+		return (int)((ttData[slot] >> 8) & 0xFF) - 1;
+	}
+
+	private int firstLegal(JumpingCubeEngine game)
+	{
+		for(int cell = 0; cell < game.getNumBoxes(); cell++)
+		{
+			if(game.isLegal(cell))
+			{
+				return cell;
+			}
+		}
+		return -1;
+	}
+
+	private void prepare(JumpingCubeEngine game)
+	{
+		if(stack == null || stack[0].getTopology() != game.getTopology()
+			|| stack[0].getNumPlayers() != game.getNumPlayers())
+		{
+			stack = new JumpingCubeEngine[MAX_PLY];
+			for(int i = 0; i < MAX_PLY; i++)
+			{
+				stack[i] = new JumpingCubeEngine(game.getTopology(), game.getNumPlayers());
+				moveLists[i] = new int[game.getNumBoxes()];
+			}
+			clear();
+		}
+		stack[0].copyFrom(game);
+	}
+}
@@ -0,0 +1,284 @@
+/**
+ * JumpingCubeAnalyzer.java
+ * @author Daniel Miladinov
+ * @version 1-beta
+ */
+
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+
+/**
+ * The JumpingCubeAnalyzer class scores every move of a position in the
+ * background, so a JumpingCubeBoard can show which moves the JumpingCubeAI
+ * likes while the players think.  Moves are scored one depth at a time,
+ * every legal move at depth 1, then every move at depth 2, and so on, by
+ * worker threads running at low priority on the cores the game window is
+ * not using, so the board stays quick to answer clicks.
+ * <p>
+ * Giving the analyzer a new position cancels the searches of the old one
+ * straight away and starts over.  The scores found are handed to the
+ * Listener on the Swing event thread, at most FRAME_RATE times a second
+ * and only when something has changed, however quickly they come in.
+ */
+public class JumpingCubeAnalyzer
+{
+	/** The most times a second the Listener is told about new scores.*/
+	public static final int FRAME_RATE = 10;
+	/** The deepest the analyzer searches unless told otherwise.*/
+	public static final int DEFAULT_DEPTH = 8;
+	/** The depth of a move no search has finished for yet.*/
+	public static final int NOT_SCORED = 0;
+	/** The depth of a box the player on turn cannot click on.*/
+	public static final int ILLEGAL = -1;
+
+	private Listener listener;
+	private int maxDepth;
+	private Thread[] workers;
+	private JumpingCubeAI[] ais;
+	private javax.swing.Timer frameTimer;
+
+	private JumpingCubeEngine position;
+	private int generation;
+	private int[] moves;
+	private int numMoves;
+	private int nextMove;
+	private int depth;
+	private int[] scores;
+	private int[] depths;
+	private boolean changed;
+	private boolean shutdown;
+
+	/**
+	 * An interface for whatever shows the analysis, such as a JumpingCubeBoard.
+	 */
+	public interface Listener
+	{
+		/**
+		 * Called on the Swing event thread with the latest scores.  The
+		 * arrays are copies the listener may keep, and both are null when
+		 * there is nothing to show.
+		 * @param scores The score of every move, indexed by cell, from the point of view of the player on turn.
+		 * @param depths The depth each score was searched to, NOT_SCORED, or ILLEGAL.
+		 */
+		public void analysisChanged(int[] scores, int[] depths);
+	}
+
+	/**
+	 * The JumpingCubeAnalyzer constructor.  Starts the worker threads, which
+	 * wait until they are given a position.
+	 * @param threads The number of moves to search at once.
+	 * @param maxDepth The deepest to search each move.
+	 * @param listener Told about new scores.
+	 */
+	public JumpingCubeAnalyzer(int threads, int maxDepth, Listener listener)
+	{
+		this.listener = listener;
+		this.maxDepth = maxDepth;
+		workers = new Thread[threads];
+		ais = new JumpingCubeAI[threads];
+		for(int t = 0; t < threads; t++)
+		{
+			final JumpingCubeAI ai = new JumpingCubeAI(maxDepth, 0);
+			ais[t] = ai;
+			workers[t] = new Thread("JumpingCubeAnalyzer-" + t)
+			{
+				public void run()
+				{
+					work(ai);
+				}
+			};
+			workers[t].setDaemon(true);
+			workers[t].setPriority(Thread.MIN_PRIORITY);
+			workers[t].start();
+		}
+		frameTimer = new javax.swing.Timer(1000 / FRAME_RATE,
+				new ActionListener()
+				{
+					public void actionPerformed(ActionEvent e)
+					{
+						showFrame();
+					}
+				}
+				);
+		frameTimer.start();
+	}
+
+	/**
+	 * Gets the number of worker threads a game window should use: every
+	 * core but the one the window itself runs on, and at least one.
+	 * @return The number of threads.
+	 */
+	public static int spareCores()
+	{
+		return Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+	}
+
+	/**
+	 * Starts analysing a position, dropping whatever was being analysed
+	 * before.  A position where the game is over is not analysed.
+	 * @param game The position to analyse; it is copied, so it may change afterwards.
+	 */
+	public synchronized void analyze(JumpingCubeEngine game)
+	{
+		cancel();
+		if(game.getWinner() != JumpingCubeEngine.NO_WINNER)
+		{
+			position = null;
+			return;
+		}
+		if(position == null || position.getTopology() != game.getTopology()
+			|| position.getNumPlayers() != game.getNumPlayers())
+		{
+			position = new JumpingCubeEngine(game.getTopology(), game.getNumPlayers());
+			moves = new int[game.getNumBoxes()];
+		}
+		position.copyFrom(game);
+		scores = new int[game.getNumBoxes()];
+		depths = new int[game.getNumBoxes()];
+		numMoves = 0;
+		for(int cell = 0; cell < depths.length; cell++)
+		{
+			if(game.isLegal(cell))
+			{
+				moves[numMoves++] = cell;
+			}
+			else
+			{
+				depths[cell] = ILLEGAL;
+			}
+		}
+		nextMove = 0;
+		depth = 1;
+		changed = true;
+		notifyAll();
+	}
+
+	/**
+	 * Stops analysing.  The worker threads wait for the next position.
+	 */
+	public synchronized void stop()
+	{
+		cancel();
+		position = null;
+	}
+
+	/**
+	 * Stops analysing for good, ending the worker threads.
+	 */
+	public synchronized void shutdown()
+	{
+		stop();
+		shutdown = true;
+		frameTimer.stop();
+		notifyAll();
+	}
+
+	/**
+	 * Makes every search under way stop at its next check.  The workers
+	 * lift the cancellation themselves, holding the lock, when they take
+	 * their next move, so a search can never start for a position that has
+	 * already been replaced.
+	 */
+	private void cancel()
+	{
+		generation++;
+		scores = null;
+		depths = null;
+		changed = true;
+		for(int t = 0; t < ais.length; t++)
+		{
+			ais[t].setCancelled(true);
+		}
+	}
+
+	private void work(JumpingCubeAI ai)
+	{
+		JumpingCubeEngine game = null;
+		while(true)
+		{
+			int myGeneration;
+			int cell;
+			int myDepth;
+			synchronized(this)
+			{
+				while(!shutdown && !hasWork())
+				{
+					try
+					{
+						wait();
+					}
+					catch(InterruptedException e)
+					{
+						return;
+					}
+				}
+				if(shutdown)
+				{
+					return;
+				}
+				myGeneration = generation;
+				cell = moves[nextMove++];
+				myDepth = depth;
+				if(game == null || game.getTopology() != position.getTopology()
+					|| game.getNumPlayers() != position.getNumPlayers())
+				{
+					game = new JumpingCubeEngine(position.getTopology(), position.getNumPlayers());
+				}
+				game.copyFrom(position);
+				ai.setCancelled(false);
+			}
+			int score = ai.scoreMove(game, cell, myDepth);
+			synchronized(this)
+			{
+				if(myGeneration == generation && !ai.wasAborted() && myDepth > depths[cell])
+				{
+					scores[cell] = score;
+					depths[cell] = myDepth;
+					changed = true;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns whether there is a move left to search, moving on to the
+	 * next depth once every move has been searched to this one.
+	 */
+	private boolean hasWork()
+	{
+		if(position == null || numMoves == 0)
+		{
+			return false;
+		}
+		if(nextMove == numMoves && depth < maxDepth)
+		{
+			nextMove = 0;
+			depth++;
+		}
+		return nextMove < numMoves;
+	}
+
+	/**
+	 * Hands the listener the scores found since the last frame, if any.
+	 * Runs on the Swing event thread.
+	 */
+	private void showFrame()
+	{
+		int[] s = null;
+		int[] d = null;
+		synchronized(this)
+		{
+			if(!changed)
+			{
+				return;
+			}
+			changed = false;
+			if(scores != null)
+			{
+				s = scores.clone();
+				d = depths.clone();
+			}
+		}
+		listener.analysisChanged(s, d);
+	}
+}
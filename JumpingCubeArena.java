@@ -0,0 +1,527 @@
+/**
+ * JumpingCubeArena.java
+ * @author Daniel Miladinov
+ * @version 1-beta
+ */
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Random;
+
+/**
+ * The JumpingCubeArena class keeps the state of many games of the same
+ * board and number of players outside the Java heap, so a server can hold
+ * a great many open matches without a JumpingCubeEngine for each.  Every
+ * game takes one slot of the same number of bytes in a large direct
+ * buffer: the time of its last move, its move number, its id, who is on
+ * turn, who has won, how many boxes each player owns and then one byte a
+ * box, the owner plus one in the high four bits and the points in the low
+ * four.  Slots are numbered from 0, and freed slots are handed out again
+ * before new ones are used.
+ * <p>
+ * To play a move, load() the slot into a JumpingCubeEngine kept for the
+ * purpose, or get() it in the engine the arena keeps itself, play it there
+ * and storeChanges() back, which writes only the boxes the move changed.
+ * The turn, winner, counts and last move time of a slot can be read
+ * without loading it, and scanIdle() walks the slots in order to find the
+ * games that have waited too long for a move.
+ * <p>
+ * An arena is not thread-safe; a server keeps one per thread that plays
+ * moves.  The selector thread of JumpingCubeServer keeps one for each
+ * board size, with a JumpingCubeMatch for each game holding only its slot.
+ * <p>
+ * Run on its own, the class fills an arena with open games, checks that
+ * they come back exactly as they were played, and compares its size and
+ * speed with keeping an engine for every game:
+ * <pre>
+ * java JumpingCubeArena [games] [size]
+ * </pre>
+ */
+public class JumpingCubeArena
+{
+	/** The number of bytes in each buffer of slots.*/
+	public static final int SEGMENT_SIZE = 1 << 22;
+
+	private static final int LAST_MOVE = 0;
+	private static final int MOVE_NUMBER = 8;
+	private static final int ID = 12;
+	private static final int IN_USE = 16;
+	private static final int TURN = 17;
+	private static final int WINNER = 18;
+	private static final int COUNTS = 20;
+
+	private JumpingCubeTopology topology;
+	private int numBoxes;
+	private int numPlayers;
+	private int stride;
+	private int cellsAt;
+	private int slotsPerSegment;
+
+	private ByteBuffer[] segments;
+	private int numSlots;
+	private int[] free;
+	private int numFree;
+
+	private int[] owner;
+	private int[] points;
+	private JumpingCubeEngine game;
+	private int loadedSlot;
+
+	/**
+	 * The JumpingCubeArena constructor.  Starts with no slots; buffers are
+	 * added as they fill.
+	 * @param topology The board every game in the arena is played on.
+	 * @param numPlayers The number of players in every game.
+	 */
+	public JumpingCubeArena(JumpingCubeTopology topology, int numPlayers)
+	{
+		this.topology = topology;
+		this.numPlayers = numPlayers;
+		numBoxes = topology.getNumCells();
+		cellsAt = COUNTS + numPlayers;
+		// Whole multiples of 8 keep every slot's last move time aligned.
+		stride = (cellsAt + numBoxes + 7) & ~7;
+		slotsPerSegment = Math.max(1, SEGMENT_SIZE / stride);
+		segments = new ByteBuffer[4];
+		free = new int[64];
+		owner = new int[numBoxes];
+		points = new int[numBoxes];
+		game = new JumpingCubeEngine(topology, numPlayers);
+		loadedSlot = -1;
+	}
+
+	/**
+	 * Takes a slot for a new game, with the empty board and Player 1 on turn.
+	 * @param id The caller's id for the game, such as its match id.
+	 * @param now The time the game starts, in milliseconds.
+	 * @return The slot of the game.
+	 */
+	public int allocate(int id, long now)
+	{
+		int slot;
+		if(numFree > 0)
+		{
+			slot = free[--numFree];
+		}
+		else
+		{
+			slot = numSlots++;
+			int s = slot / slotsPerSegment;
+			if(s == segments.length)
+			{
+				ByteBuffer[] more = new ByteBuffer[segments.length * 2];
+				System.arraycopy(segments, 0, more, 0, segments.length);
+				segments = more;
+			}
+			if(segments[s] == null)
+			{
+				segments[s] = ByteBuffer.allocateDirect(slotsPerSegment * stride).order(ByteOrder.nativeOrder());
+			}
+		}
+		if(slot == loadedSlot)
+		{
+			loadedSlot = -1;
+		}
+		ByteBuffer b = segment(slot);
+		int at = offset(slot);
+		b.putLong(at + LAST_MOVE, now);
+		b.putInt(at + MOVE_NUMBER, 0);
+		b.putInt(at + ID, id);
+		b.put(at + IN_USE, (byte)1);
+		b.put(at + TURN, (byte)0);
+		b.put(at + WINNER, (byte)0);
+		for(int p = 0; p < numPlayers; p++)
+		{
+			b.put(at + COUNTS + p, (byte)0);
+		}
+		// An empty box is unowned, which packs to 0, with one point.
+		for(int cell = 0; cell < numBoxes; cell++)
+		{
+			b.put(at + cellsAt + cell, (byte)1);
+		}
+		return slot;
+	}
+
+	/**
+	 * Gives a slot back to be used for another game.
+	 * @param slot The slot of a game that is over or abandoned.
+	 */
+	public void free(int slot)
+	{
+		if(slot == loadedSlot)
+		{
+			loadedSlot = -1;
+		}
+		segment(slot).put(offset(slot) + IN_USE, (byte)0);
+		if(numFree == free.length)
+		{
+			int[] more = new int[free.length * 2];
+			System.arraycopy(free, 0, more, 0, free.length);
+			free = more;
+		}
+		free[numFree++] = slot;
+	}
+
+	/**
+	 * Sets a game to the position kept in a slot.
+	 * @param slot The slot of the game.
+	 * @param game Where to put the position, of the arena's topology and number of players.
+	 */
+	public void load(int slot, JumpingCubeEngine game)
+	{
+		ByteBuffer b = segment(slot);
+		int at = offset(slot);
+		for(int cell = 0; cell < numBoxes; cell++)
+		{
+			int packed = b.get(at + cellsAt + cell);
+			owner[cell] = ((packed >> 4) & 0xF) - 1;
+			points[cell] = packed & 0xF;
+		}
+		int moveNumber = b.getInt(at + MOVE_NUMBER);
+		game.setPosition(owner, points, b.get(at + TURN), moveNumber);
+		game.setTurn(b.get(at + TURN), moveNumber, b.get(at + WINNER) - 1);
+	}
+
+	/**
+	 * Gets the position kept in a slot, in the engine the arena keeps for
+	 * the purpose.  The engine is only loaded again when another slot is
+	 * asked for, so a move played on it may be kept with storeChanges(),
+	 * and the boxes it changed read, until then.
+	 * @param slot The slot of the game.
+	 * @return The arena's engine, set to the position.
+	 */
+	public JumpingCubeEngine get(int slot)
+	{
+		if(slot != loadedSlot)
+		{
+			load(slot, game);
+			loadedSlot = slot;
+		}
+		return game;
+	}
+
+	/**
+	 * Keeps the whole position of a game in a slot.
+	 * @param slot The slot of the game.
+	 * @param game The game to keep.
+	 * @param now The time of the game's last move, in milliseconds.
+	 */
+	public void store(int slot, JumpingCubeEngine game, long now)
+	{
+		if(slot == loadedSlot && game != this.game)
+		{
+			loadedSlot = -1;
+		}
+		ByteBuffer b = segment(slot);
+		int at = offset(slot);
+		for(int cell = 0; cell < numBoxes; cell++)
+		{
+			b.put(at + cellsAt + cell, pack(game, cell));
+		}
+		storeTurn(b, at, game, now);
+	}
+
+	/**
+	 * Keeps the boxes a move changed in a slot, along with the turn.  The
+	 * game must have been loaded from the slot, and must not have changed
+	 * since applyMove() returned.
+	 * @param slot The slot of the game.
+	 * @param game The game, just after the move.
+	 * @param now The time of the move, in milliseconds.
+	 */
+	public void storeChanges(int slot, JumpingCubeEngine game, long now)
+	{
+		if(slot == loadedSlot && game != this.game)
+		{
+			loadedSlot = -1;
+		}
+		ByteBuffer b = segment(slot);
+		int at = offset(slot);
+		int n = game.getNumChanged();
+		for(int i = 0; i < n; i++)
+		{
+			int cell = game.getChanged(i);
+			b.put(at + cellsAt + cell, pack(game, cell));
+		}
+		storeTurn(b, at, game, now);
+	}
+
+	/**
+	 * Finds the open games that have not had a move since a given time,
+	 * walking the slots in order.
+	 * @param before The time, in milliseconds, a game's last move must be earlier than.
+	 * @param found Where to put the slots found; the walk stops when it is full.
+	 * @return The number of slots put in found.
+	 */
+	public int scanIdle(long before, int[] found)
+	{
+		int n = 0;
+		for(int s = 0; s * slotsPerSegment < numSlots && n < found.length; s++)
+		{
+			ByteBuffer b = segments[s];
+			int first = s * slotsPerSegment;
+			int end = Math.min(slotsPerSegment, numSlots - first) * stride;
+			for(int at = 0; at < end && n < found.length; at += stride)
+			{
+				if(b.getLong(at + LAST_MOVE) < before && b.get(at + IN_USE) != 0 && b.get(at + WINNER) == 0)
+				{
+					found[n++] = first + at / stride;
+				}
+			}
+		}
+		return n;
+	}
+
+	/**
+	 * Gets the id a game was given when its slot was taken.
+	 * @param slot The slot of the game.
+	 * @return The caller's id for the game.
+	 */
+	public int getId(int slot)
+	{
+		return segment(slot).getInt(offset(slot) + ID);
+	}
+
+	/**
+	 * Gets the index of the player on turn in a game.
+	 * @param slot The slot of the game.
+	 * @return The index of the active player.
+	 */
+	public int getActivePlayer(int slot)
+	{
+		return segment(slot).get(offset(slot) + TURN);
+	}
+
+	/**
+	 * Gets the winner of a game.
+	 * @param slot The slot of the game.
+	 * @return The index of the winning player, or JumpingCubeEngine.NO_WINNER.
+	 */
+	public int getWinner(int slot)
+	{
+		return segment(slot).get(offset(slot) + WINNER) - 1;
+	}
+
+	/**
+	 * Gets the number of moves played in a game.
+	 * @param slot The slot of the game.
+	 * @return The move number.
+	 */
+	public int getMoveNumber(int slot)
+	{
+		return segment(slot).getInt(offset(slot) + MOVE_NUMBER);
+	}
+
+	/**
+	 * Gets the number of boxes a player owns in a game.
+	 * @param slot The slot of the game.
+	 * @param player The index of the player.
+	 * @return The number of boxes owned by that player.
+	 */
+	public int getNumBoxesOwned(int slot, int player)
+	{
+		return segment(slot).get(offset(slot) + COUNTS + player) & 0xFF;
+	}
+
+	/**
+	 * Gets the time of the last move of a game, or of its start.
+	 * @param slot The slot of the game.
+	 * @return The time in milliseconds.
+	 */
+	public long getLastMoveTime(int slot)
+	{
+		return segment(slot).getLong(offset(slot) + LAST_MOVE);
+	}
+
+	/**
+	 * Gets the number of games open in the arena.
+	 * @return The number of slots taken and not freed.
+	 */
+	public int getNumGames()
+	{
+		return numSlots - numFree;
+	}
+
+	/**
+	 * Gets the number of bytes every game takes.
+	 * @return The size of a slot in bytes.
+	 */
+	public int getSlotSize()
+	{
+		return stride;
+	}
+
+	/**
+	 * Gets the number of bytes of the buffers the arena has taken so far.
+	 * @return The size of the arena in bytes.
+	 */
+	public long getBytes()
+	{
+		long bytes = 0;
+		for(int s = 0; s < segments.length && segments[s] != null; s++)
+		{
+			bytes += segments[s].capacity();
+		}
+		return bytes;
+	}
+
+	/**
+	 * Gets the board every game in the arena is played on.
+	 * @return The topology.
+	 */
+	public JumpingCubeTopology getTopology()
+	{
+		return topology;
+	}
+
+	/**
+	 * Gets the number of players in every game.
+	 * @return The number of players.
+	 */
+	public int getNumPlayers()
+	{
+		return numPlayers;
+	}
+
+	private ByteBuffer segment(int slot)
+	{
+		return segments[slot / slotsPerSegment];
+	}
+
+	private int offset(int slot)
+	{
+		return (slot % slotsPerSegment) * stride;
+	}
+
+	private void storeTurn(ByteBuffer b, int at, JumpingCubeEngine game, long now)
+	{
+		b.putLong(at + LAST_MOVE, now);
+		b.putInt(at + MOVE_NUMBER, game.getMoveNumber());
+		b.put(at + TURN, (byte)game.getActivePlayer());
+		b.put(at + WINNER, (byte)(game.getWinner() + 1));
+		for(int p = 0; p < numPlayers; p++)
+		{
+			b.put(at + COUNTS + p, (byte)game.getNumBoxesOwned(p));
+		}
+	}
+
+	private static byte pack(JumpingCubeEngine game, int cell)
+	{
+		return (byte)(((game.getOwner(cell) + 1) << 4) | game.getPoints(cell));
+	}
+
+	/**
+	 * Fills an arena with open games and checks them, then compares its
+	 * size and the time to play a move and find idle games with an engine
+	 * for every game.
+	 */
+	public static void main(String args[])
+	{
+		int games = (args.length > 0) ? Integer.parseInt(args[0]) : 100000;
+		int size = (args.length > 1) ? Integer.parseInt(args[1]) : JumpingCubeBoard.MAX_ROWS;
+		JumpingCubeTopology topology = JumpingCubeTopology.grid(size, size);
+		Random random = new Random(games);
+
+		// Every game gets a few random moves, as a freshly opened match would.
+		JumpingCubeArena arena = new JumpingCubeArena(topology, JumpingCubeEngine.NUM_PLAYERS);
+		JumpingCubeEngine game = new JumpingCubeEngine(topology, JumpingCubeEngine.NUM_PLAYERS);
+		long[] hashes = new long[games];
+		for(int i = 0; i < games; i++)
+		{
+			int slot = arena.allocate(i, i);
+			arena.load(slot, game);
+			for(int m = random.nextInt(2 * size); m > 0 && game.getWinner() == JumpingCubeEngine.NO_WINNER; m--)
+			{
+				int cell;
+				do
+				{
+					cell = random.nextInt(game.getNumBoxes());
+				}
+				while(!game.isLegal(cell));
+				game.applyMove(cell);
+				arena.storeChanges(slot, game, i);
+				arena.load(slot, game);
+			}
+			hashes[slot] = game.getHash();
+		}
+		JumpingCubeEngine check = new JumpingCubeEngine(topology, JumpingCubeEngine.NUM_PLAYERS);
+		for(int slot = 0; slot < games; slot++)
+		{
+			arena.load(slot, check);
+			if(check.getHash() != hashes[slot] || arena.getId(slot) != slot
+				|| arena.getNumBoxesOwned(slot, 0) != check.getNumBoxesOwned(0))
+			{
+				throw new IllegalStateException("slot " + slot + " does not match");
+			}
+		}
+		// A freed slot is the next one handed out.
+		arena.free(games / 2);
+		if(arena.allocate(-1, 0) != games / 2 || arena.getMoveNumber(games / 2) != 0)
+		{
+			throw new IllegalStateException("freed slot not reused");
+		}
+		System.out.println(games + " " + size + "x" + size + " games checked, " + arena.getSlotSize()
+				+ " bytes a game, " + arena.getBytes() / 1024 + " KB off the heap");
+
+		Runtime runtime = Runtime.getRuntime();
+		System.gc();
+		long heapBefore = runtime.totalMemory() - runtime.freeMemory();
+		JumpingCubeEngine[] engines = new JumpingCubeEngine[games];
+		for(int i = 0; i < games; i++)
+		{
+			engines[i] = new JumpingCubeEngine(topology, JumpingCubeEngine.NUM_PLAYERS);
+		}
+		System.gc();
+		long heapAfter = runtime.totalMemory() - runtime.freeMemory();
+		System.out.println("an engine for every game takes about " + (heapAfter - heapBefore) / games
+				+ " bytes a game on the heap");
+
+		int[] found = new int[games];
+		int[] order = new int[games];
+		for(int i = 0; i < games; i++)
+		{
+			order[i] = random.nextInt(games);
+		}
+		long sum = 0;
+		for(int run = 0; run < 3; run++)
+		{
+			long started = System.nanoTime();
+			int idle = arena.scanIdle(games / 2, found);
+			long scanNanos = System.nanoTime() - started;
+
+			started = System.nanoTime();
+			for(int i = 0; i < games; i++)
+			{
+				int slot = order[i];
+				arena.load(slot, game);
+				int cell = 0;
+				while(game.getWinner() == JumpingCubeEngine.NO_WINNER && !game.isLegal(cell))
+				{
+					cell++;
+				}
+				sum += game.getHash();
+			}
+			long loadNanos = System.nanoTime() - started;
+
+			started = System.nanoTime();
+			for(int i = 0; i < games; i++)
+			{
+				JumpingCubeEngine e = engines[order[i]];
+				int cell = 0;
+				while(e.getWinner() == JumpingCubeEngine.NO_WINNER && !e.isLegal(cell))
+				{
+					cell++;
+				}
+				sum += e.getHash();
+			}
+			long engineNanos = System.nanoTime() - started;
+			if(run == 2)
+			{
+				System.out.println("idle scan of " + games + " games " + scanNanos / 1000 + " us (" + idle
+						+ " idle), load " + loadNanos / games + " ns a game, engine already on the heap "
+						+ engineNanos / games + " ns (" + (sum & 1) + ")");
+			}
+		}
+		engines[0].reset();
+	}
+}
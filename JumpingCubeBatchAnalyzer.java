@@ -0,0 +1,356 @@
+/**
+ * JumpingCubeBatchAnalyzer.java
+ * @author Daniel Miladinov
+ * @version 1-beta
+ */
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Random;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * The JumpingCubeBatchAnalyzer class searches every position in a file,
+ * one per line in JumpingCubeNotation, to a fixed depth on every core, and
+ * writes each with its best move and score in the order they were read:
+ * <pre>
+ * 5/5/2a22/5/5 2	7	-12
+ * </pre>
+ * with the move as a cell index and the score from the point of view of
+ * the player on turn.  A line that is not a position, or whose search
+ * fails, is written back with the reason after the tab; blank lines and
+ * lines starting with # are written back as they are.
+ * <p>
+ * The file is streamed, not read whole: a reader thread hands lines to the
+ * search threads through a bounded queue, and may only get a fixed window
+ * of lines ahead of the line being written, so however long the file and
+ * however slow one position is, only that many lines are held at once.
+ * <p>
+ * To analyse a file, or standard input and output given as -:
+ * <pre>
+ * java JumpingCubeBatchAnalyzer [-depth n] [-threads n] [-window n] input output
+ * </pre>
+ * and to write a file of positions from random games to try it on:
+ * <pre>
+ * java JumpingCubeBatchAnalyzer -generate positions size output
+ * </pre>
+ */
+public class JumpingCubeBatchAnalyzer
+{
+	/** The depth each position is searched to unless told otherwise.*/
+	public static final int DEFAULT_DEPTH = 4;
+	/** The number of lines that may be held at once unless told otherwise.*/
+	public static final int DEFAULT_WINDOW = 4096;
+
+	private int maxDepth;
+	private int threads;
+	private String[] results;
+	private long nextToWrite;
+	private long linesRead;
+
+	/**
+	 * An inner class which holds one line waiting to be analysed.
+	 */
+	static class Line
+	{
+		long number;
+		String text;
+
+		public Line(long n, String t)
+		{
+			number = n;
+			text = t;
+		}
+	}
+
+	/**
+	 * The JumpingCubeBatchAnalyzer constructor.
+	 * @param maxDepth The depth to search every position to.
+	 * @param threads The number of positions to search at once.
+	 * @param window The most lines that may be read but not yet written.
+	 */
+	public JumpingCubeBatchAnalyzer(int maxDepth, int threads, int window)
+	{
+		this.maxDepth = maxDepth;
+		this.threads = Math.max(1, threads);
+		results = new String[Math.max(1, window)];
+	}
+
+	/**
+	 * Analyses every line of a reader and writes the results to a writer in
+	 * the same order.  Returns when every line has been written.
+	 * @param in The positions, one a line.
+	 * @param out Where to write the results; it is flushed but not closed.
+	 * @return The number of lines written.
+	 * @throws IOException If reading or writing fails.
+	 */
+	public long run(final BufferedReader in, Writer out) throws IOException
+	{
+		final BlockingQueue queue = new ArrayBlockingQueue(threads * 16);
+		final IOException[] readFailure = new IOException[1];
+		nextToWrite = 0;
+		linesRead = -1;
+		Thread reader = new Thread("JumpingCubeBatchAnalyzer-reader")
+		{
+			public void run()
+			{
+				long n = 0;
+				try
+				{
+					String text;
+					while((text = in.readLine()) != null)
+					{
+						waitForRoom(n);
+						queue.put(new Line(n++, text));
+					}
+				}
+				catch(IOException e)
+				{
+					readFailure[0] = e;
+				}
+				catch(InterruptedException e)
+				{
+				}
+				finished(n);
+				for(int t = 0; t < threads; t++)
+				{
+					try
+					{
+						queue.put(new Line(-1, null));
+					}
+					catch(InterruptedException e)
+					{
+					}
+				}
+			}
+		};
+		reader.setDaemon(true);
+		reader.start();
+		for(int t = 0; t < threads; t++)
+		{
+			Thread worker = new Thread("JumpingCubeBatchAnalyzer-" + t)
+			{
+				public void run()
+				{
+					work(queue);
+				}
+			};
+			worker.setDaemon(true);
+			worker.start();
+		}
+
+		String result;
+		while((result = nextResult()) != null)
+		{
+			out.write(result);
+			out.write('\n');
+		}
+		out.flush();
+		if(readFailure[0] != null)
+		{
+			throw readFailure[0];
+		}
+		return nextToWrite;
+	}
+
+	/**
+	 * The loop each search thread runs, with its own AI and notation.
+	 */
+	private void work(BlockingQueue queue)
+	{
+		JumpingCubeAI ai = new JumpingCubeAI(maxDepth, 0);
+		JumpingCubeNotation notation = new JumpingCubeNotation();
+		StringBuffer b = new StringBuffer();
+		try
+		{
+			while(true)
+			{
+				Line line = (Line)queue.take();
+				if(line.number < 0)
+				{
+					return;
+				}
+				String text = line.text;
+				String trimmed = text.trim();
+				if(trimmed.length() > 0 && trimmed.charAt(0) != '#')
+				{
+					b.setLength(0);
+					b.append(trimmed).append('\t');
+					try
+					{
+						JumpingCubeEngine game = notation.parse(trimmed);
+						if(game.getWinner() != JumpingCubeEngine.NO_WINNER)
+						{
+							b.append("game over");
+						}
+						else
+						{
+							b.append(ai.chooseMove(game)).append('\t').append(ai.getLastScore());
+						}
+					}
+					catch(IllegalArgumentException e)
+					{
+						b.append(e.getMessage());
+					}
+					catch(Throwable e)
+					{
+						// Any other failure, even an Error such as a stack overflow,
+						// is written in the line's place too, or the writer would
+						// wait for its result forever.  The AI may have been left
+						// half way through a search, so the next line gets a new one.
+						b.setLength(trimmed.length() + 1);
+						b.append("failed: ").append(e);
+						ai = new JumpingCubeAI(maxDepth, 0);
+					}
+					text = b.toString();
+				}
+				putResult(line.number, text);
+			}
+		}
+		catch(InterruptedException e)
+		{
+		}
+	}
+
+	/**
+	 * Waits until a line can be read without holding more than the window.
+	 */
+	private synchronized void waitForRoom(long n) throws InterruptedException
+	{
+		while(n >= nextToWrite + results.length)
+		{
+			wait();
+		}
+	}
+
+	private synchronized void finished(long n)
+	{
+		linesRead = n;
+		notifyAll();
+	}
+
+	private synchronized void putResult(long n, String result)
+	{
+		results[(int)(n % results.length)] = result;
+		if(n == nextToWrite)
+		{
+			notifyAll();
+		}
+	}
+
+	/**
+	 * Waits for the result of the next line to write.
+	 * @return The result, or null when every line read has been written.
+	 */
+	private synchronized String nextResult()
+	{
+		int slot = (int)(nextToWrite % results.length);
+		while(results[slot] == null && nextToWrite != linesRead)
+		{
+			try
+			{
+				wait();
+			}
+			catch(InterruptedException e)
+			{
+				return null;
+			}
+		}
+		if(nextToWrite == linesRead)
+		{
+			return null;
+		}
+		String result = results[slot];
+		results[slot] = null;
+		nextToWrite++;
+		notifyAll();
+		return result;
+	}
+
+	/**
+	 * Writes positions from random games, a few from each, to try the
+	 * analyser on.
+	 */
+	private static void generate(long positions, int size, Writer out) throws IOException
+	{
+		Random random = new Random(positions);
+		JumpingCubeEngine game = new JumpingCubeEngine(size, size);
+		StringBuffer b = new StringBuffer();
+		for(long n = 0; n < positions; )
+		{
+			game.reset();
+			int skip = random.nextInt(8);
+			while(game.getWinner() == JumpingCubeEngine.NO_WINNER && n < positions)
+			{
+				int cell;
+				do
+				{
+					cell = random.nextInt(game.getNumBoxes());
+				}
+				while(!game.isLegal(cell));
+				game.applyMove(cell);
+				if(game.getWinner() == JumpingCubeEngine.NO_WINNER && skip-- <= 0)
+				{
+					b.setLength(0);
+					JumpingCubeNotation.write(game, b);
+					out.write(b.toString());
+					out.write('\n');
+					n++;
+					skip = random.nextInt(8);
+				}
+			}
+		}
+		out.flush();
+	}
+
+	/**
+	 * Analyses a file of positions, or writes one.
+	 */
+	public static void main(String args[]) throws Exception
+	{
+		int depth = DEFAULT_DEPTH;
+		int threads = Runtime.getRuntime().availableProcessors();
+		int window = DEFAULT_WINDOW;
+		int i = 0;
+		if(args.length == 4 && args[0].equals("-generate"))
+		{
+			Writer out = writer(args[3]);
+			generate(Long.parseLong(args[1]), Integer.parseInt(args[2]), out);
+			out.close();
+			return;
+		}
+		for(; i + 1 < args.length && args[i].startsWith("-") && args[i].length() > 1; i += 2)
+		{
+			if(args[i].equals("-depth")) depth = Integer.parseInt(args[i + 1]);
+			else if(args[i].equals("-threads")) threads = Integer.parseInt(args[i + 1]);
+			else if(args[i].equals("-window")) window = Integer.parseInt(args[i + 1]);
+		}
+		if(args.length - i != 2)
+		{
+			System.err.println("java JumpingCubeBatchAnalyzer [-depth n] [-threads n] [-window n] input output");
+			System.err.println("java JumpingCubeBatchAnalyzer -generate positions size output");
+			System.exit(1);
+		}
+		BufferedReader in = new BufferedReader(new InputStreamReader(args[i].equals("-") ? System.in : new FileInputStream(args[i]), "UTF-8"), 1 << 16);
+		Writer out = writer(args[i + 1]);
+		long started = System.nanoTime();
+		long lines = new JumpingCubeBatchAnalyzer(depth, threads, window).run(in, out);
+		long millis = Math.max(1, (System.nanoTime() - started) / 1000000);
+		out.close();
+		System.err.println(lines + " lines in " + millis + " ms, " + lines * 1000 / millis + " a second on "
+				+ threads + " threads at depth " + depth);
+	}
+
+	private static Writer writer(String name) throws IOException
+	{
+		return new BufferedWriter(new OutputStreamWriter(name.equals("-") ? (OutputStream)System.out : new FileOutputStream(name), "UTF-8"), 1 << 16);
+	}
+}
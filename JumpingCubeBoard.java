@@ -8,6 +8,7 @@ import javax.swing.*;
 import java.awt.*;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
+import java.io.IOException;
 import java.util.Vector;
 
 /**
@@ -17,6 +18,31 @@ import java.util.Vector;
  * blew the call stack during early development tests.  Instead, objects which
  * implement similar functionality are created off the heap at an acceptable
  * higher overhead cost.
+ * <p>
+ * Moves clicked on the board are now resolved by a JumpingCubeEngine, which
+ * follows the same rules without touching a single button, and only the
+ * buttons the move changed are then brought up to date, in one batch.  Each
+ * move and each batch is reported to the JumpingCubeFlightRecorder.
+ * <p>
+ * A board is played by two to eight JumpingCubePlayers.  Buttons know
+ * their owner by its index into the board's players, and the number of
+ * boxes each player owns is kept in an array indexed the same way.
+ * <p>
+ * While a JumpingCubeAnalyzer is attached, it is given every new position
+ * as soon as it appears, and the scores it finds are laid over the buttons
+ * as a heatmap, green for the best moves and red for the worst.
+ * <p>
+ * While a JumpingCubeComputer is attached, it plays every player but
+ * Player 1, thinking on a thread of its own so the window keeps painting,
+ * and pondering on Player 1's time.
+ * <p>
+ * The board can be a torus or a hex grid as well as the usual grid: the
+ * buttons are wired to their neighbors from the board's JumpingCubeTopology,
+ * and its engine is played on the same topology.
+ * <p>
+ * Every move played on the board is kept in a JumpingCubeReplay, and any
+ * move of it, or of another game the same size, can be shown again without
+ * replaying the moves before it.  Clicks are ignored while replaying.
  */
 public class JumpingCubeBoard extends JPanel implements ActionListener
 {
@@ -35,32 +61,40 @@ public class JumpingCubeBoard extends JPanel implements ActionListener
 
 	private int rows;
 	private int cols;
+	private JumpingCubeTopology topology;
 
 	private int numBoxes;
-	private int numBoxesPlayer1;
-	private int numBoxesPlayer2;
+	private int[] numBoxesOwned;
 	private int numBoxesUnowned;
 
-	private JumpingCubePlayer player1;
-	private JumpingCubePlayer player2;
+	private JumpingCubePlayer[] players;
 	private JumpingCubePlayer activePlayer;
 
 	private JumpingCube parentWindow;
 	private Vector eventVector;
 	private JumpingCubeButton[][] btnGrid;
+	private JumpingCubeEngine game;
+
+	private JumpingCubeNetworkClient netClient;
+	private int netSeat;
+	private JumpingCubeAnalyzer analyzer;
+	private JumpingCubeComputer computer;
+	private JumpingCubeClock clock;
+	private JumpingCubeReplay record;
+	private JumpingCubeReplay replay;
 
 	/**
 	 * An inner class which represents a button overflowing
 	 * points to its neighbors.  The JumpingCubeBoard only
-	 * needs to know which button to increment and upon
-	 * which player to bestow its ownership.
+	 * needs to know which button to increment and the index
+	 * of the player upon which to bestow its ownership.
 	 */
 	class ButtonEvent
 	{
 		JumpingCubeButton button;
-		JumpingCubePlayer player;
+		int player;
 
-		public ButtonEvent(JumpingCubeButton b, JumpingCubePlayer p)
+		public ButtonEvent(JumpingCubeButton b, int p)
 		{
 			button = b;
 			player = p;
@@ -76,37 +110,44 @@ public class JumpingCubeBoard extends JPanel implements ActionListener
 	 * @param cols The number of cols in this JumpingCubeBoard.
 	 */
 	public JumpingCubeBoard(JumpingCube window, int rows, int cols)
+	{
+		this(window, JumpingCubeTopology.grid(rows, cols));
+	}
+
+	/**
+	 * The JumpingCubeBoard constructor for boards other than the usual grid.
+	 * The boxes of a hex grid are laid out with every odd row half a box
+	 * to the right, so each box touches the boxes it overflows into.
+	 * @param window The JumpingCube window which owns this JumpingCubeBoard.
+	 * @param topology A grid, torus or hex topology, whose rows and columns are already clamped.
+	 */
+	public JumpingCubeBoard(JumpingCube window, JumpingCubeTopology topology)
 	{
 		parentWindow = window;
 		eventVector = new Vector();
-		if(rows > MAX_ROWS)
-		{
-			this.rows = MAX_ROWS;
-		}
-		else if(rows < MIN_ROWS)
-		{
-			this.rows = MIN_ROWS;
-		}
-		else
-		{
-			this.rows = rows;
-		}
-		if(cols > MAX_COLS)
-		{
-			this.cols = MAX_COLS;
-		}
-		else if(cols < MIN_COLS)
+		this.topology = topology;
+		this.rows = topology.getRows();
+		this.cols = topology.getCols();
+		if(topology.getKind() == JumpingCubeTopology.HEX)
 		{
-			this.cols = MIN_COLS;
+			this.setLayout(new GridBagLayout());
 		}
 		else
 		{
-			this.cols = cols;
+			this.setLayout(new GridLayout(this.rows, this.cols));
 		}
-		this.setLayout(new GridLayout(this.rows, this.cols));
 		setBoard(this.rows, this.cols);
 	}
 
+	/**
+	 * Gets the topology of the board.
+	 * @return The topology the game is played on.
+	 */
+	public JumpingCubeTopology getTopology()
+	{
+		return topology;
+	}
+
 	/**
 	 * Gets the number of columns the JumpingCubeBoard contains.
 	 * @return The number of columns this JumpingCubeBoard contains.
@@ -127,7 +168,7 @@ public class JumpingCubeBoard extends JPanel implements ActionListener
 
 	/**
 	 * Gets the number of unowned boxes on the JumpingCubeBoard.
-	 * @return The number of boxes (buttons) that neither player has clicked on yet.
+	 * @return The number of boxes (buttons) that no player has clicked on yet.
 	 */
 	public int getNumBoxesUnowned()
 	{
@@ -144,39 +185,32 @@ public class JumpingCubeBoard extends JPanel implements ActionListener
 	}
 
 	/**
-	 * Gets the number of boxes that Player 1 owns.
-	 * @return The number of boxes that Player 1 owns.
-	 */
-	public int getNumBoxesPlayer1()
-	{
-		return numBoxesPlayer1;
-	}
-
-	/**
-	 * Gets the number of boxes that Player 2 owns.
-	 * @return The number of boxes that Player 2 owns.
+	 * Gets the number of boxes that a player owns.
+	 * @param index The index of the player; 0 for Player 1, 1 for Player 2, and so on.
+	 * @return The number of boxes that player owns.
 	 */
-	public int getNumBoxesPlayer2()
+	public int getNumBoxesOwned(int index)
 	{
-		return numBoxesPlayer2;
+		return numBoxesOwned[index];
 	}
 
 	/**
-	 * Returns a reference to the first JumpingCubePlayer object.
-	 * @return The JumpingCubePlayer object representing Player 1.
+	 * Gets the number of players playing on the JumpingCubeBoard.
+	 * @return The number of players, from 2 to 8.
 	 */
-	public JumpingCubePlayer getPlayer1()
+	public int getNumPlayers()
 	{
-		return player1;
+		return players.length;
 	}
 
 	/**
-	 * Returns a reference to the second JumpingCubePlayer object.
-	 * @return The JumpingCubePlayer object representing Player 2.
+	 * Returns a reference to one of the JumpingCubePlayer objects.
+	 * @param index The index of the player; 0 for Player 1, 1 for Player 2, and so on.
+	 * @return The JumpingCubePlayer object at that index.
 	 */
-	public JumpingCubePlayer getPlayer2()
+	public JumpingCubePlayer getPlayer(int index)
 	{
-		return player2;
+		return players[index];
 	}
 
 	/**
@@ -207,120 +241,421 @@ public class JumpingCubeBoard extends JPanel implements ActionListener
 	}
 
 	/**
-	 * Assigns two JumpingCubePlayer objects to the JumpingCubeBoard.
-	 * @param p1 A reference to Player 1.
-	 * @param p2 A reference to Player 2.
+	 * Assigns the JumpingCubePlayer objects to the JumpingCubeBoard, and
+	 * sets its game up for that many players, with Player 1 on turn.
+	 * Should be called before the first move is played.
+	 * @param newPlayers The players, from 2 to 8 of them, in the order they take turns.
 	 */
-	public void setPlayers(JumpingCubePlayer p1, JumpingCubePlayer p2)
+	public void setPlayers(JumpingCubePlayer[] newPlayers)
 	{
-		this.player1 = p1;
-		this.player2 = p2;
-		activePlayer = p1;
+		players = newPlayers.clone();
+		game = new JumpingCubeEngine(topology, players.length);
+		record = new JumpingCubeReplay(topology, players.length, JumpingCubeReplay.DEFAULT_INTERVAL);
+		numBoxesOwned = new int[players.length];
+		activePlayer = players[0];
+		if(analyzer != null)
+		{
+			analyzer.analyze(game);
+		}
 	}
 
 	/**
-	 * Sets the reference to Player 1.
-	 * @param p1 A JumpingCubePlayer which will become Player 1.
+	 * Moves one box from its owner's count to another player's, after a
+	 * JumpingCubeButton changes hands.
+	 * @param from The index of the player who owned the box, or JumpingCubeEngine.NO_OWNER.
+	 * @param to The index of the player who owns it now.
 	 */
-	public void setPlayer1(JumpingCubePlayer p1)
+	public void transferBox(int from, int to)
 	{
-		player1 = p1;
+		if(from == JumpingCubeEngine.NO_OWNER)
+		{
+			numBoxesUnowned--;
+		}
+		else
+		{
+			numBoxesOwned[from]--;
+		}
+		numBoxesOwned[to]++;
 	}
 
 	/**
-	 * Sets the reference to Player 2.
-	 * @param p2 A JumpingCubePlayer which will become Player 2.
+	 * As a fulfillment of its ActionListener interface contract,
+	 * the JumpingCubeBoard responds to ActionEvents generated by
+	 * its buttons with this method.
+	 * @param e An ActionEvent generated by the system when a button is clicked.
 	 */
-	public void setPlayer2(JumpingCubePlayer p2)
+	public void actionPerformed(ActionEvent e)
 	{
-		player2 = p2;
+		Object o = e.getSource();
+		if(replay != null)
+		{
+			return;
+		}
+		if(netClient != null)
+		{
+			if(o instanceof JumpingCubeButton)
+			{
+				sendMove((JumpingCubeButton)o);
+			}
+			return;
+		}
+		if(o instanceof JumpingCubeButton && (getCursor().getType() == Cursor.DEFAULT_CURSOR))
+		{
+			setCursor(new Cursor(Cursor.WAIT_CURSOR));
+
+			JumpingCubeButton b = ((JumpingCubeButton)o);
+			int cell = b.getRow() * cols + b.getCol();
+
+			if(game.isLegal(cell))
+			{
+				parentWindow.updateStatus("Doing Move. . .");
+				JumpingCubeFlightRecorder.applyMove(game, cell, -1);
+				pressClock();
+				record.record(game);
+				if(analyzer != null)
+				{
+					analyzer.analyze(game);
+				}
+				showChanges();
+				if(game.getWinner() != JumpingCubeEngine.NO_WINNER)
+				{
+					winSequence(playerFor(game.getWinner()));
+					return;
+				}
+				if(computer != null && game.getActivePlayer() != 0)
+				{
+					computerMove();
+					return;
+				}
+				parentWindow.updateStatus("On Turn: " + activePlayer.getName());
+			}
+			setCursor(new Cursor(Cursor.DEFAULT_CURSOR));
+			return;
+		}
 	}
 
 	/**
-	 * Decrements the number of unowned boxes.
+	 * Attaches a JumpingCubeComputer to play every player but Player 1, or
+	 * detaches the one attached, which then stops thinking.
+	 * @param c The computer player, or null for none.
 	 */
-	public void decrementNumBoxesUnowned()
+	public void setComputer(JumpingCubeComputer c)
 	{
-		numBoxesUnowned--;
+		if(computer != null && c != computer)
+		{
+			computer.stop();
+		}
+		computer = c;
+		if(computer != null)
+		{
+			computer.setClock(clock);
+		}
+		if(game.getWinner() != JumpingCubeEngine.NO_WINNER)
+		{
+			return;
+		}
+		if(computer != null && game.getActivePlayer() != 0)
+		{
+			setCursor(new Cursor(Cursor.WAIT_CURSOR));
+			computerMove();
+		}
+		else if(computer == null && getCursor().getType() == Cursor.WAIT_CURSOR)
+		{
+			// A move being chosen will be dropped, so its player moves by hand.
+			setCursor(new Cursor(Cursor.DEFAULT_CURSOR));
+			parentWindow.updateStatus("On Turn: " + activePlayer.getName());
+		}
 	}
 
 	/**
-	 * Increments the number of boxes owned by Player 1.
+	 * Times the game on a clock, or stops timing it.  The clock of the
+	 * player on turn starts at once, unless the game is over or being
+	 * replayed, and is pressed after every move played on the board.  The
+	 * board does not watch for time running out; the game window does.
+	 * @param c The clock, with as many players as the game, or null for none.
 	 */
-	public void incrementNumBoxesPlayer1()
+	public void setClock(JumpingCubeClock c)
 	{
-		numBoxesPlayer1++;
+		clock = c;
+		if(computer != null)
+		{
+			computer.setClock(c);
+		}
+		if(clock != null && replay == null && game.getWinner() == JumpingCubeEngine.NO_WINNER)
+		{
+			clock.start(game.getActivePlayer());
+		}
 	}
 
 	/**
-	 * Increments the number of boxes owned by Player 2.
+	 * Gets the clock the game is timed on.
+	 * @return The clock, or null if the game is not timed.
 	 */
-	public void incrementNumBoxesPlayer2()
+	public JumpingCubeClock getClock()
 	{
-		numBoxesPlayer2++;
+		return clock;
 	}
 
 	/**
-	 * Decrements the number of boxes owned by Player 1.
+	 * Ends the game because a player has run out of time.  With two players
+	 * the other one wins; with more, whichever of the rest owns the most
+	 * boxes.  Any computer attached stops thinking.
+	 * @param player The index of the player whose time ran out.
 	 */
-	public void decrementNumBoxesPlayer1()
+	public void timeOut(int player)
 	{
-		numBoxesPlayer1--;
+		setComputer(null);
+		if(clock != null)
+		{
+			clock.stop();
+		}
+		int winner = -1;
+		for(int p = 0; p < game.getNumPlayers(); p++)
+		{
+			if(p != player && (winner < 0 || game.getNumBoxesOwned(p) > game.getNumBoxesOwned(winner)))
+			{
+				winner = p;
+			}
+		}
+		parentWindow.updateStatus(playerFor(player).getName() + " ran out of time");
+		winSequence(playerFor(winner));
+	}
+
+	private void pressClock()
+	{
+		if(clock == null)
+		{
+			return;
+		}
+		if(game.getWinner() != JumpingCubeEngine.NO_WINNER)
+		{
+			clock.stop();
+		}
+		else
+		{
+			clock.press(game.getActivePlayer());
+		}
 	}
 
 	/**
-	 * Decrements the number of boxes owned by Player 2.
+	 * Has the computer choose a move on a thread of its own, and plays it
+	 * on the Swing event thread once chosen.  Clicks are ignored meanwhile,
+	 * as the board shows the wait cursor.
 	 */
-	public void decrementNumBoxesPlayer2()
+	private void computerMove()
 	{
-		numBoxesPlayer2--;
+		final JumpingCubeComputer c = computer;
+		final JumpingCubeEngine position = new JumpingCubeEngine(topology, game.getNumPlayers());
+		position.copyFrom(game);
+		parentWindow.updateStatus(activePlayer.getName() + " is thinking. . .");
+		Thread thinker = new Thread("JumpingCubeComputer")
+		{
+			public void run()
+			{
+				final int cell = c.chooseMove(position);
+				SwingUtilities.invokeLater(
+						new Runnable()
+						{
+							public void run()
+							{
+								if(c == computer)
+								{
+									playComputerMove(cell);
+								}
+							}
+						}
+						);
+			}
+		};
+		thinker.setDaemon(true);
+		thinker.start();
+	}
+
+	private void playComputerMove(int cell)
+	{
+		String thought = activePlayer.getName() + " thought " + computer.getLastThinkNanos() / 1000000 + " ms"
+				+ (computer.wasPonderHit() ? " (pondered)" : "");
+		JumpingCubeFlightRecorder.applyMove(game, cell, -1);
+		pressClock();
+		record.record(game);
+		if(analyzer != null)
+		{
+			analyzer.analyze(game);
+		}
+		showChanges();
+		if(game.getWinner() != JumpingCubeEngine.NO_WINNER)
+		{
+			winSequence(playerFor(game.getWinner()));
+			return;
+		}
+		if(game.getActivePlayer() != 0)
+		{
+			computerMove();
+			return;
+		}
+		computer.ponder(game);
+		parentWindow.updateStatus("On Turn: " + activePlayer.getName() + "   (" + thought + ")");
+		setCursor(new Cursor(Cursor.DEFAULT_CURSOR));
 	}
 
 	/**
-	 * As a fulfillment of its ActionListener interface contract,
-	 * the JumpingCubeBoard responds to ActionEvents generated by
-	 * its buttons with this method.
-	 * @param e An ActionEvent generated by the system when a button is clicked.
+	 * Hands the moves of one player over to a JumpingCubeServer.  From now
+	 * on clicks are sent to the server instead of being played here, and
+	 * the board only changes when showPosition() is called.
+	 * @param client The connection to the server hosting the game.
+	 * @param seat The index of the player this board plays; 0 for Player 1, 1 for Player 2,
+	 * or JumpingCubeProtocol.SPECTATOR to only watch.
 	 */
-	public void actionPerformed(ActionEvent e)
+	public void setNetworkClient(JumpingCubeNetworkClient client, int seat)
 	{
-		Object o = e.getSource();
-		if(o instanceof JumpingCubeButton && (getCursor().getType() == Cursor.DEFAULT_CURSOR))
+		netClient = client;
+		netSeat = seat;
+	}
+
+	/**
+	 * Makes every button show the position of a game played elsewhere,
+	 * such as on a JumpingCubeServer.
+	 * @param position The position to show.
+	 */
+	public void showPosition(JumpingCubeEngine position)
+	{
+		game.copyFrom(position);
+		showAll();
+	}
+
+	/**
+	 * Gets the record of every move played on this board so far.
+	 * @return The replay of the game; it grows as moves are played.
+	 */
+	public JumpingCubeReplay getRecord()
+	{
+		return record;
+	}
+
+	/**
+	 * Starts replaying a game on the board, such as its own record or the
+	 * record of an earlier game of the same size and number of players.
+	 * The board shows the last move of the replay until showMove() is
+	 * called.  Detach any computer first, so it does not move meanwhile.
+	 * @param r The replay to show.
+	 */
+	public void startReplay(JumpingCubeReplay r)
+	{
+		if(clock != null)
 		{
-			setCursor(new Cursor(Cursor.WAIT_CURSOR));
+			clock.stop();
+		}
+		replay = r;
+		showMove(r.getNumMoves());
+	}
 
-			JumpingCubeButton b = ((JumpingCubeButton)o);
+	/**
+	 * Shows the position after a number of moves of the game being replayed,
+	 * repainting the board once.
+	 * @param move The number of moves to have played, from 0 to the length of the replay.
+	 */
+	public void showMove(int move)
+	{
+		replay.seek(move, game);
+		showAll();
+		String turn = (game.getWinner() != JumpingCubeEngine.NO_WINNER)
+				? "Winner: " + playerFor(game.getWinner()).getName()
+				: "On Turn: " + activePlayer.getName();
+		parentWindow.updateStatus("Move " + game.getMoveNumber() + " of " + replay.getNumMoves() + "   " + turn);
+	}
 
-			if((b.getOwner() == null) || (b.getOwner().equals(activePlayer)))
-			{
-				parentWindow.updateStatus("Doing Move. . .");
-				b.setOwner(activePlayer);
-				b.addPoint();
+	/**
+	 * Stops replaying, and brings back the position of the game being played.
+	 */
+	public void stopReplay()
+	{
+		if(replay == null)
+		{
+			return;
+		}
+		replay = null;
+		record.seek(record.getNumMoves(), game);
+		showAll();
+		if(clock != null && game.getWinner() == JumpingCubeEngine.NO_WINNER)
+		{
+			clock.start(game.getActivePlayer());
+		}
+		parentWindow.updateStatus("On Turn: " + activePlayer.getName());
+	}
 
-				while(eventVector.size() > 0)
-				{
-					ButtonEvent be = (ButtonEvent)eventVector.remove(0);
-
-					be.button.setOwner(be.player);
-					be.button.addPoint();
-					if(player1Won())
-					{
-						winSequence(player1);
-						eventVector = new Vector();
-						return;
-					}
-					if(player2Won())
-					{
-						winSequence(player2);
-						eventVector = new Vector();
-						return;
-					}
-				}
-				switchActivePlayer();
-				parentWindow.updateStatus("On Turn: " + activePlayer.getName());
+	/**
+	 * Returns whether the board is replaying a game.
+	 * @return True between startReplay() and stopReplay().
+	 */
+	public boolean isReplaying()
+	{
+		return replay != null;
+	}
+
+	/**
+	 * Attaches a JumpingCubeAnalyzer to the board, or detaches the one
+	 * attached.  An analyzer attached starts on the position on the board.
+	 * @param a The analyzer, or null to stop showing analysis.
+	 */
+	public void setAnalyzer(JumpingCubeAnalyzer a)
+	{
+		if(analyzer != null && a != analyzer)
+		{
+			analyzer.stop();
+		}
+		analyzer = a;
+		if(analyzer != null)
+		{
+			analyzer.analyze(game);
+		}
+		else
+		{
+			showHeatmap(null, null);
+		}
+	}
+
+	/**
+	 * Lays a JumpingCubeAnalyzer's scores over the buttons.  Each move's
+	 * color runs from red for the worst score found to green for the best,
+	 * and its label shows the score, or W or L for a forced win or loss.
+	 * @param scores The score of every move, indexed by cell, or null to clear the heatmap.
+	 * @param depths The depth each score was searched to, as the analyzer reports them.
+	 */
+	public void showHeatmap(int[] scores, int[] depths)
+	{
+		int best = Integer.MIN_VALUE;
+		int worst = Integer.MAX_VALUE;
+		for(int cell = 0; scores != null && cell < numBoxes; cell++)
+		{
+			if(depths[cell] > 0)
+			{
+				best = Math.max(best, scores[cell]);
+				worst = Math.min(worst, scores[cell]);
 			}
-			setCursor(new Cursor(Cursor.DEFAULT_CURSOR));
-			return;
+		}
+		for(int cell = 0; cell < numBoxes; cell++)
+		{
+			JumpingCubeButton b = btnGrid[cell / cols][cell % cols];
+			if(scores == null || depths[cell] <= 0)
+			{
+				b.setHeat(null, null);
+				continue;
+			}
+			float t = (best == worst) ? 1f : (float)(scores[cell] - worst) / (float)(best - worst);
+			String label;
+			if(scores[cell] >= JumpingCubeAI.WIN - 100)
+			{
+				label = "W";
+			}
+			else if(scores[cell] <= -(JumpingCubeAI.WIN - 100))
+			{
+				label = "L";
+			}
+			else
+			{
+				label = String.valueOf(scores[cell]);
+			}
+			b.setHeat(new Color(1f - t, t, 0f, 0.4f), label);
 		}
 	}
 
@@ -329,61 +664,66 @@ public class JumpingCubeBoard extends JPanel implements ActionListener
 	 * it informs the JumpingCubeBoard to add points to them with this
 	 * method.
 	 * @param b The JumpingCubeButton queued to receive a point from its neighbor.
-	 * @param p The JumpingCubePlayer that owns the the calling JumpingCubeButton.
+	 * @param p The index of the player that owns the the calling JumpingCubeButton.
+	 * Moves clicked on the board are resolved by its JumpingCubeEngine instead,
+	 * so events are only queued here by code driving addPoint() itself.
 	 */
-	public void queueEvent(JumpingCubeButton b, JumpingCubePlayer p)
+	public void queueEvent(JumpingCubeButton b, int p)
 	{
 		eventVector.add(new ButtonEvent(b,p));
 	}
 
 	/**
-	 * When a game player running Player 1 wishes to change its name or
-	 * its color, the board cycles through its buttons and updates all
-	 * of them that are owned by Player1.
-	 * @param newPlayer1 The JumpingCubePlayer reference containing Player 1's new name and/or color.
+	 * Plays a move with the buttons alone, the way the board did before it
+	 * had a JumpingCubeEngine: the box clicked on, then every box queued by
+	 * an overflow in the order queued, is given to the player and has
+	 * addPoint() called, until nothing is queued or the player owns every
+	 * box.  The board's engine and player on turn are left alone, so the
+	 * buttons can be checked against an engine, as JumpingCubePerft does.
+	 * @param cell The cell index of the box clicked on.
+	 * @param player The index of the player clicking on it.
+	 * @return True if the player owns every box afterwards.
 	 */
-	public void updatePlayer1(JumpingCubePlayer newPlayer1)
+	public boolean playButtons(int cell, int player)
 	{
-		for(int r = 0; r < rows; r++)
+		JumpingCubeButton b = btnGrid[cell / cols][cell % cols];
+		b.setOwner(player);
+		b.addPoint();
+		boolean won = false;
+		while(eventVector.size() > 0 && !won)
 		{
-			for(int c = 0; c < cols; c++)
-			{
-				if(btnGrid[r][c].getOwner() != null)
-				{
-					if(btnGrid[r][c].getOwner().equals(player1))
-					{
-						btnGrid[r][c].changeColor(player1.getColor());
-						btnGrid[r][c].changeOwner(player1);
-					}
-				}
-			}
+			ButtonEvent be = (ButtonEvent)eventVector.remove(0);
+			be.button.setOwner(be.player);
+			be.button.addPoint();
+			won = (numBoxesOwned[player] == numBoxes);
 		}
-		setPlayer1(newPlayer1);
+		eventVector.clear();
+		return won;
 	}
 
 	/**
-	 * When a game player running Player 2 wishes to change its name or
-	 * its color, the board cycles through its buttons and updates all
-	 * of them that are owned by Player2.
-	 * @param newPlayer2 The JumpingCubePlayer reference containing Player 2's new name and/or color.
+	 * When a game player wishes to change their name or their color, the
+	 * board takes the new settings and repaints every button that player owns.
+	 * @param index The index of the player; 0 for Player 1, 1 for Player 2, and so on.
+	 * @param newPlayer The JumpingCubePlayer reference containing the player's new name and/or color.
 	 */
-	public void updatePlayer2(JumpingCubePlayer newPlayer2)
+	public void updatePlayer(int index, JumpingCubePlayer newPlayer)
 	{
+		players[index] = newPlayer;
+		if(game.getActivePlayer() == index)
+		{
+			activePlayer = newPlayer;
+		}
 		for(int r = 0; r < rows; r++)
 		{
 			for(int c = 0; c < cols; c++)
 			{
-				if(btnGrid[r][c].getOwner() != null)
+				if(btnGrid[r][c].getOwner() == index)
 				{
-					if(btnGrid[r][c].getOwner().equals(player2))
-					{
-						btnGrid[r][c].changeColor(player2.getColor());
-						btnGrid[r][c].changeOwner(player2);
-					}
+					btnGrid[r][c].redisplay();
 				}
 			}
 		}
-		setPlayer2(newPlayer2);
 	}
 
 	private void setBoard(int rows, int cols)
@@ -399,77 +739,140 @@ public class JumpingCubeBoard extends JPanel implements ActionListener
 			{
 				btnGrid[r][c] = new JumpingCubeButton(r, c, this);
 				btnGrid[r][c].addActionListener(this);
-				this.add(btnGrid[r][c]);
+				if(topology.getKind() == JumpingCubeTopology.HEX)
+				{
+					// Each box is two half columns wide, so odd rows can start half a box in.
+					GridBagConstraints place = new GridBagConstraints();
+					place.gridx = 2 * c + (r & 1);
+					place.gridy = r;
+					place.gridwidth = 2;
+					place.weightx = 1;
+					place.weighty = 1;
+					place.fill = GridBagConstraints.BOTH;
+					this.add(btnGrid[r][c], place);
+				}
+				else
+				{
+					this.add(btnGrid[r][c]);
+				}
 			}
 		}
 
 		numBoxes = rows * cols;
+		game = new JumpingCubeEngine(topology, JumpingCubeEngine.NUM_PLAYERS);
 		numBoxesUnowned = numBoxes;
-		numBoxesPlayer1 = 0;
-		numBoxesPlayer2 = 0;
+		numBoxesOwned = new int[JumpingCubeEngine.NUM_PLAYERS];
 
 		registerNeighbors();
 	}
 
 	private void registerNeighbors()
 	{
-		int minRow = 0;
-		int maxRow = (rows - 1);
-		int minCol = 0;
-		int maxCol = (cols - 1);
-
-		for(int r = 0; r < rows; r++)
+		for(int cell = 0; cell < numBoxes; cell++)
 		{
-
-			for(int c = 0; c < cols; c++)
+			JumpingCubeButton[] around = new JumpingCubeButton[topology.getDegree(cell)];
+			for(int i = 0; i < around.length; i++)
 			{
-				if(r > minRow)
-				{
-					btnGrid[r][c].setNorth(btnGrid[r-1][c]);
-				}
-				if(r < maxRow)
-				{
-					btnGrid[r][c].setSouth(btnGrid[r+1][c]);
-				}
-				if(c > minCol)
-				{
-					btnGrid[r][c].setWest(btnGrid[r][c-1]);
-				}
-				if(c < maxCol)
-				{
-					btnGrid[r][c].setEast(btnGrid[r][c+1]);
-				}
+				int n = topology.getNeighbor(topology.getFirstNeighbor(cell) + i);
+				around[i] = btnGrid[n / cols][n % cols];
 			}
+			btnGrid[cell / cols][cell % cols].setNeighbors(around);
+		}
+	}
+
+	private void sendMove(JumpingCubeButton b)
+	{
+		if((netSeat == JumpingCubeProtocol.SPECTATOR) || (game.getActivePlayer() != netSeat) || (b.isOwned() && b.getOwner() != netSeat))
+		{
+			return;
+		}
+		parentWindow.updateStatus("Doing Move. . .");
+		try
+		{
+			netClient.sendMove(b.getRow() * cols + b.getCol());
+		}
+		catch(IOException ioe)
+		{
+			parentWindow.updateStatus("Lost the connection to the server");
+		}
+	}
 
+	/**
+	 * Brings the buttons changed by the move just played up to date, along
+	 * with the counts of boxes and the player on turn.
+	 */
+	private void showChanges()
+	{
+		JumpingCubeFlightRecorder.RepaintEvent event = new JumpingCubeFlightRecorder.RepaintEvent();
+		event.begin();
+		int n = game.getNumChanged();
+		for(int i = 0; i < n; i++)
+		{
+			showBox(game.getChanged(i));
+		}
+		showCounts();
+		event.end();
+		JumpingCubeMetrics.REPAINTS.increment();
+		if(event.shouldCommit())
+		{
+			event.buttons = n;
+			event.commit();
 		}
 	}
 
-	private void switchActivePlayer()
+	/**
+	 * Brings every button up to date with the game, along with the counts
+	 * of boxes and the player on turn.
+	 */
+	private void showAll()
 	{
-		if(activePlayer.equals(player1))
+		JumpingCubeFlightRecorder.RepaintEvent event = new JumpingCubeFlightRecorder.RepaintEvent();
+		event.begin();
+		if(analyzer != null)
 		{
-			activePlayer = player2;
+			analyzer.analyze(game);
 		}
-		else
+		for(int cell = 0; cell < numBoxes; cell++)
+		{
+			showBox(cell);
+		}
+		showCounts();
+		event.end();
+		JumpingCubeMetrics.REPAINTS.increment();
+		if(event.shouldCommit())
 		{
-			activePlayer = player1;
+			event.buttons = numBoxes;
+			event.commit();
 		}
 	}
 
-	private void winSequence(JumpingCubePlayer p)
+	private void showBox(int cell)
 	{
-		setCursor(new Cursor(Cursor.DEFAULT_CURSOR));
-		parentWindow.setWinner(p);
+		JumpingCubeButton b = btnGrid[cell / cols][cell % cols];
+		b.changeOwner(game.getOwner(cell));
+		b.setPoints(game.getPoints(cell));
+		b.redisplay();
 	}
 
-	private boolean player1Won()
+	private void showCounts()
 	{
-		return ((numBoxesPlayer1 == numBoxes) && (numBoxesPlayer2 == 0));
+		for(int p = 0; p < players.length; p++)
+		{
+			numBoxesOwned[p] = game.getNumBoxesOwned(p);
+		}
+		numBoxesUnowned = game.getNumBoxesUnowned();
+		activePlayer = playerFor(game.getActivePlayer());
 	}
 
-	private boolean player2Won()
+	private JumpingCubePlayer playerFor(int index)
 	{
-		return ((numBoxesPlayer2 == numBoxes) && (numBoxesPlayer1 == 0));
+		return players[index];
+	}
+
+	private void winSequence(JumpingCubePlayer p)
+	{
+		setCursor(new Cursor(Cursor.DEFAULT_CURSOR));
+		parentWindow.setWinner(p);
 	}
 
 }
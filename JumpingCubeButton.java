@@ -11,9 +11,15 @@ import javax.swing.*;
 /**
  * The JumpingCubeButton represents an individual box on a
  * JumpingCubeBoard.  It acts like a regular JButton, but also
- * has references to the JumpingCubePlayer that may own it, the 
+ * knows the index of the JumpingCubePlayer that may own it, the 
  * Color that the pertains to that JumpingCubePlayer, as well as
- * the JumpingCubeBoard that contains it.
+ * the JumpingCubeBoard that contains it.  Owners are kept as indices
+ * into the board's players rather than references, so passing a box
+ * from one player to another is a matter of comparing two ints.
+ * <p>
+ * A button knows its neighbors as an array, set up by the board from its
+ * JumpingCubeTopology, so on a torus or a hex grid it overflows into four
+ * or six of them just as it does into the two to four of a grid.
  */
 public class JumpingCubeButton extends JButton
 {
@@ -30,19 +36,20 @@ public class JumpingCubeButton extends JButton
 	public static final String FOUR_POINTS	= "  . . . .  ";
 	/** The String constant denoting five points.*/
 	public static final String FIVE_POINTS	= " . . . . . ";
+	/** The String constant denoting six points.*/
+	public static final String SIX_POINTS	= ". . . . . .";
 
 	private JumpingCubeBoard jcb;
 
-	private JumpingCubePlayer owner;
+	private int owner;
 	private Color btnColor;
 	private int points;
+	private Color heat;
+	private String heatLabel;
 	private int myRow;
 	private int myCol;
 
-	private JumpingCubeButton northBtn;
-	private JumpingCubeButton southBtn;
-	private JumpingCubeButton eastBtn;
-	private JumpingCubeButton westBtn;
+	private JumpingCubeButton[] neighbors;
 
 	/**
 	 * The JumpingCubeButton constructor.
@@ -56,77 +63,68 @@ public class JumpingCubeButton extends JButton
 		myRow = row;
 		myCol = col;
 		points = 1;
-		owner = null;
+		owner = JumpingCubeEngine.NO_OWNER;
+		neighbors = new JumpingCubeButton[0];
 		jcb = board;
 		redisplay();
 	}
 
+	/**
+	 * Gets the row of the JumpingCubeBoard that contains this button.
+	 * @return The row of this button.
+	 */
+	public int getRow()
+	{
+		return myRow;
+	}
+
+	/**
+	 * Gets the column of the JumpingCubeBoard that contains this button.
+	 * @return The column of this button.
+	 */
+	public int getCol()
+	{
+		return myCol;
+	}
+
 	/**
 	 * Returns whether or not this button is owned.
-	 * @return True if this button contains a non-null JumpingCubePlayer reference, false otherwise.
+	 * @return True if a player owns this button, false otherwise.
 	 */
 	public boolean isOwned()
 	{
-		return (this.owner != null);
+		return (owner != JumpingCubeEngine.NO_OWNER);
 	}
 
 	/**
 	 * Returns the owner of this button.
-	 * @return The JumpingCubePlayer reference to the owner of this button (can be null).
+	 * @return The index of the player owning this button, or JumpingCubeEngine.NO_OWNER.
 	 */
-	public JumpingCubePlayer getOwner()
+	public int getOwner()
 	{
 		return owner;
 	}
 
 	/**
-	 * Sets the owner of the button to the given JumpingCubePlayer reference, independent of gameplay considerations.
-	 * @param p The JumpingCubePlayer reference that will become the new owner of this button.
+	 * Sets the owner of the button to the given player, independent of gameplay considerations.
+	 * @param p The index of the player that will become the new owner of this button, or JumpingCubeEngine.NO_OWNER.
 	 */
-	public void changeOwner(JumpingCubePlayer p)
+	public void changeOwner(int p)
 	{
 		owner = p;
 	}
 
 	/**
-	 * Sets the owner of the button to the given JumpingCubePlayer reference and updates the JumpingCubeBoard's count of owned and unowned butons.
-	 * @param p The JumpingCubePlayer reference that will become the new owner of this button.
+	 * Sets the owner of the button to the given player and updates the JumpingCubeBoard's count of owned and unowned butons.
+	 * @param p The index of the player that will become the new owner of this button.
 	 */
-	public void setOwner(JumpingCubePlayer p)
+	public void setOwner(int p)
 	{
-		if(p != null)
+		if(p != owner && p != JumpingCubeEngine.NO_OWNER)
 		{
-			if(owner == null)
-			{
-				jcb.decrementNumBoxesUnowned();
-				if(jcb.getPlayer1().equals(p))
-				{
-					jcb.incrementNumBoxesPlayer1();
-				}
-				else if(jcb.getPlayer2().equals(p))
-				{
-					jcb.incrementNumBoxesPlayer2();
-				}
-			}
-
-			else if(owner != null)
-			{
-				if(!(owner.equals(p)))
-				{
-					if(jcb.getPlayer1().equals(p))
-					{
-						jcb.decrementNumBoxesPlayer2();
-						jcb.incrementNumBoxesPlayer1();
-					}
-					else if(jcb.getPlayer2().equals(p))
-					{
-						jcb.decrementNumBoxesPlayer1();
-						jcb.incrementNumBoxesPlayer2();
-					}
-				}
-			}
+			jcb.transferBox(owner, p);
+			owner = p;
 		}
-		owner = p;
 	}
 
 	/**
@@ -137,7 +135,7 @@ public class JumpingCubeButton extends JButton
 	{
 		if(this.isOwned())
 		{
-			setBackground(owner.getColor());
+			setBackground(jcb.getPlayer(owner).getColor());
 		}
 		else
 		{
@@ -155,6 +153,42 @@ public class JumpingCubeButton extends JButton
 				break;
 			case 5:	setText(FIVE_POINTS);
 				break;
+			case 6:	setText(SIX_POINTS);
+				break;
+			default: setText(String.valueOf(points));
+				break;
+		}
+	}
+
+	/**
+	 * Lays a translucent color and a short label over the button, such as
+	 * a JumpingCubeAnalyzer's score for clicking on it.
+	 * @param c The color to lay over the button, or null for none.
+	 * @param label The text to show in the button's corner, or null for none.
+	 */
+	public void setHeat(Color c, String label)
+	{
+		heat = c;
+		heatLabel = label;
+		repaint();
+	}
+
+	/**
+	 * Paints the button as usual, then the heat color and label, if any.
+	 * @param g The graphics context to paint with.
+	 */
+	protected void paintComponent(Graphics g)
+	{
+		super.paintComponent(g);
+		if(heat != null)
+		{
+			g.setColor(heat);
+			g.fillRect(0, 0, getWidth(), getHeight());
+		}
+		if(heatLabel != null)
+		{
+			g.setColor(Color.black);
+			g.drawString(heatLabel, 3, g.getFontMetrics().getAscent() + 1);
 		}
 	}
 
@@ -167,28 +201,12 @@ public class JumpingCubeButton extends JButton
 		points++;
 		redisplay();
 
-		if(points > sumNeighbors())
+		if(points > neighbors.length)
 		{
 			points = 1;
-
-			if(getNorth() != null)
-			{
-				jcb.queueEvent(getNorth(), owner);
-			}
-
-			if(getSouth() != null)
-			{
-				jcb.queueEvent(getSouth(), owner);
-			}
-
-			if(getEast() != null)
+			for(int n = 0; n < neighbors.length; n++)
 			{
-				jcb.queueEvent(getEast(), owner);
-			}
-
-			if(getWest() != null)
-			{
-				jcb.queueEvent(getWest(), owner);
+				jcb.queueEvent(neighbors[n], owner);
 			}
 		}
 		redisplay();
@@ -205,7 +223,7 @@ public class JumpingCubeButton extends JButton
 
 	/**
 	 * Sets the number of points that this JumpingCubeButton will own.
-	 * @param newPoints Should be an integer between 1 and 5.
+	 * @param newPoints Should be an integer from 1 to the number of neighbors.
 	 */
 	public void setPoints(int newPoints)
 	{
@@ -232,86 +250,20 @@ public class JumpingCubeButton extends JButton
 	}
 	
 	/**
-	 * Sets the JumpingCubeButton's north neighbor.
-	 * @param jcbN The JumpingCubeButton neighbor to the north.
-	 */
-	public void setNorth(JumpingCubeButton jcbN)
-	{
-		northBtn = jcbN;
-	}
-	
-	/**
-	 * Sets the JumpingCubeButton's south neighbor.
-	 * @param jcbS The JumpingCubeButton neighbor to the south.
+	 * Sets the JumpingCubeButton's neighbors, which its points overflow into.
+	 * @param newNeighbors The neighboring buttons, in the order their points are queued.
 	 */
-	public void setSouth(JumpingCubeButton jcbS)
+	public void setNeighbors(JumpingCubeButton[] newNeighbors)
 	{
-		southBtn = jcbS;
+		neighbors = newNeighbors;
 	}
 
 	/**
-	 * Sets the JumpingCubeButton's east neighbor.
-	 * @param jcbE The JumpingCubeButton neighbor to the east.
-	 */
-	public void setEast(JumpingCubeButton jcbE)
-	{
-		eastBtn = jcbE;
-	}
-
-	/**
-	 * Sets the JumpingCubeButton's west neighbor.
-	 * @param jcbW The JumpingCubeButton neighbor to the west.
-	 */
-	public void setWest(JumpingCubeButton jcbW)
-	{
-		westBtn = jcbW;
-	}
-	
-	/**
-	 * Gets the JumpingCubeButton's north neighbor.
-	 * @return The JumpingCubeButton's neighbor to the north.
-	 */
-	public JumpingCubeButton getNorth()
-	{
-		return northBtn;
-	}
-	
-	/**
-	 * Gets the JumpingCubeButton's south neighbor.
-	 * @return The JumpingCubeButton's neighbor to the south.
-	 */
-	public JumpingCubeButton getSouth()
-	{
-		return southBtn;
-	}
-	
-	/**
-	 * Gets the JumpingCubeButton's east neighbor.
-	 * @return The JumpingCubeButton's neighbor to the east.
+	 * Gets the JumpingCubeButton's neighbors.
+	 * @return The neighboring buttons, in the order their points are queued.
 	 */
-	public JumpingCubeButton getEast()
+	public JumpingCubeButton[] getNeighbors()
 	{
-		return eastBtn;
-	}
-	
-	/**
-	 * Gets the JumpingCubeButton's west neighbor.
-	 * @return The JumpingCubeButton's neighbor to the west.
-	 */
-	public JumpingCubeButton getWest()
-	{
-		return westBtn;
-	}
-	
-	private int sumNeighbors()
-	{
-		int sum = 0;
-
-		if(getNorth() != null) sum++;
-		if(getSouth() != null) sum++;
-		if(getEast() != null) sum++;
-		if(getWest() != null) sum++;
-
-		return sum;
+		return neighbors;
 	}
 }
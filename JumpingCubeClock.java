@@ -0,0 +1,263 @@
+/**
+ * JumpingCubeClock.java
+ * @author Daniel Miladinov
+ * @version 1-beta
+ */
+
+import java.util.Random;
+
+/**
+ * The JumpingCubeClock class is a game clock with a time control of a base
+ * time and an increment: every player starts with the base time, only the
+ * clock of the player on turn runs, and each player is given the increment
+ * whenever they finish a move.  A player whose time runs out loses.
+ * <p>
+ * The clock may be read from any thread, such as by a computer player
+ * thinking on a thread of its own, while the game's thread presses it.
+ * <p>
+ * Run on its own, the class plays JumpingCubeAI games against each other
+ * at blitz speed, every move timed on the clock the way a game window
+ * times it, and prints how the time was spent and how many games were
+ * lost on time:
+ * <pre>
+ * java JumpingCubeClock [games] [size] [base ms] [increment ms]
+ * </pre>
+ */
+public class JumpingCubeClock
+{
+	/** The names of the time controls offered in a game window.*/
+	public static final String[] CONTROL_NAMES = {"None", "1 min + 1 s", "3 min + 2 s", "5 min + 3 s", "15 min + 10 s"};
+	/** The base time of each control offered, in milliseconds.*/
+	public static final long[] CONTROL_BASES = {0, 60000, 180000, 300000, 900000};
+	/** The increment of each control offered, in milliseconds.*/
+	public static final long[] CONTROL_INCREMENTS = {0, 1000, 2000, 3000, 10000};
+
+	private long base;
+	private long increment;
+	private long[] remaining;
+	private int running;
+	private long runningSince;
+
+	/**
+	 * The JumpingCubeClock constructor.  No clock runs until start() is called.
+	 * @param numPlayers The number of players.
+	 * @param baseMillis The time every player starts with.
+	 * @param incrementMillis The time added for every move a player finishes.
+	 */
+	public JumpingCubeClock(int numPlayers, long baseMillis, long incrementMillis)
+	{
+		base = baseMillis;
+		increment = incrementMillis;
+		remaining = new long[numPlayers];
+		for(int p = 0; p < numPlayers; p++)
+		{
+			remaining[p] = baseMillis * 1000000L;
+		}
+		running = -1;
+	}
+
+	/**
+	 * Starts the clock of the player on turn at the start of a game.
+	 * @param player The index of the player on turn.
+	 */
+	public synchronized void start(int player)
+	{
+		running = player;
+		runningSince = System.nanoTime();
+	}
+
+	/**
+	 * Stops the clock that is running, gives its player the increment and
+	 * starts the clock of the player now on turn, as when a move is played.
+	 * @param next The index of the player on turn after the move.
+	 */
+	public synchronized void press(int next)
+	{
+		if(running >= 0)
+		{
+			charge();
+			remaining[running] += increment * 1000000L;
+		}
+		running = next;
+		runningSince = System.nanoTime();
+	}
+
+	/**
+	 * Stops every clock, such as when the game is over.
+	 */
+	public synchronized void stop()
+	{
+		if(running >= 0)
+		{
+			charge();
+		}
+		running = -1;
+	}
+
+	/**
+	 * Gets the time a player has left, counting the time used so far on
+	 * the move under way if their clock is running.
+	 * @param player The index of the player.
+	 * @return The time left in milliseconds, 0 once it has run out.
+	 */
+	public synchronized long getRemaining(int player)
+	{
+		long left = remaining[player];
+		if(player == running)
+		{
+			left -= System.nanoTime() - runningSince;
+		}
+		return Math.max(0, left / 1000000L);
+	}
+
+	/**
+	 * Returns whether a player has run out of time.
+	 * @param player The index of the player.
+	 * @return True if the player's time has run out.
+	 */
+	public synchronized boolean isFlagged(int player)
+	{
+		long left = remaining[player];
+		if(player == running)
+		{
+			left -= System.nanoTime() - runningSince;
+		}
+		return left <= 0;
+	}
+
+	/**
+	 * Gets the index of the player whose clock is running.
+	 * @return The index of the player, or -1 if no clock runs.
+	 */
+	public synchronized int getRunning()
+	{
+		return running;
+	}
+
+	/**
+	 * Gets the time every player started with.
+	 * @return The base time in milliseconds.
+	 */
+	public long getBase()
+	{
+		return base;
+	}
+
+	/**
+	 * Gets the time added for every move.
+	 * @return The increment in milliseconds.
+	 */
+	public long getIncrement()
+	{
+		return increment;
+	}
+
+	/**
+	 * Gets the number of players the clock times.
+	 * @return The number of players.
+	 */
+	public int getNumPlayers()
+	{
+		return remaining.length;
+	}
+
+	/**
+	 * Writes a time as minutes and seconds, with tenths of a second under
+	 * ten seconds, the way clocks show it.
+	 * @param millis The time in milliseconds.
+	 * @return The time as m:ss, or s.t under ten seconds.
+	 */
+	public static String format(long millis)
+	{
+		if(millis < 10000)
+		{
+			return (millis / 1000) + "." + (millis / 100) % 10;
+		}
+		long seconds = millis / 1000;
+		return (seconds / 60) + ":" + ((seconds % 60 < 10) ? "0" : "") + seconds % 60;
+	}
+
+	private void charge()
+	{
+		long now = System.nanoTime();
+		remaining[running] -= now - runningSince;
+		runningSince = now;
+	}
+
+	/**
+	 * Plays AI games on the clock and prints how the time was spent.
+	 */
+	public static void main(String args[]) throws Exception
+	{
+		int games = (args.length > 0) ? Integer.parseInt(args[0]) : 10;
+		int size = (args.length > 1) ? Integer.parseInt(args[1]) : JumpingCubeBoard.DEFAULT_ROWS;
+		long baseMillis = (args.length > 2) ? Long.parseLong(args[2]) : 5000;
+		long incrementMillis = (args.length > 3) ? Long.parseLong(args[3]) : 100;
+
+		JumpingCubeHistogram thinks = new JumpingCubeHistogram();
+		JumpingCubeHistogram depths = new JumpingCubeHistogram();
+		JumpingCubeHistogram lowest = new JumpingCubeHistogram();
+		int[] wins = new int[2];
+		int flagged = 0;
+		int moves = 0;
+		for(int g = 0; g < games; g++)
+		{
+			JumpingCubeAI[] ais = new JumpingCubeAI[2];
+			for(int p = 0; p < 2; p++)
+			{
+				ais[p] = new JumpingCubeAI(JumpingCubeComputer.DEFAULT_DEPTH, 0);
+			}
+			JumpingCubeEngine game = new JumpingCubeEngine(size, size);
+			Random random = new Random(g);
+			for(int i = 0; i < 2; i++)
+			{
+				int cell;
+				do
+				{
+					cell = random.nextInt(game.getNumBoxes());
+				}
+				while(!game.isLegal(cell));
+				game.applyMove(cell);
+			}
+			JumpingCubeClock clock = new JumpingCubeClock(2, baseMillis, incrementMillis);
+			long least = baseMillis;
+			int loser = -1;
+			clock.start(game.getActivePlayer());
+			while(game.getWinner() == JumpingCubeEngine.NO_WINNER)
+			{
+				int p = game.getActivePlayer();
+				long started = System.nanoTime();
+				int cell = ais[p].chooseMoveOnClock(game, clock.getRemaining(p), clock.getIncrement());
+				if(clock.isFlagged(p))
+				{
+					loser = p;
+					break;
+				}
+				game.applyMove(cell);
+				least = Math.min(least, clock.getRemaining(p));
+				clock.press(game.getActivePlayer());
+				thinks.record((System.nanoTime() - started) / 1000000);
+				depths.record(ais[p].getLastDepth());
+				moves++;
+			}
+			clock.stop();
+			lowest.record(least);
+			if(loser >= 0)
+			{
+				flagged++;
+				wins[1 - loser]++;
+			}
+			else
+			{
+				wins[game.getWinner()]++;
+			}
+		}
+		System.out.println(games + " games of " + size + "x" + size + " at " + format(baseMillis) + " + "
+				+ format(incrementMillis) + ": " + moves + " moves, Player 1 won " + wins[0] + ", Player 2 " + wins[1]
+				+ ", " + flagged + " lost on time");
+		System.out.println("think p50 " + thinks.getValueAtPercentile(50) + " ms, p99 " + thinks.getValueAtPercentile(99)
+				+ " ms, max " + thinks.getMax() + " ms; depth p50 " + depths.getValueAtPercentile(50)
+				+ "; least time left in a game p50 " + lowest.getValueAtPercentile(50) + " ms, min "
+				+ lowest.getMin() + " ms");
+	}
+}
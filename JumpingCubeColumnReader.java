@@ -0,0 +1,229 @@
+/**
+ * JumpingCubeColumnReader.java
+ * @author Daniel Miladinov
+ * @version 1-beta
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * The JumpingCubeColumnReader class reads the positions a
+ * JumpingCubeColumnWriter wrote, by mapping each column file into memory.
+ * A column can be scanned on its own through getColumn(), which hands
+ * back the mapped bytes themselves, so counting results or owners reads
+ * only that column's file, and nothing is decoded that is not asked for.
+ * A column file is mapped in segments of whole rows of up to a gigabyte,
+ * since one mapping cannot be larger than 2 GB.
+ */
+public class JumpingCubeColumnReader
+{
+	private static final long SEGMENT_SIZE = 1L << 30;
+
+	private int rows;
+	private int cols;
+	private int numBoxes;
+	private long numRows;
+	private long[] rowsPerSegment;
+	private MappedByteBuffer[][] segments;
+	private int[] owner;
+	private int[] points;
+
+	/**
+	 * The JumpingCubeColumnReader constructor.  Maps every column, up to the
+	 * number of rows all of them hold.
+	 * @param dir The directory of the column files.
+	 * @throws IOException If a file is missing or is not a column file.
+	 */
+	public JumpingCubeColumnReader(File dir) throws IOException
+	{
+		RandomAccessFile[] files = new RandomAccessFile[JumpingCubeColumnWriter.NUM_COLUMNS];
+		try
+		{
+			numRows = Long.MAX_VALUE;
+			for(int c = 0; c < files.length; c++)
+			{
+				files[c] = new RandomAccessFile(new File(dir, JumpingCubeColumnWriter.FILE_NAMES[c]), "r");
+				if(files[c].length() < JumpingCubeColumnWriter.HEADER_SIZE || files[c].readInt() != JumpingCubeColumnWriter.MAGIC)
+				{
+					throw new IOException(JumpingCubeColumnWriter.FILE_NAMES[c] + " is not a column file");
+				}
+				int r = files[c].readShort();
+				int k = files[c].readShort();
+				int width = files[c].readInt();
+				if(c == 0)
+				{
+					rows = r;
+					cols = k;
+					numBoxes = r * k;
+				}
+				if(r != rows || k != cols || width != JumpingCubeColumnWriter.getWidth(c, numBoxes))
+				{
+					throw new IOException(JumpingCubeColumnWriter.FILE_NAMES[c] + " does not match the other columns");
+				}
+				numRows = Math.min(numRows, (files[c].length() - JumpingCubeColumnWriter.HEADER_SIZE) / width);
+			}
+			rowsPerSegment = new long[files.length];
+			segments = new MappedByteBuffer[files.length][];
+			for(int c = 0; c < files.length; c++)
+			{
+				int width = JumpingCubeColumnWriter.getWidth(c, numBoxes);
+				rowsPerSegment[c] = SEGMENT_SIZE / width;
+				int n = (int)((numRows + rowsPerSegment[c] - 1) / rowsPerSegment[c]);
+				segments[c] = new MappedByteBuffer[n];
+				FileChannel channel = files[c].getChannel();
+				for(int s = 0; s < n; s++)
+				{
+					long first = s * rowsPerSegment[c];
+					long count = Math.min(rowsPerSegment[c], numRows - first);
+					segments[c][s] = channel.map(FileChannel.MapMode.READ_ONLY,
+							JumpingCubeColumnWriter.HEADER_SIZE + first * width, count * width);
+				}
+			}
+		}
+		finally
+		{
+			// A mapping stays valid once its file is closed.
+			for(int c = 0; c < files.length; c++)
+			{
+				if(files[c] != null)
+				{
+					files[c].close();
+				}
+			}
+		}
+		owner = new int[numBoxes];
+		points = new int[numBoxes];
+	}
+
+	/**
+	 * Gets the number of positions.
+	 * @return The number of rows every column holds.
+	 */
+	public long getNumRows()
+	{
+		return numRows;
+	}
+
+	/**
+	 * Gets the number of rows of the boards.
+	 * @return The number of rows.
+	 */
+	public int getRows()
+	{
+		return rows;
+	}
+
+	/**
+	 * Gets the number of columns of the boards.
+	 * @return The number of columns.
+	 */
+	public int getCols()
+	{
+		return cols;
+	}
+
+	/**
+	 * Gets the number of segments a column is mapped in.
+	 * @param column JumpingCubeColumnWriter.OWNERS, POINTS, TURN, MOVE or RESULT.
+	 * @return The number of segments.
+	 */
+	public int getNumSegments(int column)
+	{
+		return segments[column].length;
+	}
+
+	/**
+	 * Gets one segment of a column, to scan it.  Its rows follow those of
+	 * the segment before, each JumpingCubeColumnWriter.getWidth() bytes.
+	 * @param column JumpingCubeColumnWriter.OWNERS, POINTS, TURN, MOVE or RESULT.
+	 * @param segment The index of the segment.
+	 * @return The mapped bytes of the segment, positioned at its first row.
+	 */
+	public ByteBuffer getColumn(int column, int segment)
+	{
+		return segments[column][segment].duplicate();
+	}
+
+	/**
+	 * Gets the owner of a box in a position.
+	 * @param row The index of the position.
+	 * @param cell The cell index of the box.
+	 * @return The index of the owner, or JumpingCubeEngine.NO_OWNER.
+	 */
+	public int getOwner(long row, int cell)
+	{
+		return get(JumpingCubeColumnWriter.OWNERS, row, cell) - 1;
+	}
+
+	/**
+	 * Gets the points of a box in a position.
+	 * @param row The index of the position.
+	 * @param cell The cell index of the box.
+	 * @return The point value of the box.
+	 */
+	public int getPoints(long row, int cell)
+	{
+		return get(JumpingCubeColumnWriter.POINTS, row, cell);
+	}
+
+	/**
+	 * Gets the player on turn in a position.
+	 * @param row The index of the position.
+	 * @return The index of the player.
+	 */
+	public int getSideToMove(long row)
+	{
+		return get(JumpingCubeColumnWriter.TURN, row, 0);
+	}
+
+	/**
+	 * Gets the move played in a position.
+	 * @param row The index of the position.
+	 * @return The cell index of the move.
+	 */
+	public int getMove(long row)
+	{
+		return get(JumpingCubeColumnWriter.MOVE, row, 0);
+	}
+
+	/**
+	 * Gets the result of the game a position was played in.
+	 * @param row The index of the position.
+	 * @return The index of the winner, or JumpingCubeEngine.NO_WINNER.
+	 */
+	public int getResult(long row)
+	{
+		int result = get(JumpingCubeColumnWriter.RESULT, row, 0);
+		return (result == JumpingCubeColumnWriter.NO_RESULT) ? JumpingCubeEngine.NO_WINNER : result;
+	}
+
+	/**
+	 * Sets a game to a position.
+	 * @param row The index of the position.
+	 * @param game Where to put it, with this reader's board.
+	 */
+	public void read(long row, JumpingCubeEngine game)
+	{
+		ByteBuffer owners = segments[JumpingCubeColumnWriter.OWNERS][(int)(row / rowsPerSegment[JumpingCubeColumnWriter.OWNERS])];
+		ByteBuffer pointsColumn = segments[JumpingCubeColumnWriter.POINTS][(int)(row / rowsPerSegment[JumpingCubeColumnWriter.POINTS])];
+		int at = (int)(row % rowsPerSegment[JumpingCubeColumnWriter.OWNERS]) * numBoxes;
+		for(int cell = 0; cell < numBoxes; cell++)
+		{
+			owner[cell] = owners.get(at + cell) - 1;
+			points[cell] = pointsColumn.get(at + cell);
+		}
+		game.setPosition(owner, points, getSideToMove(row), 0);
+	}
+
+	private int get(int column, long row, int cell)
+	{
+		long perSegment = rowsPerSegment[column];
+		int width = JumpingCubeColumnWriter.getWidth(column, numBoxes);
+		return segments[column][(int)(row / perSegment)].get((int)(row % perSegment) * width + cell) & 0xFF;
+	}
+}
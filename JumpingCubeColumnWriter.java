@@ -0,0 +1,417 @@
+/**
+ * JumpingCubeColumnWriter.java
+ * @author Daniel Miladinov
+ * @version 1-beta
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Random;
+
+/**
+ * The JumpingCubeColumnWriter class appends self-play positions to a
+ * directory of column files, one file per column and every value of a
+ * column the same width, so a JumpingCubeColumnReader can map one column
+ * and scan it without touching the others:
+ * <ul>
+ * <li>owners.col: one byte per box, the owner's index plus one, 0 for none</li>
+ * <li>points.col: one byte per box</li>
+ * <li>turn.col: the index of the player on turn</li>
+ * <li>move.col: the cell index of the move played</li>
+ * <li>result.col: the index of the player who won the game, or NO_RESULT</li>
+ * </ul>
+ * Each file starts with a header of HEADER_SIZE bytes: MAGIC, the rows and
+ * columns of the board as shorts, and the width of the column.  Row i of
+ * the data, position i, is at HEADER_SIZE + i * width in every file.
+ * <p>
+ * A game's positions are gathered in a Rows object kept by the thread
+ * playing it, since the result is known only when the game ends, then
+ * written at once.  Each column is copied into its own direct buffer and
+ * written to its FileChannel when the buffer fills, so a write costs a few
+ * bulk copies and a system call per column every few thousand positions.
+ * A writer left with a partly written game, such as by a crash, has every
+ * column cut back to the rows they all hold when it is opened again.
+ * <p>
+ * Run on its own, the class writes a number of random games, reads them
+ * back to check them, and times writing and scanning:
+ * <pre>
+ * java JumpingCubeColumnWriter [directory] [positions] [size]
+ * </pre>
+ */
+public class JumpingCubeColumnWriter
+{
+	/** The file name of each column, by index.*/
+	public static final String[] FILE_NAMES = {"owners.col", "points.col", "turn.col", "move.col", "result.col"};
+	/** The column of box owners.*/
+	public static final int OWNERS = 0;
+	/** The column of box points.*/
+	public static final int POINTS = 1;
+	/** The column of players on turn.*/
+	public static final int TURN = 2;
+	/** The column of moves played.*/
+	public static final int MOVE = 3;
+	/** The column of game results.*/
+	public static final int RESULT = 4;
+	/** The number of columns.*/
+	public static final int NUM_COLUMNS = 5;
+
+	/** The first int of every column file.*/
+	public static final int MAGIC = 0x4A434331;
+	/** The number of bytes before the first row of a column file.*/
+	public static final int HEADER_SIZE = 16;
+	/** The result of a game that ended without a winner.*/
+	public static final int NO_RESULT = 0xFF;
+
+	private static final int BUFFER_ROWS = 8192;
+
+	private int rows;
+	private int cols;
+	private int numBoxes;
+	private FileChannel[] channels;
+	private ByteBuffer[] buffers;
+	private long numRows;
+
+	/**
+	 * An inner class which holds the positions of one game until it ends.
+	 * Each thread playing games keeps its own.
+	 */
+	public static class Rows
+	{
+		byte[] owners;
+		byte[] points;
+		byte[] turns;
+		byte[] moves;
+		int n;
+		int numBoxes;
+
+		/**
+		 * The Rows constructor.
+		 * @param numBoxes The number of boxes of the board.
+		 */
+		public Rows(int numBoxes)
+		{
+			this.numBoxes = numBoxes;
+			owners = new byte[numBoxes * 64];
+			points = new byte[numBoxes * 64];
+			turns = new byte[64];
+			moves = new byte[64];
+		}
+
+		/**
+		 * Adds a position and the move about to be played in it.
+		 * @param game The position.
+		 * @param move The cell index of the move played.
+		 */
+		public void add(JumpingCubeEngine game, int move)
+		{
+			if(n == turns.length)
+			{
+				owners = grow(owners, owners.length * 2);
+				points = grow(points, points.length * 2);
+				turns = grow(turns, turns.length * 2);
+				moves = grow(moves, moves.length * 2);
+			}
+			int at = n * numBoxes;
+			for(int cell = 0; cell < numBoxes; cell++)
+			{
+				owners[at + cell] = (byte)(game.getOwner(cell) + 1);
+				points[at + cell] = (byte)game.getPoints(cell);
+			}
+			turns[n] = (byte)game.getActivePlayer();
+			moves[n] = (byte)move;
+			n++;
+		}
+
+		/**
+		 * Gets the number of positions added since the last clear().
+		 * @return The number of positions.
+		 */
+		public int size()
+		{
+			return n;
+		}
+
+		/**
+		 * Forgets every position, for the next game.
+		 */
+		public void clear()
+		{
+			n = 0;
+		}
+
+		private static byte[] grow(byte[] a, int size)
+		{
+			byte[] bigger = new byte[size];
+			System.arraycopy(a, 0, bigger, 0, a.length);
+			return bigger;
+		}
+	}
+
+	/**
+	 * The JumpingCubeColumnWriter constructor.  Creates the directory and
+	 * column files if need be, or opens them to append to.
+	 * @param dir The directory of the column files.
+	 * @param rows The number of rows of every board.
+	 * @param cols The number of columns of every board.
+	 * @throws IOException If the files cannot be opened, or hold boards of another size.
+	 */
+	public JumpingCubeColumnWriter(File dir, int rows, int cols) throws IOException
+	{
+		this.rows = rows;
+		this.cols = cols;
+		numBoxes = rows * cols;
+		dir.mkdirs();
+		channels = new FileChannel[NUM_COLUMNS];
+		buffers = new ByteBuffer[NUM_COLUMNS];
+		numRows = Long.MAX_VALUE;
+		for(int c = 0; c < NUM_COLUMNS; c++)
+		{
+			channels[c] = new RandomAccessFile(new File(dir, FILE_NAMES[c]), "rw").getChannel();
+			int width = getWidth(c, numBoxes);
+			ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+			if(channels[c].size() < HEADER_SIZE)
+			{
+				header.putInt(MAGIC).putShort((short)rows).putShort((short)cols).putInt(width).putInt(0);
+				header.flip();
+				channels[c].truncate(0);
+				channels[c].write(header, 0);
+			}
+			else
+			{
+				channels[c].read(header, 0);
+				header.flip();
+				if(header.getInt() != MAGIC || header.getShort() != rows || header.getShort() != cols || header.getInt() != width)
+				{
+					close();
+					throw new IOException(FILE_NAMES[c] + " does not hold " + rows + "x" + cols + " boards");
+				}
+			}
+			numRows = Math.min(numRows, (channels[c].size() - HEADER_SIZE) / width);
+			buffers[c] = ByteBuffer.allocateDirect(BUFFER_ROWS * width);
+		}
+		for(int c = 0; c < NUM_COLUMNS; c++)
+		{
+			channels[c].truncate(HEADER_SIZE + numRows * getWidth(c, numBoxes));
+			channels[c].position(channels[c].size());
+		}
+	}
+
+	/**
+	 * Gets the width of a column.
+	 * @param column OWNERS, POINTS, TURN, MOVE or RESULT.
+	 * @param numBoxes The number of boxes of the board.
+	 * @return The number of bytes each row takes in the column.
+	 */
+	public static int getWidth(int column, int numBoxes)
+	{
+		return (column == OWNERS || column == POINTS) ? numBoxes : 1;
+	}
+
+	/**
+	 * Makes a Rows for a thread to gather its games in.
+	 * @return Room for the positions of a game on this writer's board.
+	 */
+	public Rows newRows()
+	{
+		return new Rows(numBoxes);
+	}
+
+	/**
+	 * Appends the positions of a finished game.  May be called from any thread.
+	 * @param game The positions of the game.
+	 * @param winner The index of the player who won, or JumpingCubeEngine.NO_WINNER.
+	 * @throws IOException If the files cannot be written.
+	 */
+	public synchronized void write(Rows game, int winner) throws IOException
+	{
+		byte result = (byte)((winner == JumpingCubeEngine.NO_WINNER) ? NO_RESULT : winner);
+		for(int row = 0; row < game.n; )
+		{
+			if(!buffers[TURN].hasRemaining())
+			{
+				flush();
+			}
+			int n = Math.min(game.n - row, buffers[TURN].remaining());
+			buffers[OWNERS].put(game.owners, row * numBoxes, n * numBoxes);
+			buffers[POINTS].put(game.points, row * numBoxes, n * numBoxes);
+			buffers[TURN].put(game.turns, row, n);
+			buffers[MOVE].put(game.moves, row, n);
+			for(int i = 0; i < n; i++)
+			{
+				buffers[RESULT].put(result);
+			}
+			row += n;
+		}
+		numRows += game.n;
+	}
+
+	/**
+	 * Writes every buffered position to the files.
+	 * @throws IOException If the files cannot be written.
+	 */
+	public synchronized void flush() throws IOException
+	{
+		for(int c = 0; c < NUM_COLUMNS; c++)
+		{
+			buffers[c].flip();
+			while(buffers[c].hasRemaining())
+			{
+				channels[c].write(buffers[c]);
+			}
+			buffers[c].clear();
+		}
+	}
+
+	/**
+	 * Writes every buffered position and closes the files.
+	 * @throws IOException If the files cannot be written.
+	 */
+	public synchronized void close() throws IOException
+	{
+		try
+		{
+			if(buffers[NUM_COLUMNS - 1] != null)
+			{
+				flush();
+			}
+		}
+		finally
+		{
+			for(int c = 0; c < NUM_COLUMNS; c++)
+			{
+				if(channels[c] != null)
+				{
+					channels[c].close();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Gets the number of positions in the files, counting those still buffered.
+	 * @return The number of rows.
+	 */
+	public synchronized long getNumRows()
+	{
+		return numRows;
+	}
+
+	/**
+	 * Writes random games, checks every position read back, then times
+	 * writing against self-play and scanning one column against all.
+	 */
+	public static void main(String args[]) throws Exception
+	{
+		File dir = new File((args.length > 0) ? args[0] : "columns");
+		long positions = (args.length > 1) ? Long.parseLong(args[1]) : 1000000;
+		int size = (args.length > 2) ? Integer.parseInt(args[2]) : JumpingCubeBoard.DEFAULT_ROWS;
+		for(int c = 0; c < NUM_COLUMNS; c++)
+		{
+			new File(dir, FILE_NAMES[c]).delete();
+		}
+
+		// Random games, so the writer is timed rather than the AI.
+		JumpingCubeColumnWriter writer = new JumpingCubeColumnWriter(dir, size, size);
+		JumpingCubeEngine game = new JumpingCubeEngine(size, size);
+		Rows rows = writer.newRows();
+		Random random = new Random(positions);
+		long[] hashes = new long[(int)Math.min(positions, 1 << 24)];
+		long played = 0;
+		long writeNanos = 0;
+		while(played < positions)
+		{
+			game.reset();
+			rows.clear();
+			while(game.getWinner() == JumpingCubeEngine.NO_WINNER && played + rows.size() < positions)
+			{
+				int cell;
+				do
+				{
+					cell = random.nextInt(game.getNumBoxes());
+				}
+				while(!game.isLegal(cell));
+				long started = System.nanoTime();
+				rows.add(game, cell);
+				writeNanos += System.nanoTime() - started;
+				if(played + rows.size() <= hashes.length)
+				{
+					hashes[(int)(played + rows.size() - 1)] = game.getHash();
+				}
+				game.applyMove(cell);
+			}
+			long started = System.nanoTime();
+			writer.write(rows, game.getWinner());
+			writeNanos += System.nanoTime() - started;
+			played += rows.size();
+		}
+		long started = System.nanoTime();
+		writer.close();
+		writeNanos += System.nanoTime() - started;
+		long bytes = 0;
+		for(int c = 0; c < NUM_COLUMNS; c++)
+		{
+			bytes += new File(dir, FILE_NAMES[c]).length();
+		}
+		System.out.println(played + " positions of " + size + "x" + size + " written, " + bytes / played + " bytes each, "
+				+ played * 1000000000L / Math.max(1, writeNanos) + " positions/s, "
+				+ bytes * 1000 / Math.max(1, writeNanos) + " MB/s");
+
+		JumpingCubeColumnReader reader = new JumpingCubeColumnReader(dir);
+		JumpingCubeEngine shown = new JumpingCubeEngine(size, size);
+		for(long row = 0; row < reader.getNumRows() && row < hashes.length; row++)
+		{
+			reader.read(row, shown);
+			if(shown.getHash() != hashes[(int)row] || !shown.isLegal(reader.getMove(row)))
+			{
+				throw new IllegalStateException("row " + row + " does not match");
+			}
+		}
+		System.out.println(reader.getNumRows() + " positions read back and checked");
+
+		for(int run = 0; run < 3; run++)
+		{
+			started = System.nanoTime();
+			long[] results = new long[256];
+			for(int s = 0; s < reader.getNumSegments(RESULT); s++)
+			{
+				ByteBuffer column = reader.getColumn(RESULT, s);
+				while(column.hasRemaining())
+				{
+					results[column.get() & 0xFF]++;
+				}
+			}
+			long resultNanos = System.nanoTime() - started;
+
+			started = System.nanoTime();
+			long owned = 0;
+			for(int s = 0; s < reader.getNumSegments(OWNERS); s++)
+			{
+				ByteBuffer column = reader.getColumn(OWNERS, s);
+				while(column.hasRemaining())
+				{
+					owned += (column.get() == 1) ? 1 : 0;
+				}
+			}
+			long ownersNanos = System.nanoTime() - started;
+
+			started = System.nanoTime();
+			long sum = 0;
+			for(long row = 0; row < reader.getNumRows(); row++)
+			{
+				reader.read(row, shown);
+				sum += shown.getNumBoxesOwned(0);
+			}
+			long decodeNanos = System.nanoTime() - started;
+			if(run == 2)
+			{
+				System.out.println("result column scanned in " + resultNanos / 1000000 + " ms (Player 1 won "
+						+ results[0] + ", Player 2 " + results[1] + "), owners column in " + ownersNanos / 1000000
+						+ " ms (" + owned / reader.getNumRows() + " boxes for Player 1 a position), every position decoded in "
+						+ decodeNanos / 1000000 + " ms (" + sum / reader.getNumRows() + ")");
+			}
+		}
+	}
+}
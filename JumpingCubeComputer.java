@@ -0,0 +1,300 @@
+/**
+ * JumpingCubeComputer.java
+ * @author Daniel Miladinov
+ * @version 1-beta
+ */
+
+import java.util.Random;
+
+/**
+ * The JumpingCubeComputer class is a computer opponent built on a
+ * JumpingCubeAI, which keeps thinking while its opponent does.  After
+ * each of its moves it looks up the reply its search expected, and goes on
+ * searching the position that reply would lead to until the real reply
+ * arrives.  If the opponent plays the expected reply, the search already
+ * under way simply carries on, and the time it has run counts towards the
+ * time budget, so the computer answers sooner.  If not, the search is
+ * cancelled, and a new one starts on the real position, with the
+ * transposition table still warm from everything pondered so far.
+ * <p>
+ * Run on its own, the class plays games against a simulated opponent who
+ * takes a set time to think, with and without pondering, and prints how
+ * long the computer kept that opponent waiting in each case:
+ * <pre>
+ * java JumpingCubeComputer [games] [size] [budget ms] [opponent ms]
+ * </pre>
+ */
+public class JumpingCubeComputer
+{
+	/** The deepest the computer searches in a game window.*/
+	public static final int DEFAULT_DEPTH = 12;
+	/** The time the computer spends on a move in a game window, in milliseconds.*/
+	public static final long DEFAULT_TIME_BUDGET = 1000;
+
+	private JumpingCubeAI ai;
+	private boolean pondering;
+	private JumpingCubeClock clock;
+
+	private Thread ponderThread;
+	private JumpingCubeEngine ponderPosition;
+	private long ponderStarted;
+	private int ponderResult;
+
+	private int moves;
+	private int ponderHits;
+	private long lastThinkNanos;
+	private boolean lastPonderHit;
+
+	/**
+	 * The JumpingCubeComputer constructor.
+	 * @param ai The JumpingCubeAI to play with; the computer must be the only one using it.
+	 * @param pondering Whether to think on the opponent's time.
+	 */
+	public JumpingCubeComputer(JumpingCubeAI ai, boolean pondering)
+	{
+		this.ai = ai;
+		this.pondering = pondering;
+	}
+
+	/**
+	 * Times the computer's moves on a game clock rather than by the time
+	 * budget of its JumpingCubeAI.  The time for each move is then taken
+	 * from what the player on turn has left on the clock.
+	 * @param c The clock the game is timed on, or null to go back to the time budget.
+	 */
+	public synchronized void setClock(JumpingCubeClock c)
+	{
+		clock = c;
+	}
+
+	/**
+	 * Chooses a move for the player on turn, picking up the search pondered
+	 * since the last move if the opponent played the reply it expected.
+	 * The game itself is not changed.
+	 * @param game The position to play in.
+	 * @return The cell index of the chosen move, or -1 if the game is over.
+	 */
+	public synchronized int chooseMove(JumpingCubeEngine game)
+	{
+		long started = System.nanoTime();
+		int move;
+		lastPonderHit = false;
+		if(ponderThread != null && ponderPosition.getHash() == game.getHash()
+			&& ponderPosition.getMoveNumber() == game.getMoveNumber())
+		{
+			// The time pondered so far counts towards the budget, but a
+			// search is always given until now to finish its next check.
+			// The pondered search never sets a deadline of its own, so this
+			// one holds even if it has not yet started to run, and a clock
+			// cannot run out while it searches on.
+			if(clock != null)
+			{
+				long left = clock.getRemaining(game.getActivePlayer());
+				long hard = started + JumpingCubeAI.getHardLimit(game, left, clock.getIncrement()) * 1000000L;
+				long soft = ponderStarted + JumpingCubeAI.getSoftLimit(game, left, clock.getIncrement()) * 1000000L;
+				ai.setDeadline(Math.max(started, Math.min(hard, soft)));
+			}
+			else if(ai.getTimeBudget() > 0)
+			{
+				ai.setDeadline(Math.max(started, ponderStarted + ai.getTimeBudget() * 1000000L));
+			}
+			join();
+			move = ponderResult;
+			lastPonderHit = true;
+			ponderHits++;
+		}
+		else
+		{
+			stopPondering();
+			ai.setCancelled(false);
+			if(clock != null)
+			{
+				move = ai.chooseMoveOnClock(game, clock.getRemaining(game.getActivePlayer()), clock.getIncrement());
+			}
+			else
+			{
+				move = ai.chooseMove(game);
+			}
+		}
+		moves++;
+		lastThinkNanos = System.nanoTime() - started;
+		return move;
+	}
+
+	/**
+	 * Starts thinking on the opponent's time.  Call this once the move the
+	 * computer chose has been played, with the opponent on turn.
+	 * @param game The position the opponent is to move in; it is copied, so it may change afterwards.
+	 */
+	public synchronized void ponder(JumpingCubeEngine game)
+	{
+		stopPondering();
+		if(!pondering || game.getWinner() != JumpingCubeEngine.NO_WINNER)
+		{
+			return;
+		}
+		ponderPosition = new JumpingCubeEngine(game.getTopology(), game.getNumPlayers());
+		ponderPosition.copyFrom(game);
+		int reply = ai.getHashMove(game);
+		if(reply >= 0)
+		{
+			ponderPosition.applyMove(reply);
+		}
+		if(ponderPosition.getWinner() != JumpingCubeEngine.NO_WINNER)
+		{
+			return;
+		}
+		// Without an expected reply the opponent's own position is searched,
+		// which will not be a hit but still fills the table with their replies.
+		// The deadline is set here, before the thread starts, rather than by
+		// the search, which may not get to run until after chooseMove() has
+		// already moved it on a ponder hit.
+		ai.setCancelled(false);
+		ai.setDeadline(Long.MAX_VALUE);
+		ponderStarted = System.nanoTime();
+		ponderThread = new Thread("JumpingCubeComputer-ponder")
+		{
+			public void run()
+			{
+				ponderResult = ai.chooseMoveByDeadline(ponderPosition);
+			}
+		};
+		ponderThread.setDaemon(true);
+		ponderThread.setPriority(Thread.MIN_PRIORITY);
+		ponderThread.start();
+	}
+
+	/**
+	 * Stops thinking, from any thread, such as when the game is abandoned.
+	 * A move being chosen returns the best found so far.
+	 */
+	public void stop()
+	{
+		ai.setCancelled(true);
+	}
+
+	/**
+	 * Gets how long the last chooseMove() kept the opponent waiting.
+	 * @return The time taken in nanoseconds.
+	 */
+	public long getLastThinkNanos()
+	{
+		return lastThinkNanos;
+	}
+
+	/**
+	 * Returns whether the opponent played the reply pondered before the last move.
+	 * @return True if the last move picked up a pondered search.
+	 */
+	public boolean wasPonderHit()
+	{
+		return lastPonderHit;
+	}
+
+	/**
+	 * Gets the number of moves chosen.
+	 * @return The number of calls to chooseMove().
+	 */
+	public int getMoves()
+	{
+		return moves;
+	}
+
+	/**
+	 * Gets the number of moves that picked up a pondered search.
+	 * @return The number of ponder hits.
+	 */
+	public int getPonderHits()
+	{
+		return ponderHits;
+	}
+
+	private void stopPondering()
+	{
+		if(ponderThread != null)
+		{
+			ai.setCancelled(true);
+			join();
+			ai.setCancelled(false);
+		}
+	}
+
+	private void join()
+	{
+		try
+		{
+			ponderThread.join();
+		}
+		catch(InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+		}
+		ponderThread = null;
+	}
+
+	/**
+	 * Measures the time the computer keeps a simulated opponent waiting,
+	 * with and without pondering.
+	 */
+	public static void main(String args[]) throws Exception
+	{
+		int games = (args.length > 0) ? Integer.parseInt(args[0]) : 4;
+		int size = (args.length > 1) ? Integer.parseInt(args[1]) : JumpingCubeBoard.DEFAULT_ROWS;
+		long budget = (args.length > 2) ? Long.parseLong(args[2]) : 300;
+		long opponentMillis = (args.length > 3) ? Long.parseLong(args[3]) : 500;
+		for(int run = 0; run < 2; run++)
+		{
+			boolean ponder = (run == 1);
+			JumpingCubeHistogram waits = new JumpingCubeHistogram();
+			int moves = 0;
+			int hits = 0;
+			for(int g = 0; g < games; g++)
+			{
+				JumpingCubeComputer computer = new JumpingCubeComputer(new JumpingCubeAI(DEFAULT_DEPTH, budget), ponder);
+				JumpingCubeAI opponent = new JumpingCubeAI(DEFAULT_DEPTH, opponentMillis / 2);
+				JumpingCubeEngine game = new JumpingCubeEngine(size, size);
+				Random random = new Random(g);
+				for(int i = 0; i < 2; i++)
+				{
+					int cell;
+					do
+					{
+						cell = random.nextInt(game.getNumBoxes());
+					}
+					while(!game.isLegal(cell));
+					game.applyMove(cell);
+				}
+				while(game.getWinner() == JumpingCubeEngine.NO_WINNER)
+				{
+					if(game.getActivePlayer() == 0)
+					{
+						int cell = computer.chooseMove(game);
+						waits.record(computer.getLastThinkNanos() / 1000);
+						game.applyMove(cell);
+						computer.ponder(game);
+					}
+					else
+					{
+						// The opponent thinks for half its time and sits
+						// idle for the rest, as a person would.
+						long started = System.currentTimeMillis();
+						int cell = opponent.chooseMove(game);
+						long left = opponentMillis - (System.currentTimeMillis() - started);
+						if(left > 0)
+						{
+							Thread.sleep(left);
+						}
+						game.applyMove(cell);
+					}
+				}
+				computer.stop();
+				moves += computer.getMoves();
+				hits += computer.getPonderHits();
+			}
+			System.out.println((ponder ? "pondering:     " : "not pondering: ") + moves + " moves, "
+					+ hits + " ponder hits, wait mean " + Math.round(waits.getMean() / 1000) + " ms, p50 "
+					+ waits.getValueAtPercentile(50) / 1000 + " ms, p90 "
+					+ waits.getValueAtPercentile(90) / 1000 + " ms, max " + waits.getMax() / 1000 + " ms");
+		}
+	}
+}
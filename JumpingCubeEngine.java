@@ -0,0 +1,833 @@
+/**
+ * JumpingCubeEngine.java
+ * @author Daniel Miladinov
+ * @version 1-beta
+ */
+
+/**
+ * The JumpingCubeEngine class is a headless version of the game rules
+ * played out by the JumpingCubeBoard and its JumpingCubeButtons.  Boxes
+ * are addressed by a single cell index (row * cols + col), players by
+ * their index (0 for Player 1, 1 for Player 2, and so on), and overflowing
+ * boxes are resolved in exactly the same order as the JumpingCubeBoard
+ * does: first-in, first-out, north, south, east and then west, checking
+ * for a winner after every queued point.  Nothing here touches Swing, so
+ * it can be used by servers, tools and computer players alike.
+ * <p>
+ * A game may have from MIN_PLAYERS to MAX_PLAYERS players, who move in
+ * turn.  A player who has lost every box they owned, once no unowned box
+ * is left to start again from, is out and their turns are skipped.  With
+ * two players nobody is ever skipped, since the other player then owns
+ * every box and has won.
+ * <p>
+ * The boxes need not be on a grid: a game can be played on any
+ * JumpingCubeTopology, such as a torus or a hex grid, where each box
+ * overflows into its neighbors in the order the topology lists them and
+ * holds as many points as it has neighbors.
+ */
+public class JumpingCubeEngine
+{
+	/** The number of players in a JumpingCubeEngine game unless another number is given.*/
+	public static final int NUM_PLAYERS = 2;
+	/** The fewest players a JumpingCubeEngine game can have.*/
+	public static final int MIN_PLAYERS = 2;
+	/** The most players a JumpingCubeEngine game can have.*/
+	public static final int MAX_PLAYERS = 8;
+	/** The owner index of a box which no player has clicked on yet.*/
+	public static final int NO_OWNER = -1;
+	/** The winner index of a game that is still being played.*/
+	public static final int NO_WINNER = -1;
+
+	private static final int MAX_POINTS = 16;
+	private static final long[] ZOBRIST = zobristKeys(JumpingCubeBoard.MAX_ROWS * JumpingCubeBoard.MAX_COLS * (MAX_PLAYERS + 1) * MAX_POINTS + MAX_PLAYERS);
+	private static final int SIDE_KEYS = ZOBRIST.length - MAX_PLAYERS;
+
+	private JumpingCubeTopology topology;
+	private int numBoxes;
+	private int numPlayers;
+
+	private int[] points;
+	private int[] owner;
+	private int[] capacity;
+	private int[] firstNeighbor;
+	private int[] neighbors;
+
+	private int[] numBoxesOwned;
+	private int numBoxesUnowned;
+
+	// Sets of cells as bitmasks, maskWords longs per set, one set per
+	// player, kept up to date as boxes change.
+	private int maskWords;
+	private long[] ownedMask;
+	private long[] criticalMask;
+	private long[] capacityMask;
+	private int[] pointsOwned;
+
+	private int activePlayer;
+	private int winner;
+	private int moveNumber;
+	private long hash;
+
+	private int[] queue;
+	private int queueHead;
+	private int queueSize;
+
+	private int[] changed;
+	private int[] changeStamp;
+	private int numChanged;
+	private int stamp;
+	private int numEnqueued;
+	private int cascadeLength;
+	private int waves;
+
+	/**
+	 * The JumpingCubeEngine constructor.  Creates a new two-player game with
+	 * the specified rows and columns, clamped the same way the
+	 * JumpingCubeBoard clamps them.
+	 * @param rows The number of rows in this game.
+	 * @param cols The number of columns in this game.
+	 */
+	public JumpingCubeEngine(int rows, int cols)
+	{
+		this(rows, cols, NUM_PLAYERS);
+	}
+
+	/**
+	 * The JumpingCubeEngine constructor.  Creates a new game on the usual
+	 * grid with the specified rows, columns and number of players.
+	 * @param rows The number of rows in this game.
+	 * @param cols The number of columns in this game.
+	 * @param numPlayers The number of players, from MIN_PLAYERS to MAX_PLAYERS.
+	 */
+	public JumpingCubeEngine(int rows, int cols, int numPlayers)
+	{
+		this(JumpingCubeTopology.grid(rows, cols), numPlayers);
+	}
+
+	/**
+	 * The JumpingCubeEngine constructor.  Creates a new game on any board
+	 * with the specified number of players.
+	 * @param topology The boxes of the board and which are next to which.
+	 * @param numPlayers The number of players, from MIN_PLAYERS to MAX_PLAYERS.
+	 */
+	public JumpingCubeEngine(JumpingCubeTopology topology, int numPlayers)
+	{
+		this.topology = topology;
+		this.numPlayers = Math.max(MIN_PLAYERS, Math.min(MAX_PLAYERS, numPlayers));
+		numBoxes = topology.getNumCells();
+
+		points = new int[numBoxes];
+		owner = new int[numBoxes];
+		capacity = new int[numBoxes];
+		firstNeighbor = topology.getFirstNeighbors();
+		neighbors = topology.getNeighbors();
+		numBoxesOwned = new int[this.numPlayers];
+		queue = new int[Math.max(1, neighbors.length)];
+		changed = new int[numBoxes];
+		changeStamp = new int[numBoxes];
+		maskWords = (numBoxes + 63) / 64;
+		ownedMask = new long[this.numPlayers * maskWords];
+		criticalMask = new long[this.numPlayers * maskWords];
+		capacityMask = new long[(topology.getMaxDegree() + 1) * maskWords];
+		pointsOwned = new int[this.numPlayers];
+
+		registerNeighbors();
+		reset();
+	}
+
+	/**
+	 * Puts every box back to one unowned point, and gives the turn to Player 1.
+	 */
+	public void reset()
+	{
+		for(int i = 0; i < numBoxes; i++)
+		{
+			points[i] = 1;
+			owner[i] = NO_OWNER;
+		}
+		for(int p = 0; p < numPlayers; p++)
+		{
+			numBoxesOwned[p] = 0;
+		}
+		numBoxesUnowned = numBoxes;
+		activePlayer = 0;
+		winner = NO_WINNER;
+		moveNumber = 0;
+		queueHead = 0;
+		queueSize = 0;
+		rehash();
+		remask();
+	}
+
+	/**
+	 * Makes this game an exact copy of another game of the same topology
+	 * and number of players.
+	 * @param other The JumpingCubeEngine to copy.
+	 */
+	public void copyFrom(JumpingCubeEngine other)
+	{
+		System.arraycopy(other.points, 0, points, 0, numBoxes);
+		System.arraycopy(other.owner, 0, owner, 0, numBoxes);
+		System.arraycopy(other.numBoxesOwned, 0, numBoxesOwned, 0, numPlayers);
+		System.arraycopy(other.ownedMask, 0, ownedMask, 0, ownedMask.length);
+		System.arraycopy(other.criticalMask, 0, criticalMask, 0, criticalMask.length);
+		System.arraycopy(other.pointsOwned, 0, pointsOwned, 0, numPlayers);
+		numBoxesUnowned = other.numBoxesUnowned;
+		activePlayer = other.activePlayer;
+		winner = other.winner;
+		moveNumber = other.moveNumber;
+		hash = other.hash;
+	}
+
+	/**
+	 * Replaces the position with the one given, recounting the boxes
+	 * each player owns.
+	 * @param newOwner The owner index of every box, NO_OWNER for unowned boxes.
+	 * @param newPoints The point value of every box.
+	 * @param newActivePlayer The index of the player on turn.
+	 * @param newMoveNumber The number of moves played so far.
+	 */
+	public void setPosition(int[] newOwner, int[] newPoints, int newActivePlayer, int newMoveNumber)
+	{
+		for(int p = 0; p < numPlayers; p++)
+		{
+			numBoxesOwned[p] = 0;
+		}
+		numBoxesUnowned = 0;
+		for(int i = 0; i < numBoxes; i++)
+		{
+			owner[i] = newOwner[i];
+			points[i] = newPoints[i];
+			if(owner[i] == NO_OWNER)
+			{
+				numBoxesUnowned++;
+			}
+			else
+			{
+				numBoxesOwned[owner[i]]++;
+			}
+		}
+		activePlayer = newActivePlayer;
+		moveNumber = newMoveNumber;
+		winner = NO_WINNER;
+		for(int p = 0; p < numPlayers; p++)
+		{
+			if(numBoxesOwned[p] == numBoxes)
+			{
+				winner = p;
+			}
+		}
+		rehash();
+		remask();
+	}
+
+	/**
+	 * Replaces the position with one whose moves are not known, such as
+	 * one read from text.  Unless the board is empty, every player is taken
+	 * to have had a turn, so that once no unowned box is left a player with
+	 * no boxes is out, whether on turn or when the turn is handed on.
+	 * @param newOwner The owner index of every box, NO_OWNER for unowned boxes.
+	 * @param newPoints The point value of every box.
+	 * @param newActivePlayer The index of the player on turn.
+	 */
+	public void setPosition(int[] newOwner, int[] newPoints, int newActivePlayer)
+	{
+		int moves = 0;
+		for(int i = 0; i < numBoxes && moves == 0; i++)
+		{
+			if(newOwner[i] != NO_OWNER)
+			{
+				moves = numPlayers;
+			}
+		}
+		setPosition(newOwner, newPoints, newActivePlayer, moves);
+	}
+
+	/**
+	 * Replaces a single box, keeping the count of owned and unowned boxes up to date.
+	 * Used to mirror a game that is being played somewhere else, such as on a server.
+	 * @param cell The cell index of the box.
+	 * @param newOwner The new owner index of the box, NO_OWNER for an unowned box.
+	 * @param newPoints The new point value of the box.
+	 */
+	public void setCell(int cell, int newOwner, int newPoints)
+	{
+		hash ^= key(cell, owner[cell], points[cell]) ^ key(cell, newOwner, newPoints);
+		unmark(cell);
+		int old = owner[cell];
+		if(old != newOwner)
+		{
+			if(old == NO_OWNER)
+			{
+				numBoxesUnowned--;
+			}
+			else
+			{
+				numBoxesOwned[old]--;
+			}
+			if(newOwner == NO_OWNER)
+			{
+				numBoxesUnowned++;
+			}
+			else
+			{
+				numBoxesOwned[newOwner]++;
+			}
+			owner[cell] = newOwner;
+		}
+		points[cell] = newPoints;
+		mark(cell);
+	}
+
+	/**
+	 * Sets whose turn it is, how many moves have been played and who has won.
+	 * Used together with setCell() to mirror a game played somewhere else.
+	 * @param newActivePlayer The index of the player on turn.
+	 * @param newMoveNumber The number of moves played so far.
+	 * @param newWinner The index of the winning player, or NO_WINNER.
+	 */
+	public void setTurn(int newActivePlayer, int newMoveNumber, int newWinner)
+	{
+		hash ^= sideKey(activePlayer) ^ sideKey(newActivePlayer);
+		activePlayer = newActivePlayer;
+		moveNumber = newMoveNumber;
+		winner = newWinner;
+	}
+
+	/**
+	 * Gets the number of rows in this game.
+	 * @return The number of rows in this game.
+	 */
+	public int getRows()
+	{
+		return topology.getRows();
+	}
+
+	/**
+	 * Gets the number of columns in this game.
+	 * @return The number of columns in this game.
+	 */
+	public int getCols()
+	{
+		return topology.getCols();
+	}
+
+	/**
+	 * Gets the board this game is played on.
+	 * @return The topology, which games on the same board share.
+	 */
+	public JumpingCubeTopology getTopology()
+	{
+		return topology;
+	}
+
+	/**
+	 * Gets the number of players in this game.
+	 * @return The number of players, from MIN_PLAYERS to MAX_PLAYERS.
+	 */
+	public int getNumPlayers()
+	{
+		return numPlayers;
+	}
+
+	/**
+	 * Gets the number of boxes in this game.
+	 * @return The number of boxes in this game (rows * cols on a grid).
+	 */
+	public int getNumBoxes()
+	{
+		return numBoxes;
+	}
+
+	/**
+	 * Gets the point value of a box.
+	 * @param cell The cell index of the box.
+	 * @return The number of points the box holds.
+	 */
+	public int getPoints(int cell)
+	{
+		return points[cell];
+	}
+
+	/**
+	 * Gets the owner of a box.
+	 * @param cell The cell index of the box.
+	 * @return The index of the player owning the box, or NO_OWNER.
+	 */
+	public int getOwner(int cell)
+	{
+		return owner[cell];
+	}
+
+	/**
+	 * Gets the number of neighbors a box has; one point more than this overflows it.
+	 * @param cell The cell index of the box.
+	 * @return The number of neighbors of the box.
+	 */
+	public int getCapacity(int cell)
+	{
+		return capacity[cell];
+	}
+
+	/**
+	 * Gets the number of boxes a player owns.
+	 * @param player The index of the player.
+	 * @return The number of boxes that player owns.
+	 */
+	public int getNumBoxesOwned(int player)
+	{
+		return numBoxesOwned[player];
+	}
+
+	/**
+	 * Gets the number of unowned boxes.
+	 * @return The number of boxes that no player has clicked on yet.
+	 */
+	public int getNumBoxesUnowned()
+	{
+		return numBoxesUnowned;
+	}
+
+	/**
+	 * Returns whether a player is out of the game: they have had a turn,
+	 * own no boxes and have no unowned box left to click on.
+	 * @param player The index of the player.
+	 * @return True if the player's turns are skipped.
+	 */
+	public boolean isOut(int player)
+	{
+		// Nobody is skipped before everyone has moved once, so the players
+		// who have had a turn are exactly those below the move number.
+		return (numBoxesOwned[player] == 0) && (numBoxesUnowned == 0) && (player < moveNumber);
+	}
+
+	/**
+	 * Gets the player on turn.
+	 * @return The index of the player whose turn it is.
+	 */
+	public int getActivePlayer()
+	{
+		return activePlayer;
+	}
+
+	/**
+	 * Gets the winner of the game.
+	 * @return The index of the winning player, or NO_WINNER if the game is still on.
+	 */
+	public int getWinner()
+	{
+		return winner;
+	}
+
+	/**
+	 * Gets the number of moves played so far.
+	 * @return The number of moves played so far.
+	 */
+	public int getMoveNumber()
+	{
+		return moveNumber;
+	}
+
+	/**
+	 * Gets a 64-bit Zobrist hash of the position: the owner and points of
+	 * every box and the player on turn.  Equal positions on boards of the
+	 * same size always have equal hashes, whatever moves led to them, and
+	 * the hash is kept up to date as boxes change rather than recomputed.
+	 * @return The hash of the position.
+	 */
+	public long getHash()
+	{
+		return hash;
+	}
+
+	/**
+	 * Returns whether a box is critical, holding as many points as its
+	 * capacity, so that the next point makes it overflow.
+	 * @param cell The cell index of the box.
+	 * @return True if the box is owned and critical.
+	 */
+	public boolean isCritical(int cell)
+	{
+		int o = owner[cell];
+		return (o != NO_OWNER) && (criticalMask[o * maskWords + (cell >> 6)] & (1L << cell)) != 0;
+	}
+
+	/**
+	 * Gets the number of critical boxes a player owns, without looking at
+	 * every box.
+	 * @param player The index of the player.
+	 * @return The number of the player's boxes that overflow on their next point.
+	 */
+	public int getNumCritical(int player)
+	{
+		int n = 0;
+		for(int w = player * maskWords; w < (player + 1) * maskWords; w++)
+		{
+			n += Long.bitCount(criticalMask[w]);
+		}
+		return n;
+	}
+
+	/**
+	 * Gets the total of the points on the boxes a player owns, without
+	 * looking at every box.
+	 * @param player The index of the player.
+	 * @return The player's points.
+	 */
+	public int getPointsOwned(int player)
+	{
+		return pointsOwned[player];
+	}
+
+	/**
+	 * Gets the number of boxes of one capacity a player owns, such as 2
+	 * for the corners or 3 for the other edges, without looking at every box.
+	 * @param player The index of the player.
+	 * @param boxCapacity The capacity of the boxes to count.
+	 * @return The number of such boxes the player owns.
+	 */
+	public int getNumBoxesOwned(int player, int boxCapacity)
+	{
+		if(boxCapacity > topology.getMaxDegree())
+		{
+			return 0;
+		}
+		int n = 0;
+		for(int w = 0; w < maskWords; w++)
+		{
+			n += Long.bitCount(ownedMask[player * maskWords + w] & capacityMask[boxCapacity * maskWords + w]);
+		}
+		return n;
+	}
+
+	/**
+	 * Gets the number of longs each set of cells takes.  Cell i of a set
+	 * is bit i % 64 of long i / 64.
+	 * @return The number of longs in each mask.
+	 */
+	public int getMaskWords()
+	{
+		return maskWords;
+	}
+
+	/**
+	 * Gets one long of the set of critical boxes a player owns, which
+	 * move ordering and cascade prediction can combine with other sets.
+	 * @param player The index of the player.
+	 * @param word Which long of the set, from 0 to getMaskWords() - 1.
+	 * @return The bits of the critical boxes in that long.
+	 */
+	public long getCriticalMask(int player, int word)
+	{
+		return criticalMask[player * maskWords + word];
+	}
+
+	/**
+	 * Gets one long of the set of boxes a player owns.
+	 * @param player The index of the player.
+	 * @param word Which long of the set, from 0 to getMaskWords() - 1.
+	 * @return The bits of the player's boxes in that long.
+	 */
+	public long getOwnedMask(int player, int word)
+	{
+		return ownedMask[player * maskWords + word];
+	}
+
+	/**
+	 * Gets the hash the position would have if every box were moved to
+	 * another cell, such as by a JumpingCubeSymmetry, without moving them.
+	 * @param permutation The cell each box would move to, indexed by its cell now.
+	 * @return The hash of the moved position.
+	 */
+	public long getHash(int[] permutation)
+	{
+		long h = sideKey(activePlayer);
+		for(int i = 0; i < numBoxes; i++)
+		{
+			h ^= key(permutation[i], owner[i], points[i]);
+		}
+		return h;
+	}
+
+	/**
+	 * Gets the number of boxes the last call to applyMove() changed.
+	 * @return The number of boxes whose owner or points the last move touched.
+	 */
+	public int getNumChanged()
+	{
+		return numChanged;
+	}
+
+	/**
+	 * Gets one of the boxes the last call to applyMove() changed, in the
+	 * order they were first touched.
+	 * @param i A number from 0 to getNumChanged() - 1.
+	 * @return The cell index of the changed box.
+	 */
+	public int getChanged(int i)
+	{
+		return changed[i];
+	}
+
+	/**
+	 * Gets the number of points the last call to applyMove() passed from
+	 * overflowing boxes to their neighbors.
+	 * @return The length of the chain reaction, or 0 if the move caused no overflow.
+	 */
+	public int getCascadeLength()
+	{
+		return cascadeLength;
+	}
+
+	/**
+	 * Gets the number of waves of overflows the last call to applyMove()
+	 * resolved.  The points thrown by the clicked box make the first wave,
+	 * the points thrown by the boxes they overflow make the second, and so on.
+	 * @return The number of waves, or 0 if the move caused no overflow.
+	 */
+	public int getWaves()
+	{
+		return waves;
+	}
+
+	/**
+	 * Returns whether the player on turn may click on a box.
+	 * @param cell The cell index of the box.
+	 * @return True if the game is on and the box is unowned or owned by the player on turn.
+	 */
+	public boolean isLegal(int cell)
+	{
+		return (winner == NO_WINNER) && (cell >= 0) && (cell < numBoxes)
+			&& ((owner[cell] == NO_OWNER) || (owner[cell] == activePlayer));
+	}
+
+	/**
+	 * Plays a move for the player on turn, resolving every overflow it causes.
+	 * If the move wins the game, the winner is recorded and the turn does not pass.
+	 * @param cell The cell index of the box the player on turn clicked on.
+	 * @return True if the move was legal and has been played, false otherwise.
+	 */
+	public boolean applyMove(int cell)
+	{
+		if(!isLegal(cell))
+		{
+			return false;
+		}
+
+		stamp++;
+		numChanged = 0;
+		numEnqueued = 0;
+		claim(cell);
+		addPoint(cell);
+
+		// The points queued by one wave of overflows all arrive before any
+		// queued by the next, so a wave ends where the queue stood when it began.
+		int popped = 0;
+		int waveEnd = 0;
+		waves = 0;
+		while(queueSize > 0)
+		{
+			if(popped == waveEnd)
+			{
+				waves++;
+				waveEnd = numEnqueued;
+			}
+			popped++;
+			int c = queue[queueHead];
+			queueHead = (queueHead + 1) % queue.length;
+			queueSize--;
+
+			claim(c);
+			addPoint(c);
+			if(numBoxesOwned[activePlayer] == numBoxes)
+			{
+				winner = activePlayer;
+				queueHead = 0;
+				queueSize = 0;
+			}
+		}
+
+		cascadeLength = popped;
+		moveNumber++;
+		if(winner == NO_WINNER)
+		{
+			int next = activePlayer;
+			do
+			{
+				next = (next + 1) % numPlayers;
+			}
+			while(isOut(next));
+			hash ^= sideKey(activePlayer) ^ sideKey(next);
+			activePlayer = next;
+		}
+		return true;
+	}
+
+	private void claim(int cell)
+	{
+		if(changeStamp[cell] != stamp)
+		{
+			changeStamp[cell] = stamp;
+			changed[numChanged++] = cell;
+		}
+		int old = owner[cell];
+		if(old != activePlayer)
+		{
+			if(old == NO_OWNER)
+			{
+				numBoxesUnowned--;
+			}
+			else
+			{
+				numBoxesOwned[old]--;
+			}
+			unmark(cell);
+			numBoxesOwned[activePlayer]++;
+			owner[cell] = activePlayer;
+			mark(cell);
+			hash ^= key(cell, old, points[cell]) ^ key(cell, activePlayer, points[cell]);
+		}
+	}
+
+	private void addPoint(int cell)
+	{
+		int before = points[cell];
+		unmark(cell);
+		points[cell]++;
+		if(points[cell] <= capacity[cell])
+		{
+			hash ^= key(cell, owner[cell], before) ^ key(cell, owner[cell], points[cell]);
+			mark(cell);
+		}
+		else
+		{
+			points[cell] = 1;
+			mark(cell);
+			hash ^= key(cell, owner[cell], before) ^ key(cell, owner[cell], 1);
+			for(int i = firstNeighbor[cell]; i < firstNeighbor[cell + 1]; i++)
+			{
+				enqueue(neighbors[i]);
+			}
+		}
+	}
+
+	private void enqueue(int cell)
+	{
+		if(queueSize == queue.length)
+		{
+			int[] bigger = new int[queue.length * 2];
+			for(int i = 0; i < queueSize; i++)
+			{
+				bigger[i] = queue[(queueHead + i) % queue.length];
+			}
+			queue = bigger;
+			queueHead = 0;
+		}
+		queue[(queueHead + queueSize) % queue.length] = cell;
+		queueSize++;
+		numEnqueued++;
+	}
+
+	private void rehash()
+	{
+		hash = sideKey(activePlayer);
+		for(int i = 0; i < numBoxes; i++)
+		{
+			hash ^= key(i, owner[i], points[i]);
+		}
+	}
+
+	/**
+	 * Takes a box out of its owner's sets, before its owner or points change.
+	 */
+	private void unmark(int cell)
+	{
+		int o = owner[cell];
+		if(o != NO_OWNER)
+		{
+			int word = o * maskWords + (cell >> 6);
+			long bit = 1L << cell;
+			ownedMask[word] &= ~bit;
+			criticalMask[word] &= ~bit;
+			pointsOwned[o] -= points[cell];
+		}
+	}
+
+	/**
+	 * Puts a box back into its owner's sets, after its owner or points change.
+	 */
+	private void mark(int cell)
+	{
+		int o = owner[cell];
+		if(o != NO_OWNER)
+		{
+			int word = o * maskWords + (cell >> 6);
+			long bit = 1L << cell;
+			ownedMask[word] |= bit;
+			if(points[cell] == capacity[cell])
+			{
+				criticalMask[word] |= bit;
+			}
+			pointsOwned[o] += points[cell];
+		}
+	}
+
+	private void remask()
+	{
+		for(int i = 0; i < ownedMask.length; i++)
+		{
+			ownedMask[i] = 0;
+			criticalMask[i] = 0;
+		}
+		for(int p = 0; p < numPlayers; p++)
+		{
+			pointsOwned[p] = 0;
+		}
+		for(int i = 0; i < numBoxes; i++)
+		{
+			mark(i);
+		}
+	}
+
+	private static long key(int cell, int owner, int points)
+	{
+		return ZOBRIST[(cell * (MAX_PLAYERS + 1) + owner + 1) * MAX_POINTS + points];
+	}
+
+	/**
+	 * Player 1 on turn adds nothing to the hash, as in a two-player game
+	 * only the other player's turn ever did.
+	 */
+	private static long sideKey(int player)
+	{
+		return (player == 0) ? 0 : ZOBRIST[SIDE_KEYS + player];
+	}
+
+	/**
+	 * The keys come from a fixed seed, so every run of every program
+	 * gives a position the same hash.
+	 */
+	private static long[] zobristKeys(int n)
+	{
+		long[] keys = new long[n];
+		long seed = 0x2002L;
+		for(int i = 0; i < n; i++)
+		{
+			seed += 0x9E3779B97F4A7C15L;
+			long z = seed;
+			z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+			z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+			keys[i] = z ^ (z >>> 31);
+		}
+		return keys;
+	}
+
+	private void registerNeighbors()
+	{
+		for(int cell = 0; cell < numBoxes; cell++)
+		{
+			capacity[cell] = topology.getDegree(cell);
+			capacityMask[capacity[cell] * maskWords + (cell >> 6)] |= 1L << cell;
+		}
+	}
+}
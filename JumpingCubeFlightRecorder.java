@@ -0,0 +1,156 @@
+/**
+ * JumpingCubeFlightRecorder.java
+ * @author Daniel Miladinov
+ * @version 1-beta
+ */
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * The JumpingCubeFlightRecorder class holds the Java Flight Recorder
+ * events JumpingCube emits, so a recording of a game window, a server or
+ * a benchmark shows what each move, search and repaint cost next to the
+ * garbage collections and thread stalls the JVM records anyway.  Start
+ * any of them with -XX:StartFlightRecording and open the file in JDK
+ * Mission Control, or print it with "jfr print --categories JumpingCube".
+ * <p>
+ * The events leave out stack traces, and a thread only fills in an
+ * event's fields once shouldCommit() says it is enabled and over its
+ * threshold, so they are cheap enough to leave on.  Every event is timed,
+ * so a setting such as jumpingcube.Move#threshold=5ms keeps only the slow
+ * ones.
+ */
+public class JumpingCubeFlightRecorder
+{
+	/**
+	 * Emitted for every move resolved, with the size of the chain reaction it set off.
+	 */
+	@Name("jumpingcube.Move")
+	@Label("Move")
+	@Category("JumpingCube")
+	@Description("A move played, and every overflow it caused")
+	@StackTrace(false)
+	public static class MoveEvent extends Event
+	{
+		/** The server's id for the match, or -1 for a game played in a window.*/
+		@Label("Match")
+		public int matchId;
+
+		/** The cell index of the box clicked on.*/
+		@Label("Cell")
+		public int cell;
+
+		/** The index of the player who moved.*/
+		@Label("Player")
+		public int player;
+
+		/** The number of points passed from overflowing boxes to their neighbors.*/
+		@Label("Cascade Length")
+		public int cascadeLength;
+
+		/** The number of waves of overflows.*/
+		@Label("Waves")
+		public int waves;
+
+		/** The number of boxes whose owner or points changed.*/
+		@Label("Boxes Changed")
+		public int boxesChanged;
+
+		/** Whether the move won the game.*/
+		@Label("Won")
+		public boolean won;
+	}
+
+	/**
+	 * Emitted for every iteration of a JumpingCubeAI's iterative deepening.
+	 */
+	@Name("jumpingcube.Search")
+	@Label("AI Search Iteration")
+	@Category("JumpingCube")
+	@Description("One depth of a JumpingCubeAI search")
+	@StackTrace(false)
+	public static class SearchEvent extends Event
+	{
+		/** The depth searched.*/
+		@Label("Depth")
+		public int depth;
+
+		/** The number of positions searched in this iteration.*/
+		@Label("Nodes")
+		public long nodes;
+
+		/** The number of positions found in the transposition table in this iteration.*/
+		@Label("TT Hits")
+		public long ttHits;
+
+		/** The score of the best move, from the point of view of the player on turn.*/
+		@Label("Score")
+		public int score;
+
+		/** The cell index of the best move.*/
+		@Label("Best Move")
+		public int bestMove;
+
+		/** Whether the time budget ran out before the iteration finished.*/
+		@Label("Aborted")
+		public boolean aborted;
+	}
+
+	/**
+	 * Emitted whenever a JumpingCubeBoard brings a batch of its buttons up to date.
+	 */
+	@Name("jumpingcube.Repaint")
+	@Label("Repaint Batch")
+	@Category("JumpingCube")
+	@Description("Buttons of a JumpingCubeBoard updated together after a move or a new position")
+	@StackTrace(false)
+	public static class RepaintEvent extends Event
+	{
+		/** The number of buttons updated.*/
+		@Label("Buttons")
+		public int buttons;
+	}
+
+	/**
+	 * Plays a move, emits a MoveEvent describing it, and counts it in the
+	 * JumpingCubeMetrics.
+	 * @param game The game to play the move in.
+	 * @param cell The cell index of the box clicked on.
+	 * @param matchId The server's id for the match, or -1 for a game played in a window.
+	 * @return True if the move was legal and has been played, as JumpingCubeEngine.applyMove() returns.
+	 */
+	public static boolean applyMove(JumpingCubeEngine game, int cell, int matchId)
+	{
+		MoveEvent event = new MoveEvent();
+		event.begin();
+		int player = game.getActivePlayer();
+		long started = System.nanoTime();
+		boolean played = game.applyMove(cell);
+		long nanos = System.nanoTime() - started;
+		event.end();
+		if(!played)
+		{
+			return false;
+		}
+		JumpingCubeMetrics.MOVES.increment();
+		JumpingCubeMetrics.CASCADE.record(game.getCascadeLength());
+		JumpingCubeMetrics.MOVE_NANOS.record(nanos);
+		if(event.shouldCommit())
+		{
+			event.matchId = matchId;
+			event.cell = cell;
+			event.player = player;
+			event.cascadeLength = game.getCascadeLength();
+			event.waves = game.getWaves();
+			event.boxesChanged = game.getNumChanged();
+			event.won = (game.getWinner() != JumpingCubeEngine.NO_WINNER);
+			event.commit();
+		}
+		return true;
+	}
+}
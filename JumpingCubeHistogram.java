@@ -0,0 +1,185 @@
+/**
+ * JumpingCubeHistogram.java
+ * @author Daniel Miladinov
+ * @version 1-beta
+ */
+
+/**
+ * The JumpingCubeHistogram class counts how often values, such as latencies
+ * in microseconds, were seen.  Values below 128 each get their own bucket;
+ * above that, every power of two is split into 64 buckets, so any value is
+ * reported to within about one and a half percent however large it is,
+ * while the whole histogram stays a fixed few kilobytes.  Recording a
+ * value never allocates, which lets a histogram be filled from inside a
+ * busy loop without disturbing what it measures.
+ */
+public class JumpingCubeHistogram
+{
+	private static final int SUB_BITS = 6;
+	private static final int SUB_COUNT = 1 << SUB_BITS;
+	private static final int LINEAR = SUB_COUNT * 2;
+
+	private long[] counts;
+	private long totalCount;
+	private long min;
+	private long max;
+	private long sum;
+
+	/**
+	 * The JumpingCubeHistogram constructor.  The histogram starts empty.
+	 */
+	public JumpingCubeHistogram()
+	{
+		counts = new long[indexOf(Long.MAX_VALUE) + 1];
+		reset();
+	}
+
+	/**
+	 * Empties the histogram.
+	 */
+	public void reset()
+	{
+		for(int i = 0; i < counts.length; i++)
+		{
+			counts[i] = 0;
+		}
+		totalCount = 0;
+		min = Long.MAX_VALUE;
+		max = 0;
+		sum = 0;
+	}
+
+	/**
+	 * Counts one value.  Negative values are counted as zero.
+	 * @param value The value seen.
+	 */
+	public void record(long value)
+	{
+		if(value < 0)
+		{
+			value = 0;
+		}
+		counts[indexOf(value)]++;
+		totalCount++;
+		sum += value;
+		if(value < min)
+		{
+			min = value;
+		}
+		if(value > max)
+		{
+			max = value;
+		}
+	}
+
+	/**
+	 * Adds every value counted by another histogram to this one.
+	 * @param other The histogram to add.
+	 */
+	public void add(JumpingCubeHistogram other)
+	{
+		for(int i = 0; i < counts.length; i++)
+		{
+			counts[i] += other.counts[i];
+		}
+		totalCount += other.totalCount;
+		sum += other.sum;
+		if(other.min < min)
+		{
+			min = other.min;
+		}
+		if(other.max > max)
+		{
+			max = other.max;
+		}
+	}
+
+	/**
+	 * Gets the number of values counted.
+	 * @return The number of values.
+	 */
+	public long getTotalCount()
+	{
+		return totalCount;
+	}
+
+	/**
+	 * Gets the smallest value counted.
+	 * @return The smallest value, or 0 if the histogram is empty.
+	 */
+	public long getMin()
+	{
+		return (totalCount == 0) ? 0 : min;
+	}
+
+	/**
+	 * Gets the largest value counted.
+	 * @return The largest value, or 0 if the histogram is empty.
+	 */
+	public long getMax()
+	{
+		return max;
+	}
+
+	/**
+	 * Gets the average of the values counted.
+	 * @return The mean, or 0 if the histogram is empty.
+	 */
+	public double getMean()
+	{
+		return (totalCount == 0) ? 0 : (double)sum / totalCount;
+	}
+
+	/**
+	 * Gets the value below which the given percentage of the values fall.
+	 * The answer is the highest value sharing a bucket with the true one,
+	 * so it is never an underestimate, and never more than the maximum.
+	 * @param percentile A percentage from 0 to 100.
+	 * @return The value at that percentile, or 0 if the histogram is empty.
+	 */
+	public long getValueAtPercentile(double percentile)
+	{
+		if(totalCount == 0)
+		{
+			return 0;
+		}
+		long wanted = (long)Math.ceil(totalCount * Math.min(100.0, Math.max(0.0, percentile)) / 100.0);
+		if(wanted < 1)
+		{
+			wanted = 1;
+		}
+		long seen = 0;
+		for(int i = 0; i < counts.length; i++)
+		{
+			seen += counts[i];
+			if(seen >= wanted)
+			{
+				return Math.min(highestEquivalent(i), max);
+			}
+		}
+		return max;
+	}
+
+	private static int indexOf(long value)
+	{
+		if(value < LINEAR)
+		{
+			return (int)value;
+		}
+		int magnitude = 63 - Long.numberOfLeadingZeros(value);
+		int sub = (int)(value >>> (magnitude - SUB_BITS));
+		return (magnitude - SUB_BITS) * SUB_COUNT + sub;
+	}
+
+	private static long highestEquivalent(int index)
+	{
+		if(index < LINEAR)
+		{
+			return index;
+		}
+		int shift = index / SUB_COUNT - 1;
+		long sub = index % SUB_COUNT + SUB_COUNT;
+		long next = (sub + 1) << shift;
+		return (next <= 0) ? Long.MAX_VALUE : next - 1;
+	}
+}
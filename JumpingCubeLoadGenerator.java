@@ -0,0 +1,623 @@
+/**
+ * JumpingCubeLoadGenerator.java
+ * @author Daniel Miladinov
+ * @version 1-beta
+ */
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.*;
+import java.util.Iterator;
+import java.util.Random;
+
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * The JumpingCubeLoadGenerator class measures how a JumpingCubeServer
+ * holds up under many simulated players.  It opens two connections per
+ * game from one Selector thread, has every connection play random or
+ * JumpingCubeAI moves whenever it is on turn, and starts a new game
+ * whenever one ends.  It can start a server of either kind in this
+ * process, or drive one already running on this machine.
+ * <p>
+ * Left unlimited, each player moves as soon as it may.  Given a rate, the
+ * moves of every game are instead spread evenly over time, and each move
+ * has a time it was meant to be sent whether or not the server has kept
+ * up.  The latency of a move is measured from that time to the arrival of
+ * the position it produced, so a server that stalls is charged for every
+ * move it held up, not just the one it was working on.  Latencies are
+ * kept in JumpingCubeHistograms, and a line is printed for every interval
+ * as well as a summary at the end.
+ * <p>
+ * Usage: java JumpingCubeLoadGenerator [-games n] [-seconds n] [-size n]
+ * [-rate movesPerSecond] [-moves random|ai] [-warmup seconds]
+ * [-interval seconds] [-server nio|threads|port|host:port]
+ */
+public class JumpingCubeLoadGenerator
+{
+	private static final long DRAIN_MILLIS = 2000;
+
+	private int size;
+	private long moveInterval;
+	private boolean draining;
+	private boolean aiMoves;
+	private Random random;
+	private JumpingCubeAI ai;
+
+	private Player[] due;
+	private int numDue;
+
+	private JumpingCubeHistogram total;
+	private JumpingCubeHistogram interval;
+	private long movesSent;
+	private long movesAnswered;
+	private long intervalMoves;
+	private int gamesFinished;
+	private long rejections;
+	private long disconnects;
+	private long connectFailures;
+	private long deltaBytes;
+	private long stateBytes;
+	private int sequence;
+
+	/**
+	 * An inner class which plays one side of a game over one connection.
+	 */
+	class Player
+	{
+		SocketChannel channel;
+		SelectionKey key;
+		ByteBuffer in;
+		ByteBuffer out;
+		JumpingCubeEngine game;
+		int seat;
+		int nextMove;
+		long dueAt;
+		long sentAt;
+		int dueIndex;
+
+		public Player(SocketChannel c)
+		{
+			channel = c;
+			in = ByteBuffer.allocate(4096);
+			out = ByteBuffer.allocate(256);
+			dueIndex = -1;
+		}
+	}
+
+	/**
+	 * The JumpingCubeLoadGenerator constructor.
+	 * @param size The number of rows and columns of every game.
+	 * @param games The number of games to keep going at once.
+	 * @param rate The moves per second to play across all games, or 0 for as many as possible.
+	 * @param aiMoves True to play JumpingCubeAI moves, false to play random ones.
+	 */
+	public JumpingCubeLoadGenerator(int size, int games, int rate, boolean aiMoves)
+	{
+		this.size = size;
+		this.aiMoves = aiMoves;
+		moveInterval = (rate > 0) ? (long)games * 1000000000L / rate : 0;
+		random = new Random(2002);
+		ai = new JumpingCubeAI(2, 0);
+		due = new Player[games * 2];
+		total = new JumpingCubeHistogram();
+		interval = new JumpingCubeHistogram();
+	}
+
+	/**
+	 * Plays the given number of games at once against a server until time runs out.
+	 * @param host The address of the server, which should be this machine.
+	 * @param port The port of the server.
+	 * @param games The number of games to keep going at once.
+	 * @param millis How long to play for, warmup included.
+	 * @param warmupMillis How long to play before measuring.
+	 * @param intervalMillis How often to print a line of results, or 0 for never.
+	 */
+	public void run(String host, int port, int games, long millis, long warmupMillis, long intervalMillis) throws IOException
+	{
+		Selector selector = Selector.open();
+		InetSocketAddress address = new InetSocketAddress(host, port);
+		for(int i = 0; i < games * 2; i++)
+		{
+			SocketChannel sc;
+			try
+			{
+				sc = SocketChannel.open(address);
+			}
+			catch(IOException e)
+			{
+				connectFailures++;
+				continue;
+			}
+			sc.socket().setTcpNoDelay(true);
+			sc.configureBlocking(false);
+			Player p = new Player(sc);
+			p.key = sc.register(selector, SelectionKey.OP_READ, p);
+			JumpingCubeProtocol.putJoin(p.out, nextSequence(), size, size);
+			flush(p);
+		}
+
+		long start = System.nanoTime();
+		long end = start + millis * 1000000L;
+		long measureFrom = start + warmupMillis * 1000000L;
+		boolean measuring = (warmupMillis == 0);
+		long intervalNanos = intervalMillis * 1000000L;
+		long nextReport = measureFrom + ((intervalNanos > 0) ? intervalNanos : Long.MAX_VALUE / 2);
+		long intervalStart = measureFrom;
+		System.out.println("   time    moves/s        p50       p99      p999       max   errors");
+
+		long now = start;
+		while(now < end)
+		{
+			long wake = Math.min(end, measuring ? nextReport : measureFrom);
+			if(numDue > 0)
+			{
+				wake = Math.min(wake, due[0].dueAt);
+			}
+			long waitMillis = (wake - now) / 1000000L;
+			if(waitMillis > 0)
+			{
+				selector.select(waitMillis);
+			}
+			else
+			{
+				selector.selectNow();
+			}
+			Iterator it = selector.selectedKeys().iterator();
+			while(it.hasNext())
+			{
+				SelectionKey key = (SelectionKey)it.next();
+				it.remove();
+				read((Player)key.attachment());
+			}
+
+			now = System.nanoTime();
+			while(numDue > 0 && due[0].dueAt <= now)
+			{
+				send(removeDue(0));
+			}
+			if(!measuring && now >= measureFrom)
+			{
+				measuring = true;
+				total.reset();
+				interval.reset();
+				resetCounts();
+				intervalStart = now;
+			}
+			if(measuring && now >= nextReport)
+			{
+				printInterval((now - start) / 1000000L, now - intervalStart);
+				intervalStart = now;
+				nextReport += intervalNanos;
+			}
+		}
+
+		// Stop moving, and give the moves already sent a moment to be answered.
+		draining = true;
+		long drainEnd = System.nanoTime() + DRAIN_MILLIS * 1000000L;
+		while(movesSent > movesAnswered && System.nanoTime() < drainEnd)
+		{
+			selector.select(10);
+			Iterator it = selector.selectedKeys().iterator();
+			while(it.hasNext())
+			{
+				SelectionKey key = (SelectionKey)it.next();
+				it.remove();
+				read((Player)key.attachment());
+			}
+		}
+
+		Iterator it = selector.keys().iterator();
+		while(it.hasNext())
+		{
+			((SelectionKey)it.next()).channel().close();
+		}
+		selector.close();
+	}
+
+	private void resetCounts()
+	{
+		movesSent = 0;
+		movesAnswered = 0;
+		intervalMoves = 0;
+		gamesFinished = 0;
+		rejections = 0;
+		disconnects = 0;
+		deltaBytes = 0;
+		stateBytes = 0;
+	}
+
+	private void read(Player p)
+	{
+		int n;
+		try
+		{
+			n = p.channel.read(p.in);
+		}
+		catch(IOException e)
+		{
+			n = -1;
+		}
+		if(n < 0)
+		{
+			disconnect(p);
+			return;
+		}
+		p.in.flip();
+		while(JumpingCubeProtocol.hasFrame(p.in))
+		{
+			int length = p.in.getShort() & 0xFFFF;
+			int end = p.in.position() + length;
+			int limit = p.in.limit();
+			p.in.limit(end);
+			handle(p, p.in.get() & 0xFF);
+			p.in.limit(limit);
+			p.in.position(end);
+		}
+		p.in.compact();
+		if(p.channel.isOpen())
+		{
+			try
+			{
+				flush(p);
+			}
+			catch(IOException e)
+			{
+				disconnect(p);
+			}
+		}
+	}
+
+	private void handle(Player p, int type)
+	{
+		switch(type)
+		{
+			case JumpingCubeProtocol.MATCHED:
+				int matchId = p.in.getInt();
+				p.seat = p.in.get() & 0xFF;
+				p.game = new JumpingCubeEngine(p.in.get(), p.in.get());
+				// Both players of a match agree on when it starts, so that
+				// their moves, and the matches, are spread evenly in time.
+				long offset = (moveInterval > 0) ? ((matchId * 0x9E3779B97F4A7C15L) >>> 1) % moveInterval : 0;
+				p.dueAt = System.nanoTime() + offset + p.seat * moveInterval;
+				break;
+			case JumpingCubeProtocol.STATE:
+			case JumpingCubeProtocol.DELTA:
+				if(type == JumpingCubeProtocol.STATE)
+				{
+					JumpingCubeProtocol.readState(p.in, p.game);
+				}
+				else
+				{
+					deltaBytes += JumpingCubeProtocol.HEADER_SIZE + p.in.limit() - p.in.position() + 1;
+					stateBytes += JumpingCubeProtocol.stateSize(p.game);
+					JumpingCubeProtocol.readDelta(p.in, p.game);
+				}
+				if(p.sentAt != 0)
+				{
+					long micros = (System.nanoTime() - p.sentAt) / 1000L;
+					total.record(micros);
+					interval.record(micros);
+					movesAnswered++;
+					intervalMoves++;
+					p.sentAt = 0;
+				}
+				if(p.game.getWinner() != JumpingCubeEngine.NO_WINNER)
+				{
+					if(p.seat == 0)
+					{
+						gamesFinished++;
+					}
+					if(!draining)
+					{
+						JumpingCubeProtocol.putJoin(p.out, nextSequence(), size, size);
+					}
+				}
+				else if(p.game.getActivePlayer() == p.seat && p.sentAt == 0 && !draining)
+				{
+					p.nextMove = aiMoves ? ai.chooseMove(p.game) : randomMove(p.game);
+					if(moveInterval == 0)
+					{
+						p.dueAt = System.nanoTime();
+						send(p);
+					}
+					else
+					{
+						addDue(p);
+					}
+				}
+				break;
+			case JumpingCubeProtocol.REJECTED:
+				// A refused move will never be answered, so the position is
+				// asked for again to find out whose turn it really is.
+				rejections++;
+				if(p.sentAt != 0)
+				{
+					p.sentAt = 0;
+					movesSent--;
+					JumpingCubeProtocol.putSync(p.out, nextSequence());
+				}
+				break;
+			case JumpingCubeProtocol.OPPONENT_LEFT:
+				if(p.dueIndex >= 0)
+				{
+					removeDue(p.dueIndex);
+				}
+				p.sentAt = 0;
+				JumpingCubeProtocol.putJoin(p.out, nextSequence(), size, size);
+				break;
+		}
+	}
+
+	/**
+	 * Sends a player's chosen move, charging its latency from the time the
+	 * move was due rather than from now.
+	 */
+	private void send(Player p)
+	{
+		JumpingCubeProtocol.putMove(p.out, nextSequence(), p.nextMove);
+		p.sentAt = p.dueAt;
+		p.dueAt += 2 * moveInterval;
+		movesSent++;
+		try
+		{
+			flush(p);
+		}
+		catch(IOException e)
+		{
+			disconnect(p);
+		}
+	}
+
+	private void disconnect(Player p)
+	{
+		disconnects++;
+		if(p.dueIndex >= 0)
+		{
+			removeDue(p.dueIndex);
+		}
+		p.sentAt = 0;
+		p.key.cancel();
+		try
+		{
+			p.channel.close();
+		}
+		catch(IOException e)
+		{
+		}
+	}
+
+	/**
+	 * Adds a player to the heap of players waiting to send a move, ordered
+	 * by when each move is due.
+	 */
+	private void addDue(Player p)
+	{
+		int i = numDue++;
+		due[i] = p;
+		p.dueIndex = i;
+		siftUp(i);
+	}
+
+	private Player removeDue(int i)
+	{
+		Player p = due[i];
+		numDue--;
+		if(i != numDue)
+		{
+			due[i] = due[numDue];
+			due[i].dueIndex = i;
+			siftDown(i);
+			siftUp(i);
+		}
+		due[numDue] = null;
+		p.dueIndex = -1;
+		return p;
+	}
+
+	private void siftUp(int i)
+	{
+		while(i > 0)
+		{
+			int parent = (i - 1) / 2;
+			if(due[parent].dueAt <= due[i].dueAt)
+			{
+				break;
+			}
+			swapDue(i, parent);
+			i = parent;
+		}
+	}
+
+	private void siftDown(int i)
+	{
+		while(true)
+		{
+			int smallest = i;
+			int left = 2 * i + 1;
+			int right = left + 1;
+			if(left < numDue && due[left].dueAt < due[smallest].dueAt)
+			{
+				smallest = left;
+			}
+			if(right < numDue && due[right].dueAt < due[smallest].dueAt)
+			{
+				smallest = right;
+			}
+			if(smallest == i)
+			{
+				return;
+			}
+			swapDue(i, smallest);
+			i = smallest;
+		}
+	}
+
+	private void swapDue(int i, int j)
+	{
+		Player t = due[i];
+		due[i] = due[j];
+		due[j] = t;
+		due[i].dueIndex = i;
+		due[j].dueIndex = j;
+	}
+
+	private int nextSequence()
+	{
+		sequence = (sequence + 1) & 0xFF;
+		return sequence;
+	}
+
+	private int randomMove(JumpingCubeEngine game)
+	{
+		int n = game.getNumBoxes();
+		int cell = random.nextInt(n);
+		while(!game.isLegal(cell))
+		{
+			cell = (cell + 1) % n;
+		}
+		return cell;
+	}
+
+	private void flush(Player p) throws IOException
+	{
+		p.out.flip();
+		while(p.out.hasRemaining())
+		{
+			p.channel.write(p.out);
+		}
+		p.out.clear();
+	}
+
+	private void printInterval(long elapsedMillis, long nanos)
+	{
+		System.out.println(pad(elapsedMillis / 1000 + "s", 7)
+				+ pad(String.valueOf(intervalMoves * 1000000000L / Math.max(1, nanos)), 11)
+				+ pad(interval.getValueAtPercentile(50) + "us", 11)
+				+ pad(interval.getValueAtPercentile(99) + "us", 10)
+				+ pad(interval.getValueAtPercentile(99.9) + "us", 10)
+				+ pad(interval.getMax() + "us", 10)
+				+ pad(String.valueOf(rejections + disconnects), 9));
+		interval.reset();
+		intervalMoves = 0;
+	}
+
+	private static String pad(String s, int width)
+	{
+		StringBuffer buffer = new StringBuffer();
+		for(int i = s.length(); i < width; i++)
+		{
+			buffer.append(' ');
+		}
+		return buffer.append(s).toString();
+	}
+
+	/**
+	 * Prints the number of moves played, how long they took, and how many went wrong.
+	 * @param millis How long the moves were measured for.
+	 */
+	public void report(long millis)
+	{
+		long unanswered = Math.max(0, movesSent - movesAnswered);
+		long errors = rejections + disconnects + connectFailures + unanswered;
+		System.out.println("games finished:   " + gamesFinished);
+		System.out.println("moves sent:       " + movesSent);
+		System.out.println("moves answered:   " + movesAnswered);
+		System.out.println("moves per second: " + (movesAnswered * 1000L / Math.max(1, millis))
+				+ ((moveInterval > 0) ? " (target " + (due.length / 2) * 1000000000L / moveInterval + ")" : ""));
+		System.out.println("latency p50:      " + total.getValueAtPercentile(50) + " us");
+		System.out.println("latency p99:      " + total.getValueAtPercentile(99) + " us");
+		System.out.println("latency p999:     " + total.getValueAtPercentile(99.9) + " us");
+		System.out.println("latency max:      " + total.getMax() + " us");
+		System.out.println("latency mean:     " + Math.round(total.getMean()) + " us");
+		System.out.println("rejected moves:   " + rejections);
+		System.out.println("disconnects:      " + disconnects);
+		System.out.println("failed connects:  " + connectFailures);
+		System.out.println("unanswered moves: " + unanswered);
+		System.out.println("error rate:       " + ((movesSent == 0) ? 0.0 : 100.0 * errors / movesSent) + " %");
+		if(movesAnswered > 0)
+		{
+			System.out.println("delta bytes/move: " + ((double)deltaBytes / (movesAnswered * 2))
+					+ " (a whole position is " + ((double)stateBytes / (movesAnswered * 2)) + ")");
+		}
+	}
+
+	/**
+	 * Prints what a JumpingCubeServer's socket traffic cost per move.
+	 * @param server The server the games were played on.
+	 */
+	public void report(JumpingCubeServer server)
+	{
+		long moves = Math.max(1, server.getMovesPlayed());
+		System.out.println("server bytes/move:  " + ((double)server.getBytesWritten() / moves));
+		System.out.println("server writes/move: " + ((double)server.getWriteCalls() / moves));
+		System.out.println("server reads/move:  " + ((double)server.getReadCalls() / moves));
+	}
+
+	/**
+	 * Runs the load generator against a server started in this process,
+	 * or against one already listening on this machine.
+	 */
+	public static void main(String args[]) throws IOException
+	{
+		int games = 2000;
+		int seconds = 10;
+		int size = JumpingCubeBoard.DEFAULT_ROWS;
+		int rate = 0;
+		boolean aiMoves = false;
+		int warmup = 0;
+		int intervalSeconds = 1;
+		String target = "nio";
+		for(int i = 0; i + 1 < args.length; i += 2)
+		{
+			String value = args[i + 1];
+			if(args[i].equals("-games")) games = Integer.parseInt(value);
+			else if(args[i].equals("-seconds")) seconds = Integer.parseInt(value);
+			else if(args[i].equals("-size")) size = Integer.parseInt(value);
+			else if(args[i].equals("-rate")) rate = Integer.parseInt(value);
+			else if(args[i].equals("-moves")) aiMoves = value.equals("ai");
+			else if(args[i].equals("-warmup")) warmup = Integer.parseInt(value);
+			else if(args[i].equals("-interval")) intervalSeconds = Integer.parseInt(value);
+			else if(args[i].equals("-server")) target = value;
+			else throw new IllegalArgumentException("Unknown option " + args[i]);
+		}
+
+		HttpServer metrics = JumpingCubeMetrics.serveIfRequested();
+		JumpingCubeLoadGenerator generator = new JumpingCubeLoadGenerator(size, games, rate, aiMoves);
+		long millis = seconds * 1000L;
+		long warmupMillis = Math.min(warmup, seconds) * 1000L;
+		long intervalMillis = intervalSeconds * 1000L;
+		if(target.equals("threads"))
+		{
+			JumpingCubeThreadServer server = new JumpingCubeThreadServer(0);
+			server.start();
+			System.out.println("server: thread per connection"
+					+ (JumpingCubeTaskScope.usesVirtualThreads() ? " (virtual)" : " (platform)"));
+			generator.run("127.0.0.1", server.getPort(), games, millis, warmupMillis, intervalMillis);
+			server.stop();
+		}
+		else if(target.equals("nio"))
+		{
+			JumpingCubeServer server = new JumpingCubeServer(0);
+			server.start();
+			System.out.println("server: selector");
+			generator.run("127.0.0.1", server.getPort(), games, millis, warmupMillis, intervalMillis);
+			server.stop();
+			generator.report(server);
+		}
+		else
+		{
+			int colon = target.lastIndexOf(':');
+			String host = (colon < 0) ? "127.0.0.1" : target.substring(0, colon);
+			int port = Integer.parseInt(target.substring(colon + 1));
+			System.out.println("server: " + host + ":" + port);
+			generator.run(host, port, games, millis, warmupMillis, intervalMillis);
+		}
+		generator.report(millis - warmupMillis);
+		if(metrics != null)
+		{
+			metrics.stop(0);
+		}
+	}
+}
@@ -0,0 +1,119 @@
+/**
+ * JumpingCubeMatch.java
+ * @author Daniel Miladinov
+ * @version 1-beta
+ */
+
+/**
+ * The JumpingCubeMatch class represents one game being hosted by a
+ * JumpingCubeServer.  It pairs the server's id for the game with the
+ * JumpingCubeEngine playing it, or with the slot of a JumpingCubeArena
+ * that keeps its position off the heap, and decides whether a request
+ * from one of its two seats may be played.
+ */
+public class JumpingCubeMatch
+{
+	/** Result of play(): the move has been played.*/
+	public static final int PLAYED = 0;
+
+	private int id;
+	private JumpingCubeEngine game;
+	private JumpingCubeArena arena;
+	private int slot;
+
+	/**
+	 * The JumpingCubeMatch constructor.
+	 * @param id The server's id for this match.
+	 * @param rows The number of rows in the game.
+	 * @param cols The number of columns in the game.
+	 */
+	public JumpingCubeMatch(int id, int rows, int cols)
+	{
+		this.id = id;
+		this.game = new JumpingCubeEngine(rows, cols);
+	}
+
+	/**
+	 * The JumpingCubeMatch constructor for a match kept in an arena.  Its
+	 * position is loaded into the arena's engine whenever it is asked for,
+	 * so the match may only be used on the thread that owns the arena.
+	 * @param id The server's id for this match.
+	 * @param arena The arena to take a slot of, of the match's board.
+	 */
+	public JumpingCubeMatch(int id, JumpingCubeArena arena)
+	{
+		this.id = id;
+		this.arena = arena;
+		slot = arena.allocate(id, System.currentTimeMillis());
+	}
+
+	/**
+	 * Gets the server's id for this match.
+	 * @return The id of this match.
+	 */
+	public int getId()
+	{
+		return id;
+	}
+
+	/**
+	 * Gets the game being played in this match.  For a match kept in an
+	 * arena this is the arena's engine, which holds the match's position
+	 * only until another match of the arena is asked for its game.
+	 * @return The JumpingCubeEngine playing this match.
+	 */
+	public JumpingCubeEngine getGame()
+	{
+		return (arena != null) ? arena.get(slot) : game;
+	}
+
+	/**
+	 * Returns whether the game has been won.
+	 * @return True if one of the players has won.
+	 */
+	public boolean isOver()
+	{
+		if(arena != null)
+		{
+			return arena.getWinner(slot) != JumpingCubeEngine.NO_WINNER;
+		}
+		return game.getWinner() != JumpingCubeEngine.NO_WINNER;
+	}
+
+	/**
+	 * Gives the slot of a match kept in an arena back, once the match is
+	 * over or abandoned.  The match may not be used afterwards.
+	 */
+	public void close()
+	{
+		if(arena != null && slot >= 0)
+		{
+			arena.free(slot);
+			slot = -1;
+		}
+	}
+
+	/**
+	 * Plays a move on behalf of one of the seats.
+	 * @param seat The index of the player asking to move.
+	 * @param cell The cell index of the box clicked on.
+	 * @return PLAYED, or the JumpingCubeProtocol rejection reason if the move was refused.
+	 */
+	public int play(int seat, int cell)
+	{
+		JumpingCubeEngine game = getGame();
+		if(seat != game.getActivePlayer() || isOver())
+		{
+			return JumpingCubeProtocol.NOT_YOUR_TURN;
+		}
+		if(!JumpingCubeFlightRecorder.applyMove(game, cell, id))
+		{
+			return JumpingCubeProtocol.ILLEGAL_MOVE;
+		}
+		if(arena != null)
+		{
+			arena.storeChanges(slot, game, System.currentTimeMillis());
+		}
+		return PLAYED;
+	}
+}
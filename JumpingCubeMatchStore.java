@@ -0,0 +1,889 @@
+/**
+ * JumpingCubeMatchStore.java
+ * @author Daniel Miladinov
+ * @version 1-beta
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Random;
+import java.util.Vector;
+import java.util.zip.CRC32;
+
+/**
+ * The JumpingCubeMatchStore class keeps a durable record of the matches
+ * played on a JumpingCubeServer.  Every match start, move and result is
+ * appended to a log split into segment files, named after the log offset
+ * of their first byte, and nothing already written is ever changed.
+ * <p>
+ * Appending only copies the record into memory.  A background thread
+ * writes whatever has gathered since its last pass and forces it to disk
+ * with one fsync, so however many moves arrive while a disk flush is in
+ * progress, they share the next one.  A caller that must not go on until
+ * its record is safe waits for it with awaitDurable().
+ * <p>
+ * Opening a store scans the log.  A record cut short or damaged by a
+ * crash ends the log there, and matches that were started but never
+ * finished are rebuilt by replaying their moves through a
+ * JumpingCubeEngine.  The scan also fills a memory-mapped index from
+ * match id to the offset where each match starts, so a single match can
+ * later be read back without searching the log for it.
+ * <p>
+ * Every record is a length byte, a body made of a record type, the match
+ * id and the record's own fields, and a CRC-32 of the body.
+ */
+public class JumpingCubeMatchStore implements Runnable
+{
+	/** Record type: a match has started.  Fields: rows, cols.*/
+	public static final int START = 1;
+	/** Record type: a move was played.  Fields: cell.*/
+	public static final int MOVE = 2;
+	/** Record type: a match has finished.  Fields: winner, or ABANDONED.*/
+	public static final int END = 3;
+
+	/** The winner recorded for a match whose players went away before it was won.*/
+	public static final int ABANDONED = 0xFF;
+
+	/** The size a segment may reach before a new one is started, unless told otherwise.*/
+	public static final long DEFAULT_SEGMENT_SIZE = 64L << 20;
+
+	private static final int BATCH_SIZE = 1 << 20;
+	private static final int MAX_RECORD = 16;
+	private static final int INDEX_CHUNK = 1 << 17;
+	private static final String SUFFIX = ".log";
+
+	private File directory;
+	private long segmentSize;
+	private int commitDelayMillis;
+
+	private Vector segmentBases;
+	private RandomAccessFile segmentFile;
+	private FileChannel segment;
+	private long segmentBase;
+
+	private RandomAccessFile indexFile;
+	private Vector indexChunks;
+
+	private ByteBuffer filling;
+	private ByteBuffer spare;
+	private CRC32 crc;
+	private long length;
+	private volatile long durableLength;
+	private long commits;
+	private IOException failure;
+	private boolean open;
+	private Thread committer;
+
+	private Vector liveMatches;
+	private int nextMatchId;
+	private long recoveryNanos;
+	private long truncatedBytes;
+
+	/**
+	 * The JumpingCubeMatchStore constructor.  Opens the log in a directory,
+	 * creating it if need be, and recovers what it holds.
+	 * @param directory The directory holding the segment and index files.
+	 * @throws IOException If the log cannot be read or opened for writing.
+	 */
+	public JumpingCubeMatchStore(File directory) throws IOException
+	{
+		this(directory, DEFAULT_SEGMENT_SIZE, 0);
+	}
+
+	/**
+	 * The JumpingCubeMatchStore constructor.  Opens the log in a directory,
+	 * creating it if need be, and recovers what it holds.
+	 * @param directory The directory holding the segment and index files.
+	 * @param segmentSize The size a segment may reach before a new one is started.
+	 * @param commitDelayMillis How long to wait for more records before each fsync.
+	 * @throws IOException If the log cannot be read or opened for writing.
+	 */
+	public JumpingCubeMatchStore(File directory, long segmentSize, int commitDelayMillis) throws IOException
+	{
+		this.directory = directory;
+		this.segmentSize = segmentSize;
+		this.commitDelayMillis = commitDelayMillis;
+		directory.mkdirs();
+		crc = new CRC32();
+		filling = ByteBuffer.allocate(BATCH_SIZE);
+		spare = ByteBuffer.allocate(BATCH_SIZE);
+		indexChunks = new Vector();
+		indexFile = new RandomAccessFile(new File(directory, "matches.idx"), "rw");
+
+		long started = System.nanoTime();
+		recover();
+		recoveryNanos = System.nanoTime() - started;
+
+		durableLength = length;
+		openSegment(segmentBases.isEmpty() ? 0 : ((Long)segmentBases.lastElement()).longValue());
+		open = true;
+		committer = new Thread(this, "JumpingCubeMatchStore");
+		committer.setDaemon(true);
+		committer.start();
+	}
+
+	/**
+	 * Gets the matches that were started and never finished, as recovered
+	 * when the store was opened.
+	 * @return A Vector of JumpingCubeMatch, each at the position of its last logged move.
+	 */
+	public Vector getLiveMatches()
+	{
+		return liveMatches;
+	}
+
+	/**
+	 * Gets an id no match in the log has used.
+	 * @return One more than the highest match id in the log when it was opened.
+	 */
+	public int getNextMatchId()
+	{
+		return nextMatchId;
+	}
+
+	/**
+	 * Gets how long opening the store took to scan the log and rebuild its matches.
+	 * @return The recovery time in nanoseconds.
+	 */
+	public long getRecoveryNanos()
+	{
+		return recoveryNanos;
+	}
+
+	/**
+	 * Gets the number of bytes of damaged or incomplete records cut from the
+	 * end of the log when the store was opened.
+	 * @return The number of bytes discarded.
+	 */
+	public long getTruncatedBytes()
+	{
+		return truncatedBytes;
+	}
+
+	/**
+	 * Gets the length of the log, including records not yet on disk.
+	 * @return The log offset the next record will be written at.
+	 */
+	public synchronized long getLength()
+	{
+		return length;
+	}
+
+	/**
+	 * Gets how much of the log is known to be on disk.
+	 * @return The log offset up to which every record has been forced to disk.
+	 */
+	public long getDurableLength()
+	{
+		return durableLength;
+	}
+
+	/**
+	 * Gets the number of times the log has been forced to disk.
+	 * @return The number of fsyncs since the store was opened.
+	 */
+	public synchronized long getCommits()
+	{
+		return commits;
+	}
+
+	/**
+	 * Records that a match has started.
+	 * @param matchId The server's id for the match.
+	 * @param rows The number of rows in the game.
+	 * @param cols The number of columns in the game.
+	 * @return The log offset just past the record, for awaitDurable().
+	 * @throws IOException If the log can no longer be written.
+	 */
+	public synchronized long appendStart(int matchId, int rows, int cols) throws IOException
+	{
+		setIndex(matchId, length);
+		return append(START, matchId, rows, cols);
+	}
+
+	/**
+	 * Records a move.
+	 * @param matchId The server's id for the match.
+	 * @param cell The cell index of the box clicked on.
+	 * @return The log offset just past the record, for awaitDurable().
+	 * @throws IOException If the log can no longer be written.
+	 */
+	public synchronized long appendMove(int matchId, int cell) throws IOException
+	{
+		return append(MOVE, matchId, cell, -1);
+	}
+
+	/**
+	 * Records that a match has finished.
+	 * @param matchId The server's id for the match.
+	 * @param winner The index of the winning player, or ABANDONED.
+	 * @return The log offset just past the record, for awaitDurable().
+	 * @throws IOException If the log can no longer be written.
+	 */
+	public synchronized long appendEnd(int matchId, int winner) throws IOException
+	{
+		return append(END, matchId, winner & 0xFF, -1);
+	}
+
+	/**
+	 * Waits until the log is on disk up to the given offset.
+	 * @param offset An offset returned by one of the append methods.
+	 * @throws IOException If the log could not be written.
+	 */
+	public synchronized void awaitDurable(long offset) throws IOException
+	{
+		while(durableLength < offset)
+		{
+			if(failure != null)
+			{
+				throw failure;
+			}
+			try
+			{
+				wait();
+			}
+			catch(InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+				throw new IOException("Interrupted while waiting for the log");
+			}
+		}
+	}
+
+	/**
+	 * Reads back the moves of one match, as far as they have been written to disk.
+	 * @param matchId The server's id for the match.
+	 * @return The rows, the columns, then the cell index of every move, or null if the match is unknown.
+	 * @throws IOException If the log cannot be read.
+	 */
+	public int[] readMatch(int matchId) throws IOException
+	{
+		long offset = getIndex(matchId);
+		if(offset < 0 || offset >= durableLength)
+		{
+			return null;
+		}
+		int[] result = new int[64];
+		int n = 0;
+		long end = durableLength;
+		Vector bases;
+		synchronized(this)
+		{
+			bases = (Vector)segmentBases.clone();
+		}
+		int first = bases.size() - 1;
+		while(first > 0 && ((Long)bases.get(first)).longValue() > offset)
+		{
+			first--;
+		}
+		for(int s = first; s < bases.size(); s++)
+		{
+			long base = ((Long)bases.get(s)).longValue();
+			long next = (s + 1 < bases.size()) ? ((Long)bases.get(s + 1)).longValue() : end;
+			ByteBuffer in = map(base, Math.min(next, end) - base);
+			in.position((int)Math.max(0, offset - base));
+			byte[] body = new byte[MAX_RECORD];
+			while(in.remaining() > 0)
+			{
+				int size = readRecord(in, body);
+				if(size < 0)
+				{
+					break;
+				}
+				if(readInt(body, 1) != matchId)
+				{
+					continue;
+				}
+				if(n + 2 >= result.length)
+				{
+					int[] bigger = new int[result.length * 2];
+					System.arraycopy(result, 0, bigger, 0, n);
+					result = bigger;
+				}
+				if(body[0] == START)
+				{
+					result[n++] = body[5];
+					result[n++] = body[6];
+				}
+				else if(body[0] == MOVE)
+				{
+					result[n++] = body[5] & 0xFF;
+				}
+				else
+				{
+					s = bases.size();
+					break;
+				}
+			}
+		}
+		int[] moves = new int[n];
+		System.arraycopy(result, 0, moves, 0, n);
+		return moves;
+	}
+
+	/**
+	 * Writes and forces everything appended so far, then closes the log.
+	 */
+	public void close()
+	{
+		synchronized(this)
+		{
+			if(!open)
+			{
+				return;
+			}
+			open = false;
+			notifyAll();
+		}
+		try
+		{
+			committer.join();
+		}
+		catch(InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+		}
+		try
+		{
+			segment.close();
+			indexFile.close();
+		}
+		catch(IOException e)
+		{
+		}
+	}
+
+	/**
+	 * The commit loop, run on the thread created by the constructor.  Each
+	 * pass takes every record appended since the last one, writes them in
+	 * one call and forces them to disk in one fsync.
+	 */
+	public void run()
+	{
+		while(true)
+		{
+			ByteBuffer batch;
+			long target;
+			synchronized(this)
+			{
+				while(open && filling.position() == 0)
+				{
+					waitQuietly(0);
+				}
+				if(filling.position() == 0)
+				{
+					break;
+				}
+				if(open && commitDelayMillis > 0)
+				{
+					waitQuietly(commitDelayMillis);
+				}
+				batch = filling;
+				filling = spare;
+				spare = batch;
+				target = length;
+				notifyAll();
+			}
+			try
+			{
+				batch.flip();
+				while(batch.hasRemaining())
+				{
+					segment.write(batch);
+				}
+				segment.force(false);
+				batch.clear();
+				if(target - segmentBase >= segmentSize)
+				{
+					segment.close();
+					openSegment(target);
+				}
+			}
+			catch(IOException e)
+			{
+				synchronized(this)
+				{
+					failure = e;
+					notifyAll();
+				}
+				return;
+			}
+			synchronized(this)
+			{
+				durableLength = target;
+				commits++;
+				notifyAll();
+			}
+		}
+	}
+
+	private long append(int type, int matchId, int a, int b) throws IOException
+	{
+		if(failure != null)
+		{
+			throw failure;
+		}
+		if(!open)
+		{
+			throw new IOException("The match store is closed");
+		}
+		while(filling.remaining() < MAX_RECORD)
+		{
+			waitQuietly(0);
+			if(failure != null)
+			{
+				throw failure;
+			}
+		}
+		boolean wasEmpty = (filling.position() == 0);
+		int start = filling.position();
+		filling.put((byte)0);
+		filling.put((byte)type);
+		filling.putInt(matchId);
+		filling.put((byte)a);
+		if(b >= 0)
+		{
+			filling.put((byte)b);
+		}
+		int size = filling.position() - start - 1;
+		filling.put(start, (byte)size);
+		crc.reset();
+		crc.update(filling.array(), start + 1, size);
+		filling.putInt((int)crc.getValue());
+		length += filling.position() - start;
+		if(wasEmpty)
+		{
+			notifyAll();
+		}
+		return length;
+	}
+
+	private void waitQuietly(long millis)
+	{
+		try
+		{
+			wait(millis);
+		}
+		catch(InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Reads the record at the buffer's position into body.
+	 * @return The size of the body, or -1 if the record is incomplete or damaged.
+	 */
+	private int readRecord(ByteBuffer in, byte[] body)
+	{
+		if(in.remaining() < 1)
+		{
+			return -1;
+		}
+		int size = in.get(in.position()) & 0xFF;
+		if(size < 6 || size > MAX_RECORD - 5 || in.remaining() < size + 5)
+		{
+			return -1;
+		}
+		in.get();
+		in.get(body, 0, size);
+		int stored = in.getInt();
+		crc.reset();
+		crc.update(body, 0, size);
+		if(stored != (int)crc.getValue() || body[0] < START || body[0] > END)
+		{
+			in.position(in.position() - size - 5);
+			return -1;
+		}
+		return size;
+	}
+
+	private static int readInt(byte[] b, int i)
+	{
+		return ((b[i] & 0xFF) << 24) | ((b[i + 1] & 0xFF) << 16) | ((b[i + 2] & 0xFF) << 8) | (b[i + 3] & 0xFF);
+	}
+
+	/**
+	 * Scans every segment twice.  The first pass finds where the log
+	 * really ends, indexes every match and works out which ones never
+	 * finished; the second replays only those, starting at the earliest of
+	 * their START records rather than at the beginning of the log.
+	 */
+	private void recover() throws IOException
+	{
+		segmentBases = listSegments();
+		HashMap live = new HashMap();
+		byte[] body = new byte[MAX_RECORD];
+		long highestId = -1;
+		length = 0;
+		for(int s = 0; s < segmentBases.size(); s++)
+		{
+			long base = ((Long)segmentBases.get(s)).longValue();
+			File file = segmentFile(base);
+			ByteBuffer in = map(base, file.length());
+			while(in.remaining() > 0)
+			{
+				long offset = base + in.position();
+				if(readRecord(in, body) < 0)
+				{
+					break;
+				}
+				int id = readInt(body, 1);
+				if(body[0] == START)
+				{
+					setIndex(id, offset);
+					live.put(Integer.valueOf(id), Long.valueOf(offset));
+					highestId = Math.max(highestId, id & 0xFFFFFFFFL);
+				}
+				else if(body[0] == END)
+				{
+					live.remove(Integer.valueOf(id));
+				}
+			}
+			length = base + in.position();
+			if(in.remaining() > 0)
+			{
+				truncate(s, file, in.position());
+				break;
+			}
+		}
+		nextMatchId = (int)(highestId + 1);
+
+		liveMatches = new Vector();
+		if(live.isEmpty())
+		{
+			return;
+		}
+		long from = Long.MAX_VALUE;
+		Iterator it = live.values().iterator();
+		while(it.hasNext())
+		{
+			from = Math.min(from, ((Long)it.next()).longValue());
+		}
+		HashMap matches = new HashMap();
+		for(int s = 0; s < segmentBases.size(); s++)
+		{
+			long base = ((Long)segmentBases.get(s)).longValue();
+			long next = (s + 1 < segmentBases.size()) ? ((Long)segmentBases.get(s + 1)).longValue() : length;
+			if(next <= from)
+			{
+				continue;
+			}
+			ByteBuffer in = map(base, next - base);
+			in.position((int)Math.max(0, from - base));
+			while(in.remaining() > 0 && readRecord(in, body) >= 0)
+			{
+				Integer id = Integer.valueOf(readInt(body, 1));
+				if(!live.containsKey(id))
+				{
+					continue;
+				}
+				if(body[0] == START)
+				{
+					JumpingCubeMatch match = new JumpingCubeMatch(id.intValue(), body[5], body[6]);
+					matches.put(id, match);
+					liveMatches.add(match);
+				}
+				else if(body[0] == MOVE)
+				{
+					JumpingCubeMatch match = (JumpingCubeMatch)matches.get(id);
+					if(match != null)
+					{
+						match.getGame().applyMove(body[5] & 0xFF);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Cuts a damaged segment short at the end of its last good record, and
+	 * removes every segment after it, which can no longer be trusted.
+	 */
+	private void truncate(int s, File file, long goodLength) throws IOException
+	{
+		truncatedBytes += file.length() - goodLength;
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		raf.setLength(goodLength);
+		raf.getChannel().force(true);
+		raf.close();
+		while(segmentBases.size() > s + 1)
+		{
+			long base = ((Long)segmentBases.remove(s + 1)).longValue();
+			File later = segmentFile(base);
+			truncatedBytes += later.length();
+			later.delete();
+		}
+	}
+
+	private Vector listSegments()
+	{
+		String[] names = directory.list();
+		Vector bases = new Vector();
+		for(int i = 0; names != null && i < names.length; i++)
+		{
+			if(!names[i].endsWith(SUFFIX))
+			{
+				continue;
+			}
+			long base;
+			try
+			{
+				base = Long.parseLong(names[i].substring(0, names[i].length() - SUFFIX.length()));
+			}
+			catch(NumberFormatException e)
+			{
+				continue;
+			}
+			int at = bases.size();
+			while(at > 0 && ((Long)bases.get(at - 1)).longValue() > base)
+			{
+				at--;
+			}
+			bases.insertElementAt(Long.valueOf(base), at);
+		}
+		return bases;
+	}
+
+	private File segmentFile(long base)
+	{
+		String digits = String.valueOf(base);
+		StringBuffer name = new StringBuffer();
+		for(int i = digits.length(); i < 20; i++)
+		{
+			name.append('0');
+		}
+		return new File(directory, name.append(digits).append(SUFFIX).toString());
+	}
+
+	private ByteBuffer map(long base, long size) throws IOException
+	{
+		RandomAccessFile raf = new RandomAccessFile(segmentFile(base), "r");
+		try
+		{
+			return raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, Math.min(size, raf.length()));
+		}
+		finally
+		{
+			raf.close();
+		}
+	}
+
+	private synchronized void openSegment(long base) throws IOException
+	{
+		File file = segmentFile(base);
+		if(!segmentBases.contains(Long.valueOf(base)))
+		{
+			segmentBases.add(Long.valueOf(base));
+		}
+		segmentFile = new RandomAccessFile(file, "rw");
+		segment = segmentFile.getChannel();
+		segment.position(segment.size());
+		segmentBase = base;
+	}
+
+	/**
+	 * Stores a match's starting offset in the index.  The index is a flat
+	 * array of longs, indexed by match id and mapped from the index file a
+	 * chunk at a time as the ids grow; an offset is stored plus one, so
+	 * that zero, the value of a fresh chunk, means no match.
+	 */
+	private void setIndex(int matchId, long offset) throws IOException
+	{
+		LongBuffer chunk = indexChunk(matchId, true);
+		chunk.put(matchId % INDEX_CHUNK, offset + 1);
+	}
+
+	private long getIndex(int matchId) throws IOException
+	{
+		LongBuffer chunk = indexChunk(matchId, false);
+		return (chunk == null) ? -1 : chunk.get(matchId % INDEX_CHUNK) - 1;
+	}
+
+	private synchronized LongBuffer indexChunk(int matchId, boolean create) throws IOException
+	{
+		if(matchId < 0)
+		{
+			return null;
+		}
+		int c = matchId / INDEX_CHUNK;
+		while(indexChunks.size() <= c)
+		{
+			long position = (long)indexChunks.size() * INDEX_CHUNK * 8;
+			if(!create && position >= indexFile.length())
+			{
+				return null;
+			}
+			MappedByteBuffer mapped = indexFile.getChannel().map(FileChannel.MapMode.READ_WRITE, position, INDEX_CHUNK * 8L);
+			indexChunks.add(mapped.asLongBuffer());
+		}
+		return (LongBuffer)indexChunks.get(c);
+	}
+
+	/**
+	 * Measures the store: plays random games into a fresh log, appending
+	 * every move, then reopens it and times the recovery.  With writer
+	 * threads, each thread waits for every move to be durable before
+	 * playing the next, which shows how many moves share each fsync.
+	 * <p>
+	 * Usage: java JumpingCubeMatchStore [directory] [seconds] [games] [writers]
+	 */
+	public static void main(String args[]) throws Exception
+	{
+		final File dir = new File((args.length > 0) ? args[0] : "jumpingcube-log");
+		final long millis = ((args.length > 1) ? Integer.parseInt(args[1]) : 10) * 1000L;
+		final int games = (args.length > 2) ? Integer.parseInt(args[2]) : 1000;
+		int writers = (args.length > 3) ? Integer.parseInt(args[3]) : 0;
+		String[] old = dir.list();
+		for(int i = 0; old != null && i < old.length; i++)
+		{
+			new File(dir, old[i]).delete();
+		}
+
+		final JumpingCubeMatchStore store = new JumpingCubeMatchStore(dir);
+		final long[] moves = new long[Math.max(1, writers)];
+		final JumpingCubeMatch[][] playing = new JumpingCubeMatch[moves.length][];
+		final int[] ids = new int[1];
+		long started = System.nanoTime();
+		Thread[] threads = new Thread[moves.length];
+		for(int t = 0; t < threads.length; t++)
+		{
+			final int me = t;
+			final boolean durable = (writers > 0);
+			threads[t] = new Thread()
+			{
+				public void run()
+				{
+					try
+					{
+						playing[me] = play(store, ids, games / moves.length, millis, durable, moves, me);
+					}
+					catch(IOException e)
+					{
+						e.printStackTrace();
+					}
+				}
+			};
+			threads[t].start();
+		}
+		long total = 0;
+		for(int t = 0; t < threads.length; t++)
+		{
+			threads[t].join();
+			total += moves[t];
+		}
+		long elapsed = System.nanoTime() - started;
+		long bytes = store.getLength();
+		long commits = store.getCommits();
+		store.close();
+
+		// Leave a torn record at the end, as a crash in the middle of a write would.
+		File last = null;
+		String[] names = dir.list();
+		for(int i = 0; i < names.length; i++)
+		{
+			if(names[i].endsWith(SUFFIX) && (last == null || names[i].compareTo(last.getName()) > 0))
+			{
+				last = new File(dir, names[i]);
+			}
+		}
+		RandomAccessFile raf = new RandomAccessFile(last, "rw");
+		raf.seek(raf.length());
+		raf.write(new byte[] {6, MOVE, 0, 0});
+		raf.close();
+
+		JumpingCubeMatchStore reopened = new JumpingCubeMatchStore(dir);
+		int matched = 0;
+		HashMap byId = new HashMap();
+		for(int i = 0; i < reopened.getLiveMatches().size(); i++)
+		{
+			JumpingCubeMatch m = (JumpingCubeMatch)reopened.getLiveMatches().get(i);
+			byId.put(Integer.valueOf(m.getId()), m);
+		}
+		int live = 0;
+		for(int t = 0; t < playing.length; t++)
+		{
+			for(int g = 0; playing[t] != null && g < playing[t].length; g++)
+			{
+				live++;
+				JumpingCubeMatch m = (JumpingCubeMatch)byId.get(Integer.valueOf(playing[t][g].getId()));
+				if(m != null && m.getGame().getHash() == playing[t][g].getGame().getHash())
+				{
+					matched++;
+				}
+			}
+		}
+		double seconds = reopened.getRecoveryNanos() / 1e9;
+		System.out.println("moves appended:      " + total + " (" + (writers > 0 ? writers + " writers waiting for fsync" : "not waiting") + ")");
+		System.out.println("moves per second:    " + Math.round(total / (elapsed / 1e9)));
+		System.out.println("log size:            " + (bytes >> 10) + " KB, " + ((double)bytes / Math.max(1, total)) + " bytes/move");
+		System.out.println("fsyncs:              " + commits + " (" + ((double)total / Math.max(1, commits)) + " moves each)");
+		System.out.println("recovery:            " + (reopened.getRecoveryNanos() / 1000000) + " ms, "
+				+ Math.round(seconds * (1L << 30) / Math.max(1, bytes)) + " s per GB");
+		System.out.println("torn bytes removed:  " + reopened.getTruncatedBytes());
+		System.out.println("live matches:        " + reopened.getLiveMatches().size() + " recovered, "
+				+ matched + " of " + live + " identical to the games played");
+		reopened.close();
+	}
+
+	/**
+	 * Plays random games into the store until time runs out, keeping a
+	 * number going at once, and returns the ones still being played.
+	 */
+	private static JumpingCubeMatch[] play(JumpingCubeMatchStore store, int[] ids, int games, long millis,
+			boolean durable, long[] moves, int me) throws IOException
+	{
+		Random random = new Random(me);
+		JumpingCubeMatch[] matches = new JumpingCubeMatch[Math.max(1, games)];
+		for(int g = 0; g < matches.length; g++)
+		{
+			matches[g] = start(store, ids);
+		}
+		long end = System.currentTimeMillis() + millis;
+		while(System.currentTimeMillis() < end)
+		{
+			for(int g = 0; g < matches.length; g++)
+			{
+				JumpingCubeEngine game = matches[g].getGame();
+				int n = game.getNumBoxes();
+				int cell = random.nextInt(n);
+				while(!game.isLegal(cell))
+				{
+					cell = (cell + 1) % n;
+				}
+				game.applyMove(cell);
+				long offset = store.appendMove(matches[g].getId(), cell);
+				moves[me]++;
+				if(game.getWinner() != JumpingCubeEngine.NO_WINNER)
+				{
+					offset = store.appendEnd(matches[g].getId(), game.getWinner());
+					matches[g] = start(store, ids);
+				}
+				if(durable)
+				{
+					store.awaitDurable(offset);
+				}
+			}
+		}
+		return matches;
+	}
+
+	private static JumpingCubeMatch start(JumpingCubeMatchStore store, int[] ids) throws IOException
+	{
+		int id;
+		synchronized(ids)
+		{
+			id = ids[0]++;
+		}
+		JumpingCubeMatch match = new JumpingCubeMatch(id, JumpingCubeBoard.DEFAULT_ROWS, JumpingCubeBoard.DEFAULT_COLS);
+		store.appendStart(id, JumpingCubeBoard.DEFAULT_ROWS, JumpingCubeBoard.DEFAULT_COLS);
+		return match;
+	}
+}
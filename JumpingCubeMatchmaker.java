@@ -0,0 +1,682 @@
+/**
+ * JumpingCubeMatchmaker.java
+ * @author Daniel Miladinov
+ * @version 1-beta
+ */
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The JumpingCubeMatchmaker class pairs players who want a game by board
+ * size and rating.  Players are split into stripes, one for every board
+ * size and every band of BUCKET_WIDTH rating points, and joining only adds
+ * a ticket to its stripe's lock-free queue, so any number of threads can
+ * take joins at once without waiting on each other or on the pairing.
+ * <p>
+ * Pairing is done by one thread at a time, in sweeps.  A sweep moves the
+ * new tickets of every stripe into the stripe's pool, kept in rating
+ * order, so walking a board size's stripes in turn visits its players
+ * from the lowest rating to the highest.  Neighbours on that walk are
+ * paired when their ratings are within the window of the one who has
+ * waited longer.  A window starts at the base window and widens steadily
+ * while its player waits, so a player far from everyone else still gets
+ * a game in the end.  The pairs a sweep makes are handed to the Listener
+ * in batches, so the matches can be created together.
+ * <p>
+ * The matchmaker can sweep on a thread of its own, started by start(), or
+ * be swept by its owner calling match(), such as from a server's loop.
+ * <p>
+ * Run on its own, the class pairs a synthetic load of joins, spread over
+ * board sizes and ratings, and prints the pairing rate and how long
+ * players waited:
+ * <pre>
+ * java JumpingCubeMatchmaker [-rate joins/s] [-seconds n] [-threads n] [-sweep ms]
+ *     [-window points] [-widen points/s] [-cancel percent]
+ * </pre>
+ */
+public class JumpingCubeMatchmaker
+{
+	/** The width of the rating band of each stripe.*/
+	public static final int BUCKET_WIDTH = 100;
+	/** The highest rating; higher ratings count as this.*/
+	public static final int MAX_RATING = 4000;
+	/** The most pairs handed to the Listener at once.*/
+	public static final int BATCH_SIZE = 256;
+	/** The time the matchmaker's own thread waits between sweeps, in milliseconds.*/
+	public static final long DEFAULT_SWEEP_MILLIS = 5;
+
+	private static final int SIDES = JumpingCubeBoard.MAX_ROWS - JumpingCubeBoard.MIN_ROWS + 1;
+	private static final int NUM_SIZES = SIDES * SIDES;
+	private static final int NUM_BUCKETS = MAX_RATING / BUCKET_WIDTH + 1;
+
+	private static final Comparator BY_RATING =
+			new Comparator()
+			{
+				public int compare(Object a, Object b)
+				{
+					return ((Ticket)a).rating - ((Ticket)b).rating;
+				}
+			};
+
+	private int baseWindow;
+	private int widenPerSecond;
+	private Listener listener;
+
+	private ConcurrentLinkedQueue[] inboxes;
+	private Ticket[][] pools;
+	private int[] poolSizes;
+	private boolean[] sorted;
+	private int[] waitingBySize;
+
+	private Ticket[] batch;
+	private int batchPairs;
+
+	private LongAdder joins;
+	private long pairs;
+	private long sweeps;
+	private long batches;
+	private JumpingCubeHistogram waits;
+	private JumpingCubeHistogram gaps;
+
+	private Thread thread;
+	private volatile boolean running;
+	private long sweepMillis;
+
+	/**
+	 * An interface for whatever creates the matches the matchmaker pairs.
+	 */
+	public interface Listener
+	{
+		/**
+		 * Called with the pairs made by a sweep, on the thread sweeping.
+		 * The array is reused once this returns.
+		 * @param players The players, in pairs: players[2 * i] and players[2 * i + 1]
+		 *	are pair i, the first of whom has waited longer.
+		 * @param numPairs The number of pairs.
+		 */
+		public void matched(Ticket[] players, int numPairs);
+	}
+
+	/**
+	 * An inner class which is one player's place in the queue.
+	 */
+	public static class Ticket
+	{
+		long player;
+		int rows;
+		int cols;
+		int rating;
+		long joinedAt;
+		volatile boolean cancelled;
+		boolean matched;
+
+		public Ticket(long player, int rows, int cols, int rating, long joinedAt)
+		{
+			this.player = player;
+			this.rows = rows;
+			this.cols = cols;
+			this.rating = rating;
+			this.joinedAt = joinedAt;
+		}
+
+		/**
+		 * Gets the player the ticket was issued to.
+		 * @return The player's identifier, as given to join().
+		 */
+		public long getPlayer()
+		{
+			return player;
+		}
+
+		/**
+		 * Gets the number of rows of the board the player wants.
+		 * @return The number of rows.
+		 */
+		public int getRows()
+		{
+			return rows;
+		}
+
+		/**
+		 * Gets the number of columns of the board the player wants.
+		 * @return The number of columns.
+		 */
+		public int getCols()
+		{
+			return cols;
+		}
+
+		/**
+		 * Gets the player's rating.
+		 * @return The rating, from 0 to MAX_RATING.
+		 */
+		public int getRating()
+		{
+			return rating;
+		}
+
+		/**
+		 * Gets when the player joined.
+		 * @return The System.nanoTime() of the join.
+		 */
+		public long getJoinedAt()
+		{
+			return joinedAt;
+		}
+
+		/**
+		 * Takes the ticket for a match, unless it has been cancelled.
+		 */
+		synchronized boolean claim()
+		{
+			if(cancelled)
+			{
+				return false;
+			}
+			matched = true;
+			return true;
+		}
+
+		synchronized void release()
+		{
+			matched = false;
+		}
+
+		/**
+		 * Withdraws the ticket, unless it has been taken for a match.
+		 */
+		synchronized boolean cancel()
+		{
+			if(matched)
+			{
+				return false;
+			}
+			cancelled = true;
+			return true;
+		}
+	}
+
+	/**
+	 * The JumpingCubeMatchmaker constructor.
+	 * @param baseWindow The furthest apart two ratings may be for a player who has just joined.
+	 * @param widenPerSecond How many rating points a player's window widens by for every second waited.
+	 * @param listener Where to send the pairs made.
+	 */
+	public JumpingCubeMatchmaker(int baseWindow, int widenPerSecond, Listener listener)
+	{
+		this.baseWindow = baseWindow;
+		this.widenPerSecond = widenPerSecond;
+		this.listener = listener;
+		inboxes = new ConcurrentLinkedQueue[NUM_SIZES * NUM_BUCKETS];
+		pools = new Ticket[inboxes.length][];
+		poolSizes = new int[inboxes.length];
+		sorted = new boolean[inboxes.length];
+		for(int i = 0; i < inboxes.length; i++)
+		{
+			inboxes[i] = new ConcurrentLinkedQueue();
+			pools[i] = new Ticket[4];
+		}
+		waitingBySize = new int[NUM_SIZES];
+		joins = new LongAdder();
+		batch = new Ticket[BATCH_SIZE * 2];
+		waits = new JumpingCubeHistogram();
+		gaps = new JumpingCubeHistogram();
+		sweepMillis = DEFAULT_SWEEP_MILLIS;
+	}
+
+	/**
+	 * Puts a player in the queue for a game.  May be called from any
+	 * thread, and never waits for a lock.  The board size is brought
+	 * within the sizes a JumpingCubeBoard can have.
+	 * @param player An identifier for the player, handed back with the ticket.
+	 * @param rows The number of rows of the board wanted.
+	 * @param cols The number of columns of the board wanted.
+	 * @param rating The player's rating.
+	 * @return The player's ticket, to cancel with.
+	 */
+	public Ticket join(long player, int rows, int cols, int rating)
+	{
+		rows = Math.max(JumpingCubeBoard.MIN_ROWS, Math.min(JumpingCubeBoard.MAX_ROWS, rows));
+		cols = Math.max(JumpingCubeBoard.MIN_COLS, Math.min(JumpingCubeBoard.MAX_COLS, cols));
+		rating = Math.max(0, Math.min(MAX_RATING, rating));
+		Ticket t = new Ticket(player, rows, cols, rating, System.nanoTime());
+		inboxes[stripe(rows, cols, rating)].offer(t);
+		joins.increment();
+		return t;
+	}
+
+	/**
+	 * Takes a player out of the queue.  May be called from any thread.
+	 * @param t The player's ticket.
+	 * @return True if the player was taken out, false if they were already paired.
+	 */
+	public boolean cancel(Ticket t)
+	{
+		return t.cancel();
+	}
+
+	/**
+	 * Pairs every player who can be paired now, and hands the pairs to the
+	 * Listener.
+	 * @param now The System.nanoTime() to measure waits to.
+	 * @return The number of pairs made.
+	 */
+	public synchronized int match(long now)
+	{
+		long before = pairs;
+		sweeps++;
+		for(int size = 0; size < NUM_SIZES; size++)
+		{
+			int first = size * NUM_BUCKETS;
+			for(int b = 0; b < NUM_BUCKETS; b++)
+			{
+				drain(first + b);
+			}
+			if(waitingBySize[size] < 2)
+			{
+				continue;
+			}
+			Ticket waiting = null;
+			for(int b = 0; b < NUM_BUCKETS; b++)
+			{
+				int s = first + b;
+				Ticket[] pool = pools[s];
+				int n = poolSizes[s];
+				if(n == 0)
+				{
+					continue;
+				}
+				if(!sorted[s])
+				{
+					Arrays.sort(pool, 0, n, BY_RATING);
+					sorted[s] = true;
+				}
+				for(int i = 0; i < n; i++)
+				{
+					Ticket t = pool[i];
+					if(t.cancelled)
+					{
+						continue;
+					}
+					if(waiting != null && t.rating - waiting.rating <= window(waiting, t, now))
+					{
+						if(pair(waiting, t, now))
+						{
+							waiting = null;
+							continue;
+						}
+						if(t.cancelled)
+						{
+							continue;
+						}
+					}
+					waiting = t;
+				}
+			}
+			for(int b = 0; b < NUM_BUCKETS; b++)
+			{
+				compact(first + b, size);
+			}
+		}
+		flush();
+		return (int)(pairs - before);
+	}
+
+	/**
+	 * Starts sweeping on a thread of the matchmaker's own.
+	 * @param millis The time to wait between sweeps.
+	 */
+	public void start(long millis)
+	{
+		sweepMillis = Math.max(1, millis);
+		running = true;
+		thread = new Thread("JumpingCubeMatchmaker")
+		{
+			public void run()
+			{
+				while(running)
+				{
+					match(System.nanoTime());
+					try
+					{
+						Thread.sleep(sweepMillis);
+					}
+					catch(InterruptedException e)
+					{
+						return;
+					}
+				}
+			}
+		};
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Stops the matchmaker's own thread, once its sweep under way is done.
+	 */
+	public void stop()
+	{
+		running = false;
+		if(thread == null)
+		{
+			return;
+		}
+		thread.interrupt();
+		try
+		{
+			thread.join();
+		}
+		catch(InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+		}
+		thread = null;
+	}
+
+	/**
+	 * Gets the number of players who have joined.
+	 * @return The number of calls to join().
+	 */
+	public long getJoins()
+	{
+		return joins.sum();
+	}
+
+	/**
+	 * Gets the number of pairs made.
+	 * @return The number of pairs.
+	 */
+	public synchronized long getPairs()
+	{
+		return pairs;
+	}
+
+	/**
+	 * Gets the number of batches handed to the Listener.
+	 * @return The number of calls to Listener.matched().
+	 */
+	public synchronized long getBatches()
+	{
+		return batches;
+	}
+
+	/**
+	 * Gets the number of sweeps made.
+	 * @return The number of calls to match().
+	 */
+	public synchronized long getSweeps()
+	{
+		return sweeps;
+	}
+
+	/**
+	 * Gets the number of players seen by the last sweep and not yet paired
+	 * or cancelled.
+	 * @return The number of players waiting.
+	 */
+	public synchronized int getWaiting()
+	{
+		int n = 0;
+		for(int size = 0; size < NUM_SIZES; size++)
+		{
+			n += waitingBySize[size];
+		}
+		return n;
+	}
+
+	/**
+	 * Gets how long the players paired waited, in microseconds.  The
+	 * histogram is the matchmaker's own, so read it only between sweeps.
+	 * @return The waits, one per player paired.
+	 */
+	public JumpingCubeHistogram getWaits()
+	{
+		return waits;
+	}
+
+	/**
+	 * Gets how far apart the ratings of the pairs made were.  The
+	 * histogram is the matchmaker's own, so read it only between sweeps.
+	 * @return The rating gaps, one per pair.
+	 */
+	public JumpingCubeHistogram getRatingGaps()
+	{
+		return gaps;
+	}
+
+	private static int stripe(int rows, int cols, int rating)
+	{
+		int size = (rows - JumpingCubeBoard.MIN_ROWS) * SIDES + cols - JumpingCubeBoard.MIN_COLS;
+		return size * NUM_BUCKETS + rating / BUCKET_WIDTH;
+	}
+
+	/**
+	 * Gets how far apart two ratings may be for a pair: the window of
+	 * whichever of the two has waited longer.
+	 */
+	private long window(Ticket a, Ticket b, long now)
+	{
+		long waited = now - Math.min(a.joinedAt, b.joinedAt);
+		return baseWindow + Math.max(0, waited) / 1000000L * widenPerSecond / 1000;
+	}
+
+	private void drain(int s)
+	{
+		Ticket t;
+		while((t = (Ticket)inboxes[s].poll()) != null)
+		{
+			if(poolSizes[s] == pools[s].length)
+			{
+				Ticket[] bigger = new Ticket[poolSizes[s] * 2];
+				System.arraycopy(pools[s], 0, bigger, 0, poolSizes[s]);
+				pools[s] = bigger;
+			}
+			pools[s][poolSizes[s]++] = t;
+			sorted[s] = false;
+			waitingBySize[s / NUM_BUCKETS]++;
+		}
+	}
+
+	private boolean pair(Ticket a, Ticket b, long now)
+	{
+		if(!a.claim())
+		{
+			return false;
+		}
+		if(!b.claim())
+		{
+			a.release();
+			return false;
+		}
+		if(b.joinedAt < a.joinedAt)
+		{
+			Ticket t = a;
+			a = b;
+			b = t;
+		}
+		batch[batchPairs * 2] = a;
+		batch[batchPairs * 2 + 1] = b;
+		batchPairs++;
+		pairs++;
+		waits.record(Math.max(0, now - a.joinedAt) / 1000);
+		waits.record(Math.max(0, now - b.joinedAt) / 1000);
+		gaps.record(Math.abs(a.rating - b.rating));
+		if(batchPairs == BATCH_SIZE)
+		{
+			flush();
+		}
+		return true;
+	}
+
+	/**
+	 * Takes the tickets paired or cancelled out of a pool, keeping the
+	 * rest in rating order.
+	 */
+	private void compact(int s, int size)
+	{
+		Ticket[] pool = pools[s];
+		int n = poolSizes[s];
+		int kept = 0;
+		for(int i = 0; i < n; i++)
+		{
+			Ticket t = pool[i];
+			if(!t.matched && !t.cancelled)
+			{
+				pool[kept++] = t;
+			}
+		}
+		for(int i = kept; i < n; i++)
+		{
+			pool[i] = null;
+		}
+		poolSizes[s] = kept;
+		waitingBySize[size] -= n - kept;
+	}
+
+	private void flush()
+	{
+		if(batchPairs == 0)
+		{
+			return;
+		}
+		batches++;
+		listener.matched(batch, batchPairs);
+		for(int i = 0; i < batchPairs * 2; i++)
+		{
+			batch[i] = null;
+		}
+		batchPairs = 0;
+	}
+
+	/**
+	 * Pairs a synthetic load of joins and prints how it went.
+	 */
+	public static void main(String args[]) throws Exception
+	{
+		int rate = 50000;
+		int seconds = 10;
+		int threads = 2;
+		long sweep = DEFAULT_SWEEP_MILLIS;
+		int window = 50;
+		int widen = 100;
+		int cancelPercent = 0;
+		for(int i = 0; i + 1 < args.length; i += 2)
+		{
+			if(args[i].equals("-rate")) rate = Integer.parseInt(args[i + 1]);
+			else if(args[i].equals("-seconds")) seconds = Integer.parseInt(args[i + 1]);
+			else if(args[i].equals("-threads")) threads = Integer.parseInt(args[i + 1]);
+			else if(args[i].equals("-sweep")) sweep = Long.parseLong(args[i + 1]);
+			else if(args[i].equals("-window")) window = Integer.parseInt(args[i + 1]);
+			else if(args[i].equals("-widen")) widen = Integer.parseInt(args[i + 1]);
+			else if(args[i].equals("-cancel")) cancelPercent = Integer.parseInt(args[i + 1]);
+			else throw new IllegalArgumentException("Unknown option " + args[i]);
+		}
+
+		final long[] matches = new long[1];
+		final JumpingCubeMatchmaker matchmaker = new JumpingCubeMatchmaker(window, widen,
+				new Listener()
+				{
+					public void matched(Ticket[] players, int numPairs)
+					{
+						for(int i = 0; i < numPairs; i++)
+						{
+							if(players[2 * i].rows != players[2 * i + 1].rows || players[2 * i].cols != players[2 * i + 1].cols)
+							{
+								throw new IllegalStateException("paired across board sizes");
+							}
+						}
+						matches[0] += numPairs;
+					}
+				}
+				);
+		matchmaker.start(sweep);
+
+		// Each thread joins its share of the rate, a millisecond's worth at
+		// a time; most players want the default board, and ratings are
+		// spread around 1500.
+		final long until = System.nanoTime() + seconds * 1000000000L;
+		final int perMillisecond = Math.max(1, rate / threads / 1000);
+		final boolean unlimited = (rate == 0);
+		final int cancels = cancelPercent;
+		final long[] cancelled = new long[threads];
+		Thread[] producers = new Thread[threads];
+		long started = System.nanoTime();
+		for(int t = 0; t < threads; t++)
+		{
+			final int id = t;
+			producers[t] = new Thread("JumpingCubeMatchmaker-join-" + t)
+			{
+				public void run()
+				{
+					Random random = new Random(id);
+					long next = System.nanoTime();
+					long player = (long)id << 40;
+					while(System.nanoTime() < until)
+					{
+						for(int i = 0; i < (unlimited ? 1000 : perMillisecond); i++)
+						{
+							int side = (random.nextInt(2) == 0) ? JumpingCubeBoard.DEFAULT_ROWS
+									: JumpingCubeBoard.MIN_ROWS + random.nextInt(SIDES);
+							int rating = (int)(1500 + random.nextGaussian() * 300);
+							Ticket ticket = matchmaker.join(player++, side, side, rating);
+							if(cancels > 0 && random.nextInt(100) < cancels && matchmaker.cancel(ticket))
+							{
+								cancelled[id]++;
+							}
+						}
+						if(!unlimited)
+						{
+							next += 1000000L;
+							long sleep = next - System.nanoTime();
+							if(sleep > 0)
+							{
+								try
+								{
+									Thread.sleep(sleep / 1000000L, (int)(sleep % 1000000L));
+								}
+								catch(InterruptedException e)
+								{
+									return;
+								}
+							}
+						}
+					}
+				}
+			};
+			producers[t].start();
+		}
+		for(int t = 0; t < threads; t++)
+		{
+			producers[t].join();
+		}
+		long joinNanos = System.nanoTime() - started;
+		matchmaker.stop();
+		matchmaker.match(System.nanoTime());
+
+		long withdrawn = 0;
+		for(int t = 0; t < threads; t++)
+		{
+			withdrawn += cancelled[t];
+		}
+		JumpingCubeHistogram waits = matchmaker.getWaits();
+		JumpingCubeHistogram gaps = matchmaker.getRatingGaps();
+		System.out.println(matchmaker.getJoins() + " joins in " + joinNanos / 1000000 + " ms ("
+				+ matchmaker.getJoins() * 1000000000L / Math.max(1, joinNanos) + " joins/s), " + withdrawn + " cancelled, "
+				+ matchmaker.getPairs() + " pairs (" + matchmaker.getPairs() * 2000000000L / Math.max(1, joinNanos)
+				+ " players paired/s) in " + matchmaker.getBatches() + " batches over " + matchmaker.getSweeps()
+				+ " sweeps, " + matchmaker.getWaiting() + " still waiting");
+		System.out.println("wait p50 " + waits.getValueAtPercentile(50) / 1000 + " ms, p90 "
+				+ waits.getValueAtPercentile(90) / 1000 + " ms, p99 " + waits.getValueAtPercentile(99) / 1000
+				+ " ms, max " + waits.getMax() / 1000 + " ms; rating gap p50 " + gaps.getValueAtPercentile(50)
+				+ ", p99 " + gaps.getValueAtPercentile(99) + ", max " + gaps.getMax());
+		if(matches[0] != matchmaker.getPairs())
+		{
+			throw new IllegalStateException("the listener saw " + matches[0] + " pairs");
+		}
+	}
+}
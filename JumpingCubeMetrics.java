@@ -0,0 +1,369 @@
+/**
+ * JumpingCubeMetrics.java
+ * @author Daniel Miladinov
+ * @version 1-beta
+ */
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.Vector;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * The JumpingCubeMetrics class is a registry of counters and histograms
+ * describing a running game, server or benchmark.  Every value is kept in
+ * LongAdders, which spread updates from different threads over separate
+ * cells and only add the cells up when the value is read, so threads
+ * counting moves at the same time never wait on one another.
+ * <p>
+ * The metrics JumpingCube itself keeps are registered in the DEFAULT
+ * registry.  The game window shows them in an overlay next to its status
+ * bar, and any program started with -Djumpingcube.metrics.port=n serves
+ * them as plain text at http://localhost:n/metrics, in the format
+ * Prometheus scrapes.
+ */
+public class JumpingCubeMetrics
+{
+	/** The system property naming the port to serve the DEFAULT registry on.*/
+	public static final String PORT_PROPERTY = "jumpingcube.metrics.port";
+
+	/** The registry JumpingCube's own metrics are kept in.*/
+	public static final JumpingCubeMetrics DEFAULT = new JumpingCubeMetrics();
+
+	/** The number of moves played.*/
+	public static final Counter MOVES = DEFAULT.counter("jumpingcube_moves_total", "Moves played");
+	/** The number of points each move passed from overflowing boxes to their neighbors.*/
+	public static final Histogram CASCADE = DEFAULT.histogram("jumpingcube_cascade_length", "Points passed on by the overflows of one move");
+	/** How long each move took to resolve.*/
+	public static final Histogram MOVE_NANOS = DEFAULT.histogram("jumpingcube_move_resolution_nanoseconds", "Time taken to resolve one move");
+	/** The number of positions searched by every JumpingCubeAI.*/
+	public static final Counter AI_NODES = DEFAULT.counter("jumpingcube_ai_nodes_total", "Positions searched by the AI");
+	/** The time spent searching by every JumpingCubeAI.*/
+	public static final Counter AI_NANOS = DEFAULT.counter("jumpingcube_ai_search_nanoseconds_total", "Time spent searching by the AI");
+	/** The number of batches of buttons brought up to date.*/
+	public static final Counter REPAINTS = DEFAULT.counter("jumpingcube_repaints_total", "Batches of buttons repainted");
+
+	private static final int BUCKETS = 64;
+
+	private Vector metrics;
+
+	/**
+	 * An inner class which counts something that only ever goes up.
+	 */
+	public static class Counter
+	{
+		String name;
+		String help;
+		LongAdder value;
+
+		Counter(String name, String help)
+		{
+			this.name = name;
+			this.help = help;
+			value = new LongAdder();
+		}
+
+		/**
+		 * Adds one to the counter.
+		 */
+		public void increment()
+		{
+			value.increment();
+		}
+
+		/**
+		 * Adds to the counter.
+		 * @param n The amount to add.
+		 */
+		public void add(long n)
+		{
+			value.add(n);
+		}
+
+		/**
+		 * Gets the counter's value.
+		 * @return The total of everything added.
+		 */
+		public long get()
+		{
+			return value.sum();
+		}
+	}
+
+	/**
+	 * An inner class which counts how often values were seen, in buckets
+	 * whose upper bounds are one less than each power of two.
+	 */
+	public static class Histogram
+	{
+		String name;
+		String help;
+		LongAdder[] buckets;
+		LongAdder sum;
+
+		Histogram(String name, String help)
+		{
+			this.name = name;
+			this.help = help;
+			buckets = new LongAdder[BUCKETS];
+			for(int i = 0; i < BUCKETS; i++)
+			{
+				buckets[i] = new LongAdder();
+			}
+			sum = new LongAdder();
+		}
+
+		/**
+		 * Counts one value.  Negative values are counted as zero.
+		 * @param v The value seen.
+		 */
+		public void record(long v)
+		{
+			if(v < 0)
+			{
+				v = 0;
+			}
+			buckets[64 - Long.numberOfLeadingZeros(v)].increment();
+			sum.add(v);
+		}
+
+		/**
+		 * Gets the number of values counted.
+		 * @return The number of values.
+		 */
+		public long getCount()
+		{
+			long count = 0;
+			for(int i = 0; i < BUCKETS; i++)
+			{
+				count += buckets[i].sum();
+			}
+			return count;
+		}
+
+		/**
+		 * Gets the total of the values counted.
+		 * @return The sum of the values.
+		 */
+		public long getSum()
+		{
+			return sum.sum();
+		}
+
+		/**
+		 * Gets a snapshot of the bucket counts.
+		 * @return The number of values in each bucket; bucket i holds values up to 2^i - 1.
+		 */
+		public long[] getBuckets()
+		{
+			long[] counts = new long[BUCKETS];
+			for(int i = 0; i < BUCKETS; i++)
+			{
+				counts[i] = buckets[i].sum();
+			}
+			return counts;
+		}
+
+		/**
+		 * Gets an upper bound of the value below which a percentage of the
+		 * values counted in a snapshot fall.
+		 * @param counts A snapshot from getBuckets(), or the difference of two.
+		 * @param percentile A percentage from 0 to 100.
+		 * @return The upper bound of the bucket holding that percentile, or 0 if the snapshot is empty.
+		 */
+		public static long percentile(long[] counts, double percentile)
+		{
+			long total = 0;
+			for(int i = 0; i < counts.length; i++)
+			{
+				total += counts[i];
+			}
+			long wanted = Math.max(1, (long)Math.ceil(total * percentile / 100.0));
+			long seen = 0;
+			for(int i = 0; i < counts.length && total > 0; i++)
+			{
+				seen += counts[i];
+				if(seen >= wanted)
+				{
+					return upperBound(i);
+				}
+			}
+			return 0;
+		}
+
+		static long upperBound(int bucket)
+		{
+			return (bucket >= 63) ? Long.MAX_VALUE : (1L << bucket) - 1;
+		}
+	}
+
+	/**
+	 * The JumpingCubeMetrics constructor.  The registry starts empty.
+	 */
+	public JumpingCubeMetrics()
+	{
+		metrics = new Vector();
+	}
+
+	/**
+	 * Gets the counter with the given name, registering it if need be.
+	 * @param name The name the counter is exported under.
+	 * @param help One line describing what is counted.
+	 * @return The counter.
+	 */
+	public synchronized Counter counter(String name, String help)
+	{
+		Object existing = find(name);
+		if(existing != null)
+		{
+			return (Counter)existing;
+		}
+		Counter c = new Counter(name, help);
+		metrics.add(c);
+		return c;
+	}
+
+	/**
+	 * Gets the histogram with the given name, registering it if need be.
+	 * @param name The name the histogram is exported under.
+	 * @param help One line describing what is counted.
+	 * @return The histogram.
+	 */
+	public synchronized Histogram histogram(String name, String help)
+	{
+		Object existing = find(name);
+		if(existing != null)
+		{
+			return (Histogram)existing;
+		}
+		Histogram h = new Histogram(name, help);
+		metrics.add(h);
+		return h;
+	}
+
+	/**
+	 * Writes every metric in the Prometheus text format.  Histograms are
+	 * written with cumulative buckets up to the largest one holding a value.
+	 * @return The metrics, one sample per line.
+	 */
+	public synchronized String toText()
+	{
+		StringBuffer out = new StringBuffer();
+		for(int i = 0; i < metrics.size(); i++)
+		{
+			Object m = metrics.get(i);
+			if(m instanceof Counter)
+			{
+				Counter c = (Counter)m;
+				header(out, c.name, c.help, "counter");
+				out.append(c.name).append(' ').append(c.get()).append('\n');
+			}
+			else
+			{
+				Histogram h = (Histogram)m;
+				header(out, h.name, h.help, "histogram");
+				long[] counts = h.getBuckets();
+				int last = 0;
+				for(int b = 0; b < counts.length; b++)
+				{
+					if(counts[b] > 0)
+					{
+						last = b;
+					}
+				}
+				long cumulative = 0;
+				for(int b = 0; b <= last; b++)
+				{
+					cumulative += counts[b];
+					out.append(h.name).append("_bucket{le=\"").append(Histogram.upperBound(b)).append("\"} ").append(cumulative).append('\n');
+				}
+				for(int b = last + 1; b < counts.length; b++)
+				{
+					cumulative += counts[b];
+				}
+				out.append(h.name).append("_bucket{le=\"+Inf\"} ").append(cumulative).append('\n');
+				out.append(h.name).append("_sum ").append(h.getSum()).append('\n');
+				out.append(h.name).append("_count ").append(cumulative).append('\n');
+			}
+		}
+		return out.toString();
+	}
+
+	/**
+	 * Serves the registry as plain text at /metrics on a port of the
+	 * loopback address, so only programs on this machine can read it.
+	 * @param port The port to listen on, or 0 for any free port.
+	 * @return The running server, whose address holds the port chosen.
+	 * @throws IOException If the port cannot be opened.
+	 */
+	public HttpServer serve(int port) throws IOException
+	{
+		HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+		server.createContext("/metrics", new HttpHandler()
+		{
+			public void handle(HttpExchange exchange) throws IOException
+			{
+				byte[] body = toText().getBytes("UTF-8");
+				exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+				exchange.sendResponseHeaders(200, body.length);
+				OutputStream out = exchange.getResponseBody();
+				out.write(body);
+				out.close();
+			}
+		});
+		server.start();
+		return server;
+	}
+
+	/**
+	 * Serves the DEFAULT registry if the jumpingcube.metrics.port system
+	 * property names a port.  A port that cannot be opened is reported and
+	 * otherwise ignored.
+	 * @return The running server, which a program that means to exit should stop, or null.
+	 */
+	public static HttpServer serveIfRequested()
+	{
+		String port = System.getProperty(PORT_PROPERTY);
+		if(port == null)
+		{
+			return null;
+		}
+		try
+		{
+			HttpServer server = DEFAULT.serve(Integer.parseInt(port));
+			System.out.println("Metrics at http://localhost:" + server.getAddress().getPort() + "/metrics");
+			return server;
+		}
+		catch(Exception e)
+		{
+			System.err.println("Cannot serve metrics on port " + port + ": " + e);
+			return null;
+		}
+	}
+
+	private Object find(String name)
+	{
+		for(int i = 0; i < metrics.size(); i++)
+		{
+			Object m = metrics.get(i);
+			String n = (m instanceof Counter) ? ((Counter)m).name : ((Histogram)m).name;
+			if(n.equals(name))
+			{
+				return m;
+			}
+		}
+		return null;
+	}
+
+	private static void header(StringBuffer out, String name, String help, String type)
+	{
+		out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+		out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+	}
+}
@@ -0,0 +1,253 @@
+/**
+ * JumpingCubeNetworkClient.java
+ * @author Daniel Miladinov
+ * @version 1-beta
+ */
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+
+/**
+ * The JumpingCubeNetworkClient class connects to a JumpingCubeServer
+ * on behalf of a JumpingCube window.  Requests are written straight to
+ * the socket, and a background thread reads the server's replies, keeps
+ * a JumpingCubeEngine mirroring the game on the server from the STATE
+ * and DELTA messages it is sent, and tells its Listener what happened.
+ * Listener methods are called on that thread, not on the Swing event
+ * thread.
+ */
+public class JumpingCubeNetworkClient implements Runnable
+{
+	/**
+	 * The interface through which a JumpingCubeNetworkClient reports
+	 * what the server has sent.
+	 */
+	public interface Listener
+	{
+		/**
+		 * Called when the server has started a game, or has started sending one to watch.
+		 * @param matchId The server's id for the game.
+		 * @param seat The index of the player this client plays, or JumpingCubeProtocol.SPECTATOR.
+		 */
+		void matched(int matchId, int seat);
+
+		/**
+		 * Called whenever the position has changed.
+		 * @param game A copy of the position, which the listener may keep.
+		 */
+		void positionChanged(JumpingCubeEngine game);
+
+		/**
+		 * Called when the server refused a request.
+		 * @param reason One of the JumpingCubeProtocol rejection reasons.
+		 */
+		void rejected(int reason);
+
+		/**
+		 * Called when the other player has left and the game is over.
+		 */
+		void opponentLeft();
+
+		/**
+		 * Called once the connection to the server is lost or closed.
+		 */
+		void disconnected();
+	}
+
+	private SocketChannel channel;
+	private Listener listener;
+	private ByteBuffer out;
+	private int sequence;
+	private JumpingCubeEngine game;
+	private volatile boolean open;
+
+	/**
+	 * The JumpingCubeNetworkClient constructor.  Connects to the server
+	 * and starts reading its replies.
+	 * @param host The name or address of the server.
+	 * @param port The port the server listens on.
+	 * @param listener The Listener told about everything the server sends.
+	 * @throws IOException If the server cannot be reached.
+	 */
+	public JumpingCubeNetworkClient(String host, int port, Listener listener) throws IOException
+	{
+		this.listener = listener;
+		out = ByteBuffer.allocate(64);
+		channel = SocketChannel.open(new InetSocketAddress(host, port));
+		channel.socket().setTcpNoDelay(true);
+		open = true;
+		Thread reader = new Thread(this, "JumpingCubeNetworkClient");
+		reader.setDaemon(true);
+		reader.start();
+	}
+
+	/**
+	 * Asks the server for a game of the given size.
+	 * @param rows The number of rows wanted.
+	 * @param cols The number of columns wanted.
+	 */
+	public synchronized void join(int rows, int cols) throws IOException
+	{
+		out.clear();
+		JumpingCubeProtocol.putJoin(out, nextSequence(), rows, cols);
+		send();
+	}
+
+	/**
+	 * Asks the server to click on a box for this client.
+	 * @param cell The cell index of the box.
+	 */
+	public synchronized void sendMove(int cell) throws IOException
+	{
+		out.clear();
+		JumpingCubeProtocol.putMove(out, nextSequence(), cell);
+		send();
+	}
+
+	/**
+	 * Asks the server to send a match played by others, without playing in it.
+	 * @param matchId The server's id for the match.
+	 */
+	public synchronized void watch(int matchId) throws IOException
+	{
+		out.clear();
+		JumpingCubeProtocol.putWatch(out, nextSequence(), matchId);
+		send();
+	}
+
+	/**
+	 * Asks the server for the whole position again.
+	 */
+	public synchronized void sync() throws IOException
+	{
+		out.clear();
+		JumpingCubeProtocol.putSync(out, nextSequence());
+		send();
+	}
+
+	/**
+	 * Closes the connection to the server.
+	 */
+	public void close()
+	{
+		open = false;
+		try
+		{
+			channel.close();
+		}
+		catch(IOException e)
+		{
+		}
+	}
+
+	/**
+	 * The reading loop, run on the thread created by the constructor.  A
+	 * frame too long to be sent by a server, or one that cannot be read,
+	 * is a protocol error, and closes the connection like a lost one.
+	 */
+	public void run()
+	{
+		ByteBuffer in = ByteBuffer.allocate(4096);
+		try
+		{
+			while(channel.read(in) >= 0)
+			{
+				in.flip();
+				while(in.remaining() >= JumpingCubeProtocol.HEADER_SIZE)
+				{
+					int length = in.getShort(in.position()) & 0xFFFF;
+					if(length > JumpingCubeProtocol.MAX_BODY_SIZE)
+					{
+						return;
+					}
+					if(!JumpingCubeProtocol.hasFrame(in))
+					{
+						break;
+					}
+					in.getShort();
+					int end = in.position() + length;
+					int limit = in.limit();
+					in.limit(end);
+					if(length > 0)
+					{
+						handle(in, in.get() & 0xFF);
+					}
+					in.limit(limit);
+					in.position(end);
+				}
+				in.compact();
+			}
+		}
+		catch(IOException e)
+		{
+		}
+		catch(RuntimeException e)
+		{
+		}
+		finally
+		{
+			close();
+			listener.disconnected();
+		}
+	}
+
+	private void handle(ByteBuffer in, int type)
+	{
+		switch(type)
+		{
+			case JumpingCubeProtocol.MATCHED:
+				int matchId = in.getInt();
+				int seat = in.get() & 0xFF;
+				game = new JumpingCubeEngine(in.get(), in.get());
+				listener.matched(matchId, seat);
+				break;
+			case JumpingCubeProtocol.STATE:
+				if(game == null)
+				{
+					throw new IllegalStateException("position before a match");
+				}
+				JumpingCubeProtocol.readState(in, game);
+				positionChanged();
+				break;
+			case JumpingCubeProtocol.DELTA:
+				if(game == null)
+				{
+					throw new IllegalStateException("position before a match");
+				}
+				JumpingCubeProtocol.readDelta(in, game);
+				positionChanged();
+				break;
+			case JumpingCubeProtocol.REJECTED:
+				in.get();
+				listener.rejected(in.get());
+				break;
+			case JumpingCubeProtocol.OPPONENT_LEFT:
+				listener.opponentLeft();
+				break;
+		}
+	}
+
+	private void positionChanged()
+	{
+		JumpingCubeEngine copy = new JumpingCubeEngine(game.getRows(), game.getCols());
+		copy.copyFrom(game);
+		listener.positionChanged(copy);
+	}
+
+	private int nextSequence()
+	{
+		sequence = (sequence + 1) & 0xFF;
+		return sequence;
+	}
+
+	private void send() throws IOException
+	{
+		out.flip();
+		while(out.hasRemaining())
+		{
+			channel.write(out);
+		}
+	}
+}
@@ -0,0 +1,392 @@
+/**
+ * JumpingCubeNotation.java
+ * @author Daniel Miladinov
+ * @version 1-beta
+ */
+
+import java.util.Random;
+
+/**
+ * The JumpingCubeNotation class writes a position as one short line of
+ * text and reads it back, in the manner of chess's FEN.  The boxes are
+ * written row by row from the top, with a / between rows.  An owned box
+ * is its owner, a to h for Players 1 to 8, followed by its points as one
+ * hexadecimal digit; a run of empty boxes, unowned with one point, is
+ * written as its length; and an unowned box with more points is a -
+ * followed by its points.  After a space comes the player on turn, from
+ * 1, then the number of players and the topology, each left out when it
+ * is 2 or grid and nothing after it is written.  The empty 5x5 board with
+ * Player 1 on turn is
+ * <pre>
+ * 5/5/5/5/5 1
+ * </pre>
+ * and after Player 1 plays the middle box it is
+ * <pre>
+ * 5/5/2a22/5/5 2
+ * </pre>
+ * Graph topologies, which have no rows, have no notation.
+ * <p>
+ * The notation does not say how many moves were played, so a position
+ * read is taken to have been reached after every player has had a turn:
+ * a player with no boxes once no unowned box is left is out, and may not
+ * be on turn.
+ * <p>
+ * Reading a position allocates nothing once the board has been seen:
+ * the JumpingCubeEngine returned is kept and reused for the next position
+ * of the same board.  Writing appends to a StringBuffer the caller keeps.
+ * <p>
+ * Run on its own, the class checks that positions from random games on
+ * every board are read back as they were written, and that a position
+ * read never leaves a player who is out on turn:
+ * <pre>
+ * java JumpingCubeNotation [games]
+ * </pre>
+ */
+public class JumpingCubeNotation
+{
+	private static final String DIGITS = "0123456789ABCDEF";
+
+	private int[] owner;
+	private int[] points;
+	private JumpingCubeEngine game;
+
+	/**
+	 * The JumpingCubeNotation constructor.
+	 */
+	public JumpingCubeNotation()
+	{
+		owner = new int[JumpingCubeTopology.MAX_CELLS];
+		points = new int[JumpingCubeTopology.MAX_CELLS];
+	}
+
+	/**
+	 * Writes a position.
+	 * @param game The position, on a grid, torus or hex board.
+	 * @return The position in notation.
+	 */
+	public static String toText(JumpingCubeEngine game)
+	{
+		StringBuffer out = new StringBuffer();
+		write(game, out);
+		return out.toString();
+	}
+
+	/**
+	 * Writes a position onto the end of a buffer.
+	 * @param game The position, on a grid, torus or hex board.
+	 * @param out Where to write it.
+	 */
+	public static void write(JumpingCubeEngine game, StringBuffer out)
+	{
+		int rows = game.getRows();
+		int cols = game.getCols();
+		for(int r = 0; r < rows; r++)
+		{
+			if(r > 0)
+			{
+				out.append('/');
+			}
+			int empty = 0;
+			for(int c = 0; c < cols; c++)
+			{
+				int cell = r * cols + c;
+				int o = game.getOwner(cell);
+				int p = game.getPoints(cell);
+				if(o == JumpingCubeEngine.NO_OWNER && p == 1)
+				{
+					empty++;
+					continue;
+				}
+				if(empty > 0)
+				{
+					out.append(empty);
+					empty = 0;
+				}
+				out.append((o == JumpingCubeEngine.NO_OWNER) ? '-' : (char)('a' + o));
+				out.append(DIGITS.charAt(p));
+			}
+			if(empty > 0)
+			{
+				out.append(empty);
+			}
+		}
+		out.append(' ').append(game.getActivePlayer() + 1);
+		int kind = game.getTopology().getKind();
+		if(game.getNumPlayers() != JumpingCubeEngine.NUM_PLAYERS || kind != JumpingCubeTopology.GRID)
+		{
+			out.append(' ').append(game.getNumPlayers());
+		}
+		if(kind != JumpingCubeTopology.GRID)
+		{
+			out.append(' ').append(JumpingCubeTopology.KIND_NAMES[kind]);
+		}
+	}
+
+	/**
+	 * Reads a position.
+	 * @param text The position in notation.
+	 * @return The position, in an engine this object keeps and reuses for
+	 *	the next position read on the same board.
+	 * @throws IllegalArgumentException If the text is not a legal position.
+	 */
+	public JumpingCubeEngine parse(CharSequence text)
+	{
+		return parse(text, 0, text.length());
+	}
+
+	/**
+	 * Reads a position from part of a line of text.
+	 * @param text The text holding the position.
+	 * @param start The index of the first character of the position.
+	 * @param end The index just past its last character.
+	 * @return The position, in an engine this object keeps and reuses for
+	 *	the next position read on the same board.
+	 * @throws IllegalArgumentException If the text is not a legal position.
+	 */
+	public JumpingCubeEngine parse(CharSequence text, int start, int end)
+	{
+		while(end > start && Character.isWhitespace(text.charAt(end - 1)))
+		{
+			end--;
+		}
+		int i = skipSpaces(text, start, end);
+		int rows = 1;
+		int cols = -1;
+		int col = 0;
+		int cell = 0;
+		while(i < end && text.charAt(i) != ' ')
+		{
+			char ch = text.charAt(i++);
+			if(ch == '/')
+			{
+				if(cols < 0)
+				{
+					cols = col;
+				}
+				else if(col != cols)
+				{
+					throw new IllegalArgumentException("row " + rows + " has " + col + " boxes, not " + cols);
+				}
+				rows++;
+				col = 0;
+			}
+			else if(ch >= '1' && ch <= '9')
+			{
+				int run = ch - '0';
+				while(i < end && text.charAt(i) >= '0' && text.charAt(i) <= '9')
+				{
+					run = run * 10 + text.charAt(i++) - '0';
+					if(run > owner.length)
+					{
+						break;
+					}
+				}
+				if(cell + run > owner.length)
+				{
+					throw new IllegalArgumentException("more than " + owner.length + " boxes");
+				}
+				for(int k = 0; k < run; k++)
+				{
+					owner[cell] = JumpingCubeEngine.NO_OWNER;
+					points[cell++] = 1;
+				}
+				col += run;
+			}
+			else if((ch >= 'a' && ch < 'a' + JumpingCubeEngine.MAX_PLAYERS) || ch == '-')
+			{
+				int p = (i < end) ? Character.digit(text.charAt(i++), 16) : -1;
+				if(p < 1)
+				{
+					throw new IllegalArgumentException("box " + cell + " has no points");
+				}
+				if(cell == owner.length)
+				{
+					throw new IllegalArgumentException("more than " + owner.length + " boxes");
+				}
+				owner[cell] = (ch == '-') ? JumpingCubeEngine.NO_OWNER : ch - 'a';
+				points[cell++] = p;
+				col++;
+			}
+			else
+			{
+				throw new IllegalArgumentException("unexpected '" + ch + "' in the boxes");
+			}
+		}
+		if(cols < 0)
+		{
+			cols = col;
+		}
+		else if(col != cols)
+		{
+			throw new IllegalArgumentException("row " + rows + " has " + col + " boxes, not " + cols);
+		}
+		if(rows < JumpingCubeBoard.MIN_ROWS || cols < JumpingCubeBoard.MIN_COLS
+			|| rows > JumpingCubeBoard.MAX_ROWS || cols > JumpingCubeBoard.MAX_COLS)
+		{
+			throw new IllegalArgumentException("the board must be from " + JumpingCubeBoard.MIN_ROWS + "x" + JumpingCubeBoard.MIN_COLS
+					+ " to " + JumpingCubeBoard.MAX_ROWS + "x" + JumpingCubeBoard.MAX_COLS);
+		}
+
+		i = skipSpaces(text, i, end);
+		int turn = readNumber(text, i, end, "the player on turn");
+		i = skipSpaces(text, skipNumber(text, i, end), end);
+		int players = JumpingCubeEngine.NUM_PLAYERS;
+		if(i < end && text.charAt(i) >= '0' && text.charAt(i) <= '9')
+		{
+			players = readNumber(text, i, end, "the number of players");
+			i = skipSpaces(text, skipNumber(text, i, end), end);
+		}
+		int kind = JumpingCubeTopology.GRID;
+		if(i < end)
+		{
+			for(kind = 0; kind < JumpingCubeTopology.GRAPH && !matches(text, i, end, JumpingCubeTopology.KIND_NAMES[kind]); kind++)
+			{
+			}
+			if(kind == JumpingCubeTopology.GRAPH)
+			{
+				throw new IllegalArgumentException("the topology must be grid, torus or hex");
+			}
+		}
+		if(players < JumpingCubeEngine.MIN_PLAYERS || players > JumpingCubeEngine.MAX_PLAYERS)
+		{
+			throw new IllegalArgumentException("the number of players must be from " + JumpingCubeEngine.MIN_PLAYERS
+					+ " to " + JumpingCubeEngine.MAX_PLAYERS);
+		}
+		if(turn < 1 || turn > players)
+		{
+			throw new IllegalArgumentException("the player on turn must be from 1 to " + players);
+		}
+
+		JumpingCubeTopology topology = JumpingCubeTopology.forKind(kind, rows, cols);
+		if(game == null || game.getTopology() != topology || game.getNumPlayers() != players)
+		{
+			game = new JumpingCubeEngine(topology, players);
+		}
+		for(cell = 0; cell < rows * cols; cell++)
+		{
+			if(owner[cell] >= players || points[cell] > game.getCapacity(cell))
+			{
+				throw new IllegalArgumentException("box " + cell + " is not a legal box");
+			}
+		}
+		game.setPosition(owner, points, turn - 1);
+		if(game.isOut(turn - 1))
+		{
+			throw new IllegalArgumentException("player " + turn + " has no boxes left");
+		}
+		return game;
+	}
+
+	private static int skipSpaces(CharSequence text, int i, int end)
+	{
+		while(i < end && text.charAt(i) == ' ')
+		{
+			i++;
+		}
+		return i;
+	}
+
+	private static int skipNumber(CharSequence text, int i, int end)
+	{
+		while(i < end && text.charAt(i) >= '0' && text.charAt(i) <= '9')
+		{
+			i++;
+		}
+		return i;
+	}
+
+	private static int readNumber(CharSequence text, int i, int end, String name)
+	{
+		if(i == end || text.charAt(i) < '0' || text.charAt(i) > '9')
+		{
+			throw new IllegalArgumentException(name + " is missing");
+		}
+		int n = 0;
+		for(; i < end && text.charAt(i) >= '0' && text.charAt(i) <= '9' && n < 1000; i++)
+		{
+			n = n * 10 + text.charAt(i) - '0';
+		}
+		return n;
+	}
+
+	private static boolean matches(CharSequence text, int i, int end, String word)
+	{
+		if(end - i != word.length())
+		{
+			return false;
+		}
+		for(int k = 0; k < word.length(); k++)
+		{
+			if(text.charAt(i + k) != word.charAt(k))
+			{
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Checks that positions are read back as they were written, and that
+	 * a player who is out is never on turn in a position read.
+	 * @throws IllegalStateException At the first position that is not.
+	 */
+	public static void main(String args[])
+	{
+		int games = (args.length > 0) ? Integer.parseInt(args[0]) : 200;
+		JumpingCubeNotation notation = new JumpingCubeNotation();
+		Random random = new Random(0);
+		int positions = 0;
+		for(int g = 0; g < games; g++)
+		{
+			int kind = g % JumpingCubeTopology.GRAPH;
+			int size = JumpingCubeBoard.MIN_ROWS + random.nextInt(JumpingCubeBoard.MAX_ROWS - JumpingCubeBoard.MIN_ROWS + 1);
+			int players = JumpingCubeEngine.MIN_PLAYERS + g % (JumpingCubeEngine.MAX_PLAYERS - JumpingCubeEngine.MIN_PLAYERS + 1);
+			JumpingCubeEngine game = new JumpingCubeEngine(JumpingCubeTopology.forKind(kind, size, size), players);
+			while(game.getWinner() == JumpingCubeEngine.NO_WINNER)
+			{
+				String text = toText(game);
+				JumpingCubeEngine read = notation.parse(text);
+				if(read.getHash() != game.getHash() || read.getActivePlayer() != game.getActivePlayer() || !toText(read).equals(text))
+				{
+					throw new IllegalStateException(text + " was read back as " + toText(read));
+				}
+				positions++;
+				int cell;
+				do
+				{
+					cell = random.nextInt(game.getNumBoxes());
+				}
+				while(!game.isLegal(cell));
+				game.applyMove(cell);
+			}
+		}
+
+		// Player 3 has no boxes and none is left to take.
+		String full = "a1a1a1a1a1/b1b1b1b1b1/a1a1a1a1a1/b1b1b1b1b1/a1a1a1a1a1";
+		try
+		{
+			notation.parse(full + " 3 3");
+			throw new IllegalStateException(full + " 3 3 was read with Player 3 on turn");
+		}
+		catch(IllegalArgumentException e)
+		{
+		}
+		JumpingCubeEngine game = notation.parse(full + " 2 3");
+		while(game.getWinner() == JumpingCubeEngine.NO_WINNER)
+		{
+			if(game.getActivePlayer() == 2)
+			{
+				throw new IllegalStateException("Player 3 is on turn after " + toText(game));
+			}
+			int cell;
+			do
+			{
+				cell = random.nextInt(game.getNumBoxes());
+			}
+			while(!game.isLegal(cell));
+			game.applyMove(cell);
+		}
+		System.out.println(positions + " positions from " + games + " games read back as written; "
+				+ "a player who is out is never on turn");
+	}
+}
@@ -0,0 +1,398 @@
+/**
+ * JumpingCubePerft.java
+ * @author Daniel Miladinov
+ * @version 1-beta
+ */
+
+import java.util.Random;
+
+/**
+ * The JumpingCubePerft class counts every line of play a number of moves
+ * deep from a position, the way chess programs count with perft.  Every
+ * change to how moves are played should leave the counts as they were, so
+ * a table of them, with the time they took, tells both whether the engine
+ * is still right and how fast it plays moves.  The counts can be split by
+ * the first move, to narrow down where two engines part ways.
+ * <p>
+ * With a hash table, the count below a position reached again by another
+ * line of play is taken from the table rather than counted again, which
+ * makes deep counts far quicker, at the small risk of two positions
+ * sharing a hash.  Several threads can count at once, each taking first
+ * moves in turn and sharing the table.
+ * <p>
+ * With -check, every move counted is also played on a JumpingCubeBoard
+ * with JumpingCubeButton.addPoint(), the way the board played moves before
+ * there was an engine, and the count stops at the first move where the
+ * two disagree.
+ * <p>
+ * To print the counts from depth 1 up:
+ * <pre>
+ * java JumpingCubePerft [-size RxC] [-topology grid|torus|hex] [-players n]
+ *     [-position notation] [-threads n] [-hash bits] [-divide] [-check] depth
+ * </pre>
+ */
+public class JumpingCubePerft
+{
+	private static final long[] DEPTH_KEYS = new long[64];
+
+	static
+	{
+		Random random = new Random(0x9E3779B97F4A7C15L);
+		for(int d = 0; d < DEPTH_KEYS.length; d++)
+		{
+			DEPTH_KEYS[d] = random.nextLong();
+		}
+	}
+
+	private long[] ttKeys;
+	private long[] ttCounts;
+	private int ttMask;
+	private JumpingCubeBoard board;
+
+	private int nextRoot;
+	private long moves;
+	private long hits;
+
+	/**
+	 * An inner class which holds what one counting thread needs: a copy of
+	 * the position for every ply and its own tallies.
+	 */
+	class Counter
+	{
+		JumpingCubeEngine[] stack;
+		long moves;
+		long hits;
+
+		public Counter(JumpingCubeEngine game, int depth)
+		{
+			stack = new JumpingCubeEngine[depth + 1];
+			for(int i = 0; i <= depth; i++)
+			{
+				stack[i] = new JumpingCubeEngine(game.getTopology(), game.getNumPlayers());
+			}
+			stack[0].copyFrom(game);
+		}
+	}
+
+	/**
+	 * The JumpingCubePerft constructor.
+	 * @param hashBits The log2 of the number of hash table entries, or 0 for no table.
+	 */
+	public JumpingCubePerft(int hashBits)
+	{
+		if(hashBits > 0)
+		{
+			ttKeys = new long[1 << hashBits];
+			ttCounts = new long[1 << hashBits];
+			ttMask = (1 << hashBits) - 1;
+		}
+	}
+
+	/**
+	 * Plays every move counted on the buttons of a board as well, and
+	 * checks them against the engine.  Only one thread may count then.
+	 * @param b The board to play on, of the topology of the positions to be counted.
+	 */
+	public void setBoard(JumpingCubeBoard b)
+	{
+		board = b;
+	}
+
+	/**
+	 * Counts the lines of play a number of moves deep, split by the first
+	 * move.  A line that ends in a win before it is deep enough is not
+	 * counted.
+	 * @param game The position to count from.
+	 * @param depth The number of moves in every line.
+	 * @param threads The number of threads to count with.
+	 * @return The count below every first move, indexed by cell, or -1 for an illegal move.
+	 * @throws IllegalStateException If a board is being checked and disagrees with the engine.
+	 */
+	public long[] divide(JumpingCubeEngine game, int depth, int threads)
+	{
+		final long[] counts = new long[game.getNumBoxes()];
+		for(int cell = 0; cell < counts.length; cell++)
+		{
+			counts[cell] = -1;
+		}
+		if(depth < 1 || game.getWinner() != JumpingCubeEngine.NO_WINNER)
+		{
+			return counts;
+		}
+		nextRoot = 0;
+		moves = 0;
+		hits = 0;
+		final Counter[] counters = new Counter[(board != null) ? 1 : Math.max(1, threads)];
+		final RuntimeException[] failure = new RuntimeException[1];
+		Thread[] workers = new Thread[counters.length];
+		for(int t = 0; t < counters.length; t++)
+		{
+			final Counter c = new Counter(game, depth);
+			counters[t] = c;
+			workers[t] = new Thread("JumpingCubePerft-" + t)
+			{
+				public void run()
+				{
+					try
+					{
+						countRoots(c, counts);
+					}
+					catch(RuntimeException e)
+					{
+						failure[0] = e;
+					}
+				}
+			};
+			workers[t].start();
+		}
+		for(int t = 0; t < workers.length; t++)
+		{
+			try
+			{
+				workers[t].join();
+			}
+			catch(InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+			}
+			moves += counters[t].moves;
+			hits += counters[t].hits;
+		}
+		if(failure[0] != null)
+		{
+			throw failure[0];
+		}
+		return counts;
+	}
+
+	/**
+	 * Counts the lines of play a number of moves deep.
+	 * @param game The position to count from.
+	 * @param depth The number of moves in every line.
+	 * @param threads The number of threads to count with.
+	 * @return The number of lines.
+	 * @throws IllegalStateException If a board is being checked and disagrees with the engine.
+	 */
+	public long perft(JumpingCubeEngine game, int depth, int threads)
+	{
+		if(depth == 0)
+		{
+			return 1;
+		}
+		long[] counts = divide(game, depth, threads);
+		long total = 0;
+		for(int cell = 0; cell < counts.length; cell++)
+		{
+			total += Math.max(0, counts[cell]);
+		}
+		return total;
+	}
+
+	/**
+	 * Gets the number of moves played by the last count.
+	 * @return The number of moves.
+	 */
+	public long getMoves()
+	{
+		return moves;
+	}
+
+	/**
+	 * Gets the number of counts the last count took from the hash table.
+	 * @return The number of table hits.
+	 */
+	public long getHits()
+	{
+		return hits;
+	}
+
+	private synchronized int takeRoot()
+	{
+		return nextRoot++;
+	}
+
+	private void countRoots(Counter c, long[] counts)
+	{
+		JumpingCubeEngine game = c.stack[0];
+		int depth = c.stack.length - 1;
+		int cell;
+		while((cell = takeRoot()) < counts.length)
+		{
+			if(game.isLegal(cell))
+			{
+				play(c, 0, cell);
+				counts[cell] = count(c, 1, depth - 1);
+			}
+		}
+	}
+
+	private long count(Counter c, int ply, int depth)
+	{
+		JumpingCubeEngine game = c.stack[ply];
+		if(depth == 0)
+		{
+			return 1;
+		}
+		if(game.getWinner() != JumpingCubeEngine.NO_WINNER)
+		{
+			return 0;
+		}
+		long key = 0;
+		int slot = 0;
+		if(ttKeys != null && depth > 1)
+		{
+			key = game.getHash() ^ DEPTH_KEYS[depth];
+			slot = (int)(key ^ (key >>> 32)) & ttMask;
+			// Kept as key ^ count, so a torn write from another thread is a miss.
+			long stored = ttCounts[slot];
+			if((ttKeys[slot] ^ stored) == key)
+			{
+				c.hits++;
+				return stored;
+			}
+		}
+		long total = 0;
+		int n = game.getNumBoxes();
+		for(int cell = 0; cell < n; cell++)
+		{
+			if(game.isLegal(cell))
+			{
+				play(c, ply, cell);
+				total += count(c, ply + 1, depth - 1);
+			}
+		}
+		if(ttKeys != null && depth > 1)
+		{
+			ttKeys[slot] = key ^ total;
+			ttCounts[slot] = total;
+		}
+		return total;
+	}
+
+	/**
+	 * Plays a move from the position at one ply into the next, and on the
+	 * board too if one is being checked.
+	 */
+	private void play(Counter c, int ply, int cell)
+	{
+		JumpingCubeEngine game = c.stack[ply];
+		JumpingCubeEngine next = c.stack[ply + 1];
+		next.copyFrom(game);
+		next.applyMove(cell);
+		c.moves++;
+		if(board != null)
+		{
+			board.showPosition(game);
+			boolean won = board.playButtons(cell, game.getActivePlayer());
+			JumpingCubeButton[][] buttons = board.getBoard();
+			int cols = game.getCols();
+			for(int i = 0; i < next.getNumBoxes(); i++)
+			{
+				JumpingCubeButton b = buttons[i / cols][i % cols];
+				if(b.getOwner() != next.getOwner(i) || b.getPoints() != next.getPoints(i))
+				{
+					throw new IllegalStateException("box " + i + " differs after move " + cell + " from "
+							+ JumpingCubeNotation.toText(game));
+				}
+			}
+			if(won != (next.getWinner() != JumpingCubeEngine.NO_WINNER))
+			{
+				throw new IllegalStateException("the winner differs after move " + cell + " from "
+						+ JumpingCubeNotation.toText(game));
+			}
+		}
+	}
+
+	/**
+	 * Prints the counts from depth 1 up, or split by first move.
+	 */
+	public static void main(String args[])
+	{
+		int rows = 5;
+		int cols = 5;
+		int kind = JumpingCubeTopology.GRID;
+		int players = JumpingCubeEngine.NUM_PLAYERS;
+		String position = null;
+		int threads = Runtime.getRuntime().availableProcessors();
+		int hashBits = 0;
+		boolean divide = false;
+		boolean check = false;
+		int depth = -1;
+		for(int i = 0; i < args.length; i++)
+		{
+			if(args[i].equals("-divide")) divide = true;
+			else if(args[i].equals("-check")) check = true;
+			else if(args[i].equals("-size") && i + 1 < args.length)
+			{
+				String size = args[++i];
+				int x = size.indexOf('x');
+				rows = Integer.parseInt(x < 0 ? size : size.substring(0, x));
+				cols = (x < 0) ? rows : Integer.parseInt(size.substring(x + 1));
+			}
+			else if(args[i].equals("-topology") && i + 1 < args.length)
+			{
+				String name = args[++i];
+				for(kind = 0; kind < JumpingCubeTopology.GRAPH && !JumpingCubeTopology.KIND_NAMES[kind].equals(name); kind++)
+				{
+				}
+			}
+			else if(args[i].equals("-players") && i + 1 < args.length) players = Integer.parseInt(args[++i]);
+			else if(args[i].equals("-position") && i + 1 < args.length) position = args[++i];
+			else if(args[i].equals("-threads") && i + 1 < args.length) threads = Integer.parseInt(args[++i]);
+			else if(args[i].equals("-hash") && i + 1 < args.length) hashBits = Integer.parseInt(args[++i]);
+			else depth = Integer.parseInt(args[i]);
+		}
+		if(depth < 0 || kind == JumpingCubeTopology.GRAPH)
+		{
+			System.err.println("java JumpingCubePerft [-size RxC] [-topology grid|torus|hex] [-players n]");
+			System.err.println("    [-position notation] [-threads n] [-hash bits] [-divide] [-check] depth");
+			System.exit(1);
+		}
+
+		JumpingCubeEngine game;
+		if(position != null)
+		{
+			game = new JumpingCubeNotation().parse(position);
+		}
+		else
+		{
+			game = new JumpingCubeEngine(JumpingCubeTopology.forKind(kind, rows, cols), players);
+		}
+		JumpingCubePerft perft = new JumpingCubePerft(hashBits);
+		if(check)
+		{
+			JumpingCubeBoard board = new JumpingCubeBoard(null, game.getTopology());
+			JumpingCubePlayer[] inGame = new JumpingCubePlayer[game.getNumPlayers()];
+			for(int p = 0; p < inGame.length; p++)
+			{
+				inGame[p] = new JumpingCubePlayer("Player " + (p + 1), JumpingCubePlayer.DEFAULT_COLORS[p]);
+			}
+			board.setPlayers(inGame);
+			perft.setBoard(board);
+		}
+		System.out.println(JumpingCubeNotation.toText(game) + "   " + game.getTopology().getName() + ", "
+				+ (check ? 1 : threads) + " threads" + ((hashBits > 0) ? ", 2^" + hashBits + " hash entries" : "")
+				+ (check ? ", checked against the buttons" : ""));
+		for(int d = divide ? depth : 1; d <= depth; d++)
+		{
+			long started = System.nanoTime();
+			long[] counts = perft.divide(game, d, threads);
+			long nanos = Math.max(1, System.nanoTime() - started);
+			long total = 0;
+			for(int cell = 0; cell < counts.length; cell++)
+			{
+				if(counts[cell] >= 0)
+				{
+					total += counts[cell];
+					if(divide)
+					{
+						System.out.println("  " + cell + " (" + cell / game.getCols() + "," + cell % game.getCols() + "): " + counts[cell]);
+					}
+				}
+			}
+			System.out.println("perft " + d + " = " + total + "   " + nanos / 1000000 + " ms, "
+					+ perft.getMoves() * 1000000000L / nanos + " moves/s"
+					+ ((hashBits > 0) ? ", " + perft.getHits() + " hash hits" : ""));
+		}
+	}
+}
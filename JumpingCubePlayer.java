@@ -16,6 +16,10 @@ import java.awt.Color;
  */
 public class JumpingCubePlayer extends Object
 {
+	/** The colors players start with, in turn order; Player 1 is red and Player 2 blue.*/
+	public static final Color[] DEFAULT_COLORS = {Color.red, Color.blue, Color.green, Color.orange,
+		Color.magenta, Color.cyan, Color.yellow, Color.pink};
+
 	/** The JumpingCubePlayer's color; Buttons they own become this color.*/
 	private Color color;
 
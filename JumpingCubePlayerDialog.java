@@ -33,7 +33,7 @@ public class JumpingCubePlayerDialog extends JDialog implements ActionListener
 	 * The JumpingCubePlayerDialog constructor.
 	 * @param player A reference to the JumpingCubePlayer to be edited.
 	 * @param owner A reference to the JumpingCube window that owns this dialog.
-	 * @param playerNumber Whether this dialog is for Player 1 or Player 2.  1 for Player 1, and 2 for Player 2.
+	 * @param playerNumber Which player this dialog is for.  1 for Player 1, 2 for Player 2, and so on up to 8.
 	 */
 	public JumpingCubePlayerDialog(JumpingCubePlayer player, JumpingCube owner, int playerNumber)
 	{
@@ -156,16 +156,8 @@ public class JumpingCubePlayerDialog extends JDialog implements ActionListener
 
 		if(ae.getSource().equals(defaultsButton))
 		{
-			if(playerNumber == 1)
-			{
-				this.nameText.setText("Player 1");
-				this.jcBtn.setBackground(Color.red);
-			}
-			else if(playerNumber == 2)
-			{
-				this.nameText.setText("Player 2");
-				this.jcBtn.setBackground(Color.blue);
-			}
+			this.nameText.setText("Player " + playerNumber);
+			this.jcBtn.setBackground(JumpingCubePlayer.DEFAULT_COLORS[playerNumber - 1]);
 			return;
 		}
 
@@ -0,0 +1,293 @@
+/**
+ * JumpingCubeProtocol.java
+ * @author Daniel Miladinov
+ * @version 1-beta
+ */
+
+import java.nio.ByteBuffer;
+
+/**
+ * The JumpingCubeProtocol class holds the message formats spoken between
+ * a JumpingCubeServer and its clients.  Every message is a frame made of
+ * an unsigned two-byte length followed by that many bytes of body, and
+ * every body starts with a one-byte message type.  A box is addressed by
+ * its cell index, which always fits in one byte, and a box's owner and
+ * points share one more byte.
+ * <p>
+ * A client is sent the whole position once, in a STATE message, when its
+ * game starts or when it asks with SYNC; after that every move arrives as
+ * a DELTA listing only the boxes that move changed.  Every request carries
+ * a sequence number of the client's choosing.  The server answers requests
+ * strictly in the order they were sent, so a client may pipeline several
+ * requests without waiting, and a REJECTED reply names the sequence number
+ * of the request it refuses.
+ * <p>
+ * A client that WATCHes a match is seated as SPECTATOR and is sent the
+ * same STATE and DELTA messages as the players, but may not move.
+ */
+public class JumpingCubeProtocol
+{
+	/** Client to server: join the next game of a size.  Body: sequence, rows, cols.*/
+	public static final int JOIN = 1;
+	/** Client to server: click on a box.  Body: sequence, cell.*/
+	public static final int MOVE = 2;
+	/** Client to server: send the whole position again.  Body: sequence.*/
+	public static final int SYNC = 3;
+	/** Client to server: follow a match being played by others.  Body: sequence, match id (int).*/
+	public static final int WATCH = 4;
+
+	/** Server to client: a game has started.  Body: match id (int), seat, rows, cols.*/
+	public static final int MATCHED = 16;
+	/** Server to client: the whole position.  Body: move number (short), player on turn, winner, one byte per box.*/
+	public static final int STATE = 17;
+	/** Server to client: a request was refused.  Body: sequence, reason.*/
+	public static final int REJECTED = 18;
+	/** Server to client: the other player has gone away and the game is over.  No body.*/
+	public static final int OPPONENT_LEFT = 19;
+	/** Server to client: the boxes a move changed.  Body: move number (short), player on turn, winner, count, then cell and box byte per box.*/
+	public static final int DELTA = 20;
+
+	/** Rejection reason: the client is not playing a game.*/
+	public static final int NOT_PLAYING = 1;
+	/** Rejection reason: it is the other player's turn.*/
+	public static final int NOT_YOUR_TURN = 2;
+	/** Rejection reason: the box belongs to the other player, or does not exist.*/
+	public static final int ILLEGAL_MOVE = 3;
+	/** Rejection reason: the client is already playing or waiting for a game.*/
+	public static final int ALREADY_PLAYING = 4;
+	/** Rejection reason: the message type is unknown.*/
+	public static final int BAD_MESSAGE = 5;
+	/** Rejection reason: no match with that id is being played.*/
+	public static final int NO_SUCH_MATCH = 6;
+
+	/** The seat a MATCHED message gives a client watching a match.*/
+	public static final int SPECTATOR = 0xFF;
+
+	/** The number of bytes in a frame header.*/
+	public static final int HEADER_SIZE = 2;
+	/** The largest body any message may have.*/
+	public static final int MAX_BODY_SIZE = 1024;
+
+	private static final int NONE = 0xFF;
+
+	/**
+	 * Returns whether a whole frame is waiting to be read at the buffer's position.
+	 * @param in A buffer ready for reading.
+	 * @return True if a complete frame can be read.
+	 */
+	public static boolean hasFrame(ByteBuffer in)
+	{
+		if(in.remaining() < HEADER_SIZE)
+		{
+			return false;
+		}
+		int length = in.getShort(in.position()) & 0xFFFF;
+		return in.remaining() >= HEADER_SIZE + length;
+	}
+
+	/**
+	 * Writes a JOIN message.
+	 * @param out The buffer to write to.
+	 * @param sequence The client's number for this request.
+	 * @param rows The number of rows of the game wanted.
+	 * @param cols The number of columns of the game wanted.
+	 */
+	public static void putJoin(ByteBuffer out, int sequence, int rows, int cols)
+	{
+		out.putShort((short)4);
+		out.put((byte)JOIN);
+		out.put((byte)sequence);
+		out.put((byte)rows);
+		out.put((byte)cols);
+	}
+
+	/**
+	 * Writes a MOVE message.
+	 * @param out The buffer to write to.
+	 * @param sequence The client's number for this request.
+	 * @param cell The cell index of the box clicked on.
+	 */
+	public static void putMove(ByteBuffer out, int sequence, int cell)
+	{
+		out.putShort((short)3);
+		out.put((byte)MOVE);
+		out.put((byte)sequence);
+		out.put((byte)cell);
+	}
+
+	/**
+	 * Writes a SYNC message.
+	 * @param out The buffer to write to.
+	 * @param sequence The client's number for this request.
+	 */
+	public static void putSync(ByteBuffer out, int sequence)
+	{
+		out.putShort((short)2);
+		out.put((byte)SYNC);
+		out.put((byte)sequence);
+	}
+
+	/**
+	 * Writes a WATCH message.
+	 * @param out The buffer to write to.
+	 * @param sequence The client's number for this request.
+	 * @param matchId The server's id for the match to watch.
+	 */
+	public static void putWatch(ByteBuffer out, int sequence, int matchId)
+	{
+		out.putShort((short)6);
+		out.put((byte)WATCH);
+		out.put((byte)sequence);
+		out.putInt(matchId);
+	}
+
+	/**
+	 * Writes a MATCHED message.
+	 * @param out The buffer to write to.
+	 * @param matchId The server's id for the game.
+	 * @param seat The index of the player the client plays.
+	 * @param rows The number of rows in the game.
+	 * @param cols The number of columns in the game.
+	 */
+	public static void putMatched(ByteBuffer out, int matchId, int seat, int rows, int cols)
+	{
+		out.putShort((short)8);
+		out.put((byte)MATCHED);
+		out.putInt(matchId);
+		out.put((byte)seat);
+		out.put((byte)rows);
+		out.put((byte)cols);
+	}
+
+	/**
+	 * Writes a STATE message describing the whole game.  Each box takes
+	 * one byte: its owner index plus one in the high four bits, and its
+	 * points in the low four bits.
+	 * @param out The buffer to write to.
+	 * @param game The game to describe.
+	 */
+	public static void putState(ByteBuffer out, JumpingCubeEngine game)
+	{
+		int n = game.getNumBoxes();
+		out.putShort((short)(5 + n));
+		out.put((byte)STATE);
+		out.putShort((short)game.getMoveNumber());
+		out.put((byte)game.getActivePlayer());
+		out.put((byte)(game.getWinner() == JumpingCubeEngine.NO_WINNER ? NONE : game.getWinner()));
+		for(int i = 0; i < n; i++)
+		{
+			out.put(encodeCell(game.getOwner(i), game.getPoints(i)));
+		}
+	}
+
+	/**
+	 * Gets the size of the STATE message putState() writes for a game.
+	 * @param game The game to describe.
+	 * @return The number of bytes in the frame, header included.
+	 */
+	public static int stateSize(JumpingCubeEngine game)
+	{
+		return HEADER_SIZE + 5 + game.getNumBoxes();
+	}
+
+	/**
+	 * Writes a DELTA message describing the boxes changed by the move just
+	 * played, as reported by the game's getChanged().
+	 * @param out The buffer to write to.
+	 * @param game The game a move has just been played in.
+	 */
+	public static void putDelta(ByteBuffer out, JumpingCubeEngine game)
+	{
+		int n = game.getNumChanged();
+		out.putShort((short)(6 + 2 * n));
+		out.put((byte)DELTA);
+		out.putShort((short)game.getMoveNumber());
+		out.put((byte)game.getActivePlayer());
+		out.put((byte)(game.getWinner() == JumpingCubeEngine.NO_WINNER ? NONE : game.getWinner()));
+		out.put((byte)n);
+		for(int i = 0; i < n; i++)
+		{
+			int cell = game.getChanged(i);
+			out.put((byte)cell);
+			out.put(encodeCell(game.getOwner(cell), game.getPoints(cell)));
+		}
+	}
+
+	/**
+	 * Gets the size of the DELTA message putDelta() writes for a game.
+	 * @param game The game a move has just been played in.
+	 * @return The number of bytes in the frame, header included.
+	 */
+	public static int deltaSize(JumpingCubeEngine game)
+	{
+		return HEADER_SIZE + 6 + 2 * game.getNumChanged();
+	}
+
+	/**
+	 * Reads the body of a DELTA message into a game mirroring the one on the server.
+	 * @param body The body, positioned just after the message type.
+	 * @param game The game to update.
+	 */
+	public static void readDelta(ByteBuffer body, JumpingCubeEngine game)
+	{
+		int moveNumber = body.getShort() & 0xFFFF;
+		int active = body.get() & 0xFF;
+		int winner = body.get() & 0xFF;
+		int n = body.get() & 0xFF;
+		for(int i = 0; i < n; i++)
+		{
+			int cell = body.get() & 0xFF;
+			int b = body.get() & 0xFF;
+			game.setCell(cell, (b >> 4) - 1, b & 0x0F);
+		}
+		game.setTurn(active, moveNumber, (winner == NONE) ? JumpingCubeEngine.NO_WINNER : winner);
+	}
+
+	/**
+	 * Reads the body of a STATE message into a game of the same size.
+	 * @param body The body, positioned just after the message type.
+	 * @param game The game to update.
+	 */
+	public static void readState(ByteBuffer body, JumpingCubeEngine game)
+	{
+		int moveNumber = body.getShort() & 0xFFFF;
+		int active = body.get() & 0xFF;
+		int winner = body.get() & 0xFF;
+		int n = game.getNumBoxes();
+		for(int i = 0; i < n; i++)
+		{
+			int b = body.get() & 0xFF;
+			game.setCell(i, (b >> 4) - 1, b & 0x0F);
+		}
+		game.setTurn(active, moveNumber, (winner == NONE) ? JumpingCubeEngine.NO_WINNER : winner);
+	}
+
+	/**
+	 * Writes a REJECTED message.
+	 * @param out The buffer to write to.
+	 * @param sequence The number of the request being refused.
+	 * @param reason One of the rejection reasons.
+	 */
+	public static void putRejected(ByteBuffer out, int sequence, int reason)
+	{
+		out.putShort((short)3);
+		out.put((byte)REJECTED);
+		out.put((byte)sequence);
+		out.put((byte)reason);
+	}
+
+	/**
+	 * Writes an OPPONENT_LEFT message.
+	 * @param out The buffer to write to.
+	 */
+	public static void putOpponentLeft(ByteBuffer out)
+	{
+		out.putShort((short)1);
+		out.put((byte)OPPONENT_LEFT);
+	}
+
+	private static byte encodeCell(int owner, int points)
+	{
+		return (byte)(((owner + 1) << 4) | points);
+	}
+}
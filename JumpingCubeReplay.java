@@ -0,0 +1,363 @@
+/**
+ * JumpingCubeReplay.java
+ * @author Daniel Miladinov
+ * @version 1-beta
+ */
+
+import java.util.Random;
+
+/**
+ * The JumpingCubeReplay class keeps a game as it is played so that any
+ * move of it can be shown again straight away.  Every few moves it keeps a
+ * snapshot of the whole board, one byte a box, and for every move it keeps
+ * only the boxes the move changed, as the JumpingCubeEngine reports them.
+ * Going to a move restores the last snapshot before it and then sets the
+ * changed boxes of at most a snapshot interval's worth of moves, without
+ * resolving a single cascade, so every move of a long game is as quick to
+ * reach as the first.
+ * <p>
+ * Run on its own, the class plays a long game, checks that every move
+ * comes back exactly as it was played, and times going to random moves
+ * against replaying the game from the start:
+ * <pre>
+ * java JumpingCubeReplay [size] [interval]
+ * </pre>
+ */
+public class JumpingCubeReplay
+{
+	/** The number of moves between snapshots unless told otherwise.*/
+	public static final int DEFAULT_INTERVAL = 16;
+
+	private static final int WON = 0x80;
+
+	private JumpingCubeTopology topology;
+	private int numBoxes;
+	private int numPlayers;
+	private int interval;
+
+	private int numMoves;
+	private int[] moves;
+	private byte[] turns;
+	private int[] deltaStart;
+	private byte[] deltas;
+	private int numDeltas;
+	private byte[] snapshots;
+	private int numSnapshots;
+
+	private int[] owner;
+	private int[] points;
+
+	/**
+	 * The JumpingCubeReplay constructor.  Starts with the empty grid, with
+	 * Player 1 on turn.
+	 * @param rows The number of rows of the game.
+	 * @param cols The number of columns of the game.
+	 * @param numPlayers The number of players in the game.
+	 * @param interval The number of moves between snapshots.
+	 */
+	public JumpingCubeReplay(int rows, int cols, int numPlayers, int interval)
+	{
+		this(JumpingCubeTopology.grid(rows, cols), numPlayers, interval);
+	}
+
+	/**
+	 * The JumpingCubeReplay constructor.  Starts with the empty board, with
+	 * Player 1 on turn.
+	 * @param topology The board the game is played on.
+	 * @param numPlayers The number of players in the game.
+	 * @param interval The number of moves between snapshots.
+	 */
+	public JumpingCubeReplay(JumpingCubeTopology topology, int numPlayers, int interval)
+	{
+		this.topology = topology;
+		this.numPlayers = numPlayers;
+		this.interval = Math.max(1, interval);
+		numBoxes = topology.getNumCells();
+		moves = new int[64];
+		turns = new byte[64];
+		deltaStart = new int[65];
+		deltas = new byte[256];
+		snapshots = new byte[numBoxes * 4];
+		owner = new int[numBoxes];
+		points = new int[numBoxes];
+		snapshot(new JumpingCubeEngine(topology, numPlayers));
+	}
+
+	/**
+	 * Builds the replay of a game from its moves, such as those
+	 * JumpingCubeMatchStore.readMatch() gives back.
+	 * @param match The rows, the columns, then the cell index of every move.
+	 * @param numPlayers The number of players in the game.
+	 * @param interval The number of moves between snapshots.
+	 * @return The replay of the moves, as far as they are legal.
+	 */
+	public static JumpingCubeReplay fromMoves(int[] match, int numPlayers, int interval)
+	{
+		JumpingCubeEngine game = new JumpingCubeEngine(match[0], match[1], numPlayers);
+		JumpingCubeReplay replay = new JumpingCubeReplay(game.getTopology(), numPlayers, interval);
+		for(int i = 2; i < match.length && game.applyMove(match[i]); i++)
+		{
+			replay.record(game);
+		}
+		return replay;
+	}
+
+	/**
+	 * Adds the move a game has just played to the end of the replay.  The
+	 * game must be the one the replay has followed since its first move,
+	 * and must not have changed since applyMove() returned.
+	 * @param game The game, just after the move.
+	 */
+	public void record(JumpingCubeEngine game)
+	{
+		if(numMoves == moves.length)
+		{
+			moves = grow(moves, moves.length * 2);
+			turns = grow(turns, turns.length * 2);
+			deltaStart = grow(deltaStart, deltaStart.length * 2);
+		}
+		int n = game.getNumChanged();
+		if(numDeltas + n * 2 > deltas.length)
+		{
+			deltas = grow(deltas, Math.max(deltas.length * 2, numDeltas + n * 2));
+		}
+		for(int i = 0; i < n; i++)
+		{
+			int cell = game.getChanged(i);
+			deltas[numDeltas++] = (byte)cell;
+			deltas[numDeltas++] = pack(game, cell);
+		}
+		// The first box a move changes is the one clicked on.
+		moves[numMoves] = (n > 0) ? game.getChanged(0) : -1;
+		turns[numMoves] = (byte)(game.getActivePlayer() | ((game.getWinner() != JumpingCubeEngine.NO_WINNER) ? WON : 0));
+		numMoves++;
+		deltaStart[numMoves] = numDeltas;
+		if(numMoves % interval == 0)
+		{
+			snapshot(game);
+		}
+	}
+
+	/**
+	 * Sets a game to the position after a number of moves of the replay.
+	 * It costs one snapshot and the changes of fewer than an interval's
+	 * moves, however far into the game the move is.
+	 * @param move The number of moves to have played, from 0 to getNumMoves().
+	 * @param game Where to put the position, of the same topology and number of players.
+	 */
+	public void seek(int move, JumpingCubeEngine game)
+	{
+		move = Math.max(0, Math.min(numMoves, move));
+		int first = (move / interval) * interval;
+		int base = (move / interval) * numBoxes;
+		for(int cell = 0; cell < numBoxes; cell++)
+		{
+			int b = snapshots[base + cell];
+			owner[cell] = ((b >> 4) & 0xF) - 1;
+			points[cell] = b & 0xF;
+		}
+		game.setPosition(owner, points, activePlayerAfter(first), first);
+		for(int m = first; m < move; m++)
+		{
+			for(int i = deltaStart[m]; i < deltaStart[m + 1]; i += 2)
+			{
+				int b = deltas[i + 1];
+				game.setCell(deltas[i], ((b >> 4) & 0xF) - 1, b & 0xF);
+			}
+		}
+		if(move > 0)
+		{
+			game.setTurn(activePlayerAfter(move), move,
+					((turns[move - 1] & WON) != 0) ? activePlayerAfter(move) : JumpingCubeEngine.NO_WINNER);
+		}
+	}
+
+	/**
+	 * Gets the number of moves in the replay.
+	 * @return The number of moves recorded.
+	 */
+	public int getNumMoves()
+	{
+		return numMoves;
+	}
+
+	/**
+	 * Gets one move of the replay.
+	 * @param i The index of the move, from 0.
+	 * @return The cell index clicked on.
+	 */
+	public int getMove(int i)
+	{
+		return moves[i];
+	}
+
+	/**
+	 * Gets the number of rows of the game.
+	 * @return The number of rows.
+	 */
+	public int getRows()
+	{
+		return topology.getRows();
+	}
+
+	/**
+	 * Gets the number of columns of the game.
+	 * @return The number of columns.
+	 */
+	public int getCols()
+	{
+		return topology.getCols();
+	}
+
+	/**
+	 * Gets the board the game is played on.
+	 * @return The topology.
+	 */
+	public JumpingCubeTopology getTopology()
+	{
+		return topology;
+	}
+
+	/**
+	 * Gets the number of players in the game.
+	 * @return The number of players.
+	 */
+	public int getNumPlayers()
+	{
+		return numPlayers;
+	}
+
+	/**
+	 * Gets the number of bytes the snapshots and changes take up.
+	 * @return The size of the replay in bytes, not counting spare room.
+	 */
+	public long getBytes()
+	{
+		return (long)numSnapshots * numBoxes + numDeltas + numMoves * 9L;
+	}
+
+	private int activePlayerAfter(int move)
+	{
+		return (move == 0) ? 0 : (turns[move - 1] & (WON - 1));
+	}
+
+	/**
+	 * Packs a box into a byte, its owner plus one in the high four bits and
+	 * its points in the low four.
+	 */
+	private static byte pack(JumpingCubeEngine game, int cell)
+	{
+		return (byte)(((game.getOwner(cell) + 1) << 4) | game.getPoints(cell));
+	}
+
+	private void snapshot(JumpingCubeEngine game)
+	{
+		if((numSnapshots + 1) * numBoxes > snapshots.length)
+		{
+			snapshots = grow(snapshots, snapshots.length * 2);
+		}
+		int base = numSnapshots * numBoxes;
+		for(int cell = 0; cell < numBoxes; cell++)
+		{
+			snapshots[base + cell] = pack(game, cell);
+		}
+		numSnapshots++;
+	}
+
+	private static int[] grow(int[] a, int size)
+	{
+		int[] bigger = new int[size];
+		System.arraycopy(a, 0, bigger, 0, a.length);
+		return bigger;
+	}
+
+	private static byte[] grow(byte[] a, int size)
+	{
+		byte[] bigger = new byte[size];
+		System.arraycopy(a, 0, bigger, 0, a.length);
+		return bigger;
+	}
+
+	/**
+	 * Checks a long game move by move, then times seeking against
+	 * replaying from the start.
+	 */
+	public static void main(String args[])
+	{
+		int size = (args.length > 0) ? Integer.parseInt(args[0]) : JumpingCubeBoard.MAX_ROWS;
+		int interval = (args.length > 1) ? Integer.parseInt(args[1]) : DEFAULT_INTERVAL;
+
+		// Random moves make long games, the kind worth seeking in.
+		Random random = new Random(size);
+		JumpingCubeEngine game = new JumpingCubeEngine(size, size);
+		JumpingCubeReplay replay = new JumpingCubeReplay(size, size, game.getNumPlayers(), interval);
+		long[] hashes = new long[64];
+		while(game.getWinner() == JumpingCubeEngine.NO_WINNER)
+		{
+			if(hashes.length == replay.getNumMoves() + 1)
+			{
+				long[] bigger = new long[hashes.length * 2];
+				System.arraycopy(hashes, 0, bigger, 0, hashes.length);
+				hashes = bigger;
+			}
+			hashes[replay.getNumMoves()] = game.getHash();
+			int cell;
+			do
+			{
+				cell = random.nextInt(game.getNumBoxes());
+			}
+			while(!game.isLegal(cell));
+			game.applyMove(cell);
+			replay.record(game);
+		}
+		int n = replay.getNumMoves();
+		hashes[n] = game.getHash();
+
+		JumpingCubeEngine shown = new JumpingCubeEngine(size, size);
+		for(int m = n; m >= 0; m--)
+		{
+			replay.seek(m, shown);
+			if(shown.getHash() != hashes[m] || shown.getMoveNumber() != m
+				|| (shown.getWinner() != JumpingCubeEngine.NO_WINNER) != (m == n))
+			{
+				throw new IllegalStateException("move " + m + " does not match");
+			}
+		}
+		System.out.println(size + "x" + size + " game of " + n + " moves checked, " + replay.getBytes()
+				+ " bytes with a snapshot every " + interval + " moves");
+
+		int seeks = 20000;
+		int[] targets = new int[seeks];
+		for(int i = 0; i < seeks; i++)
+		{
+			targets[i] = random.nextInt(n + 1);
+		}
+		long sum = 0;
+		for(int run = 0; run < 2; run++)
+		{
+			long started = System.nanoTime();
+			for(int i = 0; i < seeks; i++)
+			{
+				replay.seek(targets[i], shown);
+				sum += shown.getHash();
+			}
+			long seekNanos = System.nanoTime() - started;
+			started = System.nanoTime();
+			for(int i = 0; i < seeks / 10; i++)
+			{
+				shown.reset();
+				for(int m = 0; m < targets[i]; m++)
+				{
+					shown.applyMove(replay.getMove(m));
+				}
+				sum += shown.getHash();
+			}
+			long replayNanos = (System.nanoTime() - started) * 10;
+			if(run == 1)
+			{
+				System.out.println("seek " + seekNanos / seeks / 1000.0 + " us a move, replay from the start "
+						+ replayNanos / seeks / 1000.0 + " us (" + (sum & 1) + ")");
+			}
+		}
+	}
+}
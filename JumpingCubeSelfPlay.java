@@ -0,0 +1,612 @@
+/**
+ * JumpingCubeSelfPlay.java
+ * @author Daniel Miladinov
+ * @version 1-beta
+ */
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.HashMap;
+import java.util.Random;
+import java.util.Vector;
+
+/**
+ * The JumpingCubeSelfPlay class plays games of the AI against itself in a
+ * number of worker processes, each a JVM of its own with its own heap and
+ * garbage collector, and gathers their positions into one positions file
+ * for the JumpingCubeTuner.  Game g is played exactly as the tuner plays
+ * it, from a Random seeded with g, so the games and the file are the same
+ * however many workers there are and whichever of them plays each game.
+ * <p>
+ * The coordinator listens on a port of the loopback address and starts the
+ * workers, which connect back to it.  It hands out games in batches of
+ * consecutive seeds, keeping two batches in hand at each worker so none
+ * waits between them.  A worker answers each batch with every game's
+ * winner, length and labelled positions, in the tuner's record format.
+ * Batches are written to the file in seed order as soon as every batch
+ * before them is in.  If a worker's connection breaks or its process ends,
+ * the batches it was playing are handed to the others, and a new worker
+ * is started in its place while restarts are left.
+ * <p>
+ * Usage: java JumpingCubeSelfPlay [-workers n] [-games n] [-batch n]
+ * [-depth n] [-size n] [-positions file] [-restarts n] [-crash n]
+ * <p>
+ * -crash makes the first worker exit after playing that many batches, to
+ * see its games played again elsewhere.
+ */
+public class JumpingCubeSelfPlay
+{
+	/** Worker to coordinator: ready for work.  Body: worker id (int).*/
+	public static final int HELLO = 1;
+	/** Coordinator to worker: how to play.  Body: size, depth, then one int per evaluation weight.*/
+	public static final int CONFIG = 2;
+	/** Coordinator to worker: play a batch.  Body: first seed, number of games.*/
+	public static final int BATCH = 3;
+	/** Worker to coordinator: a batch played.  Body: first seed, number of games, result length, results.*/
+	public static final int RESULT = 4;
+	/** Coordinator to worker: no more work.  No body.*/
+	public static final int STOP = 5;
+
+	/** The number of batches a worker is given ahead of the one it is playing.*/
+	public static final int PIPELINE = 2;
+
+	private int games;
+	private int batchSize;
+	private int size;
+	private int depth;
+	private int[] weights;
+	private int restartsLeft;
+	private int crashAfter;
+
+	private ServerSocket listener;
+	private Vector workers;
+	private int nextSeed;
+	private Vector reissued;
+	private HashMap finished;
+	private int nextToWrite;
+	private DataOutputStream out;
+	private IOException outputFailure;
+
+	private long positions;
+	private long moves;
+	private long[] wins;
+	private long unfinished;
+	private long reissuedGames;
+	private int deaths;
+
+	/**
+	 * An inner class which holds what the coordinator knows about one
+	 * worker: its process, its connection, and the batches it is playing.
+	 */
+	class Worker
+	{
+		int id;
+		Process process;
+		boolean connected;
+		boolean dead;
+		Vector outstanding;
+		long gamesPlayed;
+
+		public Worker(int i, Process p)
+		{
+			id = i;
+			process = p;
+			outstanding = new Vector();
+		}
+	}
+
+	/**
+	 * The JumpingCubeSelfPlay constructor.
+	 * @param games The number of games to play, with seeds from 0.
+	 * @param batchSize The number of games handed out at once.
+	 * @param size The number of rows and columns of every game.
+	 * @param depth The depth the AI searches to.
+	 * @param weights The weights the AI plays with.
+	 */
+	public JumpingCubeSelfPlay(int games, int batchSize, int size, int depth, int[] weights)
+	{
+		this.games = games;
+		this.batchSize = Math.max(1, batchSize);
+		this.size = size;
+		this.depth = depth;
+		this.weights = weights.clone();
+		workers = new Vector();
+		reissued = new Vector();
+		finished = new HashMap();
+		wins = new long[JumpingCubeEngine.NUM_PLAYERS];
+	}
+
+	/**
+	 * Plays every game across a number of worker processes and appends
+	 * their positions to a file, in seed order.  Returns when every game
+	 * has been played.
+	 * @param numWorkers The number of worker processes to start.
+	 * @param restarts The number of workers that may be started to replace ones that die.
+	 * @param crash The number of batches after which the first worker exits, or 0.
+	 * @param file The positions file to append to.
+	 * @throws IOException If the file cannot be written, or every worker has died with no restarts left.
+	 */
+	public void run(int numWorkers, int restarts, int crash, File file) throws IOException
+	{
+		restartsLeft = restarts;
+		crashAfter = crash;
+		out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file, true), 1 << 16));
+		listener = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+		Thread acceptor = new Thread("JumpingCubeSelfPlay-accept")
+		{
+			public void run()
+			{
+				accept();
+			}
+		};
+		acceptor.setDaemon(true);
+		acceptor.start();
+		try
+		{
+			synchronized(this)
+			{
+				for(int i = 0; i < numWorkers; i++)
+				{
+					launch();
+				}
+				while(nextToWrite < games && outputFailure == null)
+				{
+					// A worker that dies before connecting has no connection to break.
+					for(int i = 0; i < workers.size(); i++)
+					{
+						Worker w = (Worker)workers.get(i);
+						if(!w.dead && !w.connected && !w.process.isAlive())
+						{
+							died(w);
+						}
+					}
+					if(live() == 0)
+					{
+						throw new IOException("every worker has died, " + (games - nextToWrite) + " games unplayed");
+					}
+					try
+					{
+						wait(200);
+					}
+					catch(InterruptedException e)
+					{
+						throw new IOException("interrupted");
+					}
+				}
+				notifyAll();
+				try
+				{
+					out.flush();
+				}
+				catch(IOException e)
+				{
+					if(outputFailure == null)
+					{
+						outputFailure = e;
+					}
+				}
+				if(outputFailure != null)
+				{
+					throw new IOException("cannot write " + file + ": " + outputFailure.getMessage(), outputFailure);
+				}
+			}
+		}
+		finally
+		{
+			listener.close();
+			try
+			{
+				out.close();
+			}
+			catch(IOException e)
+			{
+				// Anything unwritten has already been reported.
+			}
+			for(int i = 0; i < workers.size(); i++)
+			{
+				Worker w = (Worker)workers.get(i);
+				try
+				{
+					w.process.waitFor();
+				}
+				catch(InterruptedException e)
+				{
+					w.process.destroy();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Starts a worker process, which connects back with its id.
+	 */
+	private synchronized void launch() throws IOException
+	{
+		int id = workers.size();
+		String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+		ProcessBuilder builder = new ProcessBuilder(new String[] {java, "-cp", System.getProperty("java.class.path"),
+				"JumpingCubeSelfPlay", "-worker", String.valueOf(listener.getLocalPort()), String.valueOf(id),
+				String.valueOf((id == 0) ? crashAfter : 0)});
+		builder.inheritIO();
+		workers.add(new Worker(id, builder.start()));
+	}
+
+	private synchronized int live()
+	{
+		int n = 0;
+		for(int i = 0; i < workers.size(); i++)
+		{
+			if(!((Worker)workers.get(i)).dead)
+			{
+				n++;
+			}
+		}
+		return n;
+	}
+
+	/**
+	 * Takes each worker's connection and gives it a thread of its own.
+	 */
+	private void accept()
+	{
+		while(true)
+		{
+			final Socket socket;
+			try
+			{
+				socket = listener.accept();
+			}
+			catch(IOException e)
+			{
+				return;
+			}
+			Thread t = new Thread("JumpingCubeSelfPlay-worker")
+			{
+				public void run()
+				{
+					serve(socket);
+				}
+			};
+			t.setDaemon(true);
+			t.start();
+		}
+	}
+
+	/**
+	 * Hands batches to one worker and takes its results, until every game
+	 * has been played or the worker dies.
+	 */
+	private void serve(Socket socket)
+	{
+		Worker w = null;
+		try
+		{
+			socket.setTcpNoDelay(true);
+			DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream(), 1 << 16));
+			DataOutputStream to = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+			if(in.readInt() != HELLO)
+			{
+				throw new IOException("expected HELLO");
+			}
+			int id = in.readInt();
+			synchronized(this)
+			{
+				w = (id >= 0 && id < workers.size()) ? (Worker)workers.get(id) : null;
+				if(w == null || w.connected || w.dead)
+				{
+					socket.close();
+					return;
+				}
+				w.connected = true;
+			}
+			to.writeInt(CONFIG);
+			to.writeInt(size);
+			to.writeInt(depth);
+			for(int i = 0; i < weights.length; i++)
+			{
+				to.writeInt(weights[i]);
+			}
+			while(true)
+			{
+				int[] batch;
+				while(w.outstanding.size() < PIPELINE && (batch = takeBatch(w.outstanding.isEmpty())) != null)
+				{
+					w.outstanding.add(batch);
+					to.writeInt(BATCH);
+					to.writeInt(batch[0]);
+					to.writeInt(batch[1]);
+				}
+				if(w.outstanding.isEmpty())
+				{
+					to.writeInt(STOP);
+					to.flush();
+					socket.close();
+					return;
+				}
+				to.flush();
+				if(in.readInt() != RESULT)
+				{
+					throw new IOException("expected RESULT");
+				}
+				int first = in.readInt();
+				int count = in.readInt();
+				byte[] results = new byte[in.readInt()];
+				in.readFully(results);
+				synchronized(this)
+				{
+					w.outstanding.remove(0);
+					w.gamesPlayed += count;
+					try
+					{
+						finish(first, results);
+					}
+					catch(IOException e)
+					{
+						// The worker is fine; it is stopped once its batches are in.
+						outputFailure = e;
+						notifyAll();
+					}
+				}
+			}
+		}
+		catch(IOException e)
+		{
+			if(w != null)
+			{
+				died(w);
+			}
+		}
+	}
+
+	/**
+	 * Gets the next batch to play: one given back by a dead worker, or the
+	 * next seeds.  A worker with nothing in hand waits for batches that may
+	 * yet be given back, until every game is in.  Nothing more is given
+	 * once the positions file cannot be written.
+	 * @return The first seed and number of games, or null if there is nothing to give.
+	 */
+	private synchronized int[] takeBatch(boolean wait)
+	{
+		while(true)
+		{
+			if(outputFailure != null)
+			{
+				return null;
+			}
+			if(!reissued.isEmpty())
+			{
+				return (int[])reissued.remove(0);
+			}
+			if(nextSeed < games)
+			{
+				int[] batch = {nextSeed, Math.min(batchSize, games - nextSeed)};
+				nextSeed += batch[1];
+				return batch;
+			}
+			if(!wait || nextToWrite >= games)
+			{
+				return null;
+			}
+			try
+			{
+				wait();
+			}
+			catch(InterruptedException e)
+			{
+				return null;
+			}
+		}
+	}
+
+	/**
+	 * Gives back a dead worker's batches and starts another in its place.
+	 */
+	private synchronized void died(Worker w)
+	{
+		if(w.dead)
+		{
+			return;
+		}
+		w.dead = true;
+		deaths++;
+		w.process.destroy();
+		for(int i = 0; i < w.outstanding.size(); i++)
+		{
+			int[] batch = (int[])w.outstanding.get(i);
+			reissued.add(batch);
+			reissuedGames += batch[1];
+		}
+		w.outstanding.clear();
+		System.err.println("Worker " + w.id + " died; " + reissued.size() + " batches to play again");
+		if(restartsLeft > 0 && nextToWrite < games && outputFailure == null)
+		{
+			restartsLeft--;
+			try
+			{
+				launch();
+			}
+			catch(IOException e)
+			{
+				System.err.println("Cannot start another worker: " + e);
+			}
+		}
+		notifyAll();
+	}
+
+	/**
+	 * Keeps a batch's results until every batch before it is in, then
+	 * writes it and every waiting batch after it.
+	 */
+	private void finish(int first, byte[] results) throws IOException
+	{
+		if(first < nextToWrite || outputFailure != null || finished.containsKey(Integer.valueOf(first)))
+		{
+			return;
+		}
+		finished.put(Integer.valueOf(first), results);
+		byte[] next;
+		while((next = (byte[])finished.remove(Integer.valueOf(nextToWrite))) != null)
+		{
+			int at = 0;
+			int n = Math.min(batchSize, games - nextToWrite);
+			for(int g = 0; g < n; g++)
+			{
+				int winner = next[at];
+				int length = ((next[at + 1] & 0xFF) << 8) | (next[at + 2] & 0xFF);
+				int kept = ((next[at + 3] & 0xFF) << 8) | (next[at + 4] & 0xFF);
+				at += 5;
+				out.write(next, at, kept * JumpingCubeTuner.RECORD_SIZE);
+				at += kept * JumpingCubeTuner.RECORD_SIZE;
+				positions += kept;
+				moves += length;
+				if(winner >= 0 && winner < wins.length)
+				{
+					wins[winner]++;
+				}
+				else
+				{
+					unfinished++;
+				}
+			}
+			nextToWrite += n;
+		}
+		notifyAll();
+	}
+
+	/**
+	 * Prints what was played, and by which worker.
+	 */
+	private synchronized void report(long millis)
+	{
+		System.out.println(nextToWrite + " games, " + positions + " positions, " + moves + " moves in "
+				+ millis / 1000.0 + " s, " + nextToWrite * 1000.0 / Math.max(1, millis) + " games/s");
+		StringBuffer b = new StringBuffer();
+		for(int p = 0; p < wins.length; p++)
+		{
+			b.append("Player ").append(p + 1).append(' ').append(wins[p]).append(", ");
+		}
+		System.out.println("won by " + b + unfinished + " unfinished; " + deaths + " workers died, "
+				+ reissuedGames + " games played again");
+		for(int i = 0; i < workers.size(); i++)
+		{
+			Worker w = (Worker)workers.get(i);
+			System.out.println("  worker " + w.id + ": " + w.gamesPlayed + " games" + (w.dead ? " (died)" : ""));
+		}
+	}
+
+	/**
+	 * The worker process: connects to the coordinator, then plays every
+	 * batch it is sent and answers with the results, until told to stop.
+	 */
+	private static void work(int port, int id, int crashAfter) throws IOException
+	{
+		Socket socket;
+		try
+		{
+			socket = new Socket(InetAddress.getLoopbackAddress(), port);
+		}
+		catch(IOException e)
+		{
+			// A worker started in place of one that died may find every game already in.
+			return;
+		}
+		socket.setTcpNoDelay(true);
+		DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+		DataOutputStream to = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), 1 << 16));
+		to.writeInt(HELLO);
+		to.writeInt(id);
+		to.flush();
+		if(in.readInt() != CONFIG)
+		{
+			throw new IOException("expected CONFIG");
+		}
+		int size = in.readInt();
+		int depth = in.readInt();
+		int[] weights = new int[JumpingCubeAI.NUM_FEATURES];
+		for(int i = 0; i < weights.length; i++)
+		{
+			weights[i] = in.readInt();
+		}
+		JumpingCubeAI ai = new JumpingCubeAI(depth, 0);
+		ai.setWeights(weights);
+		JumpingCubeEngine game = new JumpingCubeEngine(size, size);
+		byte[] record = new byte[2000 * JumpingCubeTuner.RECORD_SIZE];
+		int[] players = new int[2000];
+		int[] counts = new int[JumpingCubeAI.NUM_FEATURES];
+		ByteArrayOutputStream results = new ByteArrayOutputStream();
+		int batches = 0;
+		while(in.readInt() == BATCH)
+		{
+			int first = in.readInt();
+			int count = in.readInt();
+			results.reset();
+			for(int g = first; g < first + count; g++)
+			{
+				int kept = JumpingCubeTuner.play(game, ai, new Random(g), record, players, counts, null);
+				int length = Math.min(0xFFFF, game.getMoveNumber());
+				results.write(game.getWinner());
+				results.write(length >> 8);
+				results.write(length);
+				results.write(kept >> 8);
+				results.write(kept);
+				results.write(record, 0, kept * JumpingCubeTuner.RECORD_SIZE);
+			}
+			if(crashAfter > 0 && ++batches > crashAfter)
+			{
+				System.exit(1);
+			}
+			to.writeInt(RESULT);
+			to.writeInt(first);
+			to.writeInt(count);
+			to.writeInt(results.size());
+			results.writeTo(to);
+			to.flush();
+		}
+		socket.close();
+	}
+
+	/**
+	 * Runs the coordinator, or a worker when started by one.
+	 */
+	public static void main(String args[]) throws Exception
+	{
+		if(args.length == 4 && args[0].equals("-worker"))
+		{
+			work(Integer.parseInt(args[1]), Integer.parseInt(args[2]), Integer.parseInt(args[3]));
+			return;
+		}
+		int numWorkers = Runtime.getRuntime().availableProcessors();
+		int games = 200;
+		int batch = 4;
+		int depth = 2;
+		int size = JumpingCubeBoard.DEFAULT_ROWS;
+		String positionsFile = "positions.bin";
+		int restarts = -1;
+		int crash = 0;
+		for(int i = 0; i + 1 < args.length; i += 2)
+		{
+			if(args[i].equals("-workers")) numWorkers = Integer.parseInt(args[i + 1]);
+			else if(args[i].equals("-games")) games = Integer.parseInt(args[i + 1]);
+			else if(args[i].equals("-batch")) batch = Integer.parseInt(args[i + 1]);
+			else if(args[i].equals("-depth")) depth = Integer.parseInt(args[i + 1]);
+			else if(args[i].equals("-size")) size = Integer.parseInt(args[i + 1]);
+			else if(args[i].equals("-positions")) positionsFile = args[i + 1];
+			else if(args[i].equals("-restarts")) restarts = Integer.parseInt(args[i + 1]);
+			else if(args[i].equals("-crash")) crash = Integer.parseInt(args[i + 1]);
+			else throw new IllegalArgumentException("Unknown option " + args[i]);
+		}
+		JumpingCubeSelfPlay selfPlay = new JumpingCubeSelfPlay(games, batch, size, depth, JumpingCubeAI.getStartupWeights());
+		long started = System.currentTimeMillis();
+		selfPlay.run(numWorkers, (restarts < 0) ? numWorkers : restarts, crash, new File(positionsFile));
+		selfPlay.report(System.currentTimeMillis() - started);
+	}
+}
@@ -0,0 +1,126 @@
+/**
+ * JumpingCubeSendQueue.java
+ * @author Daniel Miladinov
+ * @version 1-beta
+ */
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
+
+/**
+ * The JumpingCubeSendQueue class holds the messages waiting to be written
+ * to one spectator.  The messages are read-only views of buffers shared
+ * with every other spectator of the same match, so queueing a message
+ * copies no bytes, and all of the queue is handed to the socket in one
+ * gathering write.
+ * <p>
+ * The queue never grows past its capacity.  A spectator too slow to keep
+ * up is instead conflated: everything not yet started is dropped, further
+ * messages are refused, and once the queue drains the owner is expected
+ * to send one fresh snapshot of the whole position and call resume().
+ */
+public class JumpingCubeSendQueue
+{
+	private ByteBuffer[] messages;
+	private int head;
+	private int size;
+	private boolean conflated;
+
+	/**
+	 * The JumpingCubeSendQueue constructor.
+	 * @param capacity The most messages the queue may hold.
+	 */
+	public JumpingCubeSendQueue(int capacity)
+	{
+		messages = new ByteBuffer[capacity];
+	}
+
+	/**
+	 * Adds a message to the end of the queue.  If the queue is full, it is
+	 * conflated instead, and the message is dropped.
+	 * @param message A view of a shared message; the queue will move its position.
+	 * @return True if the message was queued, false if it was dropped.
+	 */
+	public boolean offer(ByteBuffer message)
+	{
+		if(conflated)
+		{
+			return false;
+		}
+		if(size == messages.length)
+		{
+			conflate();
+			return false;
+		}
+		messages[(head + size) % messages.length] = message;
+		size++;
+		return true;
+	}
+
+	/**
+	 * Returns whether messages have been dropped since the last resume().
+	 * @return True if the spectator needs a fresh snapshot.
+	 */
+	public boolean isConflated()
+	{
+		return conflated;
+	}
+
+	/**
+	 * Accepts messages again, after a snapshot has been queued.
+	 */
+	public void resume()
+	{
+		conflated = false;
+	}
+
+	/**
+	 * Returns whether every queued message has been written.
+	 * @return True if nothing is waiting to be written.
+	 */
+	public boolean isEmpty()
+	{
+		return size == 0;
+	}
+
+	/**
+	 * Writes as much as the channel will take in one call: first the
+	 * given buffer of private replies, then the queued messages in order.
+	 * @param channel The spectator's channel.
+	 * @param first A buffer ready for reading, written ahead of the queue.
+	 * @return The number of bytes written.
+	 */
+	public long write(GatheringByteChannel channel, ByteBuffer first) throws IOException
+	{
+		ByteBuffer[] srcs = new ByteBuffer[size + 1];
+		srcs[0] = first;
+		for(int i = 0; i < size; i++)
+		{
+			srcs[i + 1] = messages[(head + i) % messages.length];
+		}
+		long written = channel.write(srcs);
+		while(size > 0 && !messages[head].hasRemaining())
+		{
+			messages[head] = null;
+			head = (head + 1) % messages.length;
+			size--;
+		}
+		return written;
+	}
+
+	/**
+	 * Drops every message not yet started.  A message already partly
+	 * written is kept, so the spectator never sees half a frame.
+	 */
+	private void conflate()
+	{
+		int keep = (size > 0 && messages[head].position() > 0) ? 1 : 0;
+		for(int i = keep; i < size; i++)
+		{
+			messages[(head + i) % messages.length] = null;
+		}
+		size = keep;
+		conflated = true;
+	}
+}
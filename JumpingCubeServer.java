@@ -0,0 +1,851 @@
+/**
+ * JumpingCubeServer.java
+ * @author Daniel Miladinov
+ * @version 1-beta
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.*;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Vector;
+
+/**
+ * The JumpingCubeServer class hosts JumpingCube games for clients
+ * connecting over TCP.  A single thread drives every connection through
+ * a java.nio Selector, so thousands of games cost only their sockets,
+ * their buffers and a slot each in the JumpingCubeArena kept for their
+ * board size, into which every move is stored.  Clients joining a game
+ * of the same size are paired in the order they arrive; the first one
+ * plays Player 1.  After every move both players are sent a DELTA of the
+ * boxes it changed.
+ * <p>
+ * Replies are not written as they are made.  Every request read in one
+ * pass of the Selector is answered into its connection's buffer first,
+ * and each connection that has something to say is then written once,
+ * so a client pipelining requests, or a busy game, costs one write per
+ * pass rather than one per message.
+ * <p>
+ * Any number of spectators may WATCH a match.  Each move is encoded for
+ * them only once, into a read-only buffer every spectator's
+ * JumpingCubeSendQueue shares, and a spectator who falls too far behind
+ * skips ahead to a snapshot of the position rather than being queued
+ * without limit.
+ * <p>
+ * A match whose player on turn has not moved for the match timeout is
+ * ended as if that player had left.  The arenas are scanned for such
+ * matches every few seconds, without loading any of their positions.
+ */
+public class JumpingCubeServer implements Runnable
+{
+	/** The port a JumpingCubeServer listens on unless told otherwise.*/
+	public static final int DEFAULT_PORT = 7707;
+	/** How long a player may take to move before the match is abandoned, in milliseconds.*/
+	public static final long DEFAULT_MATCH_TIMEOUT = 30 * 60 * 1000L;
+
+	private static final int BACKLOG = 4096;
+	private static final int BUFFER_SIZE = 2048;
+	private static final int SPECTATOR_QUEUE = 32;
+	private static final long SCAN_INTERVAL = 5000;
+
+	private Selector selector;
+	private ServerSocketChannel serverChannel;
+	private Thread thread;
+	private volatile boolean running;
+
+	private Connection[] waiting;
+	private int nextMatchId;
+	private volatile int numMatches;
+	private HashMap audiences;
+	private JumpingCubeArena[] arenas;
+	private int[] idle;
+	private volatile long matchTimeout;
+	private long nextScan;
+
+	private Connection[] pending;
+	private int numPending;
+
+	private volatile long movesPlayed;
+	private volatile long bytesWritten;
+	private volatile long writeCalls;
+	private volatile long readCalls;
+
+	private JumpingCubeMatchStore store;
+
+	/**
+	 * An inner class which holds everything the server knows about one
+	 * client: its channel, its unread and unwritten bytes, and the match
+	 * and seat it is playing, if any.
+	 */
+	class Connection
+	{
+		SocketChannel channel;
+		SelectionKey key;
+		ByteBuffer in;
+		ByteBuffer out;
+		JumpingCubeMatch match;
+		Connection opponent;
+		Audience audience;
+		int seat;
+		int waitingFor;
+		boolean pending;
+		JumpingCubeSendQueue sendQueue;
+
+		public Connection(SocketChannel c)
+		{
+			channel = c;
+			in = ByteBuffer.allocate(BUFFER_SIZE);
+			out = ByteBuffer.allocate(BUFFER_SIZE);
+			waitingFor = -1;
+		}
+	}
+
+	/**
+	 * An inner class which holds the spectators of one match, and the
+	 * messages encoded for all of them.  The snapshot of the position is
+	 * encoded at most once per move, and only when someone needs it.
+	 */
+	class Audience
+	{
+		JumpingCubeMatch match;
+		Connection[] players;
+		Vector spectators;
+		ByteBuffer snapshot;
+		boolean abandoned;
+
+		public Audience(JumpingCubeMatch m)
+		{
+			match = m;
+			spectators = new Vector();
+		}
+
+		public ByteBuffer snapshot()
+		{
+			if(snapshot == null)
+			{
+				ByteBuffer b = ByteBuffer.allocate(JumpingCubeProtocol.stateSize(match.getGame()));
+				JumpingCubeProtocol.putState(b, match.getGame());
+				b.flip();
+				snapshot = b.asReadOnlyBuffer();
+			}
+			return snapshot.duplicate();
+		}
+
+		public void broadcast(ByteBuffer shared)
+		{
+			for(int i = 0; i < spectators.size(); i++)
+			{
+				Connection s = (Connection)spectators.get(i);
+				s.sendQueue.offer(shared.duplicate());
+				queue(s);
+			}
+		}
+	}
+
+	/**
+	 * The JumpingCubeServer constructor.  Binds the listening socket, but
+	 * does not accept clients until start() is called.
+	 * @param port The port to listen on, or 0 for any free port.
+	 * @throws IOException If the socket cannot be opened.
+	 */
+	public JumpingCubeServer(int port) throws IOException
+	{
+		selector = Selector.open();
+		serverChannel = ServerSocketChannel.open();
+		serverChannel.bind(new InetSocketAddress(port), BACKLOG);
+		serverChannel.configureBlocking(false);
+		serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+		waiting = new Connection[(JumpingCubeBoard.MAX_ROWS + 1) * (JumpingCubeBoard.MAX_COLS + 1)];
+		arenas = new JumpingCubeArena[waiting.length];
+		idle = new int[256];
+		matchTimeout = DEFAULT_MATCH_TIMEOUT;
+		pending = new Connection[64];
+		audiences = new HashMap();
+	}
+
+	/**
+	 * Sets how long the player on turn may take to move before the match
+	 * is ended as abandoned.  The timeout is checked every few seconds, so
+	 * a match may run a little past it.
+	 * @param millis The timeout in milliseconds.
+	 */
+	public void setMatchTimeout(long millis)
+	{
+		matchTimeout = millis;
+	}
+
+	/**
+	 * Records every match this server plays in a JumpingCubeMatchStore.
+	 * The players of a match the store recovered unfinished cannot take
+	 * their seats again, so each is recorded as abandoned, and is not
+	 * recovered again on the next restart; until then, spectators may
+	 * still watch the position it stopped at.  New matches are numbered
+	 * after every match in the log.  Must be called before start().
+	 * @param store The store to append to.
+	 */
+	public void setMatchStore(JumpingCubeMatchStore store)
+	{
+		this.store = store;
+		nextMatchId = store.getNextMatchId();
+		Vector live = store.getLiveMatches();
+		for(int i = 0; i < live.size(); i++)
+		{
+			JumpingCubeMatch match = (JumpingCubeMatch)live.get(i);
+			record(JumpingCubeMatchStore.END, match, JumpingCubeMatchStore.ABANDONED, 0);
+			Audience audience = new Audience(match);
+			audience.abandoned = true;
+			audiences.put(Integer.valueOf(match.getId()), audience);
+		}
+	}
+
+	/**
+	 * Gets the port the server is listening on.
+	 * @return The local port of the listening socket.
+	 */
+	public int getPort()
+	{
+		return serverChannel.socket().getLocalPort();
+	}
+
+	/**
+	 * Gets the number of games being played right now.
+	 * @return The number of matches that have started and not yet finished.
+	 */
+	public int getNumMatches()
+	{
+		return numMatches;
+	}
+
+	/**
+	 * Gets the number of moves played since the server started.
+	 * @return The number of moves played.
+	 */
+	public long getMovesPlayed()
+	{
+		return movesPlayed;
+	}
+
+	/**
+	 * Gets the number of bytes written to clients since the server started.
+	 * @return The number of bytes written.
+	 */
+	public long getBytesWritten()
+	{
+		return bytesWritten;
+	}
+
+	/**
+	 * Gets the number of socket writes made since the server started.
+	 * @return The number of calls to write().
+	 */
+	public long getWriteCalls()
+	{
+		return writeCalls;
+	}
+
+	/**
+	 * Gets the number of socket reads made since the server started.
+	 * @return The number of calls to read().
+	 */
+	public long getReadCalls()
+	{
+		return readCalls;
+	}
+
+	/**
+	 * Starts serving clients on a new thread.
+	 */
+	public void start()
+	{
+		running = true;
+		thread = new Thread(this, "JumpingCubeServer");
+		thread.start();
+	}
+
+	/**
+	 * Stops serving clients, closes every connection and waits for the server thread to finish.
+	 */
+	public void stop()
+	{
+		running = false;
+		selector.wakeup();
+		try
+		{
+			if(thread != null)
+			{
+				thread.join();
+			}
+		}
+		catch(InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * The server loop, run by the thread created in start().
+	 */
+	public void run()
+	{
+		try
+		{
+			while(running)
+			{
+				selector.select(SCAN_INTERVAL);
+				Iterator it = selector.selectedKeys().iterator();
+				while(it.hasNext())
+				{
+					SelectionKey key = (SelectionKey)it.next();
+					it.remove();
+					if(!key.isValid())
+					{
+						continue;
+					}
+					if(key.isAcceptable())
+					{
+						accept();
+						continue;
+					}
+					Connection c = (Connection)key.attachment();
+					try
+					{
+						if(key.isWritable())
+						{
+							flush(c);
+						}
+						if(key.isReadable())
+						{
+							read(c);
+						}
+					}
+					catch(IOException e)
+					{
+						close(c);
+					}
+				}
+				scanIdle();
+				flushPending();
+			}
+		}
+		catch(IOException e)
+		{
+			e.printStackTrace();
+		}
+		finally
+		{
+			shutdown();
+		}
+	}
+
+	private void accept() throws IOException
+	{
+		SocketChannel sc;
+		while((sc = serverChannel.accept()) != null)
+		{
+			sc.configureBlocking(false);
+			sc.socket().setTcpNoDelay(true);
+			Connection c = new Connection(sc);
+			c.key = sc.register(selector, SelectionKey.OP_READ, c);
+		}
+	}
+
+	private void read(Connection c) throws IOException
+	{
+		readCalls++;
+		if(c.channel.read(c.in) < 0)
+		{
+			close(c);
+			return;
+		}
+		c.in.flip();
+		while(c.key.isValid() && c.in.remaining() >= JumpingCubeProtocol.HEADER_SIZE)
+		{
+			if((c.in.getShort(c.in.position()) & 0xFFFF) > JumpingCubeProtocol.MAX_BODY_SIZE)
+			{
+				close(c);
+				return;
+			}
+			if(!JumpingCubeProtocol.hasFrame(c.in))
+			{
+				break;
+			}
+			int length = c.in.getShort() & 0xFFFF;
+			int end = c.in.position() + length;
+			int limit = c.in.limit();
+			c.in.limit(end);
+			try
+			{
+				if(length > 0)
+				{
+					handle(c, c.in.get() & 0xFF);
+				}
+			}
+			catch(BufferUnderflowException e)
+			{
+				close(c);
+				return;
+			}
+			c.in.limit(limit);
+			c.in.position(end);
+		}
+		c.in.compact();
+	}
+
+	private void handle(Connection c, int type)
+	{
+		int sequence = c.in.get() & 0xFF;
+		switch(type)
+		{
+			case JumpingCubeProtocol.JOIN:
+				join(c, sequence, c.in.get(), c.in.get());
+				break;
+			case JumpingCubeProtocol.MOVE:
+				move(c, sequence, c.in.get() & 0xFF);
+				break;
+			case JumpingCubeProtocol.SYNC:
+				sync(c, sequence);
+				break;
+			case JumpingCubeProtocol.WATCH:
+				watch(c, sequence, c.in.getInt());
+				break;
+			default:
+				reject(c, sequence, JumpingCubeProtocol.BAD_MESSAGE);
+		}
+	}
+
+	private void join(Connection c, int sequence, int rows, int cols)
+	{
+		if(c.match != null || c.waitingFor >= 0 || c.audience != null)
+		{
+			reject(c, sequence, JumpingCubeProtocol.ALREADY_PLAYING);
+			return;
+		}
+		rows = Math.max(JumpingCubeBoard.MIN_ROWS, Math.min(JumpingCubeBoard.MAX_ROWS, rows));
+		cols = Math.max(JumpingCubeBoard.MIN_COLS, Math.min(JumpingCubeBoard.MAX_COLS, cols));
+		int size = rows * (JumpingCubeBoard.MAX_COLS + 1) + cols;
+
+		Connection first = waiting[size];
+		if(first == null)
+		{
+			waiting[size] = c;
+			c.waitingFor = size;
+			return;
+		}
+		waiting[size] = null;
+		first.waitingFor = -1;
+
+		if(arenas[size] == null)
+		{
+			arenas[size] = new JumpingCubeArena(JumpingCubeTopology.forKind(JumpingCubeTopology.GRID, rows, cols),
+					JumpingCubeEngine.NUM_PLAYERS);
+		}
+		JumpingCubeMatch match = new JumpingCubeMatch(nextMatchId++, arenas[size]);
+		Audience audience = new Audience(match);
+		audience.players = new Connection[] {first, c};
+		audiences.put(Integer.valueOf(match.getId()), audience);
+		numMatches++;
+		record(JumpingCubeMatchStore.START, match, rows, cols);
+		first.audience = audience;
+		c.audience = audience;
+		first.match = match;
+		first.seat = 0;
+		first.opponent = c;
+		c.match = match;
+		c.seat = 1;
+		c.opponent = first;
+
+		JumpingCubeProtocol.putMatched(first.out, match.getId(), 0, rows, cols);
+		JumpingCubeProtocol.putState(first.out, match.getGame());
+		JumpingCubeProtocol.putMatched(c.out, match.getId(), 1, rows, cols);
+		JumpingCubeProtocol.putState(c.out, match.getGame());
+		queue(first);
+		queue(c);
+	}
+
+	private void move(Connection c, int sequence, int cell)
+	{
+		if(c.match == null)
+		{
+			reject(c, sequence, JumpingCubeProtocol.NOT_PLAYING);
+			return;
+		}
+		Connection other = c.opponent;
+		if(!hasRoom(other))
+		{
+			close(other);
+			return;
+		}
+		if(!hasRoom(c))
+		{
+			close(c);
+			return;
+		}
+		int result = c.match.play(c.seat, cell);
+		if(result != JumpingCubeMatch.PLAYED)
+		{
+			reject(c, sequence, result);
+			return;
+		}
+
+		movesPlayed++;
+		record(JumpingCubeMatchStore.MOVE, c.match, cell, 0);
+		JumpingCubeProtocol.putDelta(c.out, c.match.getGame());
+		JumpingCubeProtocol.putDelta(other.out, c.match.getGame());
+		c.audience.snapshot = null;
+		if(c.audience.spectators.size() > 0)
+		{
+			ByteBuffer shared = ByteBuffer.allocate(JumpingCubeProtocol.deltaSize(c.match.getGame()));
+			JumpingCubeProtocol.putDelta(shared, c.match.getGame());
+			shared.flip();
+			c.audience.broadcast(shared.asReadOnlyBuffer());
+		}
+		if(c.match.isOver())
+		{
+			endMatch(c);
+		}
+		queue(c);
+		queue(other);
+	}
+
+	private void sync(Connection c, int sequence)
+	{
+		if(c.sendQueue != null && c.audience != null)
+		{
+			c.sendQueue.offer(c.audience.snapshot());
+			queue(c);
+			return;
+		}
+		if(c.match == null)
+		{
+			reject(c, sequence, JumpingCubeProtocol.NOT_PLAYING);
+			return;
+		}
+		if(!hasRoom(c))
+		{
+			close(c);
+			return;
+		}
+		JumpingCubeProtocol.putState(c.out, c.match.getGame());
+		queue(c);
+	}
+
+	private void watch(Connection c, int sequence, int matchId)
+	{
+		if(c.match != null || c.waitingFor >= 0 || c.audience != null)
+		{
+			reject(c, sequence, JumpingCubeProtocol.ALREADY_PLAYING);
+			return;
+		}
+		Audience audience = (Audience)audiences.get(Integer.valueOf(matchId));
+		if(audience == null)
+		{
+			reject(c, sequence, JumpingCubeProtocol.NO_SUCH_MATCH);
+			return;
+		}
+		JumpingCubeEngine game = audience.match.getGame();
+		if(c.sendQueue == null)
+		{
+			c.sendQueue = new JumpingCubeSendQueue(SPECTATOR_QUEUE);
+		}
+		c.audience = audience;
+		audience.spectators.add(c);
+		JumpingCubeProtocol.putMatched(c.out, matchId, JumpingCubeProtocol.SPECTATOR, game.getRows(), game.getCols());
+		c.sendQueue.offer(audience.snapshot());
+		if(audience.abandoned)
+		{
+			ByteBuffer left = ByteBuffer.allocate(JumpingCubeProtocol.HEADER_SIZE + 1);
+			JumpingCubeProtocol.putOpponentLeft(left);
+			left.flip();
+			c.sendQueue.offer(left);
+		}
+		queue(c);
+	}
+
+	private void reject(Connection c, int sequence, int reason)
+	{
+		if(!hasRoom(c))
+		{
+			close(c);
+			return;
+		}
+		JumpingCubeProtocol.putRejected(c.out, sequence, reason);
+		queue(c);
+	}
+
+	/**
+	 * Marks a connection as having replies to write at the end of this pass.
+	 */
+	private void queue(Connection c)
+	{
+		if(c.pending)
+		{
+			return;
+		}
+		if(numPending == pending.length)
+		{
+			Connection[] bigger = new Connection[pending.length * 2];
+			System.arraycopy(pending, 0, bigger, 0, numPending);
+			pending = bigger;
+		}
+		c.pending = true;
+		pending[numPending++] = c;
+	}
+
+	private void flushPending()
+	{
+		for(int i = 0; i < numPending; i++)
+		{
+			Connection c = pending[i];
+			pending[i] = null;
+			c.pending = false;
+			try
+			{
+				flush(c);
+			}
+			catch(IOException e)
+			{
+				close(c);
+			}
+		}
+		numPending = 0;
+	}
+
+	/**
+	 * A client that stops reading its replies while it keeps sending
+	 * requests would make its unwritten bytes grow without limit, so
+	 * once a whole position no longer fits it is disconnected instead.
+	 */
+	private boolean hasRoom(Connection c)
+	{
+		return c.out.remaining() >= JumpingCubeProtocol.MAX_BODY_SIZE / 4;
+	}
+
+	/**
+	 * Once every SCAN_INTERVAL, ends each match whose player on turn has
+	 * not moved within the match timeout, by closing that player's
+	 * connection as if the player had left.
+	 */
+	private void scanIdle()
+	{
+		long now = System.currentTimeMillis();
+		if(now < nextScan)
+		{
+			return;
+		}
+		nextScan = now + SCAN_INTERVAL;
+		for(int a = 0; a < arenas.length; a++)
+		{
+			JumpingCubeArena arena = arenas[a];
+			if(arena == null)
+			{
+				continue;
+			}
+			int n;
+			do
+			{
+				n = arena.scanIdle(now - matchTimeout, idle);
+				for(int i = 0; i < n; i++)
+				{
+					Audience audience = (Audience)audiences.get(Integer.valueOf(arena.getId(idle[i])));
+					close(audience.players[arena.getActivePlayer(idle[i])]);
+				}
+			}
+			while(n == idle.length);
+		}
+	}
+
+	private void endMatch(Connection c)
+	{
+		Audience audience = c.audience;
+		int winner = c.match.isOver() ? c.match.getGame().getWinner() : JumpingCubeMatchStore.ABANDONED;
+		record(JumpingCubeMatchStore.END, c.match, winner, 0);
+		audiences.remove(Integer.valueOf(c.match.getId()));
+		for(int i = 0; i < audience.spectators.size(); i++)
+		{
+			((Connection)audience.spectators.get(i)).audience = null;
+		}
+		numMatches--;
+		c.match.close();
+		c.opponent.match = null;
+		c.opponent.opponent = null;
+		c.opponent.audience = null;
+		c.match = null;
+		c.opponent = null;
+		c.audience = null;
+	}
+
+	/**
+	 * Appends a record to the match store, if there is one, without
+	 * waiting for it to reach the disk.  A store that fails is dropped,
+	 * and the server carries on without it.
+	 */
+	private void record(int type, JumpingCubeMatch match, int a, int b)
+	{
+		if(store == null)
+		{
+			return;
+		}
+		try
+		{
+			if(type == JumpingCubeMatchStore.START)
+			{
+				store.appendStart(match.getId(), a, b);
+			}
+			else if(type == JumpingCubeMatchStore.MOVE)
+			{
+				store.appendMove(match.getId(), a);
+			}
+			else
+			{
+				store.appendEnd(match.getId(), a);
+			}
+		}
+		catch(IOException e)
+		{
+			System.err.println("JumpingCubeServer: no longer recording matches: " + e.getMessage());
+			store = null;
+		}
+	}
+
+	private void flush(Connection c) throws IOException
+	{
+		if(!c.key.isValid())
+		{
+			return;
+		}
+		c.out.flip();
+		if(c.sendQueue != null)
+		{
+			writeSpectator(c);
+		}
+		else if(c.out.hasRemaining())
+		{
+			writeCalls++;
+			bytesWritten += c.channel.write(c.out);
+		}
+		if(c.out.hasRemaining() || (c.sendQueue != null && !c.sendQueue.isEmpty()))
+		{
+			c.key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+		}
+		else
+		{
+			c.key.interestOps(SelectionKey.OP_READ);
+		}
+		c.out.compact();
+	}
+
+	/**
+	 * Writes a spectator's own replies and its share of the broadcasts
+	 * in one call.  A spectator whose queue was conflated is sent the
+	 * latest snapshot as soon as the queue has drained.
+	 */
+	private void writeSpectator(Connection c) throws IOException
+	{
+		for(int i = 0; i < 2; i++)
+		{
+			if(c.out.hasRemaining() || !c.sendQueue.isEmpty())
+			{
+				writeCalls++;
+				bytesWritten += c.sendQueue.write(c.channel, c.out);
+			}
+			if(!c.sendQueue.isEmpty() || !c.sendQueue.isConflated())
+			{
+				return;
+			}
+			c.sendQueue.resume();
+			if(c.audience != null)
+			{
+				c.sendQueue.offer(c.audience.snapshot());
+			}
+		}
+	}
+
+	private void close(Connection c)
+	{
+		if(c.waitingFor >= 0)
+		{
+			waiting[c.waitingFor] = null;
+			c.waitingFor = -1;
+		}
+		if(c.match == null && c.audience != null)
+		{
+			c.audience.spectators.remove(c);
+			c.audience = null;
+		}
+		if(c.match != null)
+		{
+			Connection other = c.opponent;
+			if(c.audience.spectators.size() > 0)
+			{
+				ByteBuffer shared = ByteBuffer.allocate(JumpingCubeProtocol.HEADER_SIZE + 1);
+				JumpingCubeProtocol.putOpponentLeft(shared);
+				shared.flip();
+				c.audience.broadcast(shared.asReadOnlyBuffer());
+			}
+			endMatch(c);
+			if(hasRoom(other))
+			{
+				JumpingCubeProtocol.putOpponentLeft(other.out);
+				queue(other);
+			}
+			else
+			{
+				close(other);
+			}
+		}
+		c.key.cancel();
+		try
+		{
+			c.channel.close();
+		}
+		catch(IOException e)
+		{
+		}
+	}
+
+	private void shutdown()
+	{
+		Iterator it = selector.keys().iterator();
+		while(it.hasNext())
+		{
+			try
+			{
+				((SelectionKey)it.next()).channel().close();
+			}
+			catch(IOException e)
+			{
+			}
+		}
+		try
+		{
+			selector.close();
+		}
+		catch(IOException e)
+		{
+		}
+	}
+
+	/**
+	 * Runs a JumpingCubeServer until the process is killed.
+	 * @param args An optional port number, and an optional directory to record matches in.
+	 */
+	public static void main(String args[]) throws IOException
+	{
+		int port = (args.length > 0) ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+		JumpingCubeServer server = new JumpingCubeServer(port);
+		if(args.length > 1)
+		{
+			JumpingCubeMatchStore store = new JumpingCubeMatchStore(new File(args[1]));
+			server.setMatchStore(store);
+			System.out.println("Recovered " + store.getLiveMatches().size() + " unfinished matches, recorded as abandoned, in "
+					+ (store.getRecoveryNanos() / 1000000) + " ms");
+		}
+		JumpingCubeMetrics.serveIfRequested();
+		System.out.println("JumpingCubeServer listening on port " + server.getPort());
+		server.start();
+	}
+}
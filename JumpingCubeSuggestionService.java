@@ -0,0 +1,692 @@
+/**
+ * JumpingCubeSuggestionService.java
+ * @author Daniel Miladinov
+ * @version 1-beta
+ */
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.net.URLDecoder;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.StringTokenizer;
+import java.util.Vector;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * The JumpingCubeSuggestionService class answers requests for the best move
+ * of a position over HTTP, so other programs can ask the AI for advice
+ * without the game window.  A request names the board and gives the
+ * position in JumpingCubeNotation, as the moves played from the start, or
+ * box by box:
+ * <pre>
+ * GET /suggest?position=5/5/2a22/5/5+2
+ * GET /suggest?size=5x5&amp;moves=12,7,3
+ * GET /suggest?size=5x5&amp;topology=torus&amp;players=3&amp;turn=2&amp;cells=-1-1-111-121...
+ * </pre>
+ * where every box of cells is its owner, 1 to 8 or - for none, then its
+ * points, and turn is the player on turn, from 1.  The answer is one line:
+ * <pre>
+ * {"move":12,"row":2,"col":2,"score":34,"depth":6,"cached":false}
+ * </pre>
+ * with the score from the point of view of the player on turn.
+ * <p>
+ * Answers are kept in a cache of the most recently used positions, under
+ * the hash of the canonical form of the position, so a position and every
+ * copy of it turned over or round share one entry.  A request for a
+ * position already waiting to be searched waits for the same search.  The
+ * rest go on a bounded queue, which the search threads take from one
+ * position at a time, each with its own JumpingCubeAI, so no thread holds
+ * positions back while another is idle.  No request thread ever waits on
+ * a search: the search thread answers the request itself.  When the queue
+ * is full, or a position has waited longer than the most a caller should
+ * wait, the request is answered at once with 503 Service Unavailable.
+ * <p>
+ * Run on its own, the class serves until it is stopped, or with -bench
+ * sends it requests from a number of clients and reports what they saw:
+ * <pre>
+ * java JumpingCubeSuggestionService [-port n] [-threads n] [-depth n] [-time ms]
+ *     [-queue n] [-cache n] [-bench clients seconds]
+ * </pre>
+ */
+public class JumpingCubeSuggestionService
+{
+	/** The port served on unless told otherwise.*/
+	public static final int DEFAULT_PORT = 7708;
+	/** The depth each position is searched to unless told otherwise.*/
+	public static final int DEFAULT_DEPTH = 6;
+	/** The longest each search may take unless told otherwise, in milliseconds.*/
+	public static final long DEFAULT_TIME_BUDGET = 200;
+	/** The number of positions that may wait to be searched unless told otherwise.*/
+	public static final int DEFAULT_QUEUE_SIZE = 64;
+	/** The number of answers kept unless told otherwise.*/
+	public static final int DEFAULT_CACHE_SIZE = 10000;
+	/** The longest a position may wait on the queue before it is refused, in milliseconds.*/
+	public static final long MAX_WAIT = 5000;
+
+	/** Counts the requests for a suggestion.*/
+	public static final JumpingCubeMetrics.Counter REQUESTS = JumpingCubeMetrics.DEFAULT.counter("jumpingcube_suggest_requests_total", "Requests for a suggested move");
+	/** Counts the requests answered from the cache.*/
+	public static final JumpingCubeMetrics.Counter CACHE_HITS = JumpingCubeMetrics.DEFAULT.counter("jumpingcube_suggest_cache_hits_total", "Suggestions answered from the cache");
+	/** Counts the requests refused because the service was too busy.*/
+	public static final JumpingCubeMetrics.Counter REJECTED = JumpingCubeMetrics.DEFAULT.counter("jumpingcube_suggest_rejected_total", "Suggestions refused with 503");
+	/** Counts the positions searched.*/
+	public static final JumpingCubeMetrics.Counter SEARCHES = JumpingCubeMetrics.DEFAULT.counter("jumpingcube_suggest_searches_total", "Positions searched for a suggestion");
+
+	private HttpServer server;
+	private Thread[] workers;
+	private BlockingQueue queue;
+	private HashMap pending;
+	private LinkedHashMap cache;
+
+	/**
+	 * An inner class which holds one position waiting to be searched, in
+	 * its canonical form, and the requests waiting for it.
+	 */
+	class Job
+	{
+		Long key;
+		JumpingCubeEngine game;
+		Vector waiters;
+		long queued;
+
+		public Job(Long k, JumpingCubeEngine g)
+		{
+			key = k;
+			game = g;
+			waiters = new Vector();
+			queued = System.nanoTime();
+		}
+	}
+
+	/**
+	 * An inner class which holds a request waiting for a search, and the
+	 * symmetry that maps its position to the one searched.
+	 */
+	class Waiter
+	{
+		HttpExchange exchange;
+		JumpingCubeSymmetry symmetry;
+		int s;
+		int cols;
+
+		public Waiter(HttpExchange e, JumpingCubeSymmetry sym, int s, int cols)
+		{
+			exchange = e;
+			symmetry = sym;
+			this.s = s;
+			this.cols = cols;
+		}
+	}
+
+	/**
+	 * An inner class which holds the answer for a canonical position.
+	 */
+	static class Suggestion
+	{
+		int move;
+		int score;
+		int depth;
+
+		public Suggestion(int m, int sc, int d)
+		{
+			move = m;
+			score = sc;
+			depth = d;
+		}
+	}
+
+	/**
+	 * The JumpingCubeSuggestionService constructor.  Starts serving on the
+	 * loopback address, so only programs on this machine can reach it, and
+	 * starts the search threads.
+	 * @param port The port to listen on, or 0 for any free port.
+	 * @param threads The number of positions to search at once.
+	 * @param maxDepth The deepest to search each position.
+	 * @param timeBudgetMillis The longest each search may take, or 0 for no limit.
+	 * @param queueSize The number of positions that may wait to be searched.
+	 * @param cacheSize The number of answers to keep.
+	 * @throws IOException If the port cannot be opened.
+	 */
+	public JumpingCubeSuggestionService(int port, int threads, int maxDepth, long timeBudgetMillis,
+			int queueSize, final int cacheSize) throws IOException
+	{
+		queue = new ArrayBlockingQueue(Math.max(1, queueSize));
+		pending = new HashMap();
+		cache = new LinkedHashMap(16, 0.75f, true)
+		{
+			protected boolean removeEldestEntry(Map.Entry eldest)
+			{
+				return size() > cacheSize;
+			}
+		};
+		workers = new Thread[threads];
+		for(int t = 0; t < threads; t++)
+		{
+			final JumpingCubeAI ai = new JumpingCubeAI(maxDepth, timeBudgetMillis);
+			workers[t] = new Thread("JumpingCubeSuggestionService-" + t)
+			{
+				public void run()
+				{
+					work(ai);
+				}
+			};
+			workers[t].setDaemon(true);
+			workers[t].start();
+		}
+		server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+		server.createContext("/suggest", new HttpHandler()
+		{
+			public void handle(HttpExchange exchange) throws IOException
+			{
+				suggest(exchange);
+			}
+		});
+		server.start();
+	}
+
+	/**
+	 * Gets the port the service is listening on.
+	 * @return The port number.
+	 */
+	public int getPort()
+	{
+		return server.getAddress().getPort();
+	}
+
+	/**
+	 * Stops serving and stops the search threads.  Requests still waiting
+	 * are not answered.
+	 */
+	public void stop()
+	{
+		server.stop(0);
+		for(int t = 0; t < workers.length; t++)
+		{
+			workers[t].interrupt();
+		}
+	}
+
+	/**
+	 * Parses a request, then answers it from the cache, adds it to the
+	 * position already waiting for a search, queues the position, or
+	 * refuses it.
+	 */
+	private void suggest(HttpExchange exchange) throws IOException
+	{
+		REQUESTS.increment();
+		JumpingCubeEngine game;
+		try
+		{
+			game = parse(readQuery(exchange));
+		}
+		catch(IllegalArgumentException e)
+		{
+			respond(exchange, 400, e.getMessage());
+			return;
+		}
+		if(game.getWinner() != JumpingCubeEngine.NO_WINNER)
+		{
+			respond(exchange, 400, "the game is over");
+			return;
+		}
+		if(!hasMove(game))
+		{
+			respond(exchange, 400, "player " + (game.getActivePlayer() + 1) + " has no move");
+			return;
+		}
+		JumpingCubeSymmetry symmetry = JumpingCubeSymmetry.forGame(game);
+		int s = symmetry.getCanonicalSymmetry(game);
+		Long key = Long.valueOf(game.getHash(symmetry.getPermutation(s)) ^ boardKey(game));
+		Waiter waiter = new Waiter(exchange, symmetry, s, game.getCols());
+		Suggestion cached;
+		boolean refused = false;
+		synchronized(this)
+		{
+			cached = (Suggestion)cache.get(key);
+			if(cached == null)
+			{
+				Job job = (Job)pending.get(key);
+				if(job == null)
+				{
+					JumpingCubeEngine canonical = new JumpingCubeEngine(game.getTopology(), game.getNumPlayers());
+					symmetry.transform(game, s, canonical);
+					job = new Job(key, canonical);
+					if(queue.offer(job))
+					{
+						pending.put(key, job);
+					}
+					else
+					{
+						job = null;
+						refused = true;
+					}
+				}
+				if(job != null)
+				{
+					job.waiters.add(waiter);
+				}
+			}
+		}
+		if(cached != null)
+		{
+			CACHE_HITS.increment();
+			answer(waiter, cached, true);
+		}
+		else if(refused)
+		{
+			refuse(exchange);
+		}
+	}
+
+	/**
+	 * The loop each search thread runs: takes a position off the queue,
+	 * then searches it and answers everyone waiting for it.
+	 */
+	private void work(JumpingCubeAI ai)
+	{
+		try
+		{
+			while(true)
+			{
+				Job job = (Job)queue.take();
+				Suggestion result = null;
+				boolean failed = false;
+				if(System.nanoTime() - job.queued <= MAX_WAIT * 1000000L)
+				{
+					SEARCHES.increment();
+					// A search that fails answers its waiters rather than
+					// ending the thread, and with it everything queued on it.
+					try
+					{
+						int move = ai.chooseMove(job.game);
+						if(move >= 0)
+						{
+							result = new Suggestion(move, ai.getLastScore(), ai.getLastDepth());
+						}
+					}
+					catch(RuntimeException e)
+					{
+					}
+					failed = (result == null);
+				}
+				synchronized(this)
+				{
+					pending.remove(job.key);
+					if(result != null)
+					{
+						cache.put(job.key, result);
+					}
+				}
+				// No waiter is added once the job has left pending.
+				for(int w = 0; w < job.waiters.size(); w++)
+				{
+					Waiter waiter = (Waiter)job.waiters.get(w);
+					if(result != null)
+					{
+						answer(waiter, result, false);
+					}
+					else if(failed)
+					{
+						respond(waiter.exchange, 500, "the search found no move");
+					}
+					else
+					{
+						refuse(waiter.exchange);
+					}
+				}
+			}
+		}
+		catch(InterruptedException e)
+		{
+		}
+	}
+
+	/**
+	 * Turns the topology and number of players into a key, so equal boxes
+	 * on different boards do not share a cache entry.
+	 */
+	private static long boardKey(JumpingCubeEngine game)
+	{
+		JumpingCubeTopology t = game.getTopology();
+		long board = ((t.getKind() * 256L + t.getRows()) * 256L + t.getCols()) * 16L + game.getNumPlayers();
+		return board * 0x9E3779B97F4A7C15L;
+	}
+
+	/**
+	 * Builds the position a request names.
+	 * @param params The parameters of the request.
+	 * @return The position.
+	 * @throws IllegalArgumentException If the parameters do not name a legal position.
+	 */
+	private static JumpingCubeEngine parse(HashMap params)
+	{
+		String position = (String)params.get("position");
+		if(position != null)
+		{
+			return new JumpingCubeNotation().parse(position);
+		}
+		String size = (String)params.get("size");
+		if(size == null)
+		{
+			throw new IllegalArgumentException("size is missing");
+		}
+		int x = size.indexOf('x');
+		int rows = number(x < 0 ? size : size.substring(0, x), "size");
+		int cols = (x < 0) ? rows : number(size.substring(x + 1), "size");
+		if(rows < JumpingCubeBoard.MIN_ROWS || cols < JumpingCubeBoard.MIN_COLS
+			|| rows > JumpingCubeBoard.MAX_ROWS || cols > JumpingCubeBoard.MAX_COLS)
+		{
+			throw new IllegalArgumentException("size must be from " + JumpingCubeBoard.MIN_ROWS + "x" + JumpingCubeBoard.MIN_COLS
+					+ " to " + JumpingCubeBoard.MAX_ROWS + "x" + JumpingCubeBoard.MAX_COLS);
+		}
+		int kind = JumpingCubeTopology.GRID;
+		String topology = (String)params.get("topology");
+		if(topology != null)
+		{
+			for(kind = 0; kind < JumpingCubeTopology.GRAPH && !JumpingCubeTopology.KIND_NAMES[kind].equals(topology); kind++)
+			{
+			}
+			if(kind == JumpingCubeTopology.GRAPH)
+			{
+				throw new IllegalArgumentException("topology must be grid, torus or hex");
+			}
+		}
+		int players = params.containsKey("players") ? number((String)params.get("players"), "players") : JumpingCubeEngine.NUM_PLAYERS;
+		if(players < JumpingCubeEngine.MIN_PLAYERS || players > JumpingCubeEngine.MAX_PLAYERS)
+		{
+			throw new IllegalArgumentException("players must be from " + JumpingCubeEngine.MIN_PLAYERS + " to " + JumpingCubeEngine.MAX_PLAYERS);
+		}
+		JumpingCubeEngine game = new JumpingCubeEngine(JumpingCubeTopology.forKind(kind, rows, cols), players);
+
+		String cells = (String)params.get("cells");
+		if(cells != null)
+		{
+			int n = game.getNumBoxes();
+			if(cells.length() != n * 2)
+			{
+				throw new IllegalArgumentException("cells must have two characters for each of the " + n + " boxes");
+			}
+			int[] owner = new int[n];
+			int[] points = new int[n];
+			for(int cell = 0; cell < n; cell++)
+			{
+				char o = cells.charAt(cell * 2);
+				owner[cell] = (o == '-') ? JumpingCubeEngine.NO_OWNER : Character.digit(o, 10) - 1;
+				points[cell] = Character.digit(cells.charAt(cell * 2 + 1), 16);
+				if(owner[cell] < JumpingCubeEngine.NO_OWNER || owner[cell] >= players
+					|| points[cell] < 1 || points[cell] > game.getCapacity(cell))
+				{
+					throw new IllegalArgumentException("box " + cell + " is not a legal box");
+				}
+			}
+			int turn = params.containsKey("turn") ? number((String)params.get("turn"), "turn") : 1;
+			if(turn < 1 || turn > players)
+			{
+				throw new IllegalArgumentException("turn must be from 1 to " + players);
+			}
+			game.setPosition(owner, points, turn - 1);
+			if(game.isOut(turn - 1))
+			{
+				throw new IllegalArgumentException("player " + turn + " has no boxes left");
+			}
+		}
+		String moves = (String)params.get("moves");
+		if(moves != null)
+		{
+			StringTokenizer st = new StringTokenizer(moves, ",");
+			while(st.hasMoreTokens())
+			{
+				int cell = number(st.nextToken(), "moves");
+				if(cell < 0 || cell >= game.getNumBoxes() || !game.applyMove(cell))
+				{
+					throw new IllegalArgumentException("move " + (game.getMoveNumber() + 1) + " is not legal");
+				}
+			}
+		}
+		return game;
+	}
+
+	private static int number(String s, String name)
+	{
+		try
+		{
+			return Integer.parseInt(s.trim());
+		}
+		catch(NumberFormatException e)
+		{
+			throw new IllegalArgumentException(name + " is not a number");
+		}
+	}
+
+	/**
+	 * Reads the parameters of a request, from the query of a GET or the
+	 * form-encoded body of a POST.
+	 */
+	private static HashMap readQuery(HttpExchange exchange) throws IOException
+	{
+		String query = exchange.getRequestURI().getRawQuery();
+		if("POST".equals(exchange.getRequestMethod()))
+		{
+			ByteArrayOutputStream body = new ByteArrayOutputStream();
+			InputStream in = exchange.getRequestBody();
+			byte[] b = new byte[1024];
+			int n;
+			while((n = in.read(b)) > 0 && body.size() < 65536)
+			{
+				body.write(b, 0, n);
+			}
+			query = body.toString("UTF-8");
+		}
+		HashMap params = new HashMap();
+		if(query != null)
+		{
+			StringTokenizer st = new StringTokenizer(query, "&");
+			while(st.hasMoreTokens())
+			{
+				String pair = st.nextToken();
+				int eq = pair.indexOf('=');
+				if(eq > 0)
+				{
+					params.put(URLDecoder.decode(pair.substring(0, eq), "UTF-8"), URLDecoder.decode(pair.substring(eq + 1), "UTF-8"));
+				}
+			}
+		}
+		return params;
+	}
+
+	private static boolean hasMove(JumpingCubeEngine game)
+	{
+		for(int cell = 0; cell < game.getNumBoxes(); cell++)
+		{
+			if(game.isLegal(cell))
+			{
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static void answer(Waiter waiter, Suggestion s, boolean cached)
+	{
+		if(s.move < 0)
+		{
+			respond(waiter.exchange, 500, "the search found no move");
+			return;
+		}
+		int move = waiter.symmetry.unmap(waiter.s, s.move);
+		respond(waiter.exchange, 200, "{\"move\":" + move + ",\"row\":" + move / waiter.cols + ",\"col\":" + move % waiter.cols
+				+ ",\"score\":" + s.score + ",\"depth\":" + s.depth + ",\"cached\":" + cached + "}");
+	}
+
+	private static void refuse(HttpExchange exchange)
+	{
+		REJECTED.increment();
+		exchange.getResponseHeaders().set("Retry-After", "1");
+		respond(exchange, 503, "too busy");
+	}
+
+	/**
+	 * Sends a one-line answer.  A client that has gone away is ignored.
+	 */
+	private static void respond(HttpExchange exchange, int status, String line)
+	{
+		try
+		{
+			byte[] body = (line + "\n").getBytes("UTF-8");
+			exchange.getResponseHeaders().set("Content-Type", (status == 200) ? "application/json" : "text/plain; charset=utf-8");
+			exchange.sendResponseHeaders(status, body.length);
+			OutputStream out = exchange.getResponseBody();
+			out.write(body);
+			out.close();
+		}
+		catch(IOException e)
+		{
+			exchange.close();
+		}
+	}
+
+	/**
+	 * Serves until stopped, or with -bench runs clients against the service
+	 * and reports their latencies and how many requests were refused.
+	 */
+	public static void main(String args[]) throws Exception
+	{
+		int port = DEFAULT_PORT;
+		int threads = JumpingCubeAnalyzer.spareCores();
+		int depth = DEFAULT_DEPTH;
+		long time = DEFAULT_TIME_BUDGET;
+		int queueSize = DEFAULT_QUEUE_SIZE;
+		int cacheSize = DEFAULT_CACHE_SIZE;
+		int clients = 0;
+		int seconds = 10;
+		for(int i = 0; i + 1 < args.length; i += 2)
+		{
+			if(args[i].equals("-port")) port = Integer.parseInt(args[i + 1]);
+			else if(args[i].equals("-threads")) threads = Integer.parseInt(args[i + 1]);
+			else if(args[i].equals("-depth")) depth = Integer.parseInt(args[i + 1]);
+			else if(args[i].equals("-time")) time = Long.parseLong(args[i + 1]);
+			else if(args[i].equals("-queue")) queueSize = Integer.parseInt(args[i + 1]);
+			else if(args[i].equals("-cache")) cacheSize = Integer.parseInt(args[i + 1]);
+			else if(args[i].equals("-bench") && i + 2 < args.length)
+			{
+				clients = Integer.parseInt(args[++i]);
+				seconds = Integer.parseInt(args[i + 1]);
+			}
+		}
+		JumpingCubeMetrics.serveIfRequested();
+		JumpingCubeSuggestionService service = new JumpingCubeSuggestionService(clients > 0 ? 0 : port,
+				threads, depth, time, queueSize, cacheSize);
+		System.out.println("Suggesting moves at http://localhost:" + service.getPort() + "/suggest");
+		if(clients > 0)
+		{
+			bench(service.getPort(), clients, seconds);
+			service.stop();
+		}
+	}
+
+	/**
+	 * Sends requests for the positions of short random openings, some of
+	 * them asked for again, from a number of clients at once.
+	 */
+	private static void bench(final int port, int clients, int seconds) throws Exception
+	{
+		final String[] openings = new String[500];
+		Random random = new Random(seconds);
+		for(int i = 0; i < openings.length; i++)
+		{
+			JumpingCubeEngine game = new JumpingCubeEngine(5, 5);
+			StringBuffer moves = new StringBuffer();
+			for(int m = 1 + random.nextInt(6); m > 0; m--)
+			{
+				int cell;
+				do
+				{
+					cell = random.nextInt(game.getNumBoxes());
+				}
+				while(!game.isLegal(cell));
+				game.applyMove(cell);
+				moves.append(moves.length() > 0 ? "," : "").append(cell);
+			}
+			openings[i] = "http://localhost:" + port + "/suggest?size=5x5&moves=" + moves;
+		}
+		final long end = System.nanoTime() + seconds * 1000000000L;
+		final JumpingCubeHistogram[] latencies = new JumpingCubeHistogram[clients];
+		final long[][] statuses = new long[clients][600];
+		Thread[] threads = new Thread[clients];
+		for(int c = 0; c < clients; c++)
+		{
+			final int client = c;
+			latencies[c] = new JumpingCubeHistogram();
+			threads[c] = new Thread("JumpingCubeSuggestionService-client-" + c)
+			{
+				public void run()
+				{
+					Random r = new Random(client);
+					byte[] b = new byte[256];
+					while(System.nanoTime() < end)
+					{
+						long started = System.nanoTime();
+						int status = 599;
+						try
+						{
+							HttpURLConnection connection = (HttpURLConnection)new URL(openings[r.nextInt(openings.length)]).openConnection();
+							status = connection.getResponseCode();
+							InputStream in = (status == 200) ? connection.getInputStream() : connection.getErrorStream();
+							while(in != null && in.read(b) > 0)
+							{
+							}
+							if(in != null)
+							{
+								in.close();
+							}
+						}
+						catch(IOException e)
+						{
+						}
+						statuses[client][status]++;
+						if(status == 200)
+						{
+							latencies[client].record((System.nanoTime() - started) / 1000);
+						}
+					}
+				}
+			};
+			threads[c].start();
+		}
+		JumpingCubeHistogram all = new JumpingCubeHistogram();
+		long ok = 0;
+		long busy = 0;
+		long other = 0;
+		for(int c = 0; c < clients; c++)
+		{
+			threads[c].join();
+			all.add(latencies[c]);
+			for(int status = 0; status < statuses[c].length; status++)
+			{
+				if(status == 200) ok += statuses[c][status];
+				else if(status == 503) busy += statuses[c][status];
+				else other += statuses[c][status];
+			}
+		}
+		System.out.println(clients + " clients, " + seconds + " s: " + ok + " answered (" + ok / seconds + "/s), "
+				+ busy + " refused with 503, " + other + " failed");
+		System.out.println("latency us: 50% " + all.getValueAtPercentile(50) + ", 99% " + all.getValueAtPercentile(99)
+				+ ", 99.9% " + all.getValueAtPercentile(99.9) + ", max " + all.getMax());
+		System.out.println(SEARCHES.get() + " searched, " + CACHE_HITS.get()
+				+ " answered from the cache of " + REQUESTS.get() + " requests");
+	}
+}
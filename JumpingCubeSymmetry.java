@@ -0,0 +1,443 @@
+/**
+ * JumpingCubeSymmetry.java
+ * @author Daniel Miladinov
+ * @version 1-beta
+ */
+
+import java.util.HashSet;
+import java.util.Random;
+
+/**
+ * The JumpingCubeSymmetry class knows the ways a board can be turned over
+ * or round onto itself: eight on a square board, which has every size in
+ * the Playfield menu, and four on any other.  Positions that are the same
+ * but for one of these symmetries play the same way, with every move
+ * mapped across, because a move ends the same whatever order its boxes
+ * overflow in.  So transposition tables, opening books and solver caches
+ * can keep one entry for all of them, stored under the canonical form of
+ * the position, the one of its symmetric copies that comes first when the
+ * boxes are compared in cell order.
+ * <p>
+ * The cell each symmetry maps every cell to is worked out once for each
+ * board size, so finding the canonical form takes a few passes over the
+ * boxes and no new objects.
+ * <p>
+ * Run on its own, the class checks that symmetric positions share a
+ * canonical hash and that moves map across, then counts how many fewer
+ * positions the opening has up to symmetry and how quickly they are found:
+ * <pre>
+ * java JumpingCubeSymmetry [size] [plies] [games]
+ * </pre>
+ */
+public class JumpingCubeSymmetry
+{
+	/** The symmetry that leaves every cell where it is.*/
+	public static final int IDENTITY = 0;
+	/** The names of the symmetries, by index.*/
+	public static final String[] NAMES = {"identity", "rotate 180", "flip top to bottom", "flip left to right",
+		"flip on main diagonal", "flip on other diagonal", "rotate 90", "rotate 270"};
+
+	private static JumpingCubeSymmetry[][] cache = new JumpingCubeSymmetry[JumpingCubeBoard.MAX_ROWS + 1][JumpingCubeBoard.MAX_COLS + 1];
+
+	private int rows;
+	private int cols;
+	private int numSymmetries;
+	private int numBoxes;
+	private int[][] forward;
+	private int[][] inverse;
+	private int[] inverseSymmetry;
+
+	/**
+	 * Gets the symmetries of a board size, working them out the first time
+	 * the size is asked for.
+	 * @param rows The number of rows.
+	 * @param cols The number of columns.
+	 * @return The symmetries, shared by every caller.
+	 */
+	public static synchronized JumpingCubeSymmetry forSize(int rows, int cols)
+	{
+		if(cache[rows][cols] == null)
+		{
+			cache[rows][cols] = new JumpingCubeSymmetry(rows, cols);
+		}
+		return cache[rows][cols];
+	}
+
+	/**
+	 * Gets the symmetries of the board a game is played on.  A torus has
+	 * every symmetry of the grid it wraps; a hex grid or a graph is given
+	 * only the identity.
+	 * @param game The game.
+	 * @return The symmetries, shared by every caller.
+	 */
+	public static JumpingCubeSymmetry forGame(JumpingCubeEngine game)
+	{
+		int kind = game.getTopology().getKind();
+		if(kind == JumpingCubeTopology.GRID || kind == JumpingCubeTopology.TORUS)
+		{
+			return forSize(game.getRows(), game.getCols());
+		}
+		return new JumpingCubeSymmetry(game.getRows(), game.getCols(), 1, game.getNumBoxes());
+	}
+
+	private JumpingCubeSymmetry(int rows, int cols)
+	{
+		this(rows, cols, (rows == cols) ? 8 : 4, rows * cols);
+	}
+
+	/**
+	 * Works out the symmetries of a grid, or, given only one, the identity
+	 * of any number of boxes.
+	 */
+	private JumpingCubeSymmetry(int rows, int cols, int numSymmetries, int numBoxes)
+	{
+		this.rows = rows;
+		this.cols = cols;
+		this.numSymmetries = numSymmetries;
+		this.numBoxes = numBoxes;
+		forward = new int[numSymmetries][numBoxes];
+		inverse = new int[numSymmetries][numBoxes];
+		for(int cell = 0; cell < numBoxes; cell++)
+		{
+			forward[IDENTITY][cell] = cell;
+			inverse[IDENTITY][cell] = cell;
+		}
+		for(int s = 1; s < numSymmetries; s++)
+		{
+			for(int r = 0; r < rows; r++)
+			{
+				for(int c = 0; c < cols; c++)
+				{
+					int to = image(s, r, c);
+					forward[s][r * cols + c] = to;
+					inverse[s][to] = r * cols + c;
+				}
+			}
+		}
+		inverseSymmetry = new int[numSymmetries];
+		for(int s = 1; s < numSymmetries; s++)
+		{
+			for(int t = 1; t < numSymmetries; t++)
+			{
+				if(forward[t][forward[s][0]] == 0 && forward[t][forward[s][1]] == 1
+					&& forward[t][forward[s][cols]] == cols)
+				{
+					inverseSymmetry[s] = t;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Works out the cell one symmetry maps a cell to.  Only the first four
+	 * keep the rows as rows, so only they fit a board that is not square.
+	 */
+	private int image(int s, int r, int c)
+	{
+		int lastRow = rows - 1;
+		int lastCol = cols - 1;
+		switch(s)
+		{
+			case 0: return r * cols + c;
+			case 1: return (lastRow - r) * cols + (lastCol - c);
+			case 2: return (lastRow - r) * cols + c;
+			case 3: return r * cols + (lastCol - c);
+			case 4: return c * cols + r;
+			case 5: return (lastCol - c) * cols + (lastRow - r);
+			case 6: return c * cols + (lastRow - r);
+			default: return (lastCol - c) * cols + r;
+		}
+	}
+
+	/**
+	 * Gets the number of rows of the board.
+	 * @return The number of rows.
+	 */
+	public int getRows()
+	{
+		return rows;
+	}
+
+	/**
+	 * Gets the number of columns of the board.
+	 * @return The number of columns.
+	 */
+	public int getCols()
+	{
+		return cols;
+	}
+
+	/**
+	 * Gets the number of symmetries of the board, counting the identity.
+	 * @return 8 for a square board, otherwise 4.
+	 */
+	public int getNumSymmetries()
+	{
+		return numSymmetries;
+	}
+
+	/**
+	 * Gets the cell a symmetry maps a cell to, such as to play a move
+	 * found in the canonical form in the real position.
+	 * @param symmetry The index of the symmetry.
+	 * @param cell The cell index.
+	 * @return The cell index it maps to.
+	 */
+	public int map(int symmetry, int cell)
+	{
+		return forward[symmetry][cell];
+	}
+
+	/**
+	 * Gets the cell a symmetry maps onto a cell, undoing map().
+	 * @param symmetry The index of the symmetry.
+	 * @param cell The cell index.
+	 * @return The cell index that maps to it.
+	 */
+	public int unmap(int symmetry, int cell)
+	{
+		return inverse[symmetry][cell];
+	}
+
+	/**
+	 * Gets the symmetry that undoes another.
+	 * @param symmetry The index of the symmetry.
+	 * @return The index of its inverse.
+	 */
+	public int invert(int symmetry)
+	{
+		return inverseSymmetry[symmetry];
+	}
+
+	/**
+	 * Gets the cell every cell maps to under a symmetry, which can be passed
+	 * to JumpingCubeEngine.getHash(int[]).
+	 * @param symmetry The index of the symmetry.
+	 * @return The cell index each cell maps to; the array is shared and must not be changed.
+	 */
+	public int[] getPermutation(int symmetry)
+	{
+		return forward[symmetry];
+	}
+
+	/**
+	 * Finds the symmetry that maps a position to its canonical form.  When
+	 * the position is symmetric itself, several do, and the lowest index
+	 * of them is returned.
+	 * @param game The position, on a board of this size.
+	 * @return The index of the symmetry.
+	 */
+	public int getCanonicalSymmetry(JumpingCubeEngine game)
+	{
+		int best = IDENTITY;
+		for(int s = 1; s < numSymmetries; s++)
+		{
+			// Cell d of a copy holds the box the symmetry moved there.
+			int[] mine = inverse[s];
+			int[] theirs = inverse[best];
+			for(int d = 0; d < numBoxes; d++)
+			{
+				int a = mine[d];
+				int b = theirs[d];
+				if(a == b)
+				{
+					continue;
+				}
+				int diff = compareBoxes(game, a, b);
+				if(diff < 0)
+				{
+					best = s;
+				}
+				if(diff != 0)
+				{
+					break;
+				}
+			}
+		}
+		return best;
+	}
+
+	private static int compareBoxes(JumpingCubeEngine game, int a, int b)
+	{
+		int diff = game.getOwner(a) - game.getOwner(b);
+		return (diff != 0) ? diff : game.getPoints(a) - game.getPoints(b);
+	}
+
+	/**
+	 * Gets the hash of the canonical form of a position, which every
+	 * position symmetric to it shares, without building the canonical form.
+	 * @param game The position, on a board of this size.
+	 * @return The hash of the canonical form.
+	 */
+	public long getCanonicalHash(JumpingCubeEngine game)
+	{
+		return game.getHash(forward[getCanonicalSymmetry(game)]);
+	}
+
+	/**
+	 * Copies a position with a symmetry applied, keeping the player on turn
+	 * and the move number.
+	 * @param game The position, on a board of this size.
+	 * @param symmetry The index of the symmetry.
+	 * @param out Where to put the copy, with as many players as the game.
+	 */
+	public void transform(JumpingCubeEngine game, int symmetry, JumpingCubeEngine out)
+	{
+		int[] owner = new int[numBoxes];
+		int[] points = new int[numBoxes];
+		for(int i = 0; i < numBoxes; i++)
+		{
+			owner[forward[symmetry][i]] = game.getOwner(i);
+			points[forward[symmetry][i]] = game.getPoints(i);
+		}
+		out.setPosition(owner, points, game.getActivePlayer(), game.getMoveNumber());
+	}
+
+	/**
+	 * Copies the canonical form of a position.  A move chosen in the copy
+	 * is played in the position as unmap() of the returned symmetry.
+	 * @param game The position, on a board of this size.
+	 * @param out Where to put the canonical form, with as many players as the game.
+	 * @return The index of the symmetry that maps the position to its canonical form.
+	 */
+	public int canonicalize(JumpingCubeEngine game, JumpingCubeEngine out)
+	{
+		int symmetry = getCanonicalSymmetry(game);
+		transform(game, symmetry, out);
+		return symmetry;
+	}
+
+	/**
+	 * Checks the symmetries against the engine, then counts the positions of
+	 * an opening with and without symmetry and times canonicalization.
+	 */
+	public static void main(String args[])
+	{
+		int size = (args.length > 0) ? Integer.parseInt(args[0]) : JumpingCubeBoard.MIN_ROWS;
+		int plies = (args.length > 1) ? Integer.parseInt(args[1]) : 3;
+		int games = (args.length > 2) ? Integer.parseInt(args[2]) : 200;
+
+		int checked = 0;
+		for(int rows = JumpingCubeBoard.MIN_ROWS; rows <= JumpingCubeBoard.MAX_ROWS; rows++)
+		{
+			checked += check(rows, rows, games / 10 + 1);
+			checked += check(rows, (rows < JumpingCubeBoard.MAX_COLS) ? rows + 1 : rows - 1, games / 10 + 1);
+		}
+		System.out.println("checked " + checked + " moves on every symmetry of every size");
+
+		JumpingCubeSymmetry symmetry = forSize(size, size);
+		HashSet raw = new HashSet();
+		HashSet canonical = new HashSet();
+		JumpingCubeEngine game = new JumpingCubeEngine(size, size);
+		expand(game, symmetry, plies, raw, canonical);
+		System.out.println(size + "x" + size + " after " + plies + " plies: " + raw.size() + " positions, "
+				+ canonical.size() + " up to symmetry (" + Math.round(100.0 * canonical.size() / raw.size()) + "%)");
+
+		// Time canonicalization alone over positions from random games.
+		Random random = new Random(size);
+		JumpingCubeEngine[] positions = new JumpingCubeEngine[1000];
+		for(int i = 0; i < positions.length; i++)
+		{
+			positions[i] = new JumpingCubeEngine(size, size);
+			int moves = random.nextInt(size * size * 2);
+			for(int m = 0; m < moves && positions[i].getWinner() == JumpingCubeEngine.NO_WINNER; m++)
+			{
+				positions[i].applyMove(randomMove(positions[i], random));
+			}
+		}
+		long sum = 0;
+		int rounds = 2000;
+		long started = System.nanoTime();
+		for(int r = 0; r < rounds; r++)
+		{
+			for(int i = 0; i < positions.length; i++)
+			{
+				sum += symmetry.getCanonicalHash(positions[i]);
+			}
+		}
+		long nanos = System.nanoTime() - started;
+		System.out.println("canonical hash: " + (nanos / ((long)rounds * positions.length)) + " ns a position ("
+				+ (sum & 1) + ")");
+	}
+
+	/**
+	 * Plays random games, checking at every move that each symmetric copy
+	 * has the same canonical hash and moves to the same position mapped.
+	 */
+	private static int check(int rows, int cols, int games)
+	{
+		JumpingCubeSymmetry symmetry = forSize(rows, cols);
+		JumpingCubeEngine game = new JumpingCubeEngine(rows, cols);
+		JumpingCubeEngine copy = new JumpingCubeEngine(rows, cols);
+		JumpingCubeEngine back = new JumpingCubeEngine(rows, cols);
+		Random random = new Random(rows * 31 + cols);
+		int checked = 0;
+		for(int g = 0; g < games; g++)
+		{
+			game.reset();
+			while(game.getWinner() == JumpingCubeEngine.NO_WINNER)
+			{
+				int move = randomMove(game, random);
+				long canonical = symmetry.getCanonicalHash(game);
+				for(int s = 0; s < symmetry.getNumSymmetries(); s++)
+				{
+					symmetry.transform(game, s, copy);
+					symmetry.transform(copy, symmetry.invert(s), back);
+					if(copy.getHash() != game.getHash(symmetry.getPermutation(s)) || back.getHash() != game.getHash()
+						|| symmetry.getCanonicalHash(copy) != canonical)
+					{
+						throw new IllegalStateException(rows + "x" + cols + " " + NAMES[s] + " does not match");
+					}
+					copy.applyMove(symmetry.map(s, move));
+					if(copy.getWinner() == JumpingCubeEngine.NO_WINNER)
+					{
+						// A won game stops part way through its cascade, so
+						// only moves that do not win end in the same place.
+						JumpingCubeEngine after = new JumpingCubeEngine(rows, cols);
+						after.copyFrom(game);
+						after.applyMove(move);
+						if(after.getHash(symmetry.getPermutation(s)) != copy.getHash())
+						{
+							throw new IllegalStateException(rows + "x" + cols + " " + NAMES[s] + " moves differ");
+						}
+					}
+					checked++;
+				}
+				game.applyMove(move);
+			}
+		}
+		return checked;
+	}
+
+	private static void expand(JumpingCubeEngine game, JumpingCubeSymmetry symmetry, int plies,
+			HashSet raw, HashSet canonical)
+	{
+		raw.add(Long.valueOf(game.getHash()));
+		canonical.add(Long.valueOf(symmetry.getCanonicalHash(game)));
+		if(plies == 0 || game.getWinner() != JumpingCubeEngine.NO_WINNER)
+		{
+			return;
+		}
+		JumpingCubeEngine child = new JumpingCubeEngine(game.getTopology(), game.getNumPlayers());
+		for(int cell = 0; cell < game.getNumBoxes(); cell++)
+		{
+			if(game.isLegal(cell))
+			{
+				child.copyFrom(game);
+				child.applyMove(cell);
+				expand(child, symmetry, plies - 1, raw, canonical);
+			}
+		}
+	}
+
+	private static int randomMove(JumpingCubeEngine game, Random random)
+	{
+		int cell;
+		do
+		{
+			cell = random.nextInt(game.getNumBoxes());
+		}
+		while(!game.isLegal(cell));
+		return cell;
+	}
+}
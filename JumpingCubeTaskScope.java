@@ -0,0 +1,220 @@
+/**
+ * JumpingCubeTaskScope.java
+ * @author Daniel Miladinov
+ * @version 1-beta
+ */
+
+import java.lang.reflect.Method;
+import java.util.Vector;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * The JumpingCubeTaskScope class runs a group of related tasks, each on
+ * its own thread, and keeps them together: join() does not return until
+ * every task has finished, and the first task to fail shuts the scope
+ * down, interrupting all of its siblings.  No task outlives the scope,
+ * so a caller who always ends with close() never leaks a thread.
+ * <p>
+ * Threads are virtual threads when the running Java has them, and
+ * ordinary daemon threads otherwise.
+ */
+public class JumpingCubeTaskScope
+{
+	/**
+	 * The interface for work run by a JumpingCubeTaskScope.  Unlike a
+	 * Runnable, a Task may fail by throwing any exception.
+	 */
+	public interface Task
+	{
+		/**
+		 * Does the work of this task.
+		 * @throws Exception If the task failed, which shuts down its scope.
+		 */
+		void run() throws Exception;
+	}
+
+	private static Method ofVirtual;
+	private static Method unstarted;
+	// Read by every thread that makes threads, and cleared by any of them if
+	// making a virtual thread fails.
+	private static volatile boolean virtual = findVirtualThreads();
+
+	private String name;
+	private Vector threads;
+	private Throwable failure;
+	private boolean shutdown;
+
+	/**
+	 * The JumpingCubeTaskScope constructor.
+	 * @param name The name given to the threads of this scope.
+	 */
+	public JumpingCubeTaskScope(String name)
+	{
+		this.name = name;
+		threads = new Vector();
+	}
+
+	/**
+	 * Creates an unstarted thread, virtual if the running Java supports it.
+	 * @param task The work for the thread to do.
+	 * @param name The name of the thread.
+	 * @return A new thread, not yet started.
+	 */
+	public static Thread newThread(Runnable task, String name)
+	{
+		if(virtual)
+		{
+			try
+			{
+				Thread t = (Thread)unstarted.invoke(ofVirtual.invoke(null), task);
+				t.setName(name);
+				return t;
+			}
+			catch(Exception e)
+			{
+				virtual = false;
+			}
+		}
+		Thread t = new Thread(task, name);
+		t.setDaemon(true);
+		return t;
+	}
+
+	/**
+	 * Returns whether newThread() creates virtual threads.
+	 * @return True if virtual threads are in use.
+	 */
+	public static boolean usesVirtualThreads()
+	{
+		return virtual;
+	}
+
+	/**
+	 * Starts a task on a new thread belonging to this scope.
+	 * @param task The task to run.
+	 * @throws IllegalStateException If the scope has already been shut down.
+	 */
+	public synchronized void fork(final Task task)
+	{
+		if(shutdown)
+		{
+			throw new IllegalStateException("The scope has been shut down");
+		}
+		Thread t = newThread(
+				new Runnable()
+				{
+					public void run()
+					{
+						try
+						{
+							task.run();
+						}
+						catch(Throwable e)
+						{
+							fail(e);
+						}
+					}
+				},
+				name + "-" + threads.size());
+		threads.add(t);
+		t.start();
+	}
+
+	/**
+	 * Stops the scope from accepting new tasks and interrupts every task still running.
+	 */
+	public synchronized void shutdown()
+	{
+		shutdown = true;
+		for(int i = 0; i < threads.size(); i++)
+		{
+			Thread t = (Thread)threads.get(i);
+			if(t != Thread.currentThread())
+			{
+				t.interrupt();
+			}
+		}
+	}
+
+	/**
+	 * Waits for every task of this scope to finish.
+	 * @throws ExecutionException If a task failed; its exception is the cause.
+	 * @throws InterruptedException If the waiting thread is interrupted.
+	 */
+	public void join() throws ExecutionException, InterruptedException
+	{
+		for(int i = 0; i < numThreads(); i++)
+		{
+			thread(i).join();
+		}
+		synchronized(this)
+		{
+			if(failure != null)
+			{
+				throw new ExecutionException(failure);
+			}
+		}
+	}
+
+	/**
+	 * Shuts the scope down and waits for every task to finish, however long
+	 * an interrupted task takes to notice.
+	 */
+	public void close()
+	{
+		shutdown();
+		boolean interrupted = false;
+		for(int i = 0; i < numThreads(); i++)
+		{
+			while(true)
+			{
+				try
+				{
+					thread(i).join();
+					break;
+				}
+				catch(InterruptedException e)
+				{
+					interrupted = true;
+				}
+			}
+		}
+		if(interrupted)
+		{
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private synchronized void fail(Throwable e)
+	{
+		if(failure == null)
+		{
+			failure = e;
+		}
+		shutdown();
+	}
+
+	private synchronized int numThreads()
+	{
+		return threads.size();
+	}
+
+	private synchronized Thread thread(int i)
+	{
+		return (Thread)threads.get(i);
+	}
+
+	private static boolean findVirtualThreads()
+	{
+		try
+		{
+			ofVirtual = Thread.class.getMethod("ofVirtual");
+			unstarted = Class.forName("java.lang.Thread$Builder").getMethod("unstarted", Runnable.class);
+			return true;
+		}
+		catch(Exception e)
+		{
+			return false;
+		}
+	}
+}
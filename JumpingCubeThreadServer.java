@@ -0,0 +1,1090 @@
+/**
+ * JumpingCubeThreadServer.java
+ * @author Daniel Miladinov
+ * @version 1-beta
+ */
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channel;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.HashMap;
+import java.util.Random;
+import java.util.Vector;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * The JumpingCubeThreadServer class hosts the same games, over the same
+ * JumpingCubeProtocol, as the JumpingCubeServer, but with plain blocking
+ * I/O instead of a Selector.  Every connection gets a thread that reads
+ * its requests, and every match gets a thread that supervises it with a
+ * JumpingCubeTaskScope: one task plays the moves the two connections
+ * hand it, one fans the resulting positions out to the players, and one
+ * fans them out to any spectators who WATCH the match.  If a task fails,
+ * the others are interrupted and the match ends.  A spectator who falls
+ * too far behind skips ahead to a snapshot of the position, as with the
+ * JumpingCubeServer, so a slow spectator never holds up the players.
+ * On a Java with virtual threads, all of these threads are virtual.
+ * <p>
+ * Run on its own, the class serves until it is stopped, or with -check
+ * plays games against itself in which every player pipelines a SYNC, a
+ * bad move, a good move, another SYNC and another bad move on each turn,
+ * and stops at the first reply that comes out of order:
+ * <pre>
+ * java JumpingCubeThreadServer [port]
+ * java JumpingCubeThreadServer -check [games] [size]
+ * </pre>
+ */
+public class JumpingCubeThreadServer implements Runnable
+{
+	private static final int BACKLOG = 4096;
+	private static final int QUEUE_SIZE = 64;
+	private static final int SPECTATOR_QUEUE = 32;
+	private static final int LEFT = 0xFF;
+
+	private ServerSocketChannel serverChannel;
+	private Thread thread;
+	private volatile boolean running;
+
+	private Connection[] waiting;
+	private int nextMatchId;
+	private HashMap runners;
+
+	/**
+	 * An inner class which reads the requests of one client on its own thread.
+	 */
+	class Connection implements Runnable
+	{
+		SocketChannel channel;
+		// Held while a request is handed to the runner, so that once the
+		// runner has let the player go it is sent nothing more.
+		ReentrantLock requestLock;
+		volatile MatchRunner runner;
+		volatile MatchRunner watching;
+		volatile boolean ready;
+		int seat;
+		int waitingFor;
+
+		public Connection(SocketChannel c)
+		{
+			channel = c;
+			requestLock = new ReentrantLock();
+			waitingFor = -1;
+		}
+
+		public void run()
+		{
+			ByteBuffer in = ByteBuffer.allocate(2048);
+			try
+			{
+				while(channel.read(in) >= 0)
+				{
+					in.flip();
+					while(JumpingCubeProtocol.hasFrame(in))
+					{
+						int length = in.getShort() & 0xFFFF;
+						int end = in.position() + length;
+						int limit = in.limit();
+						in.limit(end);
+						if(length > 0)
+						{
+							handle(this, in, in.get() & 0xFF);
+						}
+						in.limit(limit);
+						in.position(end);
+					}
+					if(in.remaining() >= JumpingCubeProtocol.HEADER_SIZE
+						&& (in.getShort(in.position()) & 0xFFFF) > JumpingCubeProtocol.MAX_BODY_SIZE)
+					{
+						break;
+					}
+					in.compact();
+				}
+			}
+			catch(IOException e)
+			{
+			}
+			catch(BufferUnderflowException e)
+			{
+			}
+			catch(InterruptedException e)
+			{
+			}
+			leave(this);
+			close(channel);
+		}
+
+		/**
+		 * Writes a whole message to this client; several threads may call it.
+		 */
+		public synchronized void send(ByteBuffer message) throws IOException
+		{
+			while(message.hasRemaining())
+			{
+				channel.write(message);
+			}
+		}
+	}
+
+	/**
+	 * An inner class which asks a match for a spectator's first position,
+	 * or a fresh one after a SYNC, and carries it to the spectator.
+	 */
+	class Watch
+	{
+		Connection spectator;
+		int sequence;
+		boolean joining;
+		ByteBuffer message;
+
+		public Watch(Connection c, int sequence, boolean joining)
+		{
+			spectator = c;
+			this.sequence = sequence;
+			this.joining = joining;
+		}
+	}
+
+	/**
+	 * An inner class which carries a message through the outbox to one
+	 * player only, such as a STATE or a REJECTED.
+	 */
+	class Reply
+	{
+		int seat;
+		ByteBuffer message;
+
+		public Reply(int seat, ByteBuffer message)
+		{
+			this.seat = seat;
+			this.message = message;
+		}
+	}
+
+	/**
+	 * An inner class which supervises one match on its own thread.
+	 * Requests arrive in the inbox as (type << 24) | (seat << 16) |
+	 * (sequence << 8) | cell, with LEFT as the type of a player who has
+	 * gone away, or as a Watch from a spectator.  Moves leave through the
+	 * outbox, each as a ready-to-send DELTA message, and through the
+	 * spectator box along with the positions spectators asked for.  Every
+	 * reply to a player goes through the outbox too, as a Reply, so the
+	 * player is answered in the order their requests were played.
+	 */
+	class MatchRunner implements Runnable
+	{
+		JumpingCubeMatch match;
+		Connection[] players;
+		Vector audience;
+		BlockingQueue inbox;
+		BlockingQueue outbox;
+		BlockingQueue spectatorBox;
+		JumpingCubeTaskScope scope;
+		volatile int leftSeat;
+		volatile boolean over;
+		boolean behind;
+
+		public MatchRunner(JumpingCubeMatch m, Connection first, Connection second)
+		{
+			match = m;
+			players = new Connection[] {first, second};
+			audience = new Vector();
+			inbox = new ArrayBlockingQueue(QUEUE_SIZE);
+			outbox = new ArrayBlockingQueue(QUEUE_SIZE);
+			// Unbounded, but play() sends no more moves once SPECTATOR_QUEUE
+			// are waiting, and a snapshot once the spectators catch up.
+			spectatorBox = new LinkedBlockingQueue();
+			scope = new JumpingCubeTaskScope("JumpingCubeMatch-" + m.getId());
+			leftSeat = -1;
+		}
+
+		/**
+		 * Ends the match because a player has gone away, when the inbox is
+		 * too full to say so.  The other player is told once every task
+		 * has stopped.
+		 */
+		public void abandon(int seat)
+		{
+			leftSeat = seat;
+			scope.shutdown();
+		}
+
+		public void run()
+		{
+			try
+			{
+				scope.fork(
+						new JumpingCubeTaskScope.Task()
+						{
+							public void run() throws Exception
+							{
+								play();
+							}
+						}
+						);
+				scope.fork(
+						new JumpingCubeTaskScope.Task()
+						{
+							public void run() throws Exception
+							{
+								fanOut();
+							}
+						}
+						);
+				scope.fork(
+						new JumpingCubeTaskScope.Task()
+						{
+							public void run() throws Exception
+							{
+								spectate();
+							}
+						}
+						);
+				scope.join();
+			}
+			catch(IllegalStateException e)
+			{
+				// Abandoned before the tasks were started.
+			}
+			catch(ExecutionException e)
+			{
+				if(leftSeat < 0)
+				{
+					for(int i = 0; i < players.length; i++)
+					{
+						close(players[i].channel);
+					}
+				}
+			}
+			catch(InterruptedException e)
+			{
+			}
+			finally
+			{
+				scope.close();
+				release();
+				finish();
+			}
+		}
+
+		/**
+		 * Tells everyone still there that a player left, if the match was
+		 * abandoned, then lets the spectators go and turns away any still
+		 * waiting to be let in.
+		 */
+		private void finish()
+		{
+			synchronized(JumpingCubeThreadServer.this)
+			{
+				runners.remove(Integer.valueOf(match.getId()));
+			}
+			Object[] spectators = audience.toArray();
+			if(leftSeat >= 0)
+			{
+				ByteBuffer b = ByteBuffer.allocate(4);
+				JumpingCubeProtocol.putOpponentLeft(b);
+				b.flip();
+				try
+				{
+					players[1 - leftSeat].send(b.duplicate());
+				}
+				catch(IOException e)
+				{
+				}
+				for(int i = 0; i < spectators.length; i++)
+				{
+					if(((Connection)spectators[i]).ready)
+					{
+						sendToSpectator((Connection)spectators[i], b.duplicate());
+					}
+				}
+			}
+			for(int i = 0; i < spectators.length; i++)
+			{
+				((Connection)spectators[i]).ready = false;
+				((Connection)spectators[i]).watching = null;
+			}
+			audience.clear();
+			Object item;
+			while((item = inbox.poll()) != null)
+			{
+				if(item instanceof Watch && ((Watch)item).joining)
+				{
+					Watch w = (Watch)item;
+					w.spectator.watching = null;
+					try
+					{
+						reject(w.spectator, w.sequence, JumpingCubeProtocol.NO_SUCH_MATCH);
+					}
+					catch(IOException e)
+					{
+					}
+				}
+			}
+		}
+
+		/**
+		 * Frees both players once every message to them has been sent, and
+		 * answers the requests they made after the game was decided, so
+		 * that whatever a player is sent afterwards comes after the final
+		 * position.  A player may JOIN again as soon as the game is over.
+		 */
+		private void release()
+		{
+			for(int i = 0; i < players.length; i++)
+			{
+				// A request being handed over may be waiting for room.
+				while(!players[i].requestLock.tryLock())
+				{
+					answerLeftovers();
+					Thread.yield();
+				}
+				try
+				{
+					if(players[i].runner == this)
+					{
+						players[i].runner = null;
+					}
+				}
+				finally
+				{
+					players[i].requestLock.unlock();
+				}
+			}
+			answerLeftovers();
+		}
+
+		/**
+		 * Answers the requests left in the inbox once the game is over:
+		 * a SYNC with the final position and a MOVE as NOT_PLAYING.
+		 */
+		private void answerLeftovers()
+		{
+			Object item;
+			while((item = inbox.poll()) != null)
+			{
+				try
+				{
+					if(item instanceof Watch)
+					{
+						Watch w = (Watch)item;
+						if(w.joining)
+						{
+							w.spectator.watching = null;
+							reject(w.spectator, w.sequence, JumpingCubeProtocol.NO_SUCH_MATCH);
+						}
+						else
+						{
+							w.spectator.send(state());
+						}
+						continue;
+					}
+					int request = ((Integer)item).intValue();
+					int type = request >>> 24;
+					int seat = (request >> 16) & 0xFF;
+					if(type == JumpingCubeProtocol.SYNC)
+					{
+						players[seat].send(state());
+					}
+					else if(type == JumpingCubeProtocol.MOVE)
+					{
+						reject(players[seat], (request >> 8) & 0xFF, JumpingCubeProtocol.NOT_PLAYING);
+					}
+				}
+				catch(IOException e)
+				{
+				}
+			}
+		}
+
+		private void play() throws InterruptedException, IOException
+		{
+			for(int i = 0; i < players.length; i++)
+			{
+				ByteBuffer b = ByteBuffer.allocate(16);
+				JumpingCubeProtocol.putMatched(b, match.getId(), i, match.getGame().getRows(), match.getGame().getCols());
+				b.flip();
+				players[i].send(b);
+			}
+			for(int i = 0; i < players.length; i++)
+			{
+				players[i].send(state());
+			}
+
+			while(!match.isOver())
+			{
+				Object item = inbox.take();
+				if(item instanceof Watch)
+				{
+					admit((Watch)item);
+					continue;
+				}
+				int request = ((Integer)item).intValue();
+				int type = request >>> 24;
+				int seat = (request >> 16) & 0xFF;
+				int sequence = (request >> 8) & 0xFF;
+				int cell = request & 0xFF;
+				if(type == LEFT)
+				{
+					ByteBuffer b = ByteBuffer.allocate(4);
+					JumpingCubeProtocol.putOpponentLeft(b);
+					b.flip();
+					tellSpectators(b.duplicate(), false);
+					outbox.put(new Reply(1 - seat, b));
+					break;
+				}
+				if(type == JumpingCubeProtocol.SYNC)
+				{
+					outbox.put(new Reply(seat, state()));
+					continue;
+				}
+				int result = match.play(seat, cell);
+				if(result == JumpingCubeMatch.PLAYED)
+				{
+					ByteBuffer d = delta();
+					outbox.put(d);
+					tellSpectators(d.duplicate(), true);
+				}
+				else
+				{
+					ByteBuffer b = ByteBuffer.allocate(5);
+					JumpingCubeProtocol.putRejected(b, sequence, result);
+					b.flip();
+					outbox.put(new Reply(seat, b));
+				}
+			}
+			over = true;
+			outbox.put(ByteBuffer.allocate(0));
+			if(behind)
+			{
+				spectatorBox.put(state());
+			}
+			spectatorBox.put(ByteBuffer.allocate(0));
+		}
+
+		/**
+		 * Lets a spectator in, or sends them the position again, in turn
+		 * with the moves, so the position they are sent is never older
+		 * than a move sent after it.
+		 */
+		private void admit(Watch w) throws InterruptedException
+		{
+			JumpingCubeEngine game = match.getGame();
+			ByteBuffer b = ByteBuffer.allocate(16 + JumpingCubeProtocol.stateSize(game));
+			if(w.joining)
+			{
+				JumpingCubeProtocol.putMatched(b, match.getId(), JumpingCubeProtocol.SPECTATOR, game.getRows(), game.getCols());
+				w.spectator.ready = false;
+				audience.add(w.spectator);
+			}
+			JumpingCubeProtocol.putState(b, game);
+			b.flip();
+			w.message = b;
+			spectatorBox.put(w);
+		}
+
+		/**
+		 * Hands a message to the spectator task, unless too many are
+		 * waiting, in which case the spectators are sent a snapshot of the
+		 * position instead once they have caught up.
+		 */
+		private void tellSpectators(ByteBuffer message, boolean isDelta) throws InterruptedException
+		{
+			// A spectator is in the audience before their Watch is queued,
+			// so no one can miss a message skipped here.
+			if(audience.isEmpty())
+			{
+				return;
+			}
+			if(spectatorBox.size() >= SPECTATOR_QUEUE)
+			{
+				behind = behind || isDelta;
+				if(isDelta)
+				{
+					return;
+				}
+			}
+			if(behind)
+			{
+				spectatorBox.put(state());
+				behind = false;
+				if(isDelta)
+				{
+					return;
+				}
+			}
+			spectatorBox.put(message);
+		}
+
+		private void fanOut() throws InterruptedException, IOException
+		{
+			while(true)
+			{
+				Object item = outbox.take();
+				if(item instanceof Reply)
+				{
+					players[((Reply)item).seat].send(((Reply)item).message);
+					continue;
+				}
+				ByteBuffer message = (ByteBuffer)item;
+				if(!message.hasRemaining())
+				{
+					return;
+				}
+				for(int i = 0; i < players.length; i++)
+				{
+					players[i].send(message.duplicate());
+				}
+			}
+		}
+
+		private void spectate() throws InterruptedException
+		{
+			while(true)
+			{
+				Object item = spectatorBox.take();
+				if(item instanceof Watch)
+				{
+					Watch w = (Watch)item;
+					if(sendToSpectator(w.spectator, w.message))
+					{
+						w.spectator.ready = true;
+					}
+					continue;
+				}
+				ByteBuffer message = (ByteBuffer)item;
+				if(!message.hasRemaining())
+				{
+					return;
+				}
+				Object[] spectators = audience.toArray();
+				for(int i = 0; i < spectators.length; i++)
+				{
+					Connection c = (Connection)spectators[i];
+					if(c.ready)
+					{
+						sendToSpectator(c, message.duplicate());
+					}
+				}
+			}
+		}
+
+		/**
+		 * Sends a spectator a message, and lets them go if it cannot be
+		 * written; a spectator's connection failing never ends the match.
+		 */
+		private boolean sendToSpectator(Connection c, ByteBuffer message)
+		{
+			try
+			{
+				c.send(message);
+				return true;
+			}
+			catch(IOException e)
+			{
+				audience.remove(c);
+				c.ready = false;
+				c.watching = null;
+				close(c.channel);
+				return false;
+			}
+		}
+
+		private ByteBuffer state()
+		{
+			ByteBuffer b = ByteBuffer.allocate(JumpingCubeProtocol.stateSize(match.getGame()));
+			JumpingCubeProtocol.putState(b, match.getGame());
+			b.flip();
+			return b;
+		}
+
+		private ByteBuffer delta()
+		{
+			ByteBuffer b = ByteBuffer.allocate(JumpingCubeProtocol.deltaSize(match.getGame()));
+			JumpingCubeProtocol.putDelta(b, match.getGame());
+			b.flip();
+			return b;
+		}
+	}
+
+	/**
+	 * The JumpingCubeThreadServer constructor.  Binds the listening socket,
+	 * but does not accept clients until start() is called.
+	 * @param port The port to listen on, or 0 for any free port.
+	 * @throws IOException If the socket cannot be opened.
+	 */
+	public JumpingCubeThreadServer(int port) throws IOException
+	{
+		serverChannel = ServerSocketChannel.open();
+		serverChannel.bind(new InetSocketAddress(port), BACKLOG);
+		waiting = new Connection[(JumpingCubeBoard.MAX_ROWS + 1) * (JumpingCubeBoard.MAX_COLS + 1)];
+		runners = new HashMap();
+	}
+
+	/**
+	 * Gets the port the server is listening on.
+	 * @return The local port of the listening socket.
+	 */
+	public int getPort()
+	{
+		return serverChannel.socket().getLocalPort();
+	}
+
+	/**
+	 * Starts accepting clients on a new thread.
+	 */
+	public void start()
+	{
+		running = true;
+		thread = new Thread(this, "JumpingCubeThreadServer");
+		thread.start();
+	}
+
+	/**
+	 * Stops accepting clients and waits for the accepting thread to finish.
+	 * Connections already open are left to finish on their own threads.
+	 */
+	public void stop()
+	{
+		running = false;
+		close(serverChannel);
+		try
+		{
+			thread.join();
+		}
+		catch(InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * The accepting loop, run by the thread created in start().
+	 */
+	public void run()
+	{
+		while(running)
+		{
+			try
+			{
+				SocketChannel sc = serverChannel.accept();
+				sc.socket().setTcpNoDelay(true);
+				Connection c = new Connection(sc);
+				JumpingCubeTaskScope.newThread(c, "JumpingCubeConnection").start();
+			}
+			catch(IOException e)
+			{
+				if(running)
+				{
+					e.printStackTrace();
+				}
+			}
+		}
+	}
+
+	private void handle(Connection c, ByteBuffer in, int type) throws IOException, InterruptedException
+	{
+		int sequence = in.get() & 0xFF;
+		switch(type)
+		{
+			case JumpingCubeProtocol.JOIN:
+				join(c, sequence, in.get(), in.get());
+				break;
+			case JumpingCubeProtocol.WATCH:
+				watch(c, sequence, in.getInt());
+				break;
+			case JumpingCubeProtocol.MOVE:
+			case JumpingCubeProtocol.SYNC:
+				MatchRunner runner = c.runner;
+				MatchRunner watched = c.watching;
+				if(type == JumpingCubeProtocol.SYNC && runner == null && watched != null)
+				{
+					if(!watched.inbox.offer(new Watch(c, sequence, false)))
+					{
+						reject(c, sequence, JumpingCubeProtocol.NOT_PLAYING);
+					}
+					break;
+				}
+				int cell = (type == JumpingCubeProtocol.MOVE) ? (in.get() & 0xFF) : 0;
+				c.requestLock.lock();
+				try
+				{
+					runner = c.runner;
+					if(runner != null)
+					{
+						runner.inbox.put(Integer.valueOf((type << 24) | (c.seat << 16) | (sequence << 8) | cell));
+					}
+				}
+				finally
+				{
+					c.requestLock.unlock();
+				}
+				if(runner == null)
+				{
+					reject(c, sequence, JumpingCubeProtocol.NOT_PLAYING);
+				}
+				break;
+			default:
+				reject(c, sequence, JumpingCubeProtocol.BAD_MESSAGE);
+		}
+	}
+
+	private void join(Connection c, int sequence, int rows, int cols) throws IOException
+	{
+		rows = Math.max(JumpingCubeBoard.MIN_ROWS, Math.min(JumpingCubeBoard.MAX_ROWS, rows));
+		cols = Math.max(JumpingCubeBoard.MIN_COLS, Math.min(JumpingCubeBoard.MAX_COLS, cols));
+		int size = rows * (JumpingCubeBoard.MAX_COLS + 1) + cols;
+
+		MatchRunner runner;
+		synchronized(this)
+		{
+			if(isPlaying(c) || c.waitingFor >= 0 || c.watching != null)
+			{
+				runner = null;
+			}
+			else if(waiting[size] == null)
+			{
+				waiting[size] = c;
+				c.waitingFor = size;
+				return;
+			}
+			else
+			{
+				Connection first = waiting[size];
+				waiting[size] = null;
+				first.waitingFor = -1;
+				runner = new MatchRunner(new JumpingCubeMatch(nextMatchId++, rows, cols), first, c);
+				first.seat = 0;
+				c.seat = 1;
+				attach(first, runner);
+				attach(c, runner);
+				runners.put(Integer.valueOf(runner.match.getId()), runner);
+			}
+		}
+		if(runner == null)
+		{
+			reject(c, sequence, JumpingCubeProtocol.ALREADY_PLAYING);
+			return;
+		}
+		JumpingCubeTaskScope.newThread(runner, "JumpingCubeMatch").start();
+	}
+
+	/**
+	 * Seats a client in a match, under the lock the match it may still be
+	 * leaving lets it go with.
+	 */
+	private static void attach(Connection c, MatchRunner runner)
+	{
+		c.requestLock.lock();
+		try
+		{
+			c.runner = runner;
+		}
+		finally
+		{
+			c.requestLock.unlock();
+		}
+	}
+
+	/**
+	 * Returns whether a client is in a game still being played; one whose
+	 * game is over is free to join another before it has been let go.
+	 */
+	private static boolean isPlaying(Connection c)
+	{
+		MatchRunner runner = c.runner;
+		return runner != null && !runner.over;
+	}
+
+	private void watch(Connection c, int sequence, int matchId) throws IOException
+	{
+		int reason = 0;
+		synchronized(this)
+		{
+			MatchRunner runner = (MatchRunner)runners.get(Integer.valueOf(matchId));
+			if(isPlaying(c) || c.waitingFor >= 0 || c.watching != null)
+			{
+				reason = JumpingCubeProtocol.ALREADY_PLAYING;
+			}
+			else if(runner == null)
+			{
+				reason = JumpingCubeProtocol.NO_SUCH_MATCH;
+			}
+			// Queued while the runner is still listed, so it is either let
+			// in or turned away by the runner's finish().
+			else if(runner.inbox.offer(new Watch(c, sequence, true)))
+			{
+				c.watching = runner;
+			}
+			else
+			{
+				reason = JumpingCubeProtocol.NO_SUCH_MATCH;
+			}
+		}
+		if(reason != 0)
+		{
+			reject(c, sequence, reason);
+		}
+	}
+
+	private void leave(Connection c)
+	{
+		synchronized(this)
+		{
+			if(c.waitingFor >= 0)
+			{
+				waiting[c.waitingFor] = null;
+				c.waitingFor = -1;
+			}
+		}
+		MatchRunner watched = c.watching;
+		if(watched != null)
+		{
+			watched.audience.remove(c);
+			c.ready = false;
+			c.watching = null;
+		}
+		MatchRunner runner = c.runner;
+		if(runner != null && !runner.inbox.offer(Integer.valueOf((LEFT << 24) | (c.seat << 16))) && !runner.over)
+		{
+			runner.abandon(c.seat);
+		}
+	}
+
+	private void reject(Connection c, int sequence, int reason) throws IOException
+	{
+		ByteBuffer b = ByteBuffer.allocate(5);
+		JumpingCubeProtocol.putRejected(b, sequence, reason);
+		b.flip();
+		c.send(b);
+	}
+
+	private static void close(Channel channel)
+	{
+		try
+		{
+			channel.close();
+		}
+		catch(IOException e)
+		{
+		}
+	}
+
+	/**
+	 * Plays one seat of a game with pipelined requests, checking that each
+	 * reply comes in the order of the requests it answers and that no
+	 * position goes backwards.
+	 * @return Null if every reply came in order, or what came out of order.
+	 */
+	private static String checkSeat(int port, int size, long seed) throws IOException
+	{
+		final int EXPECT_STATE = -1;
+		final int EXPECT_DELTA = -2;
+		SocketChannel channel = SocketChannel.open(new InetSocketAddress("127.0.0.1", port));
+		try
+		{
+			Random random = new Random(seed);
+			ByteBuffer out = ByteBuffer.allocate(64);
+			ByteBuffer in = ByteBuffer.allocate(4096);
+			JumpingCubeProtocol.putJoin(out, 0, size, size);
+			out.flip();
+			channel.write(out);
+			JumpingCubeEngine game = new JumpingCubeEngine(size, size);
+			int seat = -1;
+			boolean synced = false;
+			boolean moveOwed = false;
+			// What each request still unanswered is owed, in order: a
+			// REJECTED is owed as its sequence number.
+			int[] expected = new int[64];
+			int head = 0;
+			int tail = 0;
+			int sequence = 1;
+			while(channel.read(in) >= 0)
+			{
+				in.flip();
+				while(JumpingCubeProtocol.hasFrame(in))
+				{
+					int length = in.getShort() & 0xFFFF;
+					int end = in.position() + length;
+					int type = in.get() & 0xFF;
+					int owed = (head < tail) ? expected[head % expected.length] : 0;
+					switch(type)
+					{
+						case JumpingCubeProtocol.MATCHED:
+							in.getInt();
+							seat = in.get() & 0xFF;
+							break;
+						case JumpingCubeProtocol.STATE:
+							int before = game.getMoveNumber();
+							JumpingCubeProtocol.readState(in, game);
+							if(game.getMoveNumber() < before)
+							{
+								return "STATE of move " + game.getMoveNumber() + " after move " + before;
+							}
+							if(synced)
+							{
+								if(owed != EXPECT_STATE)
+								{
+									return "STATE where " + ((owed == EXPECT_DELTA) ? "a DELTA" : "REJECTED " + owed) + " was owed";
+								}
+								head++;
+							}
+							synced = true;
+							break;
+						case JumpingCubeProtocol.DELTA:
+							int moveNumber = in.getShort(in.position()) & 0xFFFF;
+							if(moveNumber != game.getMoveNumber() + 1)
+							{
+								return "DELTA of move " + moveNumber + " after move " + game.getMoveNumber();
+							}
+							// The other player's moves may only come once this
+							// player's own move has been answered.
+							if(owed == EXPECT_DELTA)
+							{
+								head++;
+								moveOwed = false;
+							}
+							else if(moveOwed)
+							{
+								return "DELTA where " + ((owed == EXPECT_STATE) ? "a STATE" : "REJECTED " + owed) + " was owed";
+							}
+							JumpingCubeProtocol.readDelta(in, game);
+							break;
+						case JumpingCubeProtocol.REJECTED:
+							int refused = in.get() & 0xFF;
+							if(owed != refused)
+							{
+								return "REJECTED " + refused + " where " + ((owed == EXPECT_STATE) ? "a STATE" : (owed == EXPECT_DELTA) ? "a DELTA" : "REJECTED " + owed) + " was owed";
+							}
+							head++;
+							break;
+						case JumpingCubeProtocol.OPPONENT_LEFT:
+							return null;
+					}
+					in.position(end);
+				}
+				in.compact();
+				if(game.getWinner() != JumpingCubeEngine.NO_WINNER && head == tail)
+				{
+					return null;
+				}
+				if(game.getWinner() == JumpingCubeEngine.NO_WINNER && synced && head == tail && game.getActivePlayer() == seat)
+				{
+					int cell;
+					do
+					{
+						cell = random.nextInt(game.getNumBoxes());
+					}
+					while(!game.isLegal(cell));
+					out.clear();
+					JumpingCubeProtocol.putSync(out, sequence);
+					expected[tail++ % expected.length] = EXPECT_STATE;
+					JumpingCubeProtocol.putMove(out, ++sequence, 0xFF);
+					expected[tail++ % expected.length] = sequence;
+					JumpingCubeProtocol.putMove(out, ++sequence, cell);
+					expected[tail++ % expected.length] = EXPECT_DELTA;
+					moveOwed = true;
+					JumpingCubeProtocol.putSync(out, ++sequence);
+					expected[tail++ % expected.length] = EXPECT_STATE;
+					JumpingCubeProtocol.putMove(out, ++sequence, 0xFF);
+					expected[tail++ % expected.length] = sequence;
+					sequence = (sequence + 1) % 200 + 1;
+					out.flip();
+					while(out.hasRemaining())
+					{
+						channel.write(out);
+					}
+				}
+			}
+			return "connection closed";
+		}
+		finally
+		{
+			close(channel);
+		}
+	}
+
+	/**
+	 * Plays games against a server of its own and checks the order of
+	 * every reply.
+	 */
+	private static void check(int games, final int size) throws Exception
+	{
+		JumpingCubeThreadServer server = new JumpingCubeThreadServer(0);
+		server.start();
+		final int port = server.getPort();
+		try
+		{
+			for(int g = 0; g < games; g++)
+			{
+				final String[] results = new String[2];
+				Thread[] seats = new Thread[2];
+				for(int i = 0; i < seats.length; i++)
+				{
+					final int s = i;
+					final long seed = g * 2L + i;
+					seats[i] = new Thread("JumpingCubeThreadServer-check-" + i)
+					{
+						public void run()
+						{
+							try
+							{
+								results[s] = checkSeat(port, size, seed);
+							}
+							catch(IOException e)
+							{
+								results[s] = e.toString();
+							}
+						}
+					};
+					seats[i].start();
+				}
+				for(int i = 0; i < seats.length; i++)
+				{
+					seats[i].join(10000);
+					if(seats[i].isAlive())
+					{
+						results[i] = "a reply never came";
+					}
+					if(results[i] != null)
+					{
+						System.out.println("Game " + g + ": " + results[i]);
+						System.exit(1);
+					}
+				}
+			}
+			System.out.println(games + " games of " + size + "x" + size + ", every reply in order");
+		}
+		finally
+		{
+			server.stop();
+		}
+	}
+
+	/**
+	 * Runs a JumpingCubeThreadServer until the process is killed, or checks
+	 * the order of its replies with -check.
+	 * @param args An optional port number, or -check and optionally a number of games and a board size.
+	 */
+	public static void main(String args[]) throws Exception
+	{
+		if(args.length > 0 && args[0].equals("-check"))
+		{
+			check((args.length > 1) ? Integer.parseInt(args[1]) : 100, (args.length > 2) ? Integer.parseInt(args[2]) : 5);
+			return;
+		}
+		int port = (args.length > 0) ? Integer.parseInt(args[0]) : JumpingCubeServer.DEFAULT_PORT;
+		JumpingCubeThreadServer server = new JumpingCubeThreadServer(port);
+		System.out.println("JumpingCubeThreadServer listening on port " + server.getPort()
+				+ (JumpingCubeTaskScope.usesVirtualThreads() ? " with virtual threads" : " with platform threads"));
+		JumpingCubeMetrics.serveIfRequested();
+		server.start();
+	}
+}
@@ -0,0 +1,480 @@
+/**
+ * JumpingCubeTopology.java
+ * @author Daniel Miladinov
+ * @version 1-beta
+ */
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.Random;
+
+/**
+ * The JumpingCubeTopology class says which boxes are next to which.  The
+ * neighbors of every cell are kept in one array, those of cell i running
+ * from getFirstNeighbor(i) up to getFirstNeighbor(i + 1), so the
+ * JumpingCubeEngine walks them the same way whatever the shape of the
+ * board, and a box's capacity is simply how many neighbors it has.
+ * <p>
+ * Besides the usual grid there is the torus, a grid whose edges wrap
+ * round to the other side so every box has four neighbors, and the hex
+ * grid, whose odd rows sit half a box to the right so inner boxes have
+ * six.  Any other graph can be read from a file of edges.  The grid, torus
+ * and hex topologies of each size are made once and shared, so two games
+ * are played on the same board when their topologies are the same object.
+ * <p>
+ * Run on its own, the class plays random games on each topology and
+ * prints how quickly the engine resolves them:
+ * <pre>
+ * java JumpingCubeTopology [size] [seconds] [graph file]
+ * </pre>
+ */
+public class JumpingCubeTopology
+{
+	/** The kind of topology of the usual grid.*/
+	public static final int GRID = 0;
+	/** The kind of topology of a grid wrapped round at its edges.*/
+	public static final int TORUS = 1;
+	/** The kind of topology of a grid of hexagons.*/
+	public static final int HEX = 2;
+	/** The kind of topology of a graph read from a file.*/
+	public static final int GRAPH = 3;
+	/** The names of the kinds of topology, by kind.*/
+	public static final String[] KIND_NAMES = {"grid", "torus", "hex", "graph"};
+
+	/** The most boxes a topology may have, the same as the largest grid.*/
+	public static final int MAX_CELLS = JumpingCubeBoard.MAX_ROWS * JumpingCubeBoard.MAX_COLS;
+	/** The most neighbors a box may have, so its points fit in four bits.*/
+	public static final int MAX_DEGREE = 15;
+
+	private static JumpingCubeTopology[][][] cache = new JumpingCubeTopology[GRAPH][JumpingCubeBoard.MAX_ROWS + 1][JumpingCubeBoard.MAX_COLS + 1];
+
+	private int kind;
+	private String name;
+	private int rows;
+	private int cols;
+	private int numCells;
+	private int maxDegree;
+	private int[] first;
+	private int[] neighbors;
+
+	/**
+	 * Builds a topology from the neighbors of every cell.
+	 * @param kind GRID, TORUS, HEX or GRAPH.
+	 * @param name A name to show for the topology.
+	 * @param rows The number of rows to lay the cells out in.
+	 * @param cols The number of columns to lay the cells out in.
+	 * @param lists The neighbors of every cell, in the order their points are queued.
+	 */
+	private JumpingCubeTopology(int kind, String name, int rows, int cols, int[][] lists)
+	{
+		this.kind = kind;
+		this.name = name;
+		this.rows = rows;
+		this.cols = cols;
+		numCells = lists.length;
+		first = new int[numCells + 1];
+		for(int i = 0; i < numCells; i++)
+		{
+			first[i + 1] = first[i] + lists[i].length;
+			maxDegree = Math.max(maxDegree, lists[i].length);
+		}
+		neighbors = new int[first[numCells]];
+		for(int i = 0; i < numCells; i++)
+		{
+			System.arraycopy(lists[i], 0, neighbors, first[i], lists[i].length);
+		}
+	}
+
+	/**
+	 * Gets the usual grid, where each box has the boxes north, south, east
+	 * and west of it as neighbors, in that order.
+	 * @param rows The number of rows, clamped the way the JumpingCubeBoard clamps them.
+	 * @param cols The number of columns, clamped the same way.
+	 * @return The grid topology of that size, shared by every caller.
+	 */
+	public static JumpingCubeTopology grid(int rows, int cols)
+	{
+		return forKind(GRID, rows, cols);
+	}
+
+	/**
+	 * Gets the grid of a kind of topology made on rows and columns.
+	 * @param kind GRID, TORUS or HEX.
+	 * @param rows The number of rows, clamped the way the JumpingCubeBoard clamps them.
+	 * @param cols The number of columns, clamped the same way.
+	 * @return The topology of that kind and size, shared by every caller.
+	 */
+	public static synchronized JumpingCubeTopology forKind(int kind, int rows, int cols)
+	{
+		rows = Math.max(JumpingCubeBoard.MIN_ROWS, Math.min(JumpingCubeBoard.MAX_ROWS, rows));
+		cols = Math.max(JumpingCubeBoard.MIN_COLS, Math.min(JumpingCubeBoard.MAX_COLS, cols));
+		if(cache[kind][rows][cols] == null)
+		{
+			int[][] lists = new int[rows * cols][];
+			for(int r = 0; r < rows; r++)
+			{
+				for(int c = 0; c < cols; c++)
+				{
+					lists[r * cols + c] = (kind == HEX) ? hexNeighbors(rows, cols, r, c)
+							: gridNeighbors(rows, cols, r, c, kind == TORUS);
+				}
+			}
+			cache[kind][rows][cols] = new JumpingCubeTopology(kind, KIND_NAMES[kind] + " " + rows + "x" + cols, rows, cols, lists);
+		}
+		return cache[kind][rows][cols];
+	}
+
+	private static int[] gridNeighbors(int rows, int cols, int r, int c, boolean wrap)
+	{
+		int[] around = {r - 1, c, r + 1, c, r, c + 1, r, c - 1};
+		return keep(rows, cols, around, wrap);
+	}
+
+	/**
+	 * The odd rows sit half a box to the right, so the boxes above and
+	 * below a box are one column further right on an odd row.
+	 */
+	private static int[] hexNeighbors(int rows, int cols, int r, int c)
+	{
+		int shift = r & 1;
+		int[] around = {r - 1, c - 1 + shift, r - 1, c + shift, r + 1, c - 1 + shift, r + 1, c + shift, r, c + 1, r, c - 1};
+		return keep(rows, cols, around, false);
+	}
+
+	/**
+	 * Turns row and column pairs into cell indices, wrapping them round or
+	 * dropping those off the board.
+	 */
+	private static int[] keep(int rows, int cols, int[] around, boolean wrap)
+	{
+		int[] cells = new int[around.length / 2];
+		int n = 0;
+		for(int i = 0; i < around.length; i += 2)
+		{
+			int r = around[i];
+			int c = around[i + 1];
+			if(wrap)
+			{
+				r = (r + rows) % rows;
+				c = (c + cols) % cols;
+			}
+			if(r >= 0 && r < rows && c >= 0 && c < cols)
+			{
+				cells[n++] = r * cols + c;
+			}
+		}
+		int[] kept = new int[n];
+		System.arraycopy(cells, 0, kept, 0, n);
+		return kept;
+	}
+
+	/**
+	 * Reads a graph from a file with one edge per line, the indices of the
+	 * two cells it joins.  Cells are numbered from 0, and there are as many
+	 * as the highest index plus one.  Blank lines and lines starting with #
+	 * are skipped, and an edge given twice counts once.
+	 * @param file The file to read.
+	 * @return The topology of the graph, laid out in rows as near square as can be.
+	 * @throws IOException If the file cannot be read, a line is not an edge, a cell
+	 * has no neighbors or more than MAX_DEGREE, or the graph is in pieces.
+	 */
+	public static JumpingCubeTopology read(File file) throws IOException
+	{
+		boolean[][] joined = new boolean[MAX_CELLS][MAX_CELLS];
+		int numCells = 0;
+		BufferedReader in = new BufferedReader(new FileReader(file));
+		try
+		{
+			String line;
+			while((line = in.readLine()) != null)
+			{
+				line = line.trim();
+				if(line.length() == 0 || line.startsWith("#"))
+				{
+					continue;
+				}
+				String[] fields = line.split("\\s+");
+				if(fields.length != 2)
+				{
+					throw new IOException("Not an edge: " + line);
+				}
+				int a = Integer.parseInt(fields[0]);
+				int b = Integer.parseInt(fields[1]);
+				if(a < 0 || b < 0 || a >= MAX_CELLS || b >= MAX_CELLS || a == b)
+				{
+					throw new IOException("Not an edge between two of " + MAX_CELLS + " cells: " + line);
+				}
+				joined[a][b] = true;
+				joined[b][a] = true;
+				numCells = Math.max(numCells, Math.max(a, b) + 1);
+			}
+		}
+		catch(NumberFormatException e)
+		{
+			throw new IOException("Not a cell: " + e.getMessage());
+		}
+		finally
+		{
+			in.close();
+		}
+		return graph(file.getName(), joined, numCells);
+	}
+
+	/**
+	 * Builds a graph topology from a table of which cells are joined.  On a
+	 * graph in pieces an overflow could go round one piece forever without
+	 * anyone winning, so every cell must be reachable from every other.
+	 * @throws IOException If a cell has no neighbors or more than MAX_DEGREE, or the graph is in pieces.
+	 */
+	private static JumpingCubeTopology graph(String name, boolean[][] joined, int numCells) throws IOException
+	{
+		if(numCells == 0)
+		{
+			throw new IOException("No edges in " + name);
+		}
+		int[][] lists = new int[numCells][];
+		for(int a = 0; a < numCells; a++)
+		{
+			int degree = 0;
+			for(int b = 0; b < numCells; b++)
+			{
+				if(joined[a][b])
+				{
+					degree++;
+				}
+			}
+			if(degree == 0 || degree > MAX_DEGREE)
+			{
+				throw new IOException("Cell " + a + " has " + degree + " neighbors, not 1 to " + MAX_DEGREE);
+			}
+			lists[a] = new int[degree];
+			degree = 0;
+			for(int b = 0; b < numCells; b++)
+			{
+				if(joined[a][b])
+				{
+					lists[a][degree++] = b;
+				}
+			}
+		}
+		boolean[] reached = new boolean[numCells];
+		int[] stack = new int[numCells];
+		int size = 0;
+		int numReached = 1;
+		reached[0] = true;
+		stack[size++] = 0;
+		while(size > 0)
+		{
+			int a = stack[--size];
+			for(int i = 0; i < lists[a].length; i++)
+			{
+				int b = lists[a][i];
+				if(!reached[b])
+				{
+					reached[b] = true;
+					numReached++;
+					stack[size++] = b;
+				}
+			}
+		}
+		if(numReached < numCells)
+		{
+			throw new IOException("Only " + numReached + " of " + numCells + " cells can be reached from cell 0");
+		}
+		int cols = (int)Math.ceil(Math.sqrt(numCells));
+		return new JumpingCubeTopology(GRAPH, name, (numCells + cols - 1) / cols, cols, lists);
+	}
+
+	/**
+	 * Gets the kind of the topology.
+	 * @return GRID, TORUS, HEX or GRAPH.
+	 */
+	public int getKind()
+	{
+		return kind;
+	}
+
+	/**
+	 * Gets the name of the topology, such as "torus 7x7".
+	 * @return The name.
+	 */
+	public String getName()
+	{
+		return name;
+	}
+
+	/**
+	 * Gets the number of rows the cells are laid out in.  Cell i is in
+	 * row i / getCols().
+	 * @return The number of rows.
+	 */
+	public int getRows()
+	{
+		return rows;
+	}
+
+	/**
+	 * Gets the number of columns the cells are laid out in.  Cell i is in
+	 * column i % getCols().
+	 * @return The number of columns.
+	 */
+	public int getCols()
+	{
+		return cols;
+	}
+
+	/**
+	 * Gets the number of cells, which for a graph may be less than the
+	 * rows times the columns.
+	 * @return The number of cells.
+	 */
+	public int getNumCells()
+	{
+		return numCells;
+	}
+
+	/**
+	 * Gets the number of neighbors of a cell, which is its capacity.
+	 * @param cell The cell index.
+	 * @return The number of neighbors.
+	 */
+	public int getDegree(int cell)
+	{
+		return first[cell + 1] - first[cell];
+	}
+
+	/**
+	 * Gets the most neighbors any cell has.
+	 * @return The largest degree.
+	 */
+	public int getMaxDegree()
+	{
+		return maxDegree;
+	}
+
+	/**
+	 * Gets where the neighbors of a cell start in getNeighbors().
+	 * @param cell The cell index, or the number of cells for the end of the last cell's.
+	 * @return The index of the cell's first neighbor.
+	 */
+	public int getFirstNeighbor(int cell)
+	{
+		return first[cell];
+	}
+
+	/**
+	 * Gets one neighbor of a cell.
+	 * @param i The index of the neighbor in getNeighbors().
+	 * @return The cell index of the neighbor.
+	 */
+	public int getNeighbor(int i)
+	{
+		return neighbors[i];
+	}
+
+	/**
+	 * Gets where the neighbors of every cell start, for engines to walk
+	 * without a call per neighbor.
+	 * @return The array; it is shared and must not be changed.
+	 */
+	int[] getFirstNeighbors()
+	{
+		return first;
+	}
+
+	/**
+	 * Gets the neighbors of every cell, one after another, for engines to
+	 * walk without a call per neighbor.
+	 * @return The array; it is shared and must not be changed.
+	 */
+	int[] getNeighbors()
+	{
+		return neighbors;
+	}
+
+	/**
+	 * Plays random games on every topology, and prints the moves and
+	 * cascade steps the engine resolves per second on each.
+	 */
+	public static void main(String args[]) throws IOException
+	{
+		int size = (args.length > 0) ? Integer.parseInt(args[0]) : JumpingCubeBoard.DEFAULT_ROWS;
+		double seconds = (args.length > 1) ? Double.parseDouble(args[1]) : 2;
+		JumpingCubeTopology[] topologies;
+		if(args.length > 2)
+		{
+			topologies = new JumpingCubeTopology[] {read(new File(args[2]))};
+		}
+		else
+		{
+			// A random graph with the grid's number of cells and three to
+			// six neighbors a cell, for a shape with no pattern at all.
+			Random random = new Random(size);
+			int n = size * size;
+			boolean[][] joined = new boolean[MAX_CELLS][MAX_CELLS];
+			for(int a = 1; a < n; a++)
+			{
+				int b = random.nextInt(a);
+				joined[a][b] = true;
+				joined[b][a] = true;
+			}
+			for(int edges = 0; edges < n; edges++)
+			{
+				int a = random.nextInt(n);
+				int b = random.nextInt(n);
+				if(a != b)
+				{
+					joined[a][b] = true;
+					joined[b][a] = true;
+				}
+			}
+			topologies = new JumpingCubeTopology[] {grid(size, size), forKind(TORUS, size, size),
+				forKind(HEX, size, size), graph("random graph", joined, n)};
+		}
+		for(int run = 0; run < 2; run++)
+		{
+			for(int t = 0; t < topologies.length; t++)
+			{
+				benchmark(topologies[t], (run == 0) ? seconds / 4 : seconds, run == 1);
+			}
+		}
+	}
+
+	private static void benchmark(JumpingCubeTopology topology, double seconds, boolean print)
+	{
+		JumpingCubeEngine game = new JumpingCubeEngine(topology, JumpingCubeEngine.NUM_PLAYERS);
+		Random random = new Random(1);
+		long moves = 0;
+		long steps = 0;
+		long games = 0;
+		long started = System.nanoTime();
+		long until = started + (long)(seconds * 1e9);
+		while(System.nanoTime() < until)
+		{
+			game.reset();
+			while(game.getWinner() == JumpingCubeEngine.NO_WINNER)
+			{
+				int cell;
+				do
+				{
+					cell = random.nextInt(game.getNumBoxes());
+				}
+				while(!game.isLegal(cell));
+				game.applyMove(cell);
+				moves++;
+				steps += game.getCascadeLength() + 1;
+			}
+			games++;
+		}
+		long nanos = System.nanoTime() - started;
+		if(print)
+		{
+			System.out.println(topology.getName() + ": " + topology.getNumCells() + " cells, up to "
+					+ topology.getMaxDegree() + " neighbors, " + games + " games, "
+					+ moves * 1000000000L / nanos + " moves/s, " + steps * 1000000000L / nanos + " steps/s, "
+					+ Math.round(10.0 * nanos / steps) / 10.0 + " ns a step");
+		}
+	}
+}
@@ -0,0 +1,506 @@
+/**
+ * JumpingCubeTournament.java
+ * @author Daniel Miladinov
+ * @version 1-beta
+ */
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Random;
+import java.util.Vector;
+
+/**
+ * The JumpingCubeTournament class plays JumpingCubeAI settings against
+ * each other to find out which is stronger.  Every pairing is played as
+ * game pairs that share a short random opening, one with each player
+ * moving first, so neither the first move nor one lucky opening decides
+ * the result.  Games are shared out among worker threads, one per core by
+ * default, and every result is appended to the results file as soon as
+ * its game ends, so a long tournament can be watched, or stopped, at any
+ * time without losing what it has already played.
+ * <p>
+ * At the end, and whenever progress is printed, each pairing's score is
+ * turned into an Elo difference with a 95% confidence interval.  A
+ * tournament between two players can also be run as a sequential
+ * probability ratio test, which stops as soon as the games played are
+ * enough to accept or reject the hypothesis that the first player is
+ * stronger by a given number of Elo points.
+ * <p>
+ * Players are given as name:setting=value,..., where the settings are
+ * depth, time (a budget per move in milliseconds) and weights (the five
+ * evaluation weights, separated by slashes; any left off the end keep the
+ * weights the AI starts with).  For example:
+ * <pre>
+ * java JumpingCubeTournament -games 200 -sprt 0,10 new:depth=4,weights=16/4/8/3/1 old:depth=4
+ * </pre>
+ * Usage: java JumpingCubeTournament [-mode roundrobin|gauntlet] [-games n]
+ * [-threads n] [-size n] [-openings n] [-out file] [-sprt elo0,elo1]
+ * [-alpha a] [-beta b] player player ...
+ */
+public class JumpingCubeTournament
+{
+	/** Pairing mode: every player plays every other.*/
+	public static final int ROUND_ROBIN = 0;
+	/** Pairing mode: the first player plays every other, and they do not play each other.*/
+	public static final int GAUNTLET = 1;
+
+	/** SPRT result: not enough games yet.*/
+	public static final int CONTINUE = 0;
+	/** SPRT result: the first player is stronger by at least elo1.*/
+	public static final int ACCEPT = 1;
+	/** SPRT result: the first player is not stronger by elo0 or more.*/
+	public static final int REJECT = -1;
+
+	private static final int MAX_MOVES = 2000;
+
+	private Vector players;
+	private int size;
+	private int openingMoves;
+	private int gamesPerPairing;
+	private int[][] pairings;
+	private PrintWriter out;
+
+	private int nextGame;
+	private int gamesPlayed;
+	private int[][] wins;
+	private int[][] draws;
+	private boolean stopped;
+
+	private boolean sprt;
+	private double elo0;
+	private double elo1;
+	private double lowerBound;
+	private double upperBound;
+	private int sprtResult;
+
+	/**
+	 * An inner class which holds the settings of one player.
+	 */
+	static class Player
+	{
+		String name;
+		int depth;
+		long time;
+		int[] weights;
+
+		public Player(String spec)
+		{
+			int colon = spec.indexOf(':');
+			name = (colon < 0) ? spec : spec.substring(0, colon);
+			depth = 4;
+			time = 0;
+			weights = JumpingCubeAI.getStartupWeights();
+			if(colon < 0)
+			{
+				return;
+			}
+			String[] settings = spec.substring(colon + 1).split(",");
+			for(int i = 0; i < settings.length; i++)
+			{
+				String[] pair = settings[i].split("=");
+				if(pair[0].equals("depth"))
+				{
+					depth = Integer.parseInt(pair[1]);
+				}
+				else if(pair[0].equals("time"))
+				{
+					time = Long.parseLong(pair[1]);
+				}
+				else if(pair[0].equals("weights"))
+				{
+					String[] w = pair[1].split("/");
+					weights = JumpingCubeAI.getStartupWeights();
+					for(int j = 0; j < weights.length && j < w.length; j++)
+					{
+						weights[j] = Integer.parseInt(w[j]);
+					}
+				}
+				else
+				{
+					throw new IllegalArgumentException("Unknown setting " + pair[0] + " for " + name);
+				}
+			}
+		}
+
+		public JumpingCubeAI newAI()
+		{
+			JumpingCubeAI ai = new JumpingCubeAI(depth, time);
+			ai.setWeights(weights);
+			return ai;
+		}
+	}
+
+	/**
+	 * The JumpingCubeTournament constructor.
+	 * @param specs The players, as name:setting=value,...
+	 * @param mode ROUND_ROBIN or GAUNTLET.
+	 * @param gamesPerPairing The number of games each pairing plays; rounded up to an even number.
+	 * @param size The number of rows and columns of every game.
+	 * @param openingMoves The number of random moves every game starts with.
+	 * @param resultsFile The file every result is appended to, or null for none.
+	 * @throws IOException If the results file cannot be opened.
+	 */
+	public JumpingCubeTournament(String[] specs, int mode, int gamesPerPairing, int size, int openingMoves, String resultsFile) throws IOException
+	{
+		players = new Vector();
+		for(int i = 0; i < specs.length; i++)
+		{
+			players.add(new Player(specs[i]));
+		}
+		this.size = size;
+		this.openingMoves = openingMoves;
+		this.gamesPerPairing = gamesPerPairing + (gamesPerPairing % 2);
+
+		Vector list = new Vector();
+		for(int a = 0; a < specs.length; a++)
+		{
+			for(int b = a + 1; b < specs.length; b++)
+			{
+				if(mode == ROUND_ROBIN || a == 0)
+				{
+					list.add(new int[] {a, b});
+				}
+			}
+		}
+		pairings = new int[list.size()][];
+		for(int i = 0; i < pairings.length; i++)
+		{
+			pairings[i] = (int[])list.get(i);
+		}
+		wins = new int[specs.length][specs.length];
+		draws = new int[specs.length][specs.length];
+		if(resultsFile != null)
+		{
+			out = new PrintWriter(new FileWriter(resultsFile, true));
+			out.println("# game\twhite\tblack\tresult\tmoves");
+			out.flush();
+		}
+	}
+
+	/**
+	 * Turns the tournament into a sequential probability ratio test of
+	 * whether the first player is stronger than the second.
+	 * @param elo0 The Elo difference of the null hypothesis.
+	 * @param elo1 The Elo difference of the alternative hypothesis.
+	 * @param alpha The chance of accepting when the null hypothesis is true.
+	 * @param beta The chance of rejecting when the alternative is true.
+	 */
+	public void setSPRT(double elo0, double elo1, double alpha, double beta)
+	{
+		sprt = true;
+		this.elo0 = elo0;
+		this.elo1 = elo1;
+		lowerBound = Math.log(beta / (1 - alpha));
+		upperBound = Math.log((1 - beta) / alpha);
+	}
+
+	/**
+	 * Plays the tournament on the given number of threads, printing
+	 * progress every so often, and returns when every game is played or
+	 * the SPRT has decided.
+	 * @param threads The number of games to play at once.
+	 * @param progressMillis How often to print the standings.
+	 */
+	public void run(int threads, long progressMillis) throws InterruptedException
+	{
+		Thread[] workers = new Thread[threads];
+		for(int t = 0; t < threads; t++)
+		{
+			workers[t] = new Thread("JumpingCubeTournament-" + t)
+			{
+				public void run()
+				{
+					work();
+				}
+			};
+			workers[t].start();
+		}
+		for(int t = 0; t < threads; t++)
+		{
+			while(workers[t].isAlive())
+			{
+				workers[t].join(progressMillis);
+				if(workers[t].isAlive())
+				{
+					printStandings(System.out);
+				}
+			}
+		}
+		if(out != null)
+		{
+			out.close();
+		}
+	}
+
+	/**
+	 * Takes games to play until there are none left.  Each worker keeps
+	 * its own JumpingCubeAI for every player, so no search is shared
+	 * between threads.
+	 */
+	private void work()
+	{
+		JumpingCubeAI[] ais = new JumpingCubeAI[players.size()];
+		for(int i = 0; i < ais.length; i++)
+		{
+			ais[i] = ((Player)players.get(i)).newAI();
+		}
+		JumpingCubeEngine game = new JumpingCubeEngine(size, size);
+		int totalGames = pairings.length * gamesPerPairing;
+		while(true)
+		{
+			int g;
+			synchronized(this)
+			{
+				if(stopped || nextGame >= totalGames)
+				{
+					return;
+				}
+				g = nextGame++;
+			}
+			// Games are dealt out round by round, so every pairing
+			// progresses at the same pace and early stopping stays fair.
+			int round = g / pairings.length;
+			int[] pairing = pairings[g % pairings.length];
+			int first = pairing[round % 2];
+			int second = pairing[1 - round % 2];
+			int winner = play(game, ais[first], ais[second], round / 2);
+			record(g, first, second, winner, game.getMoveNumber());
+		}
+	}
+
+	/**
+	 * Plays one game.  Both AIs start it with an empty transposition
+	 * table, so no game is played with what was learned in the last.
+	 * @return 0 if the player moving first won, 1 if the other did, or -1 for a draw.
+	 */
+	private int play(JumpingCubeEngine game, JumpingCubeAI first, JumpingCubeAI second, int opening)
+	{
+		game.reset();
+		first.clear();
+		second.clear();
+		Random random = new Random(opening * 0x9E3779B97F4A7C15L + size);
+		for(int i = 0; i < openingMoves && game.getWinner() == JumpingCubeEngine.NO_WINNER; i++)
+		{
+			int n = game.getNumBoxes();
+			int cell = random.nextInt(n);
+			while(!game.isLegal(cell))
+			{
+				cell = (cell + 1) % n;
+			}
+			game.applyMove(cell);
+		}
+		while(game.getWinner() == JumpingCubeEngine.NO_WINNER && game.getMoveNumber() < MAX_MOVES)
+		{
+			JumpingCubeAI ai = (game.getActivePlayer() == 0) ? first : second;
+			JumpingCubeFlightRecorder.applyMove(game, ai.chooseMove(game), -1);
+		}
+		return game.getWinner();
+	}
+
+	private synchronized void record(int g, int first, int second, int winner, int moves)
+	{
+		gamesPlayed++;
+		String result;
+		if(winner == 0)
+		{
+			wins[first][second]++;
+			result = "1-0";
+		}
+		else if(winner == 1)
+		{
+			wins[second][first]++;
+			result = "0-1";
+		}
+		else
+		{
+			draws[first][second]++;
+			draws[second][first]++;
+			result = "1/2-1/2";
+		}
+		if(out != null)
+		{
+			out.println(g + "\t" + name(first) + "\t" + name(second) + "\t" + result + "\t" + moves);
+			out.flush();
+		}
+		if(sprt && sprtResult == CONTINUE)
+		{
+			double llr = getLLR();
+			if(llr >= upperBound)
+			{
+				sprtResult = ACCEPT;
+				stopped = true;
+			}
+			else if(llr <= lowerBound)
+			{
+				sprtResult = REJECT;
+				stopped = true;
+			}
+		}
+	}
+
+	private String name(int player)
+	{
+		return ((Player)players.get(player)).name;
+	}
+
+	/**
+	 * Gets the log-likelihood ratio of the SPRT between the first two
+	 * players, using the normal approximation of their game results.
+	 * @return The LLR; above the upper bound accepts, below the lower bound rejects.
+	 */
+	public synchronized double getLLR()
+	{
+		double n = wins[0][1] + wins[1][0] + draws[0][1];
+		if(n < 2)
+		{
+			return 0;
+		}
+		double score = (wins[0][1] + 0.5 * draws[0][1]) / n;
+		double variance = (wins[0][1] * (1 - score) * (1 - score)
+				+ draws[0][1] * (0.5 - score) * (0.5 - score)
+				+ wins[1][0] * score * score) / n;
+		if(variance <= 0)
+		{
+			variance = 1.0 / n;
+		}
+		double s0 = expectedScore(elo0);
+		double s1 = expectedScore(elo1);
+		return n * (s1 - s0) * (2 * score - s0 - s1) / (2 * variance);
+	}
+
+	/**
+	 * Gets the result of the SPRT, if one is being run.
+	 * @return ACCEPT, REJECT or CONTINUE.
+	 */
+	public synchronized int getSPRTResult()
+	{
+		return sprtResult;
+	}
+
+	/**
+	 * Converts an Elo difference to the score the stronger player is expected to make.
+	 * @param elo The Elo difference.
+	 * @return The expected score, from 0 to 1.
+	 */
+	public static double expectedScore(double elo)
+	{
+		return 1 / (1 + Math.pow(10, -elo / 400));
+	}
+
+	/**
+	 * Converts a score to the Elo difference it suggests.
+	 * @param score A score from 0 to 1.
+	 * @return The Elo difference, clamped to plus or minus 999.
+	 */
+	public static double elo(double score)
+	{
+		if(score <= 0)
+		{
+			return -999;
+		}
+		if(score >= 1)
+		{
+			return 999;
+		}
+		return Math.max(-999, Math.min(999, -400 * Math.log10(1 / score - 1)));
+	}
+
+	/**
+	 * Prints every pairing's result, its Elo difference and a 95%
+	 * confidence interval, and the state of the SPRT if one is being run.
+	 * @param stream Where to print.
+	 */
+	public synchronized void printStandings(java.io.PrintStream stream)
+	{
+		stream.println("games played: " + gamesPlayed);
+		for(int i = 0; i < pairings.length; i++)
+		{
+			int a = pairings[i][0];
+			int b = pairings[i][1];
+			int w = wins[a][b];
+			int l = wins[b][a];
+			int d = draws[a][b];
+			int n = w + l + d;
+			if(n == 0)
+			{
+				continue;
+			}
+			double score = (w + 0.5 * d) / n;
+			double variance = (w * (1 - score) * (1 - score) + d * (0.5 - score) * (0.5 - score) + l * score * score) / n;
+			double margin = 1.96 * Math.sqrt(variance / n);
+			stream.println("  " + name(a) + " vs " + name(b) + ": +" + w + " -" + l + " =" + d
+					+ "  elo " + format(elo(score))
+					+ " [" + format(elo(score - margin)) + ", " + format(elo(score + margin)) + "]");
+		}
+		if(sprt)
+		{
+			String state = (sprtResult == ACCEPT) ? "H1 accepted" : ((sprtResult == REJECT) ? "H0 accepted" : "running");
+			stream.println("  SPRT elo0=" + elo0 + " elo1=" + elo1 + ": LLR " + format(getLLR())
+					+ " [" + format(lowerBound) + ", " + format(upperBound) + "] " + state);
+		}
+	}
+
+	private static String format(double d)
+	{
+		return String.valueOf(Math.round(d * 10) / 10.0);
+	}
+
+	/**
+	 * Runs a tournament from the command line.
+	 */
+	public static void main(String args[]) throws Exception
+	{
+		int mode = ROUND_ROBIN;
+		int games = 100;
+		int threads = Runtime.getRuntime().availableProcessors();
+		int size = JumpingCubeBoard.DEFAULT_ROWS;
+		int openings = 4;
+		String outFile = "tournament.txt";
+		String sprtBounds = null;
+		double alpha = 0.05;
+		double beta = 0.05;
+		Vector specs = new Vector();
+		for(int i = 0; i < args.length; i++)
+		{
+			if(!args[i].startsWith("-"))
+			{
+				specs.add(args[i]);
+				continue;
+			}
+			String value = args[++i];
+			if(args[i - 1].equals("-mode")) mode = value.equals("gauntlet") ? GAUNTLET : ROUND_ROBIN;
+			else if(args[i - 1].equals("-games")) games = Integer.parseInt(value);
+			else if(args[i - 1].equals("-threads")) threads = Integer.parseInt(value);
+			else if(args[i - 1].equals("-size")) size = Integer.parseInt(value);
+			else if(args[i - 1].equals("-openings")) openings = Integer.parseInt(value);
+			else if(args[i - 1].equals("-out")) outFile = value;
+			else if(args[i - 1].equals("-sprt")) sprtBounds = value;
+			else if(args[i - 1].equals("-alpha")) alpha = Double.parseDouble(value);
+			else if(args[i - 1].equals("-beta")) beta = Double.parseDouble(value);
+			else throw new IllegalArgumentException("Unknown option " + args[i - 1]);
+		}
+		if(specs.size() < 2)
+		{
+			System.out.println("Usage: java JumpingCubeTournament [-mode roundrobin|gauntlet] [-games n] [-threads n]"
+					+ " [-size n] [-openings n] [-out file] [-sprt elo0,elo1] [-alpha a] [-beta b] player player ...");
+			return;
+		}
+		String[] names = new String[specs.size()];
+		specs.copyInto(names);
+		JumpingCubeTournament tournament = new JumpingCubeTournament(names, mode, games, size, openings, outFile);
+		if(sprtBounds != null)
+		{
+			if(names.length != 2)
+			{
+				throw new IllegalArgumentException("An SPRT needs exactly two players");
+			}
+			String[] bounds = sprtBounds.split(",");
+			tournament.setSPRT(Double.parseDouble(bounds[0]), Double.parseDouble(bounds[1]), alpha, beta);
+		}
+		long started = System.currentTimeMillis();
+		tournament.run(threads, 10000);
+		tournament.printStandings(System.out);
+		System.out.println("time: " + (System.currentTimeMillis() - started) / 1000.0 + " s on " + threads + " threads");
+	}
+}
@@ -0,0 +1,540 @@
+/**
+ * JumpingCubeTuner.java
+ * @author Daniel Miladinov
+ * @version 1-beta
+ */
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Random;
+
+/**
+ * The JumpingCubeTuner class finds evaluation weights for the JumpingCubeAI
+ * from games it plays against itself.  It works in two passes, each of which
+ * streams through a file, so its memory use does not grow with the number
+ * of positions:
+ * <ol>
+ * <li>Self-play games are shared out among one thread per core.  Positions
+ * from each game are labelled with whether the player on turn went on to
+ * win, and appended to the positions file as their game ends, as the
+ * player's feature counts and the label.</li>
+ * <li>The weights are fitted to the labels the way Texel tuning fits them:
+ * a position's evaluation, passed through a sigmoid, is taken as the chance
+ * that the player on turn wins, and the mean squared error of that chance
+ * against the labels is brought down by batched gradient descent with Adam
+ * step sizes.  Each batch is read from the file and its gradient is worked
+ * out in parallel, one slice per core.</li>
+ * </ol>
+ * The scale of the sigmoid is fitted first, to the starting weights, so the
+ * fitted weights stay on the same scale and can be rounded to the integers
+ * the search uses.  They are written to a weights file, which every
+ * JumpingCubeAI loads at startup.
+ * <p>
+ * With -columns, the positions kept are also written whole, with the move
+ * played and the game's result, to a JumpingCubeColumnWriter directory.
+ * <p>
+ * Usage: java JumpingCubeTuner [-games n] [-depth n] [-size n] [-threads n]
+ * [-positions file] [-columns directory] [-epochs n] [-batch n] [-rate r] [-out file]
+ */
+public class JumpingCubeTuner
+{
+	/** The number of bytes one labelled position takes in a positions file.*/
+	public static final int RECORD_SIZE = JumpingCubeAI.NUM_FEATURES * 2 + 1;
+
+	private static final int OPENING_MOVES = 4;
+	private static final int SKIPPED_MOVES = 6;
+	private static final int MAX_MOVES = 2000;
+
+	private File positions;
+	private int threads;
+	private JumpingCubeColumnWriter columns;
+
+	/**
+	 * The JumpingCubeTuner constructor.
+	 * @param positions The file the labelled positions are kept in.
+	 * @param threads The number of threads to play and fit with.
+	 */
+	public JumpingCubeTuner(File positions, int threads)
+	{
+		this.positions = positions;
+		this.threads = threads;
+	}
+
+	/**
+	 * Sets where generate() writes the positions it keeps as columns too.
+	 * @param columns The writer, on boards of the size to be played, or null for none.
+	 */
+	public void setColumns(JumpingCubeColumnWriter columns)
+	{
+		this.columns = columns;
+	}
+
+	/**
+	 * Plays games of the AI against itself and appends their labelled
+	 * positions to the positions file.  Each game starts with a few random
+	 * moves, so no two play out the same, and its first few moves after
+	 * those are not kept.
+	 * @param games The number of games to play.
+	 * @param size The number of rows and columns of every game.
+	 * @param depth The depth the AI searches to.
+	 * @param weights The weights the AI plays with.
+	 * @return The number of positions written.
+	 * @throws Exception If the file cannot be written or a thread fails.
+	 */
+	public long generate(final int games, final int size, final int depth, final int[] weights) throws Exception
+	{
+		final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(positions, true), 1 << 16));
+		final int[] next = new int[1];
+		final long[] written = new long[1];
+		JumpingCubeTaskScope scope = new JumpingCubeTaskScope("JumpingCubeTuner-play");
+		try
+		{
+			for(int t = 0; t < threads; t++)
+			{
+				scope.fork(
+						new JumpingCubeTaskScope.Task()
+						{
+							public void run() throws Exception
+							{
+								JumpingCubeAI ai = new JumpingCubeAI(depth, 0);
+								ai.setWeights(weights);
+								JumpingCubeEngine game = new JumpingCubeEngine(size, size);
+								byte[] record = new byte[MAX_MOVES * RECORD_SIZE];
+								int[] players = new int[MAX_MOVES];
+								int[] counts = new int[JumpingCubeAI.NUM_FEATURES];
+								JumpingCubeColumnWriter.Rows rows = (columns != null) ? columns.newRows() : null;
+								while(true)
+								{
+									int g;
+									synchronized(next)
+									{
+										if(next[0] >= games)
+										{
+											return;
+										}
+										g = next[0]++;
+									}
+									int n = play(game, ai, new Random(g), record, players, counts, rows);
+									synchronized(out)
+									{
+										out.write(record, 0, n * RECORD_SIZE);
+										written[0] += n;
+									}
+									if(n > 0 && rows != null)
+									{
+										columns.write(rows, game.getWinner());
+									}
+								}
+							}
+						}
+						);
+			}
+			scope.join();
+		}
+		finally
+		{
+			scope.close();
+			out.close();
+		}
+		return written[0];
+	}
+
+	/**
+	 * Plays one game and fills in a record for each position kept, and
+	 * adds it to rows as well unless rows is null.  Used by
+	 * JumpingCubeSelfPlay's worker processes as well.
+	 * @return The number of positions kept.
+	 */
+	static int play(JumpingCubeEngine game, JumpingCubeAI ai, Random random, byte[] record, int[] players, int[] counts,
+			JumpingCubeColumnWriter.Rows rows)
+	{
+		game.reset();
+		ai.clear();
+		if(rows != null)
+		{
+			rows.clear();
+		}
+		int n = 0;
+		while(game.getWinner() == JumpingCubeEngine.NO_WINNER && game.getMoveNumber() < MAX_MOVES)
+		{
+			int cell;
+			if(game.getMoveNumber() < OPENING_MOVES)
+			{
+				do
+				{
+					cell = random.nextInt(game.getNumBoxes());
+				}
+				while(!game.isLegal(cell));
+			}
+			else
+			{
+				if(game.getMoveNumber() >= OPENING_MOVES + SKIPPED_MOVES)
+				{
+					JumpingCubeAI.getFeatures(game, game.getActivePlayer(), counts);
+					int at = n * RECORD_SIZE;
+					for(int i = 0; i < counts.length; i++)
+					{
+						record[at++] = (byte)(counts[i] >> 8);
+						record[at++] = (byte)counts[i];
+					}
+					players[n++] = game.getActivePlayer();
+					cell = ai.chooseMove(game);
+					if(rows != null)
+					{
+						rows.add(game, cell);
+					}
+				}
+				else
+				{
+					cell = ai.chooseMove(game);
+				}
+			}
+			game.applyMove(cell);
+		}
+		if(game.getWinner() == JumpingCubeEngine.NO_WINNER)
+		{
+			return 0;
+		}
+		for(int i = 0; i < n; i++)
+		{
+			record[i * RECORD_SIZE + RECORD_SIZE - 1] = (byte)((players[i] == game.getWinner()) ? 1 : 0);
+		}
+		return n;
+	}
+
+	/**
+	 * Finds the scale of the sigmoid that best fits the labels to a set of
+	 * weights, by golden-section search.
+	 * @param weights The weights to fit the scale to.
+	 * @return The scale, so that 1 / (1 + e^(-scale * evaluation)) is the chance of winning.
+	 * @throws Exception If the positions file cannot be read.
+	 */
+	public double fitScale(double[] weights) throws Exception
+	{
+		double lo = 1e-5;
+		double hi = 1.0;
+		final double ratio = (Math.sqrt(5) - 1) / 2;
+		double a = hi - ratio * (hi - lo);
+		double b = lo + ratio * (hi - lo);
+		double la = pass(weights, a, null);
+		double lb = pass(weights, b, null);
+		for(int i = 0; i < 30; i++)
+		{
+			if(la < lb)
+			{
+				hi = b;
+				b = a;
+				lb = la;
+				a = hi - ratio * (hi - lo);
+				la = pass(weights, a, null);
+			}
+			else
+			{
+				lo = a;
+				a = b;
+				la = lb;
+				b = lo + ratio * (hi - lo);
+				lb = pass(weights, b, null);
+			}
+		}
+		return (lo + hi) / 2;
+	}
+
+	/**
+	 * Fits the weights to the labels.  Every epoch reads the positions file
+	 * once, a batch at a time, and takes one Adam step per batch.
+	 * @param weights The starting weights, which are brought up to date in place.
+	 * @param scale The scale of the sigmoid, from fitScale().
+	 * @param epochs The number of times to go through the positions.
+	 * @param batch The number of positions per step.
+	 * @param rate The largest step any weight takes, roughly.
+	 * @return The mean squared error of the last epoch, before its last step.
+	 * @throws Exception If the positions file cannot be read.
+	 */
+	public double tune(double[] weights, double scale, int epochs, int batch, double rate) throws Exception
+	{
+		Optimizer optimizer = new Optimizer(weights, rate, batch);
+		double epochLoss = 0;
+		for(int e = 0; e < epochs; e++)
+		{
+			epochLoss = pass(weights, scale, optimizer);
+			System.out.println("epoch " + (e + 1) + ": error " + format(epochLoss) + "  weights " + toString(weights));
+		}
+		return epochLoss;
+	}
+
+	/**
+	 * An inner class which takes an Adam step after each batch.
+	 */
+	class Optimizer
+	{
+		double[] weights;
+		double[] m;
+		double[] v;
+		double rate;
+		long step;
+		int batch;
+
+		public Optimizer(double[] weights, double rate, int batch)
+		{
+			this.weights = weights;
+			this.rate = rate;
+			this.batch = batch;
+			m = new double[weights.length];
+			v = new double[weights.length];
+		}
+
+		public void step(double[] g, int n)
+		{
+			step++;
+			for(int i = 0; i < weights.length; i++)
+			{
+				double gi = g[i] / n;
+				m[i] = 0.9 * m[i] + 0.1 * gi;
+				v[i] = 0.999 * v[i] + 0.001 * gi * gi;
+				double mHat = m[i] / (1 - Math.pow(0.9, step));
+				double vHat = v[i] / (1 - Math.pow(0.999, step));
+				weights[i] -= rate * mHat / (Math.sqrt(vHat) + 1e-12);
+			}
+		}
+	}
+
+	/**
+	 * Reads the positions file once, a batch at a time, working out the
+	 * error and gradient of each batch in parallel.
+	 * @param optimizer Steps the weights after each batch, or null to only measure the error.
+	 * @return The mean squared error over every position read.
+	 */
+	private double pass(double[] weights, double scale, Optimizer optimizer) throws Exception
+	{
+		int batch = (optimizer != null) ? optimizer.batch : 1 << 16;
+		byte[] buffer = new byte[batch * RECORD_SIZE];
+		InputStream in = new BufferedInputStream(new FileInputStream(positions), 1 << 16);
+		double total = 0;
+		long count = 0;
+		try
+		{
+			while(true)
+			{
+				int n = read(in, buffer);
+				if(n == 0)
+				{
+					break;
+				}
+				double[] g = new double[weights.length];
+				total += batch(buffer, n, weights, scale, g);
+				count += n;
+				if(optimizer != null)
+				{
+					optimizer.step(g, n);
+				}
+			}
+		}
+		finally
+		{
+			in.close();
+		}
+		return (count == 0) ? 0 : total / count;
+	}
+
+	/**
+	 * Reads as many whole records as fit in the buffer.
+	 * @return The number of records read.
+	 */
+	private static int read(InputStream in, byte[] buffer) throws IOException
+	{
+		int filled = 0;
+		while(filled < buffer.length)
+		{
+			int r = in.read(buffer, filled, buffer.length - filled);
+			if(r < 0)
+			{
+				break;
+			}
+			filled += r;
+		}
+		return filled / RECORD_SIZE;
+	}
+
+	/**
+	 * Works out the summed squared error of a batch, and adds its gradient
+	 * to g, splitting the batch into one slice per thread.
+	 */
+	private double batch(final byte[] buffer, int n, final double[] weights, final double scale, double[] g) throws Exception
+	{
+		int slices = Math.min(threads, Math.max(1, n / 1024));
+		final double[][] partial = new double[slices][weights.length + 1];
+		JumpingCubeTaskScope scope = new JumpingCubeTaskScope("JumpingCubeTuner-fit");
+		try
+		{
+			for(int s = 0; s < slices; s++)
+			{
+				final int from = (int)((long)n * s / slices);
+				final int to = (int)((long)n * (s + 1) / slices);
+				final double[] mine = partial[s];
+				scope.fork(
+						new JumpingCubeTaskScope.Task()
+						{
+							public void run()
+							{
+								slice(buffer, from, to, weights, scale, mine);
+							}
+						}
+						);
+			}
+			scope.join();
+		}
+		finally
+		{
+			scope.close();
+		}
+		double error = 0;
+		for(int s = 0; s < slices; s++)
+		{
+			for(int i = 0; i < weights.length; i++)
+			{
+				g[i] += partial[s][i];
+			}
+			error += partial[s][weights.length];
+		}
+		return error;
+	}
+
+	/**
+	 * Adds the gradient of the squared error of some records to the first
+	 * entries of out, and the error itself to its last entry.
+	 */
+	private static void slice(byte[] buffer, int from, int to, double[] weights, double scale, double[] out)
+	{
+		int features = weights.length;
+		double[] f = new double[features];
+		for(int r = from; r < to; r++)
+		{
+			int at = r * RECORD_SIZE;
+			double eval = 0;
+			for(int i = 0; i < features; i++)
+			{
+				f[i] = (short)(((buffer[at] & 0xFF) << 8) | (buffer[at + 1] & 0xFF));
+				eval += weights[i] * f[i];
+				at += 2;
+			}
+			double label = buffer[at];
+			double p = 1 / (1 + Math.exp(-scale * eval));
+			double diff = p - label;
+			out[features] += diff * diff;
+			double d = 2 * diff * p * (1 - p) * scale;
+			for(int i = 0; i < features; i++)
+			{
+				out[i] += d * f[i];
+			}
+		}
+	}
+
+	private static String toString(double[] w)
+	{
+		StringBuffer sb = new StringBuffer();
+		for(int i = 0; i < w.length; i++)
+		{
+			sb.append((i == 0) ? "" : " ").append(JumpingCubeAI.FEATURE_NAMES[i]).append('=').append(format(w[i]));
+		}
+		return sb.toString();
+	}
+
+	private static String format(double d)
+	{
+		return String.valueOf(Math.round(d * 10000) / 10000.0);
+	}
+
+	/**
+	 * Runs the tuner from the command line.
+	 */
+	public static void main(String args[]) throws Exception
+	{
+		int games = 200;
+		int depth = 2;
+		int size = JumpingCubeBoard.DEFAULT_ROWS;
+		int threads = Runtime.getRuntime().availableProcessors();
+		String positionsFile = "positions.bin";
+		String columnsDir = null;
+		int epochs = 20;
+		int batch = 4096;
+		double rate = 0.2;
+		String outFile = JumpingCubeAI.WEIGHTS_FILE;
+		for(int i = 0; i + 1 < args.length; i += 2)
+		{
+			if(args[i].equals("-games")) games = Integer.parseInt(args[i + 1]);
+			else if(args[i].equals("-depth")) depth = Integer.parseInt(args[i + 1]);
+			else if(args[i].equals("-size")) size = Integer.parseInt(args[i + 1]);
+			else if(args[i].equals("-threads")) threads = Integer.parseInt(args[i + 1]);
+			else if(args[i].equals("-positions")) positionsFile = args[i + 1];
+			else if(args[i].equals("-columns")) columnsDir = args[i + 1];
+			else if(args[i].equals("-epochs")) epochs = Integer.parseInt(args[i + 1]);
+			else if(args[i].equals("-batch")) batch = Integer.parseInt(args[i + 1]);
+			else if(args[i].equals("-rate")) rate = Double.parseDouble(args[i + 1]);
+			else if(args[i].equals("-out")) outFile = args[i + 1];
+			else throw new IllegalArgumentException("Unknown option " + args[i]);
+		}
+
+		JumpingCubeTuner tuner = new JumpingCubeTuner(new File(positionsFile), threads);
+		int[] start = JumpingCubeAI.getStartupWeights();
+		if(games > 0)
+		{
+			JumpingCubeColumnWriter columns = null;
+			if(columnsDir != null)
+			{
+				columns = new JumpingCubeColumnWriter(new File(columnsDir), size, size);
+				tuner.setColumns(columns);
+			}
+			long started = System.currentTimeMillis();
+			long n;
+			try
+			{
+				n = tuner.generate(games, size, depth, start);
+			}
+			finally
+			{
+				if(columns != null)
+				{
+					columns.close();
+				}
+			}
+			System.out.println(games + " games, " + n + " positions appended to " + positionsFile
+					+ ((columns != null) ? " and " + columnsDir : "")
+					+ " in " + (System.currentTimeMillis() - started) / 1000.0 + " s");
+		}
+		if(tuner.positions.length() < RECORD_SIZE)
+		{
+			System.out.println("No positions to tune on");
+			return;
+		}
+
+		double[] weights = new double[start.length];
+		for(int i = 0; i < start.length; i++)
+		{
+			weights[i] = start[i];
+		}
+		double scale = tuner.fitScale(weights);
+		double before = tuner.pass(weights, scale, null);
+		System.out.println((tuner.positions.length() / RECORD_SIZE) + " positions, scale " + scale + ", error " + format(before)
+				+ "  weights " + toString(weights));
+		tuner.tune(weights, scale, epochs, batch, rate);
+
+		int[] tuned = new int[weights.length];
+		double[] rounded = new double[weights.length];
+		for(int i = 0; i < weights.length; i++)
+		{
+			tuned[i] = (int)Math.round(weights[i]);
+			rounded[i] = tuned[i];
+		}
+		double after = tuner.pass(rounded, scale, null);
+		JumpingCubeAI.writeWeights(new File(outFile), tuned, "Tuned on " + (tuner.positions.length() / RECORD_SIZE)
+				+ " positions; error " + format(before) + " before, " + format(after) + " after");
+		System.out.println("error " + format(before) + " -> " + format(after) + " with rounded weights, written to " + outFile);
+	}
+}